@@ -0,0 +1,63 @@
+package com.musicplayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A destination for the rendered PCM stream of an {@link MP3Player}.
+ *
+ * The player writes only as many bytes as {@link #available()} reports, so a sink that
+ * plays in real time also sets the pace of playback. Sinks that merely store or discard
+ * audio can accept everything at once. Apart from {@link #getBufferedFrames()}, which
+ * may be called from any thread to compute the playback position, methods are called
+ * only on the player's audio-control thread.
+ */
+public interface AudioSink extends Closeable {
+
+    /**
+     * Prepares the sink. Called once, before the first write.
+     *
+     * @param format The format of the data that will be written
+     * @throws IOException If the sink cannot be opened
+     * @throws LineUnavailableException If an audio device cannot be opened
+     */
+    void open(AudioFormat format) throws IOException, LineUnavailableException;
+
+    /**
+     * @return The number of bytes that can be written without blocking
+     */
+    int available();
+
+    /**
+     * Writes whole frames of audio.
+     *
+     * @param data The PCM bytes
+     * @param offset The offset of the first byte
+     * @param length The number of bytes to write
+     * @return The number of bytes written
+     * @throws IOException If the data cannot be written
+     */
+    int write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * @return The number of frames written but not yet played
+     */
+    long getBufferedFrames();
+
+    /**
+     * Starts or resumes output of buffered data.
+     */
+    void start();
+
+    /**
+     * Pauses output, keeping buffered data.
+     */
+    void stop();
+
+    /**
+     * Discards buffered data that has not been played yet.
+     */
+    void flush();
+}
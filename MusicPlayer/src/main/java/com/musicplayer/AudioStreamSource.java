@@ -0,0 +1,164 @@
+package com.musicplayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link PcmSource} that decodes a file through the Java Sound API, so it handles
+ * whatever formats the installed codecs support. Compressed or unusual encodings are
+ * converted to 16-bit signed PCM first.
+ */
+public class AudioStreamSource implements PcmSource {
+
+    /**
+     * Opens the encoded bytes of an audio file, from the start each time.
+     */
+    public interface Opener {
+        /**
+         * @return A new stream over the whole file
+         * @throws IOException If the file cannot be read
+         */
+        InputStream open() throws IOException;
+    }
+
+    private final File file;
+    private final Opener opener;
+    private AudioInputStream stream;
+    private AudioFormat format;
+    private byte[] bytes = new byte[0];
+    private long position;
+
+    /**
+     * Opens a file for decoding.
+     *
+     * @param file The audio file
+     * @throws IOException If the file cannot be read
+     * @throws UnsupportedAudioFileException If no installed codec supports the file
+     */
+    public AudioStreamSource(File file) throws IOException, UnsupportedAudioFileException {
+        this.file = file;
+        this.opener = null;
+        open();
+    }
+
+    /**
+     * Opens audio read through a stream rather than directly from a file, such as
+     * one served from a cache.
+     *
+     * @param opener Opens the encoded bytes; called again when seeking backwards
+     * @throws IOException If the stream cannot be read
+     * @throws UnsupportedAudioFileException If no installed codec supports the data
+     */
+    public AudioStreamSource(Opener opener) throws IOException, UnsupportedAudioFileException {
+        this.file = null;
+        this.opener = opener;
+        open();
+    }
+
+    private void open() throws IOException, UnsupportedAudioFileException {
+        AudioInputStream raw = file != null ? AudioSystem.getAudioInputStream(file) : openStream();
+        AudioFormat rawFormat = raw.getFormat();
+        AudioFormat.Encoding encoding = rawFormat.getEncoding();
+        if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+            stream = raw;
+        } else {
+            AudioFormat decoded = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rawFormat.getSampleRate(), 16,
+                    rawFormat.getChannels(), rawFormat.getChannels() * 2, rawFormat.getSampleRate(), false);
+            stream = AudioSystem.getAudioInputStream(decoded, raw);
+        }
+        format = stream.getFormat();
+        position = 0;
+    }
+
+    private AudioInputStream openStream() throws IOException, UnsupportedAudioFileException {
+        // Format detection marks and resets the stream, so it must be buffered
+        InputStream in = new BufferedInputStream(opener.open());
+        try {
+            return AudioSystem.getAudioInputStream(in);
+        } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public float getSampleRate() {
+        return format.getSampleRate();
+    }
+
+    @Override
+    public int getChannels() {
+        return format.getChannels();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return stream.getFrameLength() == AudioSystem.NOT_SPECIFIED ? -1 : stream.getFrameLength();
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int frames) throws IOException {
+        int frameSize = format.getFrameSize();
+        int wanted = frames * frameSize;
+        if (bytes.length < wanted) {
+            bytes = new byte[wanted];
+        }
+
+        // Keep reading until whole frames are available, since streams may return partial ones
+        int filled = 0;
+        while (filled < wanted) {
+            int n = stream.read(bytes, filled, wanted - filled);
+            if (n < 0) {
+                break;
+            }
+            filled += n;
+            if (filled % frameSize == 0 && filled > 0) {
+                break;
+            }
+        }
+        int framesRead = filled / frameSize;
+        if (framesRead == 0) {
+            return -1;
+        }
+
+        int bytesPerSample = frameSize / format.getChannels();
+        PcmConverter.toFloat(bytes, 0, buffer, offset, framesRead * format.getChannels(), bytesPerSample,
+                format.isBigEndian(), format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED));
+        position += framesRead;
+        return framesRead;
+    }
+
+    @Override
+    public void seek(long frame) throws IOException {
+        if (frame < position) {
+            // Compressed streams cannot go backwards, so start decoding again
+            stream.close();
+            try {
+                open();
+            } catch (UnsupportedAudioFileException e) {
+                throw new IOException(e);
+            }
+        }
+
+        long toSkip = (frame - position) * format.getFrameSize();
+        while (toSkip > 0) {
+            long skipped = stream.skip(toSkip);
+            if (skipped <= 0) {
+                break;
+            }
+            toSkip -= skipped;
+        }
+        position = frame - toSkip / format.getFrameSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -0,0 +1,681 @@
+package com.musicplayer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Suggests titles, artists and albums from a playlist as the user types.
+ *
+ * Every distinct title, artist and album is stored in a radix trie under the
+ * normalized start of each of its words, so "beat" suggests "The Beatles" and "beyo"
+ * suggests "Beyonc&eacute;". Each node keeps the best few entries below it, ranked by
+ * how often their songs have been played, with every song counting once even if it
+ * was never played. A lookup is therefore a walk down the typed prefix and a copy of
+ * that node's list, however many entries the prefix covers.
+ *
+ * The index follows the playlist's change events rather than rebuilding. When an
+ * entry gains weight, each list on its trie paths can only move it up or take it in,
+ * so a play or a new song costs a walk down those paths. Only an entry losing weight
+ * or leaving has lists recomputed from the nodes' children. Plays are counted through
+ * {@link PlaylistManager#updateSong(int, java.util.function.Consumer)} like any other
+ * edit to a song.
+ */
+public class Autocomplete implements PlaylistListener, Closeable {
+
+    /** The most suggestions a lookup can return. */
+    public static final int MAX_SUGGESTIONS = 8;
+
+    // Placeholder the Song constructor uses for a missing artist or album
+    private static final String UNKNOWN = "Unknown";
+    private static final Entry[] NONE = new Entry[0];
+
+    /**
+     * The song field a suggestion comes from.
+     */
+    public enum Kind {
+        TITLE,
+        ARTIST,
+        ALBUM
+    }
+
+    /**
+     * One suggestion: a field value and the weight it was ranked by.
+     */
+    public static final class Suggestion {
+        private final String text;
+        private final Kind kind;
+        private final long weight;
+
+        Suggestion(String text, Kind kind, long weight) {
+            this.text = text;
+            this.kind = kind;
+            this.weight = weight;
+        }
+
+        /**
+         * @return The value as it appears in the song
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return The field the value comes from
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The number of songs with this value plus the number of times they were played
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return text + " (" + kind.name().toLowerCase(Locale.ROOT) + ")";
+        }
+    }
+
+    /**
+     * A distinct field value and what ranks it.
+     */
+    private static final class Entry {
+        final Kind kind;
+        final String key;
+        String text;
+        long weight;
+        int songs;
+
+        Entry(Kind kind, String key) {
+            this.kind = kind;
+            this.key = key;
+        }
+    }
+
+    /**
+     * What a song added to the index, kept so it can be taken out again after the
+     * song's fields have been changed in place.
+     */
+    private static final class Contribution {
+        final Entry title;
+        final Entry artist;
+        final Entry album;
+        final long weight;
+        int copies;
+
+        Contribution(Entry title, Entry artist, Entry album, long weight) {
+            this.title = title;
+            this.artist = artist;
+            this.album = album;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A trie node. Children are sorted by the first character of their label.
+     */
+    private static final class Node {
+        char[] label;
+        Node[] children;
+        Entry[] entries;
+        Entry[] top = NONE;
+        boolean dirty;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+    }
+
+    private final PlaylistManager manager;
+    private final Object lock = new Object();
+    private final Node root = new Node(new char[0]);
+    private final Map<Kind, Map<String, Entry>> entries = new EnumMap<>(Kind.class);
+    private final Map<Song, Contribution> contributions = new IdentityHashMap<>();
+    private int nodeCount = 1;
+
+    /**
+     * Indexes a playlist and follows its changes until closed.
+     *
+     * @param manager The playlist to suggest from
+     */
+    public Autocomplete(PlaylistManager manager) {
+        this.manager = manager;
+        for (Kind kind : Kind.values()) {
+            entries.put(kind, new HashMap<>());
+        }
+        // Subscribe and read the songs as one batch, so no change is missed or counted twice
+        manager.batch(() -> {
+            manager.addPlaylistListener(this);
+            synchronized (lock) {
+                for (Song song : manager.snapshot()) {
+                    add(song, 1);
+                }
+                refresh(root);
+            }
+        });
+    }
+
+    /**
+     * Suggests field values with a word starting with the typed text.
+     *
+     * @param prefix The text typed so far
+     * @param limit The maximum number of suggestions, at most {@link #MAX_SUGGESTIONS}
+     * @return The suggestions, best first
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = TextNormalizer.normalize(prefix).stripLeading();
+        List<Suggestion> result = new ArrayList<>();
+        synchronized (lock) {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                int slot = childIndex(node, key.charAt(i));
+                if (slot < 0) {
+                    return result;
+                }
+                Node child = node.children[slot];
+                int common = commonLength(child.label, key, i);
+                if (i + common < key.length() && common < child.label.length) {
+                    return result;
+                }
+                node = child;
+                i += common;
+            }
+            for (int k = 0; k < Math.min(Math.min(limit, MAX_SUGGESTIONS), node.top.length); k++) {
+                Entry entry = node.top[k];
+                result.add(new Suggestion(entry.text, entry.kind, entry.weight));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of distinct values that can be suggested
+     */
+    public int getEntryCount() {
+        synchronized (lock) {
+            int count = 0;
+            for (Map<String, Entry> byKey : entries.values()) {
+                count += byKey.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return The number of nodes in the trie
+     */
+    public int getNodeCount() {
+        synchronized (lock) {
+            return nodeCount;
+        }
+    }
+
+    @Override
+    public void playlistChanged(PlaylistManager source, List<PlaylistEvent> events) {
+        synchronized (lock) {
+            for (PlaylistEvent event : events) {
+                switch (event.getType()) {
+                    case INSERTED:
+                        for (Song song : event.getSongs()) {
+                            add(song, 1);
+                        }
+                        break;
+                    case REMOVED:
+                        for (Song song : event.getSongs()) {
+                            remove(song, 1);
+                        }
+                        break;
+                    case UPDATED:
+                        for (Song song : event.getSongs()) {
+                            update(song);
+                        }
+                        break;
+                    case REORDERED:
+                        reconcile(event.getSnapshot());
+                        break;
+                    default:
+                        // A move changes nothing that is suggested
+                        break;
+                }
+            }
+            refresh(root);
+        }
+    }
+
+    /**
+     * Stops following the playlist.
+     */
+    @Override
+    public void close() {
+        manager.removePlaylistListener(this);
+    }
+
+    private void add(Song song, int copies) {
+        Contribution contribution = contributions.get(song);
+        if (contribution == null) {
+            contribution = new Contribution(entry(Kind.TITLE, song.getNormalizedTitle(), song.getTitle()),
+                    entry(Kind.ARTIST, song.getNormalizedArtist(), song.getArtist()),
+                    entry(Kind.ALBUM, song.getNormalizedAlbum(), song.getAlbum()),
+                    song.getPlayCount() + 1L);
+            contributions.put(song, contribution);
+        }
+        contribution.copies += copies;
+        apply(contribution, copies);
+    }
+
+    private void remove(Song song, int copies) {
+        Contribution contribution = contributions.get(song);
+        if (contribution == null) {
+            return;
+        }
+        copies = Math.min(copies, contribution.copies);
+        contribution.copies -= copies;
+        if (contribution.copies == 0) {
+            contributions.remove(song);
+        }
+        apply(contribution, -copies);
+    }
+
+    /**
+     * Re-indexes a song whose fields changed. An entry the song keeps only has its
+     * weight changed, so counting a play is a plain increase.
+     */
+    private void update(Song song) {
+        Contribution old = contributions.remove(song);
+        if (old == null) {
+            return;
+        }
+        int copies = old.copies;
+        add(song, 0);
+        Contribution current = contributions.get(song);
+        current.copies = copies;
+        change(old.title, current.title, old.weight, current.weight, copies);
+        change(old.artist, current.artist, old.weight, current.weight, copies);
+        change(old.album, current.album, old.weight, current.weight, copies);
+    }
+
+    private void change(Entry before, Entry after, long oldWeight, long newWeight, int copies) {
+        if (before == after) {
+            adjust(after, (newWeight - oldWeight) * copies, 0);
+        } else {
+            adjust(after, newWeight * copies, copies);
+            adjust(before, -oldWeight * copies, -copies);
+        }
+    }
+
+    /**
+     * Brings the index in line with a snapshot after the playlist was rearranged or
+     * replaced. A plain reorder finds every song already counted and changes nothing.
+     */
+    private void reconcile(PersistentVector<Song> snapshot) {
+        Map<Song, Integer> counts = new IdentityHashMap<>();
+        for (Song song : snapshot) {
+            counts.merge(song, 1, Integer::sum);
+        }
+        for (Map.Entry<Song, Contribution> counted : new ArrayList<>(contributions.entrySet())) {
+            Integer now = counts.remove(counted.getKey());
+            int difference = (now == null ? 0 : now) - counted.getValue().copies;
+            if (difference > 0) {
+                add(counted.getKey(), difference);
+            } else if (difference < 0) {
+                remove(counted.getKey(), -difference);
+            }
+        }
+        for (Map.Entry<Song, Integer> added : counts.entrySet()) {
+            add(added.getKey(), added.getValue());
+        }
+    }
+
+    private Entry entry(Kind kind, String key, String text) {
+        if (key.isBlank() || (kind != Kind.TITLE && UNKNOWN.equals(text))) {
+            return null;
+        }
+        Entry entry = entries.get(kind).get(key);
+        if (entry == null) {
+            entry = new Entry(kind, key);
+            entries.get(kind).put(key, entry);
+        }
+        entry.text = text;
+        return entry;
+    }
+
+    private void apply(Contribution contribution, int copies) {
+        adjust(contribution.title, contribution.weight * copies, copies);
+        adjust(contribution.artist, contribution.weight * copies, copies);
+        adjust(contribution.album, contribution.weight * copies, copies);
+    }
+
+    private void adjust(Entry entry, long weight, int songs) {
+        if (entry == null || (weight == 0 && songs == 0)) {
+            return;
+        }
+        boolean isNew = entry.songs == 0;
+        entry.weight += weight;
+        entry.songs += songs;
+        for (int from = 0; from < entry.key.length(); from++) {
+            if (!isWordStart(entry.key, from)) {
+                continue;
+            }
+            if (entry.songs == 0) {
+                removeKey(root, entry, entry.key, from);
+            } else if (isNew) {
+                insertKey(entry, entry.key, from);
+            } else if (weight > 0) {
+                raiseKey(entry, entry.key, from);
+            } else if (weight < 0) {
+                lowerKey(entry, entry.key, from);
+            }
+        }
+        if (entry.songs == 0) {
+            entries.get(entry.kind).remove(entry.key);
+        }
+    }
+
+    private static boolean isWordStart(String key, int index) {
+        return index == 0
+                || (Character.isLetterOrDigit(key.charAt(index)) && !Character.isLetterOrDigit(key.charAt(index - 1)));
+    }
+
+    private void insertKey(Entry entry, String key, int from) {
+        Node node = root;
+        int i = from;
+        while (true) {
+            raise(node, entry);
+            if (i == key.length()) {
+                node.entries = append(node.entries, entry);
+                return;
+            }
+            int slot = childIndex(node, key.charAt(i));
+            if (slot < 0) {
+                Node leaf = new Node(key.substring(i).toCharArray());
+                // A leaf's best list starts as its entries, in an array of its own
+                // since raise() rewrites lists in place
+                leaf.entries = new Entry[] {entry};
+                leaf.top = new Entry[] {entry};
+                node.children = insertChild(node.children, -slot - 1, leaf);
+                nodeCount++;
+                return;
+            }
+            Node child = node.children[slot];
+            int common = commonLength(child.label, key, i);
+            if (common < child.label.length) {
+                // Split the edge where the key leaves it
+                Node middle = new Node(Arrays.copyOf(child.label, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.children = new Node[] {child};
+                middle.top = child.top.clone();
+                node.children[slot] = middle;
+                nodeCount++;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+    }
+
+    /**
+     * Takes an entry's key out of the subtree, dropping nodes left empty and merging
+     * a node left with a single child into that child.
+     *
+     * @return true if the node itself is now empty
+     */
+    private boolean removeKey(Node node, Entry entry, String key, int i) {
+        node.dirty = true;
+        if (i == key.length()) {
+            node.entries = without(node.entries, entry);
+        } else {
+            int slot = childIndex(node, key.charAt(i));
+            if (slot < 0) {
+                return false;
+            }
+            Node child = node.children[slot];
+            if (removeKey(child, entry, key, i + child.label.length)) {
+                node.children = removeChild(node.children, slot);
+                nodeCount--;
+            } else if (child.entries == null && child.children != null && child.children.length == 1) {
+                Node only = child.children[0];
+                char[] label = Arrays.copyOf(child.label, child.label.length + only.label.length);
+                System.arraycopy(only.label, 0, label, child.label.length, only.label.length);
+                only.label = label;
+                node.children[slot] = only;
+                nodeCount--;
+            }
+        }
+        return node != root && node.entries == null && node.children == null;
+    }
+
+    private void raiseKey(Entry entry, String key, int from) {
+        for (Node node : path(key, from)) {
+            raise(node, entry);
+        }
+    }
+
+    /**
+     * Re-ranks the nodes above an entry whose weight fell, deepest first. A node whose
+     * list does not hold the entry is unaffected, and neither is anything above it.
+     */
+    private void lowerKey(Entry entry, String key, int from) {
+        List<Node> path = path(key, from);
+        for (int n = path.size() - 1; n >= 0; n--) {
+            Node node = path.get(n);
+            if (indexOf(node.top, entry) < 0) {
+                return;
+            }
+            node.dirty = true;
+            refresh(node);
+        }
+    }
+
+    private List<Node> path(String key, int from) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = from;
+        while (node != null) {
+            path.add(node);
+            if (i == key.length()) {
+                break;
+            }
+            int slot = childIndex(node, key.charAt(i));
+            if (slot < 0) {
+                break;
+            }
+            node = node.children[slot];
+            i += node.label.length;
+        }
+        return path;
+    }
+
+    /**
+     * Updates a node's list for an entry whose weight rose. The entry can only move
+     * up the list or take the last place, so the children need not be looked at.
+     */
+    private static void raise(Node node, Entry entry) {
+        Entry[] top = node.top;
+        int at = indexOf(top, entry);
+        if (at < 0) {
+            if (top.length >= MAX_SUGGESTIONS) {
+                if (!ranksAbove(entry, top[top.length - 1])) {
+                    return;
+                }
+            } else {
+                top = Arrays.copyOf(top, top.length + 1);
+                node.top = top;
+            }
+            at = top.length - 1;
+            top[at] = entry;
+        }
+        while (at > 0 && ranksAbove(entry, top[at - 1])) {
+            top[at] = top[at - 1];
+            top[--at] = entry;
+        }
+    }
+
+    private static int indexOf(Entry[] list, Entry entry) {
+        for (int i = 0; i < list.length; i++) {
+            if (list[i] == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recomputes the best entries of every marked node, from its own entries and its
+     * children's lists.
+     */
+    private void refresh(Node node) {
+        if (!node.dirty) {
+            return;
+        }
+        node.dirty = false;
+        if (node.children == null && node.entries != null) {
+            // Values sharing a common trailing word can put thousands of entries here
+            Arrays.sort(node.entries, (a, b) -> ranksAbove(a, b) ? -1 : 1);
+            node.top = Arrays.copyOf(node.entries, Math.min(node.entries.length, MAX_SUGGESTIONS));
+            return;
+        }
+        Entry[] best = new Entry[MAX_SUGGESTIONS];
+        int count = 0;
+        if (node.entries != null) {
+            for (Entry entry : node.entries) {
+                count = offer(best, count, entry);
+            }
+        }
+        if (node.children != null) {
+            for (Node child : node.children) {
+                refresh(child);
+                for (Entry entry : child.top) {
+                    // Each list is ranked, so the rest of it cannot place either
+                    if (count == best.length && !ranksAbove(entry, best[count - 1])) {
+                        break;
+                    }
+                    count = offer(best, count, entry);
+                }
+            }
+        }
+        node.top = count == 0 ? NONE : count == best.length ? best : Arrays.copyOf(best, count);
+    }
+
+    /**
+     * Inserts an entry into a ranked list unless it is already there or ranks below a
+     * full list.
+     *
+     * @return The new number of entries in the list
+     */
+    private static int offer(Entry[] best, int count, Entry entry) {
+        int position = count;
+        for (int i = 0; i < count; i++) {
+            if (best[i] == entry) {
+                return count;
+            }
+            if (position == count && ranksAbove(entry, best[i])) {
+                position = i;
+            }
+        }
+        if (position == best.length) {
+            return count;
+        }
+        int moved = Math.min(count, best.length - 1) - position;
+        System.arraycopy(best, position, best, position + 1, moved);
+        best[position] = entry;
+        return Math.min(count + 1, best.length);
+    }
+
+    private static boolean ranksAbove(Entry a, Entry b) {
+        if (a.weight != b.weight) {
+            return a.weight > b.weight;
+        }
+        int byKey = a.key.compareTo(b.key);
+        return byKey != 0 ? byKey < 0 : a.kind.ordinal() < b.kind.ordinal();
+    }
+
+    private static int childIndex(Node node, char first) {
+        Node[] children = node.children;
+        if (children == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char c = children[middle].label[0];
+            if (c < first) {
+                low = middle + 1;
+            } else if (c > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static int commonLength(char[] label, String key, int from) {
+        int length = 0;
+        while (length < label.length && from + length < key.length()
+                && label[length] == key.charAt(from + length)) {
+            length++;
+        }
+        return length;
+    }
+
+    private static Node[] insertChild(Node[] children, int index, Node child) {
+        if (children == null) {
+            return new Node[] {child};
+        }
+        Node[] result = new Node[children.length + 1];
+        System.arraycopy(children, 0, result, 0, index);
+        result[index] = child;
+        System.arraycopy(children, index, result, index + 1, children.length - index);
+        return result;
+    }
+
+    private static Node[] removeChild(Node[] children, int index) {
+        if (children.length == 1) {
+            return null;
+        }
+        Node[] result = new Node[children.length - 1];
+        System.arraycopy(children, 0, result, 0, index);
+        System.arraycopy(children, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static Entry[] append(Entry[] list, Entry entry) {
+        if (list == null) {
+            return new Entry[] {entry};
+        }
+        for (Entry existing : list) {
+            if (existing == entry) {
+                return list;
+            }
+        }
+        Entry[] result = Arrays.copyOf(list, list.length + 1);
+        result[list.length] = entry;
+        return result;
+    }
+
+    private static Entry[] without(Entry[] list, Entry entry) {
+        if (list == null) {
+            return null;
+        }
+        int kept = 0;
+        Entry[] result = new Entry[list.length];
+        for (Entry existing : list) {
+            if (existing != entry) {
+                result[kept++] = existing;
+            }
+        }
+        return kept == 0 ? null : Arrays.copyOf(result, kept);
+    }
+}
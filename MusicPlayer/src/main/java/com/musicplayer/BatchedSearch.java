@@ -0,0 +1,220 @@
+package com.musicplayer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers playlist searches from many concurrent clients with little work per query.
+ *
+ * Searches use the same matching as {@link PlaylistManager#search(String)}, against an
+ * index of the songs' normalized fields built from a playlist snapshot. Three things
+ * keep the cost down when thousands of clients search at once:
+ * <ul>
+ * <li>Identical queries in flight at the same time share one result.</li>
+ * <li>Distinct queries that arrive together are answered in a single pass over the
+ * index by one worker thread, rather than one pass each.</li>
+ * <li>The index is rebuilt in the background after the playlist changes. Queries
+ * wait for the new index rather than see a stale one, but only a bounded number may
+ * wait: beyond that, searches fail fast with a {@link RejectedExecutionException} so
+ * callers can ask clients to retry later.</li>
+ * </ul>
+ */
+public class BatchedSearch implements PlaylistListener, Closeable {
+
+    /** Default number of distinct queries that may wait to be answered. */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * Normalized search keys for one playlist snapshot.
+     */
+    private static final class Index {
+        final PersistentVector<Song> songs;
+        final String[][] keys;
+
+        Index(PersistentVector<Song> songs) {
+            this.songs = songs;
+            this.keys = new String[songs.size()][];
+            for (int i = 0; i < keys.length; i++) {
+                Song song = songs.get(i);
+                keys[i] = new String[] {song.getNormalizedTitle(), song.getNormalizedArtist(), song.getNormalizedAlbum()};
+            }
+        }
+    }
+
+    private final PlaylistManager manager;
+    private final int maxPending;
+    private final ConcurrentHashMap<String, CompletableFuture<List<Song>>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private final Thread indexer;
+
+    private final Object indexLock = new Object();
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean(true);
+    private volatile Index index;
+    private volatile boolean building;
+    private volatile boolean closed;
+
+    /**
+     * Creates a search service for a playlist and starts indexing it.
+     *
+     * @param manager The playlist to search
+     * @param maxPending How many distinct queries may wait while the index is rebuilt
+     */
+    public BatchedSearch(PlaylistManager manager, int maxPending) {
+        this.manager = manager;
+        this.maxPending = maxPending;
+        manager.addPlaylistListener(this);
+
+        worker = new Thread(this::runQueries, "search-batcher");
+        worker.setDaemon(true);
+        indexer = new Thread(this::runIndexer, "search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+        worker.start();
+    }
+
+    /**
+     * Searches the playlist.
+     *
+     * @param term The term to search for across all song fields
+     * @return A future for the matching songs, which fails with a
+     *         {@link RejectedExecutionException} if too many queries are waiting
+     */
+    public CompletableFuture<List<Song>> search(String term) {
+        String query = term == null ? "" : TextNormalizer.normalize(term.trim());
+        CompletableFuture<List<Song>> existing = inFlight.get(query);
+        if (existing != null) {
+            return existing;
+        }
+        if (inFlight.size() >= maxPending) {
+            CompletableFuture<List<Song>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new RejectedExecutionException("Too many searches waiting"));
+            return rejected;
+        }
+
+        CompletableFuture<List<Song>> result = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(query, result);
+        if (existing != null) {
+            return existing;
+        }
+        queue.add(query);
+        return result;
+    }
+
+    /**
+     * @return true while the index is out of date with the playlist
+     */
+    public boolean isRebuilding() {
+        return building || rebuildRequested.get() || index == null;
+    }
+
+    @Override
+    public void playlistChanged(PlaylistManager source, List<PlaylistEvent> events) {
+        if (rebuildRequested.compareAndSet(false, true)) {
+            synchronized (indexLock) {
+                indexLock.notifyAll();
+            }
+        }
+    }
+
+    private void runIndexer() {
+        while (!closed) {
+            synchronized (indexLock) {
+                while (!rebuildRequested.get() && !closed) {
+                    try {
+                        indexLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            building = true;
+            rebuildRequested.set(false);
+            Index built = new Index(manager.snapshot());
+            synchronized (indexLock) {
+                // A change during the build asks for another round; until then the index stays stale
+                index = built;
+                building = false;
+                indexLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the index matches the playlist.
+     */
+    private Index currentIndex() throws InterruptedException {
+        synchronized (indexLock) {
+            while (isRebuilding() && !closed) {
+                indexLock.wait();
+            }
+            return index;
+        }
+    }
+
+    private void runQueries() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                answer(currentIndex(), batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void answer(Index current, List<String> queries) {
+        int count = queries.size();
+        String[] terms = queries.toArray(new String[0]);
+        List<List<Song>> results = new ArrayList<>(count);
+        for (int q = 0; q < count; q++) {
+            results.add(terms[q].isEmpty() ? current.songs : new ArrayList<>());
+        }
+
+        // One pass over the index for the whole batch
+        for (int i = 0; i < current.keys.length; i++) {
+            String[] keys = current.keys[i];
+            for (int q = 0; q < count; q++) {
+                String term = terms[q];
+                if (!term.isEmpty()
+                        && (keys[0].contains(term) || keys[1].contains(term) || keys[2].contains(term))) {
+                    results.get(q).add(current.songs.get(i));
+                }
+            }
+        }
+
+        for (int q = 0; q < count; q++) {
+            CompletableFuture<List<Song>> future = inFlight.remove(terms[q]);
+            if (future != null) {
+                future.complete(Collections.unmodifiableList(results.get(q)));
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Searches still waiting are cancelled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        manager.removePlaylistListener(this);
+        worker.interrupt();
+        indexer.interrupt();
+        for (CompletableFuture<List<Song>> future : inFlight.values()) {
+            future.cancel(false);
+        }
+        inFlight.clear();
+    }
+}
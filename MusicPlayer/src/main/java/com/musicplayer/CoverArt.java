@@ -0,0 +1,325 @@
+package com.musicplayer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Finds the cover art of a song and shrinks it to a thumbnail.
+ *
+ * Art embedded in the file is preferred: an ID3v2 APIC frame (PIC in ID3v2.2) in
+ * MP3 and other ID3-tagged files, or a PICTURE block in FLAC files. The front cover
+ * is taken when a file holds several pictures. Without embedded art, an image such
+ * as folder.jpg or cover.png next to the file is used.
+ *
+ * Decoding images is slow, so these methods belong on a background thread, never
+ * on the event dispatch thread.
+ */
+public final class CoverArt {
+
+    // Pictures larger than this are ignored rather than read into memory
+    private static final int MAX_PICTURE_BYTES = 16 << 20;
+
+    // ID3v2 and FLAC picture type of the front cover
+    private static final int FRONT_COVER = 3;
+
+    // Image files that hold a folder's cover, in order of preference
+    private static final String[] FOLDER_IMAGES = {"cover", "folder", "front", "album", "albumart"};
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png"};
+
+    private CoverArt() {
+    }
+
+    /**
+     * Finds the encoded cover image of a song.
+     *
+     * @param audio The audio file
+     * @return The image bytes, usually JPEG or PNG, or null if there is no cover
+     * @throws IOException If the file cannot be read
+     */
+    public static byte[] extract(File audio) throws IOException {
+        byte[] embedded = null;
+        if (audio.isFile()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(audio), 64 * 1024)) {
+                in.mark(4);
+                byte[] magic = new byte[4];
+                int read = in.readNBytes(magic, 0, 4);
+                in.reset();
+                if (read == 4 && magic[0] == 'I' && magic[1] == 'D' && magic[2] == '3') {
+                    embedded = readId3(new DataInputStream(in));
+                } else if (read == 4 && magic[0] == 'f' && magic[1] == 'L' && magic[2] == 'a' && magic[3] == 'C') {
+                    embedded = readFlac(new DataInputStream(in));
+                }
+            }
+        }
+        return embedded != null ? embedded : readFolderImage(audio.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Decodes an image and scales it to fit a square, keeping its proportions.
+     * Large images are subsampled while decoding, which is much faster than decoding
+     * them whole and scaling down afterwards.
+     *
+     * @param encoded The encoded image
+     * @param size The width and height of the square, in pixels
+     * @return The thumbnail, or null if the image cannot be decoded
+     * @throws IOException If the image data is corrupt
+     */
+    public static BufferedImage thumbnail(byte[] encoded, int size) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Keep at least twice the target size so the final scaling stays smooth
+                int step = Math.max(1, longest / (size * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        return scale(image, size);
+    }
+
+    /**
+     * Scales an image to fit a square, halving repeatedly for large reductions so the
+     * result is not aliased.
+     */
+    static BufferedImage scale(BufferedImage image, int size) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double ratio = Math.min((double) size / width, (double) size / height);
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        BufferedImage current = image;
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height);
+        }
+        return draw(current, targetWidth, targetHeight);
+    }
+
+    private static BufferedImage draw(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static byte[] readId3(DataInputStream in) throws IOException {
+        byte[] header = new byte[10];
+        in.readFully(header);
+        int version = header[3];
+        int flags = header[5] & 0xFF;
+        int size = syncsafe(header, 6);
+        if (version < 2 || version > 4 || size > MAX_PICTURE_BYTES * 2) {
+            return null;
+        }
+        byte[] tag = new byte[size];
+        in.readFully(tag);
+        if ((flags & 0x80) != 0 && version < 4) {
+            // Tag-wide unsynchronisation; version 4 marks it per frame instead
+            tag = resync(tag, 0, tag.length);
+        }
+
+        int pos = 0;
+        if ((flags & 0x40) != 0 && version > 2) {
+            // Skip the extended header
+            pos = version == 3 ? 4 + int32(tag, 0) : syncsafe(tag, 0);
+        }
+        int headerSize = version == 2 ? 6 : 10;
+        byte[] best = null;
+        while (pos + headerSize <= tag.length && tag[pos] != 0) {
+            String id;
+            int frameSize;
+            int frameFlags = 0;
+            if (version == 2) {
+                id = new String(tag, pos, 3, StandardCharsets.ISO_8859_1);
+                frameSize = (tag[pos + 3] & 0xFF) << 16 | (tag[pos + 4] & 0xFF) << 8 | (tag[pos + 5] & 0xFF);
+            } else {
+                id = new String(tag, pos, 4, StandardCharsets.ISO_8859_1);
+                frameSize = version == 4 ? syncsafe(tag, pos + 4) : int32(tag, pos + 4);
+                frameFlags = (tag[pos + 8] & 0xFF) << 8 | (tag[pos + 9] & 0xFF);
+            }
+            int start = pos + headerSize;
+            if (frameSize <= 0 || frameSize > tag.length - start) {
+                break;
+            }
+            pos = start + frameSize;
+            if (!id.equals("APIC") && !id.equals("PIC")) {
+                continue;
+            }
+            // Compressed or encrypted frames are not supported
+            boolean compressed = version == 3 ? (frameFlags & 0xC0) != 0 : version == 4 && (frameFlags & 0x0C) != 0;
+            if (compressed) {
+                continue;
+            }
+            byte[] frame = version == 4 && (frameFlags & 0x02) != 0
+                    ? resync(tag, start, frameSize) : Arrays.copyOfRange(tag, start, start + frameSize);
+            if (version == 4 && (frameFlags & 0x01) != 0 && frame.length > 4) {
+                // Data length indicator
+                frame = Arrays.copyOfRange(frame, 4, frame.length);
+            }
+            int[] type = new int[1];
+            byte[] picture = apicData(frame, version == 2, type);
+            if (picture != null && (best == null || type[0] == FRONT_COVER)) {
+                best = picture;
+                if (type[0] == FRONT_COVER) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Picks the picture out of an APIC or PIC frame.
+     */
+    private static byte[] apicData(byte[] frame, boolean pic, int[] type) {
+        if (frame.length < 4) {
+            return null;
+        }
+        int encoding = frame[0];
+        int pos = 1;
+        if (pic) {
+            // Three letter image format
+            pos += 3;
+        } else {
+            while (pos < frame.length && frame[pos] != 0) {
+                pos++;
+            }
+            pos++;
+        }
+        if (pos >= frame.length) {
+            return null;
+        }
+        type[0] = frame[pos++] & 0xFF;
+        // The description ends with one zero byte, or two for UTF-16
+        boolean wide = encoding == 1 || encoding == 2;
+        if (wide) {
+            while (pos + 1 < frame.length && (frame[pos] != 0 || frame[pos + 1] != 0)) {
+                pos += 2;
+            }
+            pos += 2;
+        } else {
+            while (pos < frame.length && frame[pos] != 0) {
+                pos++;
+            }
+            pos++;
+        }
+        if (pos >= frame.length) {
+            return null;
+        }
+        return Arrays.copyOfRange(frame, pos, frame.length);
+    }
+
+    private static byte[] readFlac(DataInputStream in) throws IOException {
+        in.readInt();
+        byte[] best = null;
+        boolean last = false;
+        while (!last) {
+            int header;
+            try {
+                header = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            last = (header & 0x80000000) != 0;
+            int blockType = (header >>> 24) & 0x7F;
+            int length = header & 0xFFFFFF;
+            if (blockType != 6) {
+                in.skipNBytes(length);
+                continue;
+            }
+            int pictureType = in.readInt();
+            in.skipNBytes(in.readInt());
+            in.skipNBytes(in.readInt());
+            // Width, height, colour depth and palette size
+            in.skipNBytes(16);
+            int dataLength = in.readInt();
+            if (dataLength < 0 || dataLength > MAX_PICTURE_BYTES) {
+                return best;
+            }
+            byte[] data = new byte[dataLength];
+            in.readFully(data);
+            if (best == null || pictureType == FRONT_COVER) {
+                best = data;
+                if (pictureType == FRONT_COVER) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static byte[] readFolderImage(File folder) throws IOException {
+        String[] names = folder == null ? null : folder.list();
+        if (names == null) {
+            return null;
+        }
+        for (String wanted : FOLDER_IMAGES) {
+            for (String extension : IMAGE_EXTENSIONS) {
+                for (String name : names) {
+                    if (name.equalsIgnoreCase(wanted + extension)) {
+                        File image = new File(folder, name);
+                        if (image.length() <= MAX_PICTURE_BYTES) {
+                            return Files.readAllBytes(image.toPath());
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int syncsafe(byte[] bytes, int offset) {
+        return (bytes[offset] & 0x7F) << 21 | (bytes[offset + 1] & 0x7F) << 14
+                | (bytes[offset + 2] & 0x7F) << 7 | (bytes[offset + 3] & 0x7F);
+    }
+
+    private static int int32(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Undoes unsynchronisation, which inserts a zero byte after every 0xFF.
+     */
+    private static byte[] resync(byte[] bytes, int offset, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        for (int i = offset; i < offset + length; i++) {
+            out.write(bytes[i]);
+            if ((bytes[i] & 0xFF) == 0xFF && i + 1 < offset + length && bytes[i + 1] == 0) {
+                i++;
+            }
+        }
+        return out.toByteArray();
+    }
+}
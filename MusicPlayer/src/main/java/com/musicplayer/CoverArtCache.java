@@ -0,0 +1,409 @@
+package com.musicplayer;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Cover art thumbnails for songs, kept in memory and on disk by album, so the
+ * playlist can show art for every row without decoding images while it scrolls.
+ *
+ * {@link #getIcon(Song, int)} never blocks: it returns what is in memory, or null
+ * and queues the album for a small pool of background threads. They take the
+ * thumbnail from the disk cache, or extract and shrink the art with {@link CoverArt}
+ * and save it there, then tell the listener. The most recent requests are served
+ * first and the oldest dropped when many pile up, so after a fast scroll the rows
+ * now on screen come next rather than every row scrolled past.
+ *
+ * Songs share art by album and artist, or by folder when the album is unknown. Both
+ * caches are bounded in bytes and evict the least recently used thumbnails. Albums
+ * without art are remembered too, so they are not searched again.
+ */
+public class CoverArtCache implements Closeable {
+
+    /** Size of the thumbnails stored on disk; smaller ones are scaled from these. */
+    public static final int THUMBNAIL_SIZE = 128;
+
+    /** Default bound on the thumbnails kept on disk. */
+    public static final long DEFAULT_DISK_BYTES = 64L << 20;
+
+    /** Default bound on the thumbnails kept in memory. */
+    public static final long DEFAULT_MEMORY_BYTES = 32L << 20;
+
+    // Requests waiting beyond this are dropped, oldest first
+    private static final int MAX_PENDING = 256;
+    private static final int THREADS = 2;
+
+    // Marks an album known to have no art
+    private static final Thumbnail NONE = new Thumbnail(null);
+
+    /**
+     * A thumbnail ready to paint.
+     */
+    private static final class Thumbnail implements Icon {
+        final BufferedImage image;
+
+        Thumbnail(BufferedImage image) {
+            this.image = image;
+        }
+
+        long bytes() {
+            return image == null ? 64 : 4L * image.getWidth() * image.getHeight();
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            g.drawImage(image, x, y, null);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getIconHeight() {
+            return image.getHeight();
+        }
+    }
+
+    private static final class Request {
+        final String key;
+        final Song song;
+        final int size;
+
+        Request(String key, Song song, int size) {
+            this.key = key;
+            this.song = song;
+            this.size = size;
+        }
+    }
+
+    // Null when thumbnails are kept in memory only
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final long maxMemoryBytes;
+    private final ExecutorService workers = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "cover-art");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Consumer<String> listener = key -> { };
+
+    // Guarded by this. Memory entries are keyed by album key and size.
+    private final LinkedHashMap<String, Thumbnail> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(256, 0.75f, true);
+    private final ArrayDeque<Request> pending = new ArrayDeque<>();
+    private final Set<String> queued = new HashSet<>();
+    // Albums being loaded, so requests for other sizes wait rather than load them again
+    private final Map<String, CompletableFuture<Thumbnail>> loading = new HashMap<>();
+    private long memoryBytes;
+    private long diskBytes;
+
+    /**
+     * Creates a cache that keeps thumbnails in memory only, with the default bound, for
+     * when there is nowhere to store them.
+     */
+    public CoverArtCache() {
+        this.directory = null;
+        this.maxDiskBytes = 0;
+        this.maxMemoryBytes = DEFAULT_MEMORY_BYTES;
+    }
+
+    /**
+     * Creates a cache with the default bounds.
+     *
+     * @param directory Where thumbnails are stored; created if missing
+     * @throws IOException If the directory cannot be created or listed
+     */
+    public CoverArtCache(Path directory) throws IOException {
+        this(directory, DEFAULT_DISK_BYTES, DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param directory Where thumbnails are stored; created if missing
+     * @param maxDiskBytes The most bytes of thumbnails kept on disk
+     * @param maxMemoryBytes The most bytes of decoded thumbnails kept in memory
+     * @throws IOException If the directory cannot be created or listed
+     */
+    public CoverArtCache(Path directory, long maxDiskBytes, long maxMemoryBytes) throws IOException {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+        Files.createDirectories(directory);
+        // Oldest first, so eviction order carries over from the last run
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(".png"));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                disk.put(file.getName(), file.length());
+                diskBytes += file.length();
+            }
+        }
+    }
+
+    /**
+     * @param listener Told the album key of each thumbnail that becomes available,
+     *                 on a background thread
+     */
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener != null ? listener : key -> { };
+    }
+
+    /**
+     * Returns the album key songs share art by.
+     *
+     * @param song The song
+     * @return The key
+     */
+    public static String keyOf(Song song) {
+        String album = song.getAlbum();
+        if (album == null || album.isEmpty() || album.equals("Unknown")) {
+            File folder = new File(song.getFilePath()).getAbsoluteFile().getParentFile();
+            return "folder:" + (folder != null ? folder.getPath() : "");
+        }
+        return "album:" + song.getNormalizedArtist() + "\u0000" + song.getNormalizedAlbum();
+    }
+
+    /**
+     * Returns a song's cover thumbnail if it is in memory, and otherwise queues it to
+     * be loaded. Cheap enough to call from a cell renderer.
+     *
+     * @param song The song
+     * @param size The width and height to fit, at most {@link #THUMBNAIL_SIZE}
+     * @return The thumbnail, or null if it is not loaded yet or the song has no art
+     */
+    public Icon getIcon(Song song, int size) {
+        String key = keyOf(song);
+        synchronized (this) {
+            Thumbnail thumbnail = memory.get(key);
+            if (thumbnail != null && thumbnail != NONE && size != THUMBNAIL_SIZE) {
+                thumbnail = memory.get(sized(key, size));
+            }
+            if (thumbnail == null) {
+                request(new Request(key, song, size));
+            }
+            return thumbnail == NONE ? null : thumbnail;
+        }
+    }
+
+    /**
+     * @return The bytes of thumbnails held in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return The bytes of thumbnails stored on disk
+     */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * Stops loading thumbnails. Those on disk are kept for next time.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private void request(Request request) {
+        if (!queued.add(sized(request.key, request.size))) {
+            return;
+        }
+        pending.addLast(request);
+        if (pending.size() > MAX_PENDING) {
+            Request dropped = pending.pollFirst();
+            queued.remove(sized(dropped.key, dropped.size));
+        }
+        workers.execute(this::serveNewest);
+    }
+
+    /**
+     * Runs on a worker thread.
+     */
+    private void serveNewest() {
+        Request request;
+        Thumbnail full;
+        CompletableFuture<Thumbnail> loaded = null;
+        boolean loader = false;
+        synchronized (this) {
+            request = pending.pollLast();
+            if (request == null) {
+                // Dropped while waiting
+                return;
+            }
+            full = memory.get(request.key);
+            if (full == null) {
+                loaded = loading.get(request.key);
+                if (loaded == null) {
+                    loaded = new CompletableFuture<>();
+                    loading.put(request.key, loaded);
+                    loader = true;
+                }
+            }
+        }
+        if (loader) {
+            try {
+                full = load(request);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Cover art unavailable for " + request.song.getFilePath() + ": " + e.getMessage());
+                full = NONE;
+            }
+            synchronized (this) {
+                remember(request.key, full);
+                loading.remove(request.key);
+            }
+            loaded.complete(full);
+        } else if (full == null) {
+            full = loaded.join();
+        }
+        Thumbnail scaled = full == NONE || request.size == THUMBNAIL_SIZE
+                ? null : new Thumbnail(CoverArt.scale(full.image, request.size));
+        synchronized (this) {
+            queued.remove(sized(request.key, request.size));
+            remember(request.key, full);
+            if (scaled != null) {
+                remember(sized(request.key, request.size), scaled);
+            }
+        }
+        listener.accept(request.key);
+    }
+
+    private static String sized(String key, int size) {
+        return size == THUMBNAIL_SIZE ? key : key + "@" + size;
+    }
+
+    private Thumbnail load(Request request) throws IOException {
+        if (directory == null) {
+            return extract(request.song);
+        }
+        String name = fileName(request.key);
+        Path file = directory.resolve(name);
+        boolean stored;
+        synchronized (this) {
+            stored = disk.get(name) != null;
+        }
+        if (stored && Files.exists(file)) {
+            file.toFile().setLastModified(System.currentTimeMillis());
+            if (Files.size(file) == 0) {
+                return NONE;
+            }
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image != null) {
+                return new Thumbnail(image);
+            }
+        }
+
+        Thumbnail extracted = extract(request.song);
+        store(name, extracted.image);
+        return extracted;
+    }
+
+    private static Thumbnail extract(Song song) throws IOException {
+        byte[] encoded = CoverArt.extract(new File(song.getFilePath()));
+        BufferedImage image = encoded == null ? null : CoverArt.thumbnail(encoded, THUMBNAIL_SIZE);
+        return image == null ? NONE : new Thumbnail(image);
+    }
+
+    /**
+     * Saves a thumbnail to disk, or an empty file for an album without art.
+     */
+    private void store(String name, BufferedImage image) throws IOException {
+        Path target = directory.resolve(name);
+        Path temp = directory.resolve(name + ".tmp");
+        if (image == null) {
+            Files.write(temp, new byte[0]);
+        } else {
+            ImageIO.write(image, "png", temp.toFile());
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = disk.put(name, Files.size(target));
+            diskBytes += Files.size(target) - (old != null ? old : 0);
+            Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(name)) {
+                    continue;
+                }
+                diskBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String file : evicted) {
+            Files.deleteIfExists(directory.resolve(file));
+        }
+    }
+
+    private void remember(String key, Thumbnail thumbnail) {
+        Thumbnail old = memory.put(key, thumbnail);
+        if (old != null) {
+            memoryBytes -= old.bytes();
+        }
+        memoryBytes += thumbnail.bytes();
+        Iterator<Map.Entry<String, Thumbnail>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            Map.Entry<String, Thumbnail> entry = eldest.next();
+            if (entry.getKey().equals(key)) {
+                continue;
+            }
+            memoryBytes -= entry.getValue().bytes();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return The name of an album's thumbnail file: a hash of its key
+     */
+    private static String fileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(48);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(".png").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
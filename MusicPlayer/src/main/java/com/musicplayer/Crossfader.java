@@ -0,0 +1,77 @@
+package com.musicplayer;
+
+/**
+ * Mixes an outgoing and an incoming track over a fixed number of frames using an
+ * equal-power curve, so the combined loudness stays constant through the transition.
+ *
+ * The curve is evaluated with sin/cos only at the edges of short segments and
+ * linearly interpolated in between, which keeps the per-sample work to two
+ * multiplies and an add.
+ *
+ * Not thread-safe; it is owned by the thread that renders audio.
+ */
+public class Crossfader {
+    private static final int SEGMENT_FRAMES = 64;
+
+    private final int lengthFrames;
+    private int position;
+
+    /**
+     * Creates a crossfade.
+     *
+     * @param lengthFrames The length of the transition in frames
+     */
+    public Crossfader(int lengthFrames) {
+        this.lengthFrames = Math.max(1, lengthFrames);
+    }
+
+    /**
+     * @return true once the incoming track has fully replaced the outgoing one
+     */
+    public boolean isFinished() {
+        return position >= lengthFrames;
+    }
+
+    private float fadeIn(int frame) {
+        return (float) Math.sin(0.5 * Math.PI * Math.min(frame, lengthFrames) / lengthFrames);
+    }
+
+    private float fadeOut(int frame) {
+        return (float) Math.cos(0.5 * Math.PI * Math.min(frame, lengthFrames) / lengthFrames);
+    }
+
+    /**
+     * Mixes the next block of both tracks into the incoming buffer.
+     *
+     * @param incoming Samples of the incoming track; receives the mixed result
+     * @param outgoing Samples of the outgoing track, in the same format
+     * @param offset The index of the first sample in both buffers
+     * @param frames The number of frames to mix
+     * @param channels The number of channels per frame
+     */
+    public void process(float[] incoming, float[] outgoing, int offset, int frames, int channels) {
+        int frame = 0;
+        while (frame < frames) {
+            if (position >= lengthFrames) {
+                // Transition finished part-way through the block; the rest is all incoming
+                return;
+            }
+            int segment = Math.min(Math.min(SEGMENT_FRAMES, frames - frame), lengthFrames - position);
+            float in = fadeIn(position);
+            float out = fadeOut(position);
+            float inStep = (fadeIn(position + segment) - in) / segment;
+            float outStep = (fadeOut(position + segment) - out) / segment;
+
+            int index = offset + frame * channels;
+            for (int f = 0; f < segment; f++) {
+                for (int c = 0; c < channels; c++, index++) {
+                    incoming[index] = incoming[index] * in + outgoing[index] * out;
+                }
+                in += inStep;
+                out += outStep;
+            }
+            frame += segment;
+            position += segment;
+        }
+    }
+}
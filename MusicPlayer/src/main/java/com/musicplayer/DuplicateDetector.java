@@ -0,0 +1,656 @@
+package com.musicplayer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds audio files that hold the same recording under different paths.
+ *
+ * Files are compared by their audio payload only, so copies with different tags are
+ * still found: ID3v1, ID3v2 and APE tags, FLAC metadata blocks and the non-audio
+ * chunks of WAV and AIFF files are skipped. A file is fingerprinted by hashing its
+ * payload length and a fixed number of evenly spaced blocks from the payload with a
+ * fast 64-bit non-cryptographic hash, which reads the same small amount however large
+ * the file is. Fingerprints are computed on a thread pool and cached by path, size and
+ * modification time, which are checked on every use, and the cache can be saved so
+ * later scans only read new or changed files. Files whose fingerprints collide are
+ * compared byte for byte before they are reported as duplicates.
+ */
+public class DuplicateDetector implements Closeable {
+
+    private static final int SAMPLE_COUNT = 16;
+    private static final int SAMPLE_BYTES = 4096;
+    private static final int COMPARE_BYTES = 64 * 1024;
+    private static final int BATCH_FILES = 256;
+
+    private static final long PRIME_1 = 0x87c37b91114253d5L;
+    private static final long PRIME_2 = 0x4cf5ad432745937fL;
+
+    /**
+     * A cached fingerprint and the file state it was computed from.
+     */
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final long hash;
+
+        Entry(long size, long modified, long hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        boolean matches(File file) {
+            return size == file.length() && modified == file.lastModified();
+        }
+    }
+
+    /**
+     * The fingerprints of the songs in one playlist, kept up to date from its change
+     * events so that adding songs only fingerprints the files being added. Events only
+     * record which paths changed, since they arrive under the playlist's lock; files
+     * are fingerprinted by the next {@link #suppress(Collection)}.
+     */
+    static final class PlaylistIndex implements PlaylistListener {
+        private final DuplicateDetector detector;
+
+        // Guarded by this
+        private final Map<Song, String> paths = new IdentityHashMap<>();
+        private final Map<Song, Integer> songCopies = new IdentityHashMap<>();
+        private final Map<String, Integer> pathCopies = new HashMap<>();
+        private final Map<String, Long> hashes = new HashMap<>();
+        private final Map<Long, List<String>> byHash = new HashMap<>();
+        private final Set<String> pending = new LinkedHashSet<>();
+
+        PlaylistIndex(DuplicateDetector detector) {
+            this.detector = detector;
+        }
+
+        /**
+         * Indexes the songs of a playlist, replacing anything indexed before.
+         */
+        synchronized void reset(Iterable<Song> songs) {
+            paths.clear();
+            songCopies.clear();
+            pathCopies.clear();
+            hashes.clear();
+            byHash.clear();
+            pending.clear();
+            for (Song song : songs) {
+                add(song, 1);
+            }
+        }
+
+        @Override
+        public synchronized void playlistChanged(PlaylistManager source, List<PlaylistEvent> events) {
+            for (PlaylistEvent event : events) {
+                switch (event.getType()) {
+                    case INSERTED:
+                        for (Song song : event.getSongs()) {
+                            add(song, 1);
+                        }
+                        break;
+                    case REMOVED:
+                        for (Song song : event.getSongs()) {
+                            remove(song, 1);
+                        }
+                        break;
+                    case UPDATED:
+                        for (Song song : event.getSongs()) {
+                            updated(song);
+                        }
+                        break;
+                    case REORDERED:
+                        reconcile(event.getSnapshot());
+                        break;
+                    default:
+                        // A move changes no paths
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Drops songs that duplicate a song in the playlist or earlier in the same batch.
+         * Songs whose files cannot be read are kept.
+         *
+         * @param added The songs to add
+         * @return The songs from {@code added} that are not duplicates, in order
+         */
+        List<Song> suppress(Collection<Song> added) {
+            List<String> unhashed;
+            synchronized (this) {
+                unhashed = new ArrayList<>(pending);
+            }
+            List<File> files = new ArrayList<>(unhashed.size() + added.size());
+            for (String path : unhashed) {
+                files.add(new File(path));
+            }
+            for (Song song : added) {
+                if (song.getFilePath() != null) {
+                    files.add(new File(song.getFilePath()));
+                }
+            }
+            Map<String, Long> fingerprints = detector.fingerprintAll(files);
+            synchronized (this) {
+                for (String path : unhashed) {
+                    // Unreadable files are not retried until their song changes
+                    Long hash = fingerprints.get(path);
+                    if (pending.remove(path) && hash != null) {
+                        hashes.put(path, hash);
+                        byHash.computeIfAbsent(hash, key -> new ArrayList<>(1)).add(path);
+                    }
+                }
+            }
+
+            // Files are compared outside the lock so the playlist is not held up
+            Map<Long, List<String>> accepted = new HashMap<>();
+            List<Song> result = new ArrayList<>(added.size());
+            for (Song song : added) {
+                String path = song.getFilePath() == null ? null : new File(song.getFilePath()).getAbsolutePath();
+                Long hash = path == null ? null : fingerprints.get(path);
+                if (hash == null) {
+                    result.add(song);
+                    continue;
+                }
+                List<String> same;
+                synchronized (this) {
+                    same = new ArrayList<>(byHash.getOrDefault(hash, Collections.emptyList()));
+                }
+                List<String> earlier = accepted.computeIfAbsent(hash, key -> new ArrayList<>(1));
+                same.addAll(earlier);
+                if (!isDuplicate(path, same)) {
+                    earlier.add(path);
+                    result.add(song);
+                }
+            }
+            return result;
+        }
+
+        private void add(Song song, int copies) {
+            if (song.getFilePath() == null) {
+                return;
+            }
+            String path = paths.computeIfAbsent(song, key -> new File(key.getFilePath()).getAbsolutePath());
+            songCopies.merge(song, copies, Integer::sum);
+            if (pathCopies.merge(path, copies, Integer::sum) == copies) {
+                pending.add(path);
+            }
+        }
+
+        private void remove(Song song, int copies) {
+            Integer had = songCopies.get(song);
+            if (had == null) {
+                return;
+            }
+            copies = Math.min(copies, had);
+            String path;
+            if (had == copies) {
+                songCopies.remove(song);
+                path = paths.remove(song);
+            } else {
+                songCopies.put(song, had - copies);
+                path = paths.get(song);
+            }
+            if (pathCopies.merge(path, -copies, Integer::sum) <= 0) {
+                pathCopies.remove(path);
+                forget(path);
+            }
+        }
+
+        /**
+         * Re-indexes a song edited in place: its path may have changed, or its file
+         * may have been rewritten.
+         */
+        private void updated(Song song) {
+            Integer copies = songCopies.get(song);
+            if (copies == null) {
+                return;
+            }
+            String before = paths.get(song);
+            if (song.getFilePath() != null && before.equals(new File(song.getFilePath()).getAbsolutePath())) {
+                forget(before);
+                pending.add(before);
+                return;
+            }
+            remove(song, copies);
+            add(song, copies);
+        }
+
+        private void forget(String path) {
+            pending.remove(path);
+            Long hash = hashes.remove(path);
+            if (hash != null) {
+                List<String> same = byHash.get(hash);
+                same.remove(path);
+                if (same.isEmpty()) {
+                    byHash.remove(hash);
+                }
+            }
+        }
+
+        /**
+         * Brings the index in line with a snapshot after the playlist was rearranged
+         * or replaced. Songs that stay keep their fingerprints.
+         */
+        private void reconcile(PersistentVector<Song> snapshot) {
+            Map<Song, Integer> counts = new IdentityHashMap<>();
+            for (Song song : snapshot) {
+                counts.merge(song, 1, Integer::sum);
+            }
+            for (Map.Entry<Song, Integer> indexed : new ArrayList<>(songCopies.entrySet())) {
+                Integer now = counts.remove(indexed.getKey());
+                int difference = (now == null ? 0 : now) - indexed.getValue();
+                if (difference > 0) {
+                    add(indexed.getKey(), difference);
+                } else if (difference < 0) {
+                    remove(indexed.getKey(), -difference);
+                }
+            }
+            for (Map.Entry<Song, Integer> added : counts.entrySet()) {
+                add(added.getKey(), added.getValue());
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a detector hashing as many files at once as there are cores, and at
+     * least two so one can wait on the disk while another hashes.
+     */
+    public DuplicateDetector() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a detector.
+     *
+     * @param threads The number of files to hash in parallel
+     */
+    public DuplicateDetector(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "duplicate-hasher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Fingerprints a file, using the cache if the file's size and modification time
+     * have not changed since it was fingerprinted.
+     *
+     * @param file The audio file
+     * @return The fingerprint of the file's audio payload
+     * @throws IOException If the file cannot be read
+     */
+    public long fingerprint(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        Entry entry = cache.get(path);
+        if (entry != null && entry.matches(file)) {
+            return entry.hash;
+        }
+        entry = new Entry(file.length(), file.lastModified(), computeFingerprint(file));
+        cache.put(path, entry);
+        return entry.hash;
+    }
+
+    /**
+     * Fingerprints many files in parallel. Files that cannot be read are reported and
+     * left out of the result.
+     *
+     * @param files The audio files
+     * @return The fingerprints by absolute path
+     */
+    public Map<String, Long> fingerprintAll(Collection<File> files) {
+        Map<String, Long> result = new ConcurrentHashMap<>();
+        List<File> misses = new ArrayList<>();
+        for (File file : files) {
+            Entry entry = cache.get(file.getAbsolutePath());
+            if (entry != null && entry.matches(file)) {
+                result.put(file.getAbsolutePath(), entry.hash);
+            } else {
+                misses.add(file);
+            }
+        }
+
+        // Batches keep the number of tasks small for very large libraries
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < misses.size(); start += BATCH_FILES) {
+            List<File> batch = misses.subList(start, Math.min(misses.size(), start + BATCH_FILES));
+            tasks.add(CompletableFuture.runAsync(() -> {
+                for (File file : batch) {
+                    try {
+                        result.put(file.getAbsolutePath(), fingerprint(file));
+                    } catch (IOException e) {
+                        System.err.println("Cannot fingerprint " + file + ": " + e.getMessage());
+                    }
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        return result;
+    }
+
+    /**
+     * Finds groups of files with identical audio.
+     *
+     * @param files The audio files to check
+     * @return The groups of two or more duplicates, each in the order the files were
+     *         given
+     */
+    public List<List<File>> findDuplicates(Collection<File> files) {
+        Map<String, Long> fingerprints = fingerprintAll(files);
+        Map<Long, List<File>> byFingerprint = new HashMap<>();
+        for (File file : files) {
+            Long hash = fingerprints.get(file.getAbsolutePath());
+            if (hash != null) {
+                byFingerprint.computeIfAbsent(hash, key -> new ArrayList<>(1)).add(file);
+            }
+        }
+
+        List<List<File>> groups = new ArrayList<>();
+        for (List<File> candidates : byFingerprint.values()) {
+            if (candidates.size() > 1) {
+                groups.addAll(verify(candidates));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Splits files with the same fingerprint into groups whose payloads really are
+     * identical.
+     */
+    private static List<List<File>> verify(List<File> candidates) {
+        List<List<File>> classes = new ArrayList<>();
+        for (File file : candidates) {
+            List<File> match = null;
+            for (List<File> group : classes) {
+                if (samePayload(group.get(0), file)) {
+                    match = group;
+                    break;
+                }
+            }
+            if (match == null) {
+                match = new ArrayList<>();
+                classes.add(match);
+            }
+            match.add(file);
+        }
+        classes.removeIf(group -> group.size() < 2);
+        return classes;
+    }
+
+    /**
+     * Drops songs that duplicate a song already in a playlist or earlier in the same
+     * batch. Songs whose files cannot be read are kept.
+     *
+     * @param existing The songs already in the playlist
+     * @param added The songs to add
+     * @return The songs from {@code added} that are not duplicates, in order
+     */
+    public List<Song> suppress(List<Song> existing, Collection<Song> added) {
+        PlaylistIndex index = new PlaylistIndex(this);
+        index.reset(existing);
+        return index.suppress(added);
+    }
+
+    /**
+     * Forgets a file's fingerprint, so it is read again next time.
+     *
+     * @param file The file, which may no longer exist
+     */
+    public void invalidate(File file) {
+        cache.remove(file.getAbsolutePath());
+    }
+
+    private static boolean isDuplicate(String path, List<String> candidates) {
+        for (String candidate : candidates) {
+            if (candidate.equals(path) || samePayload(new File(candidate), new File(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of cached fingerprints
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Writes the fingerprint cache to a file, replacing it atomically.
+     *
+     * @param path The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void saveCache(Path path) throws IOException {
+        Map<String, long[]> copy = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+            Entry value = entry.getValue();
+            copy.put(entry.getKey(), new long[] {value.size, value.modified, value.hash});
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(temp))) {
+            out.writeObject(copy);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds the fingerprints in a file written by {@link #saveCache(Path)} to the cache.
+     * Each is checked against its file's size and modification time when first used.
+     *
+     * @param path The file to read
+     * @throws IOException If the file cannot be read
+     */
+    public void loadCache(Path path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(path))) {
+            @SuppressWarnings("unchecked")
+            Map<String, long[]> loaded = (Map<String, long[]>) in.readObject();
+            for (Map.Entry<String, long[]> entry : loaded.entrySet()) {
+                long[] value = entry.getValue();
+                cache.putIfAbsent(entry.getKey(), new Entry(value[0], value[1], value[2]));
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a fingerprint cache: " + path, e);
+        }
+    }
+
+    /**
+     * Stops the hashing threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static long computeFingerprint(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] payload = payloadRange(channel);
+            long start = payload[0];
+            long length = payload[1];
+            long hash = mix(PRIME_1, length);
+
+            ByteBuffer block = ByteBuffer.allocate(SAMPLE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (length <= (long) SAMPLE_COUNT * SAMPLE_BYTES) {
+                for (long done = 0; done < length; done += SAMPLE_BYTES) {
+                    hash = hashBlock(hash, channel, block, start + done, (int) Math.min(SAMPLE_BYTES, length - done));
+                }
+            } else {
+                long span = length - SAMPLE_BYTES;
+                for (int i = 0; i < SAMPLE_COUNT; i++) {
+                    hash = hashBlock(hash, channel, block, start + span * i / (SAMPLE_COUNT - 1), SAMPLE_BYTES);
+                }
+            }
+            return finish(hash);
+        }
+    }
+
+    /**
+     * Finds the audio payload of a file, leaving out tags and metadata.
+     *
+     * @return The offset and length of the payload in bytes
+     */
+    static long[] payloadRange(FileChannel channel) throws IOException {
+        long[] pcm = PcmFileSource.findData(channel);
+        if (pcm != null) {
+            return pcm;
+        }
+
+        long start = 0;
+        long end = channel.size();
+        try {
+            // ID3v2 tags at the front, possibly more than one
+            while (end - start >= 10) {
+                ByteBuffer header = PcmFileSource.read(channel, start, 10, ByteOrder.BIG_ENDIAN);
+                if (header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3') {
+                    break;
+                }
+                int size = (header.get(6) & 0x7F) << 21 | (header.get(7) & 0x7F) << 14
+                        | (header.get(8) & 0x7F) << 7 | (header.get(9) & 0x7F);
+                boolean footer = (header.get(5) & 0x10) != 0;
+                start += 10 + size + (footer ? 10 : 0);
+            }
+
+            // FLAC metadata blocks, which hold the tags and pictures
+            if (end - start >= 4 && "fLaC".equals(
+                    PcmFileSource.fourCC(PcmFileSource.read(channel, start, 4, ByteOrder.BIG_ENDIAN), 0))) {
+                long block = start + 4;
+                while (end - block >= 4) {
+                    ByteBuffer header = PcmFileSource.read(channel, block, 4, ByteOrder.BIG_ENDIAN);
+                    boolean last = (header.get(0) & 0x80) != 0;
+                    block += 4 + (header.getInt(0) & 0xFFFFFF);
+                    if (last) {
+                        break;
+                    }
+                }
+                start = block;
+            }
+
+            // ID3v1 and APEv2 tags at the end
+            if (end - start >= 128) {
+                ByteBuffer tag = PcmFileSource.read(channel, end - 128, 3, ByteOrder.BIG_ENDIAN);
+                if (tag.get(0) == 'T' && tag.get(1) == 'A' && tag.get(2) == 'G') {
+                    end -= 128;
+                }
+            }
+            if (end - start >= 32) {
+                ByteBuffer footer = PcmFileSource.read(channel, end - 32, 32, ByteOrder.LITTLE_ENDIAN);
+                if ("APETAGEX".equals(PcmFileSource.fourCC(footer, 0) + PcmFileSource.fourCC(footer, 4))) {
+                    long size = footer.getInt(12) & 0xFFFFFFFFL;
+                    boolean hasHeader = (footer.getInt(20) & 0x80000000) != 0;
+                    end -= size + (hasHeader ? 32 : 0);
+                }
+            }
+        } catch (EOFException e) {
+            // A tag claiming to run past the end of the file: hash what is there
+        }
+        start = Math.min(start, channel.size());
+        end = Math.max(start, end);
+        return new long[] {start, end - start};
+    }
+
+    private static long hashBlock(long hash, FileChannel channel, ByteBuffer block, long position, int length)
+            throws IOException {
+        block.clear().limit(length);
+        while (block.hasRemaining()) {
+            if (channel.read(block, position + block.position()) < 0) {
+                break;
+            }
+        }
+        block.flip();
+        while (block.remaining() >= 8) {
+            hash = mix(hash, block.getLong());
+        }
+        long tail = 0;
+        for (int shift = 0; block.hasRemaining(); shift += 8) {
+            tail |= (block.get() & 0xFFL) << shift;
+        }
+        return mix(hash, tail);
+    }
+
+    private static long mix(long hash, long value) {
+        value *= PRIME_1;
+        value = Long.rotateLeft(value, 31);
+        value *= PRIME_2;
+        hash ^= value;
+        return Long.rotateLeft(hash, 27) * 5 + 0x52dce729;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+
+    /**
+     * Compares the audio payloads of two files byte for byte.
+     */
+    private static boolean samePayload(File first, File second) {
+        try (FileChannel a = FileChannel.open(first.toPath(), StandardOpenOption.READ);
+             FileChannel b = FileChannel.open(second.toPath(), StandardOpenOption.READ)) {
+            long[] rangeA = payloadRange(a);
+            long[] rangeB = payloadRange(b);
+            if (rangeA[1] != rangeB[1]) {
+                return false;
+            }
+            ByteBuffer bufferA = ByteBuffer.allocate(COMPARE_BYTES);
+            ByteBuffer bufferB = ByteBuffer.allocate(COMPARE_BYTES);
+            for (long done = 0; done < rangeA[1]; done += COMPARE_BYTES) {
+                int length = (int) Math.min(COMPARE_BYTES, rangeA[1] - done);
+                fill(a, bufferA, rangeA[0] + done, length);
+                fill(b, bufferB, rangeB[0] + done, length);
+                if (!bufferA.equals(bufferB)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void fill(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,131 @@
+package com.musicplayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends one rendered stream to several sinks, so audio is decoded and processed once
+ * however many outputs there are. The slowest sink sets the pace: only as much is
+ * written as every sink can take. A sink that fails while playing is closed and
+ * dropped, and the others carry on.
+ */
+public class FanOutSink implements AudioSink {
+    private final List<AudioSink> sinks;
+
+    /**
+     * @param sinks The sinks to write to
+     */
+    public FanOutSink(AudioSink... sinks) {
+        this.sinks = new ArrayList<>(Arrays.asList(sinks));
+    }
+
+    /**
+     * @return The sinks still being written to
+     */
+    public synchronized List<AudioSink> getSinks() {
+        return new ArrayList<>(sinks);
+    }
+
+    @Override
+    public synchronized void open(AudioFormat format) throws IOException, LineUnavailableException {
+        List<AudioSink> opened = new ArrayList<>();
+        try {
+            for (AudioSink sink : sinks) {
+                sink.open(format);
+                opened.add(sink);
+            }
+        } catch (IOException | LineUnavailableException | RuntimeException e) {
+            for (AudioSink sink : opened) {
+                closeQuietly(sink);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized int available() {
+        int available = Integer.MAX_VALUE;
+        for (AudioSink sink : sinks) {
+            available = Math.min(available, sink.available());
+        }
+        return available;
+    }
+
+    @Override
+    public synchronized int write(byte[] data, int offset, int length) throws IOException {
+        for (int i = sinks.size() - 1; i >= 0; i--) {
+            AudioSink sink = sinks.get(i);
+            try {
+                int written = 0;
+                while (written < length) {
+                    written += sink.write(data, offset + written, length - written);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (sinks.size() == 1) {
+                    throw e;
+                }
+                e.printStackTrace();
+                sinks.remove(i);
+                closeQuietly(sink);
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized long getBufferedFrames() {
+        long buffered = 0;
+        for (AudioSink sink : sinks) {
+            buffered = Math.max(buffered, sink.getBufferedFrames());
+        }
+        return buffered;
+    }
+
+    @Override
+    public synchronized void start() {
+        for (AudioSink sink : sinks) {
+            sink.start();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        for (AudioSink sink : sinks) {
+            sink.stop();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        for (AudioSink sink : sinks) {
+            sink.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (AudioSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void closeQuietly(AudioSink sink) {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.musicplayer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts a {@link PcmSource} to a fixed sample rate and channel count, so every track
+ * reaches the output line in one format whatever the file contains.
+ *
+ * Sample rates are converted with a polyphase windowed-sinc filter. The ratio between
+ * the rates is reduced to a fraction L/M; the filter is designed once for the L
+ * sub-sample phases and each output sample is a dot product of one phase's taps with
+ * the surrounding input. Tables depend only on the pair of rates and are cached for the
+ * life of the application, so loading the hundredth 48 kHz track costs nothing extra.
+ * Channels are converted before resampling (mono is duplicated, stereo folded to mono
+ * by averaging, 5.1 downmixed with the usual -3 dB centre and surround weights), which
+ * keeps the filter work proportional to the output channel count.
+ *
+ * Bit depth is handled by the decoder and {@link PcmConverter}: sources deliver floats
+ * whatever their sample size, and the player writes 16-bit PCM.
+ */
+public class FormatNormalizer implements PcmSource {
+    // Taps per phase when not reducing the rate; more are used when downsampling
+    private static final int BASE_TAPS = 32;
+    private static final int MAX_TAPS = 256;
+    // Phases are capped for unusual rate pairs that do not reduce to a small fraction
+    private static final int MAX_PHASES = 4096;
+    // Fraction of the lower Nyquist frequency that is passed; the rest is the transition band
+    private static final double PASSBAND = 0.94;
+    private static final double KAISER_BETA = 8.6;
+    private static final int READ_FRAMES = 1024;
+    private static final double MINUS_3_DB = 0.70710678;
+
+    private static final Map<Long, FilterTable> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The filter for one pair of rates. Immutable, so it is shared by all tracks.
+     */
+    static final class FilterTable {
+        final int phases;
+        final int step;
+        final int taps;
+        final float[] coefficients;
+
+        FilterTable(int phases, int step, int taps, float[] coefficients) {
+            this.phases = phases;
+            this.step = step;
+            this.taps = taps;
+            this.coefficients = coefficients;
+        }
+    }
+
+    private final PcmSource source;
+    private final int sourceChannels;
+    private final int channels;
+    private final float sampleRate;
+    private final FilterTable table;
+    private final int half;
+
+    private float[] raw = new float[0];
+    // Input at the output channel count; frames before pos - half + 1 are no longer needed
+    private float[] input = new float[0];
+    private int inputFrames;
+    private int pos;
+    private int phase;
+    private boolean sourceEnded;
+    private int endFrame;
+
+    /**
+     * Wraps a source.
+     *
+     * @param source The audio to convert
+     * @param sampleRate The sample rate to deliver
+     * @param channels The number of channels to deliver
+     */
+    public FormatNormalizer(PcmSource source, float sampleRate, int channels) {
+        this.source = source;
+        this.sourceChannels = source.getChannels();
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+
+        int inRate = Math.round(source.getSampleRate());
+        int outRate = Math.round(sampleRate);
+        this.table = inRate == outRate ? null : filterTable(inRate, outRate);
+        this.half = table == null ? 0 : table.taps / 2;
+        reset();
+    }
+
+    /**
+     * Returns the cached filter for a pair of rates, designing it on first use.
+     */
+    static FilterTable filterTable(int inRate, int outRate) {
+        long key = ((long) inRate << 32) | outRate;
+        return TABLES.computeIfAbsent(key, k -> designFilter(inRate, outRate));
+    }
+
+    private static FilterTable designFilter(int inRate, int outRate) {
+        int gcd = gcd(inRate, outRate);
+        int phases = outRate / gcd;
+        int step = inRate / gcd;
+        if (phases > MAX_PHASES) {
+            // Nearest ratio with a table of reasonable size; the pitch error is inaudible
+            step = (int) Math.round((double) inRate * MAX_PHASES / outRate);
+            phases = MAX_PHASES;
+        }
+
+        double ratio = Math.min(1.0, (double) outRate / inRate);
+        double cutoff = PASSBAND * ratio;
+        int taps = Math.min(MAX_TAPS, 2 * (int) Math.ceil(BASE_TAPS / ratio / 2));
+        int half = taps / 2;
+
+        float[] coefficients = new float[phases * taps];
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int p = 0; p < phases; p++) {
+            double sum = 0;
+            double[] row = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                // Distance in input samples from this tap to the output sample
+                double x = (k - half + 1) - (double) p / phases;
+                double r = x / half;
+                double window = Math.abs(r) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - r * r)) / i0Beta;
+                row[k] = cutoff * sinc(cutoff * x) * window;
+                sum += row[k];
+            }
+            // Normalize each phase to unity gain at DC so no phase is louder than another
+            for (int k = 0; k < taps; k++) {
+                coefficients[p * taps + k] = (float) (row[k] / sum);
+            }
+        }
+        return new FilterTable(phases, step, taps, coefficients);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static double sinc(double x) {
+        return x == 0 ? 1.0 : Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double halfX = x / 2;
+        for (int k = 1; k < 50 && term > 1e-12 * sum; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    private void reset() {
+        // Start with zeros as the filter's history so the first output lines up with input frame 0
+        int history = Math.max(0, half - 1);
+        ensureInputCapacity(history + READ_FRAMES);
+        Arrays.fill(input, 0, history * channels, 0f);
+        inputFrames = history;
+        pos = history;
+        sourceEnded = false;
+        endFrame = 0;
+    }
+
+    @Override
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public long getFrameLength() {
+        long length = source.getFrameLength();
+        if (length < 0 || table == null) {
+            return length;
+        }
+        return (length * table.phases + table.step - 1) / table.step;
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int frames) throws IOException {
+        if (table == null) {
+            return readMapped(buffer, offset, frames);
+        }
+
+        int taps = table.taps;
+        float[] coefficients = table.coefficients;
+        int produced = 0;
+        while (produced < frames) {
+            if (sourceEnded && pos >= endFrame) {
+                break;
+            }
+            if (pos + half >= inputFrames) {
+                if (!fill()) {
+                    break;
+                }
+                continue;
+            }
+
+            int base = (pos - half + 1) * channels;
+            int row = phase * taps;
+            int out = offset + produced * channels;
+            for (int c = 0; c < channels; c++) {
+                float sum = 0f;
+                int index = base + c;
+                for (int k = 0; k < taps; k++, index += channels) {
+                    sum += input[index] * coefficients[row + k];
+                }
+                buffer[out + c] = sum;
+            }
+            produced++;
+
+            phase += table.step;
+            pos += phase / table.phases;
+            phase %= table.phases;
+        }
+        return produced == 0 && frames > 0 ? -1 : produced;
+    }
+
+    /**
+     * Makes more input available, discarding frames the filter has moved past.
+     *
+     * @return false if the source is exhausted and the filter tail has been padded
+     */
+    private boolean fill() throws IOException {
+        int drop = Math.min(pos - half + 1, inputFrames);
+        if (drop > 0) {
+            System.arraycopy(input, drop * channels, input, 0, (inputFrames - drop) * channels);
+            inputFrames -= drop;
+            pos -= drop;
+            endFrame -= drop;
+        }
+        ensureInputCapacity(inputFrames + READ_FRAMES);
+
+        if (!sourceEnded) {
+            int read = readMapped(input, inputFrames * channels, READ_FRAMES);
+            if (read > 0) {
+                inputFrames += read;
+                return true;
+            }
+            sourceEnded = true;
+            endFrame = inputFrames;
+        }
+
+        // Pad with silence so the last real frames can still pass through the filter
+        int needed = endFrame + half + 1;
+        if (inputFrames >= needed) {
+            return false;
+        }
+        ensureInputCapacity(needed);
+        Arrays.fill(input, inputFrames * channels, needed * channels, 0f);
+        inputFrames = needed;
+        return true;
+    }
+
+    private void ensureInputCapacity(int frames) {
+        if (input.length < frames * channels) {
+            input = Arrays.copyOf(input, frames * channels);
+        }
+    }
+
+    /**
+     * Reads frames from the source and converts them to the output channel count.
+     */
+    private int readMapped(float[] buffer, int offset, int frames) throws IOException {
+        if (sourceChannels == channels) {
+            return source.read(buffer, offset, frames);
+        }
+        if (raw.length < frames * sourceChannels) {
+            raw = new float[frames * sourceChannels];
+        }
+        int read = source.read(raw, 0, frames);
+        if (read <= 0) {
+            return read;
+        }
+
+        for (int f = 0; f < read; f++) {
+            int in = f * sourceChannels;
+            int out = offset + f * channels;
+            if (sourceChannels == 1) {
+                Arrays.fill(buffer, out, out + channels, raw[in]);
+            } else if (channels == 1) {
+                float sum = 0f;
+                for (int c = 0; c < sourceChannels; c++) {
+                    sum += raw[in + c];
+                }
+                buffer[out] = sum / sourceChannels;
+            } else if (channels == 2 && sourceChannels == 6) {
+                // L, R, C, LFE, Ls, Rs; the LFE channel is dropped
+                float centre = (float) (raw[in + 2] * MINUS_3_DB);
+                buffer[out] = raw[in] + centre + (float) (raw[in + 4] * MINUS_3_DB);
+                buffer[out + 1] = raw[in + 1] + centre + (float) (raw[in + 5] * MINUS_3_DB);
+            } else {
+                // Keep the channels both formats have; fold any others in at -3 dB
+                Arrays.fill(buffer, out, out + channels, 0f);
+                for (int c = 0; c < sourceChannels; c++) {
+                    float gain = c < channels ? 1f : (float) MINUS_3_DB;
+                    buffer[out + c % channels] += raw[in + c] * gain;
+                }
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public void seek(long frame) throws IOException {
+        if (table == null) {
+            source.seek(frame);
+            return;
+        }
+        long position = frame * table.step;
+        source.seek(position / table.phases);
+        reset();
+        phase = (int) (position % table.phases);
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,520 @@
+package com.musicplayer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * A typo-tolerant search index over one playlist snapshot.
+ *
+ * Normalized titles, artists and albums are split into words, and every distinct
+ * word is stored once in a sorted dictionary with a list of the songs (and fields) it
+ * occurs in. Each query word is matched against the dictionary, not against songs, so
+ * the cost depends on the vocabulary and the number of matching songs rather than on
+ * the size of the playlist:
+ * <ul>
+ * <li>Candidate words are found through an index of the words' trigrams. A word
+ * within k edits of the query word must share all but 3k of its trigrams, so only
+ * words passing that count are checked.</li>
+ * <li>Candidates are verified with a Levenshtein distance computed only within k of
+ * the diagonal, giving up as soon as the distance must exceed k.</li>
+ * <li>The last query word also matches as a prefix, so results appear while typing.</li>
+ * <li>Songs are reached through the words matching the rarest query word, best
+ * first, and scored on the other words through a per-song word list, stopping as soon
+ * as no song left could make the results. A short prefix matching most of the library
+ * therefore costs about as much as a rare word.</li>
+ * </ul>
+ * Up to one edit is allowed in words of four to six characters and two in longer
+ * ones. Every query word must match; songs are ranked by how closely and in which
+ * field (title first, then artist, then album) they matched, and only the best are
+ * kept.
+ */
+public class FuzzySearch {
+
+    private static final float[] FIELD_WEIGHTS = {3f, 2f, 1f};
+    private static final float PREFIX_FACTOR = 0.8f;
+    private static final int MAX_TERMS = 16;
+
+    private final PersistentVector<Song> songs;
+    private final String[] words;
+    private final int[][] postings;
+    private final int[] songWordStart;
+    private final int[] songWords;
+    private final Map<Integer, int[]> trigrams;
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Per-thread working arrays, reused between queries so a query allocates little.
+     */
+    private static final class Scratch {
+        final float[] score;
+        final boolean[] seen;
+        final int[] wordCounts;
+        final int[] wordSlot;
+        int[] touched = new int[1024];
+        int[] candidates = new int[256];
+        float[] quality = new float[256];
+
+        Scratch(int songCount, int wordCount) {
+            score = new float[songCount];
+            seen = new boolean[songCount];
+            wordCounts = new int[wordCount];
+            wordSlot = new int[wordCount];
+        }
+    }
+
+    /**
+     * Builds the index for a playlist snapshot.
+     *
+     * @param songs The songs to index
+     */
+    public FuzzySearch(PersistentVector<Song> songs) {
+        this.songs = songs;
+
+        // Collect each word's postings, encoded as song index and field
+        TreeMap<String, IntList> byWord = new TreeMap<>();
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            String[] fields = {song.getNormalizedTitle(), song.getNormalizedArtist(), song.getNormalizedAlbum()};
+            for (int field = 0; field < fields.length; field++) {
+                for (String word : split(fields[field])) {
+                    byWord.computeIfAbsent(word, key -> new IntList()).add(i << 2 | field);
+                }
+            }
+        }
+
+        words = byWord.keySet().toArray(new String[0]);
+        postings = new int[words.length][];
+        Map<Integer, IntList> trigramLists = new HashMap<>();
+        int id = 0;
+        for (IntList list : byWord.values()) {
+            postings[id] = list.toArray();
+            for (int trigram : trigramsOf(words[id], true)) {
+                IntList wordIds = trigramLists.computeIfAbsent(trigram, key -> new IntList());
+                // A word repeating a trigram is listed once
+                if (wordIds.size == 0 || wordIds.values[wordIds.size - 1] != id) {
+                    wordIds.add(id);
+                }
+            }
+            id++;
+        }
+
+        // The same entries by song, so a rare term's songs can be checked for a common
+        // term without walking the common term's postings
+        songWordStart = new int[songs.size() + 1];
+        for (int[] list : postings) {
+            for (int posting : list) {
+                songWordStart[(posting >>> 2) + 1]++;
+            }
+        }
+        for (int i = 0; i < songs.size(); i++) {
+            songWordStart[i + 1] += songWordStart[i];
+        }
+        songWords = new int[songWordStart[songs.size()]];
+        int[] next = Arrays.copyOf(songWordStart, songs.size());
+        for (int w = 0; w < postings.length; w++) {
+            for (int posting : postings[w]) {
+                songWords[next[posting >>> 2]++] = w << 2 | (posting & 3);
+            }
+        }
+
+        trigrams = new HashMap<>(trigramLists.size() * 2);
+        for (Map.Entry<Integer, IntList> entry : trigramLists.entrySet()) {
+            trigrams.put(entry.getKey(), entry.getValue().toArray());
+        }
+        scratch = ThreadLocal.withInitial(() -> new Scratch(songs.size(), words.length));
+    }
+
+    /**
+     * @return The snapshot this index was built from
+     */
+    public PersistentVector<Song> getSnapshot() {
+        return songs;
+    }
+
+    /**
+     * @return The number of distinct words indexed
+     */
+    public int getVocabularySize() {
+        return words.length;
+    }
+
+    /**
+     * Finds the songs that best match a query, allowing for typos.
+     *
+     * @param query The words to search for
+     * @param limit The maximum number of results
+     * @return The best matches, best first
+     */
+    public List<Song> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (terms.size() > MAX_TERMS) {
+            terms = terms.subList(0, MAX_TERMS);
+        }
+        int termCount = terms.size();
+
+        // Give every matching word a slot holding its quality for each term
+        Scratch s = scratch.get();
+        int[][] termWords = new int[termCount][];
+        float[][] termQuality = new float[termCount][];
+        float[] termMax = new float[termCount];
+        int driver = 0;
+        long driverVolume = Long.MAX_VALUE;
+        IntList slotWords = new IntList();
+        for (int t = 0; t < termCount; t++) {
+            int found = findWords(s, terms.get(t), t == termCount - 1);
+            termWords[t] = Arrays.copyOf(s.candidates, found);
+            termQuality[t] = Arrays.copyOf(s.quality, found);
+            long volume = 0;
+            for (int i = 0; i < found; i++) {
+                volume += postings[termWords[t][i]].length;
+                termMax[t] = Math.max(termMax[t], termQuality[t][i] * FIELD_WEIGHTS[0]);
+                if (s.wordSlot[termWords[t][i]] == 0) {
+                    slotWords.add(termWords[t][i]);
+                    s.wordSlot[termWords[t][i]] = slotWords.size;
+                }
+            }
+            if (volume < driverVolume) {
+                driver = t;
+                driverVolume = volume;
+            }
+        }
+        float[] slotQuality = new float[slotWords.size * termCount];
+        for (int t = 0; t < termCount; t++) {
+            for (int i = 0; i < termWords[t].length; i++) {
+                int slot = s.wordSlot[termWords[t][i]] - 1;
+                slotQuality[slot * termCount + t] = termQuality[t][i];
+            }
+        }
+
+        Comparator<Integer> worstFirst = (a, b) -> {
+            int byScore = Float.compare(s.score[a], s.score[b]);
+            return byScore != 0 ? byScore : Integer.compare(b, a);
+        };
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, worstFirst);
+        int touched = collect(s, termWords[driver], termQuality[driver], driver, termMax, slotQuality, best,
+                worstFirst, limit);
+
+        List<Song> result = new ArrayList<>(best.size());
+        int[] order = new int[best.size()];
+        for (int i = order.length - 1; i >= 0; i--) {
+            order[i] = best.poll();
+        }
+        for (int song : order) {
+            result.add(songs.get(song));
+        }
+
+        for (int i = 0; i < touched; i++) {
+            s.score[s.touched[i]] = 0;
+            s.seen[s.touched[i]] = false;
+        }
+        for (int i = 0; i < slotWords.size; i++) {
+            s.wordSlot[slotWords.values[i]] = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Reaches songs through the words matching the driving term, best score first, and
+     * keeps the best of them in the heap. Each song reached is scored on every term
+     * through its own word list, so only songs that could still make the results are
+     * ever looked at:
+     * <ul>
+     * <li>Songs not yet reached score at most the current tier plus the best possible
+     * for the other terms, so the search ends once the heap is full of songs scoring
+     * more than that.</li>
+     * <li>Postings are in song order and ties go to the earlier song, so a word stops
+     * once it alone has supplied enough songs with the best score its tier allows.</li>
+     * </ul>
+     *
+     * @return The number of songs reached, all of them marked in the scratch arrays
+     */
+    private int collect(Scratch s, int[] driverWords, float[] driverQuality, int driver, float[] termMax,
+                        float[] slotQuality, PriorityQueue<Integer> best, Comparator<Integer> worstFirst,
+                        int limit) {
+        float[] tiers = new float[driverWords.length * FIELD_WEIGHTS.length];
+        for (int i = 0; i < driverWords.length; i++) {
+            for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+                tiers[i * FIELD_WEIGHTS.length + field] = driverQuality[i] * FIELD_WEIGHTS[field];
+            }
+        }
+        Arrays.sort(tiers);
+
+        int touched = 0;
+        float[] termBest = new float[termMax.length];
+        for (int t = tiers.length - 1; t >= 0; t--) {
+            float tier = tiers[t];
+            if (t < tiers.length - 1 && tier == tiers[t + 1]) {
+                continue;
+            }
+            float ceiling = 0;
+            for (int term = 0; term < termMax.length; term++) {
+                ceiling += term == driver ? tier : termMax[term];
+            }
+            if (best.size() == limit && s.score[best.peek()] > ceiling) {
+                break;
+            }
+            for (int i = 0; i < driverWords.length; i++) {
+                for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+                    if (driverQuality[i] * FIELD_WEIGHTS[field] != tier) {
+                        continue;
+                    }
+                    int atCeiling = 0;
+                    for (int posting : postings[driverWords[i]]) {
+                        int song = posting >>> 2;
+                        if ((posting & 3) != field || s.seen[song]) {
+                            continue;
+                        }
+                        if (touched == s.touched.length) {
+                            s.touched = Arrays.copyOf(s.touched, touched * 2);
+                        }
+                        s.touched[touched++] = song;
+                        s.seen[song] = true;
+                        float score = scoreSong(s, song, slotQuality, termBest);
+                        if (score == 0) {
+                            continue;
+                        }
+                        s.score[song] = score;
+                        if (best.size() < limit || worstFirst.compare(song, best.peek()) > 0) {
+                            best.add(song);
+                            if (best.size() > limit) {
+                                best.poll();
+                            }
+                        }
+                        if (score >= ceiling && ++atCeiling == limit) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Scores a song on every term from its own words.
+     *
+     * @return The sum of the best match for each term, or 0 if a term does not match
+     */
+    private float scoreSong(Scratch s, int song, float[] slotQuality, float[] termBest) {
+        int termCount = termBest.length;
+        Arrays.fill(termBest, 0f);
+        for (int k = songWordStart[song]; k < songWordStart[song + 1]; k++) {
+            int entry = songWords[k];
+            int slot = s.wordSlot[entry >>> 2] - 1;
+            if (slot < 0) {
+                continue;
+            }
+            float weight = FIELD_WEIGHTS[entry & 3];
+            for (int t = 0; t < termCount; t++) {
+                termBest[t] = Math.max(termBest[t], slotQuality[slot * termCount + t] * weight);
+            }
+        }
+        float total = 0;
+        for (int t = 0; t < termCount; t++) {
+            if (termBest[t] == 0) {
+                return 0;
+            }
+            total += termBest[t];
+        }
+        return total;
+    }
+
+    /**
+     * Finds the dictionary words close to a term, leaving their ids and match quality
+     * in the scratch arrays.
+     *
+     * @return The number of words found
+     */
+    private int findWords(Scratch s, String term, boolean prefix) {
+        int n = term.length();
+        int maxEdits = n <= 3 ? 0 : n <= 6 ? 1 : 2;
+        int[] counts = s.wordCounts;
+        IntList candidates = new IntList();
+
+        if (maxEdits == 0) {
+            // Short terms: the exact word, or words starting with it for the last term
+            int from = lowerBound(term);
+            int to = prefix ? lowerBound(term + Character.MAX_VALUE) : from + 1;
+            for (int w = from; w < Math.min(to, words.length); w++) {
+                if (prefix || words[w].equals(term)) {
+                    candidates.add(w);
+                }
+            }
+        } else {
+            // Count shared trigrams, then keep words that share enough to be within reach
+            IntList seen = new IntList();
+            for (int trigram : trigramsOf(term, !prefix)) {
+                int[] wordIds = trigrams.get(trigram);
+                if (wordIds == null) {
+                    continue;
+                }
+                for (int w : wordIds) {
+                    if (counts[w]++ == 0) {
+                        seen.add(w);
+                    }
+                }
+            }
+            int needed = Math.max(1, n - 3 * maxEdits - (prefix ? 1 : 0));
+            for (int i = 0; i < seen.size; i++) {
+                int w = seen.values[i];
+                int length = words[w].length();
+                if (counts[w] >= needed && length >= n - maxEdits && (prefix || length <= n + maxEdits)) {
+                    candidates.add(w);
+                }
+                counts[w] = 0;
+            }
+        }
+
+        int found = 0;
+        for (int i = 0; i < candidates.size; i++) {
+            int w = candidates.values[i];
+            String word = words[w];
+            int distance = word.equals(term) ? 0 : boundedDistance(term, word, maxEdits, prefix);
+            if (distance > maxEdits) {
+                continue;
+            }
+            float quality = 1f - distance / (maxEdits + 1f);
+            if (prefix && word.length() > n && boundedDistance(term, word, maxEdits, false) > maxEdits) {
+                // Only the start of the word matched
+                quality *= PREFIX_FACTOR;
+            }
+            if (found == s.candidates.length) {
+                s.candidates = Arrays.copyOf(s.candidates, found * 2);
+                s.quality = Arrays.copyOf(s.quality, found * 2);
+            }
+            s.candidates[found] = w;
+            s.quality[found++] = quality;
+        }
+        return found;
+    }
+
+    /**
+     * Computes the Levenshtein distance between a term and a word, or between the term
+     * and the closest prefix of the word, looking only at cells within maxEdits of the
+     * diagonal.
+     *
+     * @return The distance, or maxEdits + 1 if it is larger than maxEdits
+     */
+    static int boundedDistance(String term, String word, int maxEdits, boolean prefix) {
+        int n = term.length();
+        int m = word.length();
+        int limit = maxEdits + 1;
+        if (!prefix && Math.abs(n - m) > maxEdits) {
+            return limit;
+        }
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = Math.min(j, limit);
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - maxEdits);
+            int to = Math.min(m, i + maxEdits);
+            current[0] = Math.min(i, limit);
+            if (from > 1) {
+                current[from - 1] = limit;
+            }
+            int rowMin = current[0];
+            char c = term.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == word.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                current[j] = Math.min(value, limit);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < m) {
+                current[to + 1] = limit;
+            }
+            if (rowMin >= limit) {
+                return limit;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        if (!prefix) {
+            return previous[m];
+        }
+        // Prefix match: the best distance to any prefix of the word
+        int best = limit;
+        for (int j = Math.max(0, n - maxEdits); j <= Math.min(m, n + maxEdits); j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    private int lowerBound(String key) {
+        int index = Arrays.binarySearch(words, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Normalizes text and splits it into words of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        return split(TextNormalizer.normalize(text));
+    }
+
+    private static List<String> split(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Packs the trigrams of a word padded with a boundary marker into ints. A prefix
+     * query leaves out the trigram ending at the trailing marker.
+     */
+    private static int[] trigramsOf(String word, boolean padEnd) {
+        String padded = "\u0001" + word + (padEnd ? "\u0001" : "");
+        int count = Math.max(0, padded.length() - 2);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            // Ten bits per character is enough to keep common scripts apart
+            result[i] = (padded.charAt(i) & 0x3FF) << 20 | (padded.charAt(i + 1) & 0x3FF) << 10
+                    | (padded.charAt(i + 2) & 0x3FF);
+        }
+        return result;
+    }
+
+    /**
+     * A growable list of ints, to keep postings compact while the index is built.
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.musicplayer;
+
+/**
+ * Applies a gain to interleaved float samples, ramping smoothly between levels.
+ *
+ * Changing the gain never jumps: the new level is reached by a per-frame linear ramp
+ * over a configurable number of frames, which avoids the clicks and "zipper" noise of
+ * stepping a hardware gain control. Once the ramp is finished, processing is a single
+ * multiply per sample, and unity gain costs nothing at all.
+ *
+ * Not thread-safe; it is owned by the thread that renders audio.
+ */
+public class GainStage {
+    private float current;
+    private float target;
+    private float step;
+    private int rampRemaining;
+
+    /**
+     * Creates a stage with the given starting gain.
+     *
+     * @param gain The initial linear gain
+     */
+    public GainStage(float gain) {
+        this.current = gain;
+        this.target = gain;
+    }
+
+    /**
+     * Starts a ramp from the current gain to a new one.
+     *
+     * @param gain The linear gain to reach
+     * @param rampFrames The number of frames the ramp takes; 0 jumps immediately
+     */
+    public void setGain(float gain, int rampFrames) {
+        target = gain;
+        if (rampFrames <= 0) {
+            current = gain;
+            rampRemaining = 0;
+        } else {
+            step = (gain - current) / rampFrames;
+            rampRemaining = rampFrames;
+        }
+    }
+
+    /**
+     * @return The gain currently being applied
+     */
+    public float getGain() {
+        return current;
+    }
+
+    /**
+     * @return The gain the stage is ramping towards
+     */
+    public float getTargetGain() {
+        return target;
+    }
+
+    /**
+     * @return true while a ramp is in progress
+     */
+    public boolean isRamping() {
+        return rampRemaining > 0;
+    }
+
+    /**
+     * Applies the gain in place.
+     *
+     * @param buffer Interleaved samples
+     * @param offset The index of the first sample
+     * @param frames The number of frames to process
+     * @param channels The number of channels per frame
+     */
+    public void process(float[] buffer, int offset, int frames, int channels) {
+        int frame = 0;
+        int index = offset;
+
+        // Ramp section: the gain changes once per frame
+        if (rampRemaining > 0) {
+            int rampFrames = Math.min(rampRemaining, frames);
+            float gain = current;
+            for (; frame < rampFrames; frame++) {
+                gain += step;
+                for (int c = 0; c < channels; c++) {
+                    buffer[index++] *= gain;
+                }
+            }
+            rampRemaining -= rampFrames;
+            current = rampRemaining == 0 ? target : gain;
+        }
+
+        // Steady section: one multiply per sample over a flat range
+        if (frame < frames && current != 1.0f) {
+            float gain = current;
+            int end = offset + frames * channels;
+            for (int i = index; i < end; i++) {
+                buffer[i] *= gain;
+            }
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package com.musicplayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Keeps playlists built from music folders in step with the files on disk.
+ *
+ * Every directory under a watched folder is registered with one {@link WatchService},
+ * and a single thread takes the events for all of them, so tens of thousands of
+ * directories cost no extra threads. Events are collected until the folder has been
+ * quiet for a moment (or for at most two seconds during a long copy), coalesced per
+ * file, and then applied to each playlist as one batch: new audio files are added,
+ * songs whose files were deleted, or whose directory was, are removed, and songs whose
+ * files were rewritten are reported as updated, with their stored loudness and
+ * fingerprint dropped so they are measured again. New files are also added to the
+ * {@link SongLibrary} if there is one. If the operating system drops
+ * events, the affected folders are scanned again instead.
+ *
+ * The number of directories is limited by the operating system's watch limit (on
+ * Linux, fs.inotify.max_user_watches); directories beyond it are reported and are only
+ * picked up by the next full scan.
+ */
+public class LibraryWatcher implements Closeable {
+
+    /** Default time, in milliseconds, without events before changes are applied. */
+    public static final int DEFAULT_QUIET_MILLIS = 300;
+
+    private static final int MAX_DELAY_MILLIS = 2000;
+
+    /**
+     * What happened to a file since changes were last applied.
+     */
+    private enum Change {
+        CREATED,
+        DELETED,
+        MODIFIED
+    }
+
+    /**
+     * A folder and the playlist built from it, with an index of the playlist's files
+     * under the folder that follows the playlist's changes, so applying a few changes
+     * does not look at every song.
+     */
+    private static final class Root implements PlaylistListener {
+        final Path directory;
+        final boolean recursive;
+        final PlaylistManager playlist;
+
+        // Guarded by this. Counts are of songs, since a file can be listed twice.
+        private final Map<Song, Path> paths = new IdentityHashMap<>();
+        private final Map<Song, Integer> songCopies = new IdentityHashMap<>();
+        private final Map<Path, Integer> files = new HashMap<>();
+        private final Map<Path, Integer> folders = new HashMap<>();
+
+        Root(Path directory, boolean recursive, PlaylistManager playlist) {
+            this.directory = directory;
+            this.recursive = recursive;
+            this.playlist = playlist;
+        }
+
+        boolean covers(Path file) {
+            return recursive ? file.startsWith(directory) && !file.equals(directory)
+                    : directory.equals(file.getParent());
+        }
+
+        synchronized boolean isListed(Path file) {
+            return files.containsKey(file);
+        }
+
+        /**
+         * @return true if a listed file is the path or lies below it
+         */
+        synchronized boolean contains(Path path) {
+            return files.containsKey(path) || folders.containsKey(path);
+        }
+
+        synchronized void reset(Iterable<Song> songs) {
+            paths.clear();
+            songCopies.clear();
+            files.clear();
+            folders.clear();
+            for (Song song : songs) {
+                add(song, 1);
+            }
+        }
+
+        @Override
+        public synchronized void playlistChanged(PlaylistManager source, List<PlaylistEvent> events) {
+            for (PlaylistEvent event : events) {
+                switch (event.getType()) {
+                    case INSERTED:
+                        for (Song song : event.getSongs()) {
+                            add(song, 1);
+                        }
+                        break;
+                    case REMOVED:
+                        for (Song song : event.getSongs()) {
+                            remove(song, 1);
+                        }
+                        break;
+                    case UPDATED:
+                        for (Song song : event.getSongs()) {
+                            Integer copies = songCopies.get(song);
+                            if (copies != null && !paths.get(song).equals(songPath(song))) {
+                                remove(song, copies);
+                                add(song, copies);
+                            }
+                        }
+                        break;
+                    case REORDERED:
+                        reset(event.getSnapshot());
+                        break;
+                    default:
+                        // A move changes no paths
+                        break;
+                }
+            }
+        }
+
+        private void add(Song song, int copies) {
+            Path path = songPath(song);
+            if (path == null || !covers(path)) {
+                return;
+            }
+            paths.put(song, path);
+            songCopies.merge(song, copies, Integer::sum);
+            files.merge(path, copies, Integer::sum);
+            for (Path folder = path.getParent(); folder != null && !folder.equals(directory);
+                    folder = folder.getParent()) {
+                folders.merge(folder, copies, Integer::sum);
+            }
+        }
+
+        private void remove(Song song, int copies) {
+            Integer had = songCopies.get(song);
+            if (had == null) {
+                return;
+            }
+            copies = Math.min(copies, had);
+            Path path;
+            if (had == copies) {
+                songCopies.remove(song);
+                path = paths.remove(song);
+            } else {
+                songCopies.put(song, had - copies);
+                path = paths.get(song);
+            }
+            decrement(files, path, copies);
+            for (Path folder = path.getParent(); folder != null && !folder.equals(directory);
+                    folder = folder.getParent()) {
+                decrement(folders, folder, copies);
+            }
+        }
+
+        private static void decrement(Map<Path, Integer> counts, Path path, int copies) {
+            if (counts.merge(path, -copies, Integer::sum) <= 0) {
+                counts.remove(path);
+            }
+        }
+    }
+
+    private final WatchService watchService;
+    private final SongLibrary library;
+    private volatile DuplicateDetector duplicateDetector;
+    private final int quietMillis;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Set<Path> registered = ConcurrentHashMap.newKeySet();
+    private final List<Root> roots = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Only used by the watcher thread
+    private final Map<Path, Change> pending = new LinkedHashMap<>();
+    private boolean overflowed;
+
+    /**
+     * Creates a watcher that adds new files to a library.
+     *
+     * @param library The library new songs are stored in, or null for none
+     * @throws IOException If the file system cannot be watched
+     */
+    public LibraryWatcher(SongLibrary library) throws IOException {
+        this(library, DEFAULT_QUIET_MILLIS);
+    }
+
+    /**
+     * Creates a watcher.
+     *
+     * @param library The library new songs are stored in, or null for none
+     * @param quietMillis How long the folders must be quiet before changes are applied
+     * @throws IOException If the file system cannot be watched
+     */
+    public LibraryWatcher(SongLibrary library, int quietMillis) throws IOException {
+        this.library = library;
+        this.quietMillis = quietMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "library-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param detector The detector whose fingerprints of modified files are dropped,
+     *                 or null for none
+     */
+    public void setDuplicateDetector(DuplicateDetector detector) {
+        this.duplicateDetector = detector;
+    }
+
+    /**
+     * Keeps a playlist in step with a folder, typically one it was built from with
+     * {@link PlaylistManager#createFromDirectory(File, boolean)}. Changes made before
+     * this call are picked up straight away.
+     *
+     * @param directory The folder to watch
+     * @param recursive Whether subfolders are part of the playlist
+     * @param playlist The playlist to update
+     * @throws IOException If the folder cannot be read
+     */
+    public void watch(File directory, boolean recursive, PlaylistManager playlist) throws IOException {
+        Path path = normalize(directory.toPath());
+        if (!Files.isDirectory(path)) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        register(path, recursive);
+        Root root = new Root(path, recursive, playlist);
+        // Subscribe and index the songs as one batch, so no change is missed
+        playlist.batch(() -> {
+            playlist.addPlaylistListener(root);
+            root.reset(playlist.snapshot());
+        });
+        roots.add(root);
+        reconcile(root);
+    }
+
+    /**
+     * Stops updating a playlist. Directories stay registered while other playlists
+     * use them.
+     *
+     * @param playlist The playlist to stop updating
+     */
+    public void unwatch(PlaylistManager playlist) {
+        for (Root root : roots) {
+            if (root.playlist == playlist) {
+                playlist.removePlaylistListener(root);
+                roots.remove(root);
+            }
+        }
+    }
+
+    /**
+     * @return The number of directories being watched
+     */
+    public int getWatchedDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void register(Path start, boolean recursive) throws IOException {
+        if (!recursive) {
+            registerOne(start);
+            return;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                registerOne(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void registerOne(Path dir) {
+        if (!registered.add(dir)) {
+            return;
+        }
+        try {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, dir);
+        } catch (IOException e) {
+            registered.remove(dir);
+            System.err.println("Cannot watch " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void run() {
+        long firstEvent = 0;
+        long lastEvent = 0;
+        try {
+            while (!closed) {
+                WatchKey key;
+                if (pending.isEmpty() && !overflowed) {
+                    key = watchService.take();
+                } else {
+                    long now = System.nanoTime();
+                    long wait = Math.min(lastEvent + quietMillis * 1_000_000L,
+                            firstEvent + MAX_DELAY_MILLIS * 1_000_000L) - now;
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : null;
+                }
+
+                if (key != null) {
+                    if (pending.isEmpty() && !overflowed) {
+                        firstEvent = System.nanoTime();
+                    }
+                    lastEvent = System.nanoTime();
+                    collect(key);
+                } else if (!pending.isEmpty() || overflowed) {
+                    apply();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private void collect(WatchKey key) {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                overflowed = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                if (Files.isDirectory(path)) {
+                    directoryCreated(path);
+                } else {
+                    record(path, Change.CREATED);
+                }
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                record(path, Change.DELETED);
+            } else {
+                record(path, Change.MODIFIED);
+            }
+        }
+        if (!key.reset()) {
+            // The directory is gone
+            directories.remove(key);
+            registered.remove(dir);
+        }
+    }
+
+    /**
+     * Starts watching a new directory and records the files already in it, which may
+     * have been created before it was registered.
+     */
+    private void directoryCreated(Path dir) {
+        boolean recursive = false;
+        for (Root root : roots) {
+            recursive |= root.recursive && dir.startsWith(root.directory);
+        }
+        if (!recursive) {
+            return;
+        }
+        try {
+            register(dir, true);
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    record(file, Change.CREATED);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void record(Path path, Change change) {
+        Change previous = pending.get(path);
+        if (previous == Change.CREATED && change == Change.DELETED) {
+            // Came and went between two updates
+            pending.remove(path);
+        } else if (previous == Change.CREATED || previous == Change.DELETED && change != Change.DELETED) {
+            // Still new, or deleted and written again: either way it should be listed
+            pending.put(path, Change.CREATED);
+        } else {
+            pending.put(path, change);
+        }
+    }
+
+    /**
+     * Applies the collected changes to every playlist.
+     */
+    private void apply() {
+        if (overflowed) {
+            overflowed = false;
+            pending.clear();
+            for (Root root : roots) {
+                reconcile(root);
+            }
+            return;
+        }
+
+        Set<Path> deleted = new HashSet<>();
+        List<Path> created = new ArrayList<>();
+        Set<Path> modified = new HashSet<>();
+        for (Map.Entry<Path, Change> entry : pending.entrySet()) {
+            if (entry.getValue() == Change.DELETED) {
+                deleted.add(entry.getKey());
+            } else if (entry.getValue() == Change.CREATED) {
+                created.add(entry.getKey());
+            } else {
+                modified.add(entry.getKey());
+            }
+        }
+        pending.clear();
+
+        DuplicateDetector detector = duplicateDetector;
+        for (Path path : modified) {
+            // The old fingerprint and loudness describe the file as it was
+            if (detector != null) {
+                detector.invalidate(path.toFile());
+            }
+            if (library != null) {
+                Song song = library.findByPath(path.toString());
+                if (song != null) {
+                    library.setLoudness(library.idOf(song), Double.NaN, Float.NaN);
+                }
+            }
+        }
+
+        for (Root root : roots) {
+            List<Path> added = new ArrayList<>();
+            for (Path path : created) {
+                if (root.covers(path)) {
+                    added.add(path);
+                }
+            }
+            // Only look through the playlist if one of its files was affected
+            boolean removals = false;
+            for (Path path : deleted) {
+                removals |= root.contains(path);
+            }
+            boolean refresh = false;
+            for (Path path : modified) {
+                if (root.isListed(path)) {
+                    refresh = true;
+                } else if (root.covers(path)) {
+                    // Written to but never listed, for example while the watch was set up
+                    added.add(path);
+                }
+            }
+            Predicate<Song> stale = removals ? song -> isDeleted(song, root.directory, deleted) : null;
+            Predicate<Song> changed = refresh ? song -> modified.contains(songPath(song)) : null;
+            if (!added.isEmpty() || stale != null || changed != null) {
+                update(root, added, stale, changed);
+            }
+        }
+    }
+
+    /**
+     * Brings a playlist fully up to date with its folder by scanning it.
+     */
+    private void reconcile(Root root) {
+        Set<Path> present = new HashSet<>();
+        List<Path> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(root.directory, EnumSet.noneOf(FileVisitOption.class),
+                    root.recursive ? Integer.MAX_VALUE : 1, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (attrs.isRegularFile()) {
+                                present.add(file);
+                                files.add(file);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException e) {
+            System.err.println("Cannot scan " + root.directory + ": " + e.getMessage());
+            return;
+        }
+        update(root, files, song -> {
+            Path path = songPath(song);
+            return path != null && root.covers(path) && !present.contains(path);
+        }, null);
+    }
+
+    /**
+     * Removes songs, refreshes songs whose files were rewritten, and adds any of the
+     * given files that are audio files not already in the playlist, as one batch. New
+     * files are read and checked for duplicates before the playlist is locked.
+     *
+     * @param stale Selects the songs to remove, or null for none
+     * @param changed Selects the songs to refresh, or null for none
+     */
+    private void update(Root root, List<Path> candidates, Predicate<Song> stale, Predicate<Song> changed) {
+        PlaylistManager playlist = root.playlist;
+        Set<Path> adding = new HashSet<>();
+        List<Song> found = new ArrayList<>();
+        for (Path path : candidates) {
+            File file = path.toFile();
+            if (PlaylistManager.isAudioFile(file) && !root.isListed(path) && adding.add(path) && file.isFile()) {
+                found.add(newSong(file));
+            }
+        }
+        List<Song> added = found.isEmpty() ? found : playlist.withoutDuplicates(found);
+
+        playlist.batch(() -> {
+            if (stale != null) {
+                playlist.removeIf(stale);
+            }
+            if (changed != null) {
+                // Nothing in a song is read from the file's contents, so the update just
+                // tells listeners to look at the file again
+                playlist.updateIf(changed, song -> { });
+            }
+            // Another writer may have listed a file since it was checked
+            List<Song> unlisted = new ArrayList<>(added.size());
+            for (Song song : added) {
+                if (!root.isListed(songPath(song))) {
+                    unlisted.add(song);
+                }
+            }
+            playlist.addCheckedSongs(unlisted);
+        });
+    }
+
+    private Song newSong(File file) {
+        Song song = new Song(file.getName(), file.getAbsolutePath());
+        if (library == null) {
+            return song;
+        }
+        return library.get(library.add(song));
+    }
+
+    /**
+     * Checks whether a song's file, or a directory above it within the root, was
+     * deleted.
+     */
+    private static boolean isDeleted(Song song, Path root, Set<Path> deleted) {
+        if (deleted.isEmpty()) {
+            return false;
+        }
+        Path path = songPath(song);
+        while (path != null && path.startsWith(root) && !path.equals(root)) {
+            if (deleted.contains(path)) {
+                return true;
+            }
+            path = path.getParent();
+        }
+        return false;
+    }
+
+    private static Path songPath(Song song) {
+        return song.getFilePath() == null ? null : normalize(Paths.get(song.getFilePath()));
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,83 @@
+package com.musicplayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays audio on the system's default output device.
+ */
+public class LineSink implements AudioSink {
+    private final int bufferMillis;
+    private volatile SourceDataLine line;
+
+    /**
+     * Creates a sink buffering 200 ms of audio.
+     */
+    public LineSink() {
+        this(200);
+    }
+
+    /**
+     * Creates a sink.
+     *
+     * @param bufferMillis How much audio the device buffers ahead, in milliseconds
+     */
+    public LineSink(int bufferMillis) {
+        this.bufferMillis = bufferMillis;
+    }
+
+    @Override
+    public void open(AudioFormat format) throws LineUnavailableException {
+        SourceDataLine opened = AudioSystem.getSourceDataLine(format);
+        int bufferBytes = (int) (format.getFrameRate() * bufferMillis / 1000) * format.getFrameSize();
+        opened.open(format, bufferBytes);
+        line = opened;
+    }
+
+    @Override
+    public int available() {
+        return line.available();
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length) {
+        return line.write(data, offset, length);
+    }
+
+    @Override
+    public long getBufferedFrames() {
+        SourceDataLine current = line;
+        if (current == null) {
+            return 0;
+        }
+        return (current.getBufferSize() - current.available()) / current.getFormat().getFrameSize();
+    }
+
+    @Override
+    public void start() {
+        line.start();
+    }
+
+    @Override
+    public void stop() {
+        line.stop();
+    }
+
+    @Override
+    public void flush() {
+        line.flush();
+    }
+
+    @Override
+    public void close() {
+        SourceDataLine current = line;
+        if (current != null) {
+            line = null;
+            current.stop();
+            current.flush();
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.musicplayer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Measures the integrated loudness of a track as defined by EBU R128 / ITU-R BS.1770.
+ *
+ * Samples are passed through the K-weighting filter (a high shelf followed by a high
+ * pass), and their energy is collected in 400 ms blocks overlapping by 75%. The
+ * integrated loudness is the mean of the blocks that pass two gates: an absolute gate
+ * at -70 LUFS, which drops silence, and a relative gate 10 LU below the loudness of
+ * the remaining blocks, which drops quiet passages.
+ *
+ * The analyzer streams: memory use is one double per 100 ms of audio, regardless of
+ * how the samples are fed in. Not thread-safe; use one analyzer per track.
+ */
+public class LoudnessAnalyzer {
+
+    /** Loudness that tracks are adjusted to at playback, in LUFS (the ReplayGain 2.0 reference). */
+    public static final double REFERENCE_LOUDNESS = -18.0;
+
+    private static final double ABSOLUTE_GATE = -70.0;
+    private static final double RELATIVE_GATE = -10.0;
+    private static final int ANALYSIS_BLOCK_FRAMES = 4096;
+
+    private final int channels;
+    private final double[] weights;
+    private final int subBlockFrames;
+
+    // K-weighting coefficients, shared by all channels
+    private final double b0, b1, b2, a1, a2;
+    private final double hb0, hb1, hb2, ha1, ha2;
+    // Filter state per channel: two transposed direct-form II biquads
+    private final double[] shelfZ1, shelfZ2, passZ1, passZ2;
+
+    // Energy of the last four 100 ms sub-blocks, which make up one 400 ms block
+    private final double[] recent = new double[4];
+    private int recentCount;
+    private double subBlockEnergy;
+    private int subBlockPosition;
+
+    private double[] blockPowers = new double[64];
+    private int blockCount;
+    private float peak;
+
+    /**
+     * Creates an analyzer for one track.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @param channels The number of interleaved channels
+     */
+    public LoudnessAnalyzer(float sampleRate, int channels) {
+        this.channels = channels;
+        this.weights = new double[channels];
+        for (int c = 0; c < channels; c++) {
+            weights[c] = channelWeight(c, channels);
+        }
+        this.subBlockFrames = Math.max(1, Math.round(sampleRate / 10));
+
+        // High shelf: +4 dB above about 1.5 kHz, modelling the acoustic effect of the head
+        double f0 = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10.0, gain / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        b0 = (vh + vb * k / q + k * k) / a0;
+        b1 = 2.0 * (k * k - vh) / a0;
+        b2 = (vh - vb * k / q + k * k) / a0;
+        a1 = 2.0 * (k * k - 1.0) / a0;
+        a2 = (1.0 - k / q + k * k) / a0;
+
+        // High pass at about 38 Hz
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1.0 + k / q + k * k;
+        hb0 = 1.0;
+        hb1 = -2.0;
+        hb2 = 1.0;
+        ha1 = 2.0 * (k * k - 1.0) / a0;
+        ha2 = (1.0 - k / q + k * k) / a0;
+
+        shelfZ1 = new double[channels];
+        shelfZ2 = new double[channels];
+        passZ1 = new double[channels];
+        passZ2 = new double[channels];
+    }
+
+    /**
+     * BS.1770 channel weights, assuming the usual L, R, C, LFE, Ls, Rs order for 5.1.
+     */
+    private static double channelWeight(int channel, int channels) {
+        if (channels == 6) {
+            if (channel == 3) {
+                return 0.0; // LFE is not measured
+            }
+            if (channel >= 4) {
+                return 1.41; // surrounds
+            }
+        }
+        return 1.0;
+    }
+
+    /**
+     * Analyzes a block of interleaved samples.
+     *
+     * @param buffer The samples, in the range -1 to 1
+     * @param offset The index of the first sample
+     * @param frames The number of frames to analyze
+     */
+    public void process(float[] buffer, int offset, int frames) {
+        int frame = 0;
+        while (frame < frames) {
+            int count = Math.min(frames - frame, subBlockFrames - subBlockPosition);
+            int start = offset + frame * channels;
+            for (int c = 0; c < channels; c++) {
+                subBlockEnergy += filterChannel(buffer, start + c, count, c) * weights[c];
+            }
+            frame += count;
+            subBlockPosition += count;
+            if (subBlockPosition == subBlockFrames) {
+                endSubBlock();
+            }
+        }
+    }
+
+    /**
+     * Runs one channel of a run of frames through the K-weighting filter.
+     *
+     * @return The sum of the squared filtered samples
+     */
+    private double filterChannel(float[] buffer, int index, int count, int channel) {
+        double s1 = shelfZ1[channel];
+        double s2 = shelfZ2[channel];
+        double p1 = passZ1[channel];
+        double p2 = passZ2[channel];
+        double energy = 0;
+        float channelPeak = peak;
+
+        for (int i = 0; i < count; i++, index += channels) {
+            float sample = buffer[index];
+            float magnitude = Math.abs(sample);
+            if (magnitude > channelPeak) {
+                channelPeak = magnitude;
+            }
+
+            double x = sample;
+            double shelved = b0 * x + s1;
+            s1 = b1 * x - a1 * shelved + s2;
+            s2 = b2 * x - a2 * shelved;
+
+            double y = hb0 * shelved + p1;
+            p1 = hb1 * shelved - ha1 * y + p2;
+            p2 = hb2 * shelved - ha2 * y;
+
+            energy += y * y;
+        }
+
+        shelfZ1[channel] = s1;
+        shelfZ2[channel] = s2;
+        passZ1[channel] = p1;
+        passZ2[channel] = p2;
+        peak = channelPeak;
+        return energy;
+    }
+
+    private void endSubBlock() {
+        recent[recentCount % 4] = subBlockEnergy;
+        recentCount++;
+        subBlockEnergy = 0;
+        subBlockPosition = 0;
+
+        if (recentCount >= 4) {
+            double power = (recent[0] + recent[1] + recent[2] + recent[3]) / (4.0 * subBlockFrames);
+            if (blockCount == blockPowers.length) {
+                blockPowers = Arrays.copyOf(blockPowers, blockCount * 2);
+            }
+            blockPowers[blockCount++] = power;
+        }
+    }
+
+    /**
+     * @return The integrated loudness in LUFS, or negative infinity if every block was
+     *         below the absolute gate (silence or a track shorter than 400 ms)
+     */
+    public double getIntegratedLoudness() {
+        double absolutePower = toPower(ABSOLUTE_GATE);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blockPowers[i] > absolutePower) {
+                sum += blockPowers[i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        double relativePower = toPower(toLoudness(sum / count) + RELATIVE_GATE);
+        double gatedSum = 0;
+        int gatedCount = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blockPowers[i] > absolutePower && blockPowers[i] > relativePower) {
+                gatedSum += blockPowers[i];
+                gatedCount++;
+            }
+        }
+        return toLoudness(gatedSum / gatedCount);
+    }
+
+    /**
+     * @return The largest absolute sample value seen so far (sample peak, not true peak)
+     */
+    public float getPeak() {
+        return peak;
+    }
+
+    private static double toLoudness(double power) {
+        return -0.691 + 10.0 * Math.log10(power);
+    }
+
+    private static double toPower(double loudness) {
+        return Math.pow(10.0, (loudness + 0.691) / 10.0);
+    }
+
+    /**
+     * Reads a source to its end and measures it.
+     *
+     * @param source The decoded audio
+     * @return The analyzer holding the results
+     * @throws IOException If the source cannot be read
+     */
+    public static LoudnessAnalyzer analyze(PcmSource source) throws IOException {
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(source.getSampleRate(), source.getChannels());
+        float[] buffer = new float[ANALYSIS_BLOCK_FRAMES * source.getChannels()];
+        int frames;
+        while ((frames = source.read(buffer, 0, ANALYSIS_BLOCK_FRAMES)) > 0) {
+            analyzer.process(buffer, 0, frames);
+        }
+        return analyzer;
+    }
+
+    /**
+     * Computes the playback gain that brings a track to the reference loudness,
+     * reduced where needed so that its peak does not clip.
+     *
+     * @param loudness The integrated loudness in LUFS
+     * @param peak The sample peak
+     * @return The linear gain, or 1 if the loudness is unknown
+     */
+    public static float gainFor(double loudness, float peak) {
+        if (Double.isNaN(loudness) || Double.isInfinite(loudness)) {
+            return 1.0f;
+        }
+        float gain = (float) Math.pow(10.0, (REFERENCE_LOUDNESS - loudness) / 20.0);
+        if (peak > 0 && gain * peak > 1.0f) {
+            gain = 1.0f / peak;
+        }
+        return gain;
+    }
+}
@@ -0,0 +1,102 @@
+package com.musicplayer;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the loudness of library songs in the background.
+ *
+ * Files are decoded and analyzed on a pool of low-priority daemon threads, one fewer
+ * than the number of cores so playback and the user interface always have a core to
+ * themselves. Results are stored in the {@link SongLibrary} as each file finishes, so
+ * the player can use them straight away. A file is never analyzed twice at the same
+ * time, and files that cannot be decoded are not retried by later scans.
+ */
+public class LoudnessScanner implements Closeable {
+    private final ExecutorService executor;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a scanner using all cores but one.
+     */
+    public LoudnessScanner() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a scanner.
+     *
+     * @param threads The number of files to analyze in parallel
+     */
+    public LoudnessScanner(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "loudness-scanner-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Analyzes every song in the library whose loudness is not known yet.
+     *
+     * @param library The library to scan
+     * @return A future completed with the number of songs analyzed once all are done
+     */
+    public CompletableFuture<Integer> scan(SongLibrary library) {
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        for (int id : library.unanalyzedIds()) {
+            Song song = library.get(id);
+            String path = song.getFilePath();
+            if (failed.contains(path) || !inProgress.add(path)) {
+                continue;
+            }
+            tasks.add(CompletableFuture.supplyAsync(() -> analyze(library, id, path), executor));
+        }
+
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            int analyzed = 0;
+            for (CompletableFuture<Boolean> task : tasks) {
+                if (task.join()) {
+                    analyzed++;
+                }
+            }
+            return analyzed;
+        });
+    }
+
+    private boolean analyze(SongLibrary library, int id, String path) {
+        try (PcmSource source = PcmSourceFactory.openDefault(new File(path))) {
+            LoudnessAnalyzer analyzer = LoudnessAnalyzer.analyze(source);
+            library.setLoudness(id, analyzer.getIntegratedLoudness(), analyzer.getPeak());
+            return true;
+        } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+            // A decoder can also fail on a malformed file with a runtime exception
+            failed.add(path);
+            System.err.println("Cannot analyze " + path + ": " + e.getMessage());
+            return false;
+        } finally {
+            inProgress.remove(path);
+        }
+    }
+
+    /**
+     * Stops the scanner threads. Analyses in progress are abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
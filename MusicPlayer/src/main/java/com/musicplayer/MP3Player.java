@@ -3,7 +3,16 @@ package com.musicplayer;
 import javax.sound.sampled.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Specialized player for handling MP3 files.
@@ -12,28 +21,158 @@ import java.util.concurrent.CountDownLatch;
  * For a full implementation, you would need to include a library like JAudioTagger or
  * JLayer for MP3 support. This implementation assumes the necessary codec is installed
  * or uses javax.sound's built-in capabilities for supported formats.
+ *
+ * All transport commands (load, play, pause, seek, stop, volume) are put on a
+ * lock-free queue and carried out in order by a single audio-control thread owned by
+ * the player, which is the only thread that changes playback state. Callers never
+ * block on audio I/O. When several loads are queued at once, for example from rapid
+ * next/next/next clicks, only the last one is performed and the transport commands
+ * aimed at the skipped tracks are dropped.
+ *
+ * The control thread also renders the audio: it decodes blocks of float samples,
+ * converts them to one fixed output format with a {@link FormatNormalizer}, applies
+ * volume through a {@link GainStage} ramp so changes never click, and when a
+ * crossfade is set mixes the outgoing track into the incoming one with a
+ * {@link Crossfader} before writing 16-bit PCM to its {@link AudioSink}. By default
+ * that is the sound card; a {@link FanOutSink} sends the one decoded stream to several
+ * outputs.
  */
 public class MP3Player {
-    private Clip audioClip;
-    private AudioInputStream audioStream;
-    private boolean isPlaying;
-    private boolean isPaused;
-    private long pausePosition;
-    private final CountDownLatch playbackCompleted;
-    private File currentFile;
 
     /**
-     * Creates a new MP3 player instance.
+     * Receives notifications about playback of the loaded track. Callbacks arrive on
+     * the audio-control thread.
+     */
+    public interface PlaybackListener {
+        /**
+         * Called when audio output actually starts or resumes.
+         */
+        void playbackStarted();
+
+        /**
+         * Called when the track has played to its end.
+         */
+        void playbackCompleted();
+    }
+
+    private enum CommandType {
+        LOAD, PLAY, PAUSE, SEEK, STOP, VOLUME, CLOSE
+    }
+
+    private static final class Command {
+        final CommandType type;
+        final File file;
+        final long position;
+        final float volume;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Command(CommandType type, File file, long position, float volume) {
+            this.type = type;
+            this.file = file;
+            this.position = position;
+            this.volume = volume;
+        }
+    }
+
+    // Frames rendered per block
+    private static final int BLOCK_FRAMES = 1024;
+    /** Sample rate every track is converted to, so the sink is opened once and never reopened. */
+    public static final float OUTPUT_RATE = 44100f;
+    /** Channel count every track is converted to. */
+    public static final int OUTPUT_CHANNELS = 2;
+    private static final int VOLUME_RAMP_MILLIS = 20;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final Thread controlThread;
+
+    // Written only by the control thread; volatile so any thread can read them
+    private final AudioSink sink;
+    private final PcmSourceFactory sources;
+    private volatile boolean sinkOpen;
+    private volatile boolean closed;
+    private volatile PcmSource source;
+    private volatile long sourceFrame;
+    private volatile boolean isPlaying;
+    private volatile boolean isPaused;
+    private volatile File currentFile;
+    private volatile CompletableFuture<Void> trackCompletion = CompletableFuture.completedFuture(null);
+
+    // Only touched on the control thread
+    private PcmSource outgoing;
+    private Crossfader crossfader;
+    private boolean endOfTrack;
+    private boolean notifyStarted;
+    private final GainStage volumeStage = new GainStage(1.0f);
+    private GainStage trackGain = new GainStage(1.0f);
+    private GainStage outgoingGain = new GainStage(1.0f);
+    private float[] mix = new float[0];
+    private float[] fade = new float[0];
+    private byte[] pending = new byte[0];
+    private int pendingOffset;
+    private int pendingLength;
+
+    private volatile int crossfadeMillis;
+    private volatile PlaybackListener playbackListener;
+
+    /**
+     * Creates a new MP3 player that plays on the default audio device and starts its
+     * audio-control thread.
      */
     public MP3Player() {
-        isPlaying = false;
-        isPaused = false;
-        pausePosition = 0;
-        playbackCompleted = new CountDownLatch(1);
+        this(new LineSink());
     }
 
     /**
-     * Loads an MP3 file for playback.
+     * Creates a new MP3 player writing to the given sink and starts its audio-control
+     * thread. The player owns the sink and closes it in {@link #close()}.
+     *
+     * @param sink Where rendered audio goes
+     */
+    public MP3Player(AudioSink sink) {
+        this(sink, PcmSourceFactory::openDefault);
+    }
+
+    /**
+     * Creates a new MP3 player writing to the given sink and decoding through the given
+     * factory, and starts its audio-control thread. Sources in another format are
+     * converted to the output format.
+     *
+     * @param sink Where rendered audio goes
+     * @param sources Opens decoded audio for a file
+     */
+    public MP3Player(AudioSink sink, PcmSourceFactory sources) {
+        this.sink = sink;
+        this.sources = sources;
+        controlThread = new Thread(this::runControlLoop, "audio-control");
+        controlThread.setDaemon(true);
+        controlThread.start();
+    }
+
+    /**
+     * @param listener The listener to notify about playback, or null for none
+     */
+    public void setPlaybackListener(PlaybackListener listener) {
+        this.playbackListener = listener;
+    }
+
+    private CompletableFuture<Void> submit(CommandType type, File file, long position, float volume) {
+        Command command = new Command(type, file, position, volume);
+        if (closed) {
+            command.result.completeExceptionally(new IllegalStateException("Player is closed"));
+            return command.result;
+        }
+        commands.offer(command);
+        if (closed && commands.remove(command)) {
+            // Closed while queuing, so the control thread may already be gone
+            command.result.completeExceptionally(new IllegalStateException("Player is closed"));
+        }
+        LockSupport.unpark(controlThread);
+        return command.result;
+    }
+
+    /**
+     * Loads an MP3 file for playback, waiting until it is ready.
      *
      * @param file The MP3 file to load
      * @throws IOException If the file cannot be read
@@ -41,150 +180,161 @@ public class MP3Player {
      * @throws LineUnavailableException If the audio line cannot be opened
      */
     public void load(File file) throws IOException, UnsupportedAudioFileException, LineUnavailableException {
-        // Close any existing audio resources
-        close();
-
-        currentFile = file;
-        audioStream = AudioSystem.getAudioInputStream(file);
-
-        // Get clip and open with the audio stream
-        audioClip = AudioSystem.getClip();
-        audioClip.open(audioStream);
-
-        // Add listener to handle when playback completes
-        audioClip.addLineListener(event -> {
-            if (event.getType() == LineEvent.Type.STOP) {
-                if (!isPaused && audioClip.getMicrosecondPosition() >= audioClip.getMicrosecondLength()) {
-                    // End of playback
-                    isPlaying = false;
-                    playbackCompleted.countDown();
-                }
+        try {
+            loadAsync(file).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + file, e);
+        } catch (CancellationException e) {
+            // A later load replaced this one, which is not an error for the caller
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof UnsupportedAudioFileException) {
+                throw (UnsupportedAudioFileException) cause;
+            } else if (cause instanceof LineUnavailableException) {
+                throw (LineUnavailableException) cause;
+            } else if (cause instanceof CancellationException) {
+                return;
             }
-        });
+            throw new IOException("Failed to load " + file, cause);
+        }
     }
 
     /**
-     * Starts or resumes playback.
+     * Queues a load of a file. The caller (typically the Swing event dispatch thread)
+     * never waits for file I/O or decoding. If another load is queued before this one
+     * starts, this one is skipped and its future completes with a
+     * {@link CancellationException}.
+     *
+     * @param file The file to load
+     * @return A future that completes once the file is ready to play
      */
-    public void play() {
-        if (audioClip == null) {
-            return;
-        }
+    public CompletableFuture<Void> loadAsync(File file) {
+        return loadAsync(file, 1.0f);
+    }
 
-        if (isPaused) {
-            audioClip.setMicrosecondPosition(pausePosition);
-            isPaused = false;
-        }
+    /**
+     * Queues a load of a file that is played with a fixed gain, such as its
+     * ReplayGain adjustment. The track gain applies on top of {@link #setVolume(float)}
+     * and only to this track, including while it crossfades with the next one.
+     *
+     * @param file The file to load
+     * @param trackGain The linear gain for this track
+     * @return A future that completes once the file is ready to play
+     */
+    public CompletableFuture<Void> loadAsync(File file, float trackGain) {
+        return submit(CommandType.LOAD, file, 0, trackGain);
+    }
 
-        audioClip.start();
-        isPlaying = true;
+    /**
+     * Starts or resumes playback.
+     *
+     * @return A future that completes once the command has been carried out
+     */
+    public CompletableFuture<Void> play() {
+        return submit(CommandType.PLAY, null, 0, 0);
     }
 
     /**
      * Pauses playback.
+     *
+     * @return A future that completes once the command has been carried out
      */
-    public void pause() {
-        if (audioClip != null && audioClip.isRunning()) {
-            pausePosition = audioClip.getMicrosecondPosition();
-            audioClip.stop();
-            isPaused = true;
-            isPlaying = false;
-        }
+    public CompletableFuture<Void> pause() {
+        return submit(CommandType.PAUSE, null, 0, 0);
     }
 
     /**
      * Stops playback and resets position to the beginning.
+     *
+     * @return A future that completes once the command has been carried out
      */
-    public void stop() {
-        if (audioClip != null) {
-            audioClip.stop();
-            audioClip.setMicrosecondPosition(0);
-            pausePosition = 0;
-            isPaused = false;
-            isPlaying = false;
-        }
+    public CompletableFuture<Void> stop() {
+        return submit(CommandType.STOP, null, 0, 0);
     }
 
     /**
-     * Closes audio resources.
+     * Closes audio resources and ends the audio-control thread. Commands submitted
+     * afterwards fail with an {@link IllegalStateException}. Closing again does nothing.
      */
     public void close() {
-        if (audioClip != null) {
-            audioClip.stop();
-            audioClip.close();
-            audioClip = null;
+        if (closed) {
+            return;
         }
-
-        if (audioStream != null) {
-            try {
-                audioStream.close();
-                audioStream = null;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        try {
+            submit(CommandType.CLOSE, null, 0, 0).join();
+        } catch (CompletionException e) {
+            // Another thread closed the player first
         }
-
-        isPlaying = false;
-        isPaused = false;
-        pausePosition = 0;
     }
 
     /**
-     * Waits for playback to complete.
+     * Waits for the current track to play to its end, or to be replaced or closed.
      *
      * @throws InterruptedException If the thread is interrupted
      */
     public void waitForPlaybackCompletion() throws InterruptedException {
-        playbackCompleted.await();
+        try {
+            trackCompletion.get();
+        } catch (CancellationException | ExecutionException e) {
+            // The track was replaced or closed before it finished
+        }
+    }
+
+    /**
+     * Returns a future for the end of the currently loaded track. Each loaded track has
+     * its own future; it completes normally when the track plays to its end and is
+     * cancelled if the track is replaced or closed first.
+     *
+     * @return The completion future of the current track
+     */
+    public CompletableFuture<Void> getTrackCompletion() {
+        return trackCompletion;
     }
 
     /**
      * Sets the playback volume.
      *
      * @param volume Volume level (0.0 to 1.0)
+     * @return A future that completes once the command has been carried out
      */
-    public void setVolume(float volume) {
-        if (audioClip == null) {
-            return;
-        }
-
-        // Get the gain control from the clip
-        FloatControl gainControl = (FloatControl) audioClip.getControl(FloatControl.Type.MASTER_GAIN);
-
-        // Convert the volume (0.0 to 1.0) to decibels
-        // The conversion formula for decibels is: 20 * log10(volume)
-        // Min value is usually -80dB (silent), max is 6dB (very loud)
-        float dB = 20f * (float) Math.log10(volume);
-
-        // Ensure the gain is within the control's range
-        float min = gainControl.getMinimum();
-        float max = gainControl.getMaximum();
-
-        if (dB < min) {
-            dB = min;
-        } else if (dB > max) {
-            dB = max;
-        }
+    public CompletableFuture<Void> setVolume(float volume) {
+        return submit(CommandType.VOLUME, null, 0, volume);
+    }
 
-        gainControl.setValue(dB);
+    /**
+     * Sets the length of the crossfade used when a new track is loaded while one is
+     * playing. With a crossfade, the new track fades in over the old one and playback
+     * continues without a separate call to {@link #play()}.
+     *
+     * @param millis The crossfade length in milliseconds, or 0 to cut between tracks
+     */
+    public void setCrossfade(int millis) {
+        this.crossfadeMillis = Math.max(0, millis);
     }
 
     /**
      * @return The current playback position in milliseconds
      */
     public long getCurrentPosition() {
-        if (audioClip != null) {
-            return audioClip.getMicrosecondPosition() / 1000;
+        PcmSource current = source;
+        if (current == null) {
+            return 0;
         }
-        return 0;
+        // Frames handed to the sink but not yet heard don't count yet
+        long heard = Math.max(0, sourceFrame - queuedFrames());
+        return (long) (heard * 1000 / current.getSampleRate());
     }
 
     /**
      * @return The total length of the audio in milliseconds
      */
     public long getTotalLength() {
-        if (audioClip != null) {
-            return audioClip.getMicrosecondLength() / 1000;
+        PcmSource current = source;
+        if (current != null && current.getFrameLength() > 0) {
+            return (long) (current.getFrameLength() * 1000 / current.getSampleRate());
         }
         return 0;
     }
@@ -193,27 +343,10 @@ public class MP3Player {
      * Sets the playback position.
      *
      * @param position Position in milliseconds
+     * @return A future that completes once the command has been carried out
      */
-    public void setPosition(long position) {
-        if (audioClip != null) {
-            // Convert milliseconds to microseconds
-            long microPos = position * 1000;
-
-            // Ensure position is within bounds
-            if (microPos < 0) {
-                microPos = 0;
-            } else if (microPos > audioClip.getMicrosecondLength()) {
-                microPos = audioClip.getMicrosecondLength();
-            }
-
-            boolean wasPlaying = isPlaying && !isPaused;
-            audioClip.stop();
-            audioClip.setMicrosecondPosition(microPos);
-
-            if (wasPlaying) {
-                audioClip.start();
-            }
-        }
+    public CompletableFuture<Void> setPosition(long position) {
+        return submit(CommandType.SEEK, null, position, 0);
     }
 
     /**
@@ -236,4 +369,332 @@ public class MP3Player {
     public File getCurrentFile() {
         return currentFile;
     }
+
+    private long queuedFrames() {
+        return sinkOpen ? sink.getBufferedFrames() : 0;
+    }
+
+    private void runControlLoop() {
+        List<Command> batch = new ArrayList<>();
+        while (true) {
+            Command command;
+            while ((command = commands.poll()) != null) {
+                batch.add(command);
+            }
+
+            if (!batch.isEmpty()) {
+                for (Command next : collapse(batch)) {
+                    if (closed) {
+                        next.result.completeExceptionally(new IllegalStateException("Player is closed"));
+                        continue;
+                    }
+                    try {
+                        execute(next);
+                        next.result.complete(null);
+                    } catch (Exception e) {
+                        next.result.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+            }
+
+            if (closed) {
+                while ((command = commands.poll()) != null) {
+                    command.result.completeExceptionally(new IllegalStateException("Player is closed"));
+                }
+                return;
+            }
+
+            if (isPlaying && source != null) {
+                try {
+                    render();
+                } catch (IOException | RuntimeException e) {
+                    // A decoding error ends the track rather than killing the control thread
+                    e.printStackTrace();
+                    endOfTrack = true;
+                    pendingLength = 0;
+                }
+            } else if (commands.isEmpty()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Drops work made pointless by a later load in the same batch: earlier loads are
+     * cancelled, and play/pause/seek/stop commands for those tracks are skipped.
+     * Volume changes are kept, since they outlive the track.
+     */
+    private static List<Command> collapse(List<Command> batch) {
+        int lastLoad = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).type == CommandType.LOAD) {
+                lastLoad = i;
+            }
+        }
+        if (lastLoad <= 0) {
+            return batch;
+        }
+
+        List<Command> kept = new ArrayList<>(batch.size() - lastLoad);
+        for (int i = 0; i < lastLoad; i++) {
+            Command command = batch.get(i);
+            switch (command.type) {
+                case LOAD:
+                    command.result.cancel(false);
+                    break;
+                case PLAY:
+                case PAUSE:
+                case SEEK:
+                case STOP:
+                    command.result.complete(null);
+                    break;
+                default:
+                    kept.add(command);
+            }
+        }
+        kept.addAll(batch.subList(lastLoad, batch.size()));
+        return kept;
+    }
+
+    private void execute(Command command) throws Exception {
+        switch (command.type) {
+            case LOAD:
+                loadTrack(command.file, command.volume);
+                break;
+            case PLAY:
+                if (source != null) {
+                    if (endOfTrack && pendingLength == 0) {
+                        // Played to the end before, so start over
+                        seekTo(0);
+                    }
+                    sink.start();
+                    isPaused = false;
+                    isPlaying = true;
+                    notifyStarted = true;
+                }
+                break;
+            case PAUSE:
+                if (isPlaying) {
+                    sink.stop();
+                    isPaused = true;
+                    isPlaying = false;
+                }
+                break;
+            case STOP:
+                if (source != null) {
+                    isPaused = false;
+                    isPlaying = false;
+                    sink.stop();
+                    seekTo(0);
+                }
+                break;
+            case SEEK:
+                if (source != null) {
+                    seekTo(Math.max(0, (long) (command.position * source.getSampleRate() / 1000)));
+                }
+                break;
+            case VOLUME:
+                volumeStage.setGain(Math.max(0f, command.volume), rampFrames(VOLUME_RAMP_MILLIS));
+                break;
+            case CLOSE:
+                // Set first so the loop ends even if closing fails
+                closed = true;
+                closeTrack();
+                closeSink();
+                break;
+            default:
+                throw new IllegalStateException("Unknown command " + command.type);
+        }
+    }
+
+    private int rampFrames(int millis) {
+        return (int) (OUTPUT_RATE * millis / 1000);
+    }
+
+    private void loadTrack(File file, float gain) throws IOException, UnsupportedAudioFileException, LineUnavailableException {
+        PcmSource next = openSource(file);
+        PcmSource previous = source;
+
+        boolean crossfade = isPlaying && previous != null && crossfadeMillis > 0 && !endOfTrack;
+        if (crossfade) {
+            // Keep the sink running and fade the old track out under the new one
+            closeOutgoing();
+            outgoing = previous;
+            outgoingGain = trackGain;
+            crossfader = new Crossfader((int) (next.getSampleRate() * crossfadeMillis / 1000));
+        } else {
+            closeTrack();
+            try {
+                openSink();
+            } catch (IOException | LineUnavailableException | RuntimeException e) {
+                next.close();
+                throw e;
+            }
+        }
+
+        trackCompletion.cancel(false);
+        trackCompletion = new CompletableFuture<>();
+        trackGain = new GainStage(gain);
+        currentFile = file;
+        sourceFrame = 0;
+        endOfTrack = false;
+        source = next;
+    }
+
+    /**
+     * Opens the decoder for a file, converted to the output format.
+     */
+    private PcmSource openSource(File file) throws IOException, UnsupportedAudioFileException {
+        PcmSource opened = sources.open(file);
+        if (opened.getSampleRate() == OUTPUT_RATE && opened.getChannels() == OUTPUT_CHANNELS) {
+            return opened;
+        }
+        return new FormatNormalizer(opened, OUTPUT_RATE, OUTPUT_CHANNELS);
+    }
+
+    private void openSink() throws IOException, LineUnavailableException {
+        if (sinkOpen) {
+            sink.flush();
+            return;
+        }
+        sink.open(new AudioFormat(OUTPUT_RATE, 16, OUTPUT_CHANNELS, true, false));
+        sinkOpen = true;
+    }
+
+    private void closeSink() {
+        if (sinkOpen) {
+            sinkOpen = false;
+            try {
+                sink.stop();
+                sink.flush();
+                sink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void seekTo(long frame) throws IOException {
+        long length = source.getFrameLength();
+        long target = length > 0 ? Math.min(frame, length) : frame;
+        closeOutgoing();
+        source.seek(target);
+        sink.flush();
+        pendingLength = 0;
+        sourceFrame = target;
+        endOfTrack = false;
+    }
+
+    /**
+     * Renders and writes at most one block, without blocking on the sink, so queued
+     * commands are picked up within a couple of milliseconds.
+     */
+    private void render() throws IOException {
+        if (pendingOffset < pendingLength) {
+            int frameSize = OUTPUT_CHANNELS * 2;
+            int writable = Math.min(sink.available(), pendingLength - pendingOffset) / frameSize * frameSize;
+            if (writable == 0) {
+                LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+                return;
+            }
+            pendingOffset += sink.write(pending, pendingOffset, writable);
+            if (notifyStarted) {
+                notifyStarted = false;
+                PlaybackListener listener = playbackListener;
+                if (listener != null) {
+                    listener.playbackStarted();
+                }
+            }
+            return;
+        }
+
+        if (endOfTrack) {
+            if (queuedFrames() > 0) {
+                LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+                return;
+            }
+            trackEnded();
+            return;
+        }
+
+        int channels = source.getChannels();
+        int samples = BLOCK_FRAMES * channels;
+        if (mix.length < samples) {
+            mix = new float[samples];
+            fade = new float[samples];
+            pending = new byte[samples * 2];
+        }
+
+        int frames = source.read(mix, 0, BLOCK_FRAMES);
+        if (frames < 0) {
+            endOfTrack = true;
+            closeOutgoing();
+            return;
+        }
+
+        trackGain.process(mix, 0, frames, channels);
+        if (crossfader != null) {
+            int outFrames = Math.max(0, outgoing.read(fade, 0, frames));
+            Arrays.fill(fade, outFrames * channels, frames * channels, 0f);
+            outgoingGain.process(fade, 0, outFrames, channels);
+            crossfader.process(mix, fade, 0, frames, channels);
+            if (crossfader.isFinished() || outFrames < frames) {
+                closeOutgoing();
+            }
+        }
+
+        volumeStage.process(mix, 0, frames, channels);
+        PcmConverter.toPcm16(mix, 0, pending, 0, frames * channels);
+        pendingOffset = 0;
+        pendingLength = frames * channels * 2;
+        sourceFrame += frames;
+    }
+
+    private void trackEnded() {
+        // End of playback
+        isPlaying = false;
+        sink.stop();
+        trackCompletion.complete(null);
+        PlaybackListener listener = playbackListener;
+        if (listener != null) {
+            listener.playbackCompleted();
+        }
+    }
+
+    private void closeOutgoing() {
+        if (outgoing != null) {
+            try {
+                outgoing.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            outgoing = null;
+        }
+        crossfader = null;
+    }
+
+    private void closeTrack() {
+        closeOutgoing();
+        PcmSource current = source;
+        if (current != null) {
+            source = null;
+            try {
+                current.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (sinkOpen) {
+            sink.stop();
+            sink.flush();
+        }
+
+        trackCompletion.cancel(false);
+        pendingLength = 0;
+        pendingOffset = 0;
+        endOfTrack = false;
+        isPlaying = false;
+        isPaused = false;
+    }
 }
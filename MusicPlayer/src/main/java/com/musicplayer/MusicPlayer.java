@@ -1,42 +1,154 @@
 package com.musicplayer;
 
-import javax.sound.sampled.*;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MusicPlayer extends JFrame {
-    private ArrayList<Song> playlist;
-    private int currentSongIndex;
-    private Clip audioClip;
-    private boolean isPlaying;
-
-    private JList<String> playlistView;
-    private DefaultListModel<String> playlistModel;
+    // How many near misses to show when a search has no exact matches
+    private static final int FUZZY_RESULTS = 50;
+    // Cover art sizes in the playlist rows and next to the song playing
+    private static final int ROW_ART_SIZE = 32;
+    private static final int PLAYING_ART_SIZE = 96;
+
+    private final MP3Player player;
+    private volatile boolean isPlaying;
+
+    // Song whose load is in flight, and the song that was paused (EDT only)
+    private Song loadingSong;
+    private Song pausedSong;
+    // Song started most recently and not yet recorded in the play history (EDT only)
+    private Song playingSong;
+    private long playingSinceMillis;
+    private volatile long playRequestedNanos;
+    private PlaybackTicker progressTicker;
+
+    private JList<Song> playlistView;
+    private PlaylistListModel playlistModel;
     private JButton playButton, pauseButton, stopButton, nextButton, prevButton, addButton, removeButton;
     private JLabel currentSongLabel;
     private JProgressBar songProgressBar;
     private JTextField searchField;
+    private JPopupMenu suggestionPopup;
+    private DefaultListModel<Autocomplete.Suggestion> suggestionModel;
+    private JList<Autocomplete.Suggestion> suggestionList;
+    private String acceptedSuggestion;
     private JComboBox<String> sortByComboBox;
     private JComboBox<String> filterByComboBox;
     private JCheckBox ascendingCheckBox;
+    private JCheckBox shuffleCheckBox;
+
+    // Workspace holding the shared song library and the playlist being shown
+    private Workspace workspace;
+
+    // Measures song loudness in the background so tracks play at an even level
+    private final LoudnessScanner loudnessScanner = new LoudnessScanner();
+    // Runs fuzzy searches, one at a time so later ones reuse the index the first one built
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fuzzy-search");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     // PlaylistManager instance to handle playlist operations
     private PlaylistManager playlistManager;
 
+    // Suggests titles, artists and albums under the search field as the user types
+    private Autocomplete autocomplete;
+
+    // What plays next, by library id, so editing the playlist does not change it
+    private PlayQueue playQueue;
+    // Holds the start of upcoming songs in memory, and the player reads through it
+    private ReadAheadCache readAhead;
+
+    // Play order used by Next while shuffle is on; the playlist itself keeps its order
+    private ShuffleOrder shuffleOrder;
+
+    // Log of every song played, or null if it could not be opened
+    private PlayHistory playHistory;
+    // Where the library is saved, so the song ids in the history mean the same songs
+    // in the next session, and how many songs the saved copy has
+    private Path libraryFile;
+    private int savedLibrarySize;
+
+    // Album art thumbnails, loaded off the EDT; only in memory if the disk cache could not be opened
+    private CoverArtCache coverArt;
+    // Song whose art currentSongLabel shows (EDT only)
+    private Song labelSong;
+
     public MusicPlayer() {
         super("Java Music Player");
 
         // Initialize playlist
-        playlistManager = new PlaylistManager();
-        playlist = playlistManager.getPlaylist();
-        currentSongIndex = -1;
+        Path home = Paths.get(System.getProperty("user.home"), ".musicplayer");
+        libraryFile = home.resolve("library.ser");
+        SongLibrary library = null;
+        try {
+            library = Files.exists(libraryFile) ? SongLibrary.load(libraryFile) : new SongLibrary();
+        } catch (IOException e) {
+            System.err.println("Song library unavailable: " + e.getMessage());
+        }
+        workspace = library != null ? new Workspace(library) : new Workspace();
+        savedLibrarySize = workspace.getLibrary().size();
+        workspace.create("Default");
+        playlistManager = workspace.open("Default");
         isPlaying = false;
+        playQueue = new PlayQueue(workspace.getLibrary());
+        readAhead = new ReadAheadCache();
+        playQueue.setPrefetcher(readAhead);
+        // The history refers to songs by library id, so it is only kept with a saved library
+        if (library != null) {
+            try {
+                playHistory = PlayHistory.open(home.resolve("history"));
+            } catch (IOException e) {
+                System.err.println("Play history unavailable: " + e.getMessage());
+            }
+        }
+        try {
+            coverArt = new CoverArtCache(home.resolve("covers"));
+        } catch (IOException e) {
+            System.err.println("Cover art will not be kept on disk: " + e.getMessage());
+            coverArt = new CoverArtCache();
+        }
+
+        // Playback engine; loads run on its own thread and report back through callbacks
+        player = new MP3Player(new LineSink(), readAhead);
+        player.setPlaybackListener(new MP3Player.PlaybackListener() {
+            @Override
+            public void playbackStarted() {
+                long requested = playRequestedNanos;
+                if (requested != 0) {
+                    playRequestedNanos = 0;
+                    System.out.println("Time to first audio: "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requested) + " ms");
+                }
+            }
+
+            @Override
+            public void playbackCompleted() {
+                // Song ended naturally, go to next song
+                SwingUtilities.invokeLater(() -> {
+                    if (isPlaying) {
+                        recordPlay(false);
+                        nextSong();
+                    }
+                });
+            }
+        });
 
         // Set up the GUI
         setupUI();
@@ -44,6 +156,10 @@ public class MusicPlayer extends JFrame {
         // Set up event listeners
         setupEventListeners();
 
+        // One ticker per player drives the progress bar for every track
+        progressTicker = new PlaybackTicker(songProgressBar, player::getCurrentPosition,
+                player::getTotalLength, this::updateProgress);
+
         // Add some test songs for demonstration
         addTestSongs();
 
@@ -70,9 +186,6 @@ public class MusicPlayer extends JFrame {
         playlistManager.addSong(new Song("Billie Jean", "/path/to/billie.mp3", "Michael Jackson", "Thriller", 294));
         playlistManager.addSong(new Song("Like a Rolling Stone", "/path/to/rolling.mp3", "Bob Dylan", "Highway 61 Revisited", 373));
 
-        // Update the playlist view to show the test songs
-        updatePlaylistView();
-
         // Output test message
         System.out.println("Added 10 test songs to playlist");
         System.out.println("You can now test sorting and filtering functionality");
@@ -84,8 +197,10 @@ public class MusicPlayer extends JFrame {
 
         // Playlist panel
         JPanel playlistPanel = new JPanel(new BorderLayout());
-        playlistModel = new DefaultListModel<>();
+        // The model follows playlist change events, so edits never rebuild the whole list
+        playlistModel = new PlaylistListModel(playlistManager);
         playlistView = new JList<>(playlistModel);
+        setupCoverArt();
         JScrollPane scrollPane = new JScrollPane(playlistView);
 
         // Playlist header panel with search and sort options
@@ -100,6 +215,7 @@ public class MusicPlayer extends JFrame {
         searchPanel.add(searchField, BorderLayout.CENTER);
         searchPanel.add(searchButton, BorderLayout.EAST);
         playlistHeaderPanel.add(searchPanel, BorderLayout.NORTH);
+        setupSuggestions();
 
         // Sort and filter panel
         JPanel sortFilterPanel = new JPanel(new GridLayout(2, 1));
@@ -159,12 +275,14 @@ public class MusicPlayer extends JFrame {
         pauseButton = new JButton("Pause");
         stopButton = new JButton("Stop");
         nextButton = new JButton("Next");
+        shuffleCheckBox = new JCheckBox("Shuffle");
 
         controlPanel.add(prevButton);
         controlPanel.add(playButton);
         controlPanel.add(pauseButton);
         controlPanel.add(stopButton);
         controlPanel.add(nextButton);
+        controlPanel.add(shuffleCheckBox);
         playerPanel.add(controlPanel, BorderLayout.SOUTH);
 
         // Add components to main layout
@@ -180,8 +298,140 @@ public class MusicPlayer extends JFrame {
         // Clear filter button action
         clearFilterButton.addActionListener(e -> clearFilter());
 
-        // Enter key in search field triggers search
-        searchField.addActionListener(e -> searchPlaylist());
+        // Enter key in search field triggers search, taking the highlighted suggestion if any
+        searchField.addActionListener(e -> {
+            acceptSuggestion(suggestionList.getSelectedIndex());
+            searchPlaylist();
+        });
+    }
+
+    /**
+     * Shows album art in the playlist rows and next to the song playing. Rows only
+     * look thumbnails up; missing ones load in the background and the list repaints
+     * when they arrive, so scrolling never waits on image decoding.
+     */
+    private void setupCoverArt() {
+        // A fixed row height also spares the list from measuring every row
+        playlistView.setFixedCellHeight(ROW_ART_SIZE + 4);
+        Icon blank = new Icon() {
+            @Override
+            public void paintIcon(Component c, Graphics g, int x, int y) {
+                // Keeps the titles lined up while art loads
+            }
+
+            @Override
+            public int getIconWidth() {
+                return ROW_ART_SIZE;
+            }
+
+            @Override
+            public int getIconHeight() {
+                return ROW_ART_SIZE;
+            }
+        };
+        playlistView.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                Icon art = value instanceof Song ? coverArt.getIcon((Song) value, ROW_ART_SIZE) : null;
+                setIcon(art != null ? art : blank);
+                setIconTextGap(8);
+                return this;
+            }
+        });
+        coverArt.setListener(key -> SwingUtilities.invokeLater(() -> {
+            playlistView.repaint();
+            if (labelSong != null && key.equals(CoverArtCache.keyOf(labelSong))) {
+                currentSongLabel.setIcon(coverArt.getIcon(labelSong, PLAYING_ART_SIZE));
+            }
+        }));
+    }
+
+    /**
+     * Shows a song's art next to the current song label, or none for null.
+     */
+    private void showArt(Song song) {
+        labelSong = song;
+        currentSongLabel.setIcon(song != null ? coverArt.getIcon(song, PLAYING_ART_SIZE) : null);
+    }
+
+    private void setupSuggestions() {
+        autocomplete = new Autocomplete(playlistManager);
+        suggestionModel = new DefaultListModel<>();
+        suggestionList = new JList<>(suggestionModel);
+        // The list must never take the focus from the search field while typing
+        suggestionList.setFocusable(false);
+        suggestionPopup = new JPopupMenu();
+        suggestionPopup.setFocusable(false);
+        suggestionPopup.add(suggestionList);
+
+        suggestionList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                acceptSuggestion(suggestionList.locationToIndex(e.getPoint()));
+                searchPlaylist();
+            }
+        });
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(() -> updateSuggestions());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(() -> updateSuggestions());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Attribute changes do not alter the text
+            }
+        });
+        searchField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!suggestionPopup.isVisible()) {
+                    return;
+                }
+                int selected = suggestionList.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                    suggestionList.setSelectedIndex(Math.min(selected + 1, suggestionModel.size() - 1));
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_UP) {
+                    suggestionList.setSelectedIndex(Math.max(selected - 1, 0));
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    suggestionPopup.setVisible(false);
+                }
+            }
+        });
+    }
+
+    private void updateSuggestions() {
+        String text = searchField.getText();
+        // Nothing to suggest for a blank field, or for a suggestion that was just taken
+        boolean suggest = !text.trim().isEmpty() && searchField.isFocusOwner() && !text.equals(acceptedSuggestion);
+        List<Autocomplete.Suggestion> suggestions = suggest
+                ? autocomplete.suggest(text, Autocomplete.MAX_SUGGESTIONS) : List.of();
+        suggestionModel.clear();
+        suggestions.forEach(suggestionModel::addElement);
+        suggestionPopup.setVisible(false);
+        if (!suggestions.isEmpty()) {
+            suggestionList.setVisibleRowCount(suggestions.size());
+            suggestionList.setFixedCellWidth(searchField.getWidth());
+            suggestionPopup.pack();
+            suggestionPopup.show(searchField, 0, searchField.getHeight());
+        }
+    }
+
+    private void acceptSuggestion(int index) {
+        if (suggestionPopup.isVisible() && index >= 0 && index < suggestionModel.size()) {
+            acceptedSuggestion = suggestionModel.get(index).getText();
+            searchField.setText(acceptedSuggestion);
+        }
+        suggestionPopup.setVisible(false);
     }
 
     private void setupEventListeners() {
@@ -192,15 +442,14 @@ public class MusicPlayer extends JFrame {
         stopButton.addActionListener(e -> stopSong());
         nextButton.addActionListener(e -> nextSong());
         prevButton.addActionListener(e -> previousSong());
+        shuffleCheckBox.addActionListener(e -> setShuffle(shuffleCheckBox.isSelected()));
 
         playlistView.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2) {
-                    int index = playlistView.getSelectedIndex();
+                    int index = getSelectedPlaylistIndex();
                     if (index >= 0) {
-                        currentSongIndex = index;
-                        stopSong();
-                        playSong();
+                        playFromPlaylist(index);
                     }
                 }
             }
@@ -209,42 +458,59 @@ public class MusicPlayer extends JFrame {
         // Add popup menu for playlist
         JPopupMenu contextMenu = new JPopupMenu();
         JMenuItem playSongItem = new JMenuItem("Play");
+        JMenuItem playNextItem = new JMenuItem("Play Next");
+        JMenuItem enqueueItem = new JMenuItem("Add to Queue");
         JMenuItem removeSongItem = new JMenuItem("Remove");
         JMenuItem moveUpItem = new JMenuItem("Move Up");
         JMenuItem moveDownItem = new JMenuItem("Move Down");
         JMenuItem propertiesItem = new JMenuItem("Properties");
 
         playSongItem.addActionListener(e -> {
-            int index = playlistView.getSelectedIndex();
+            int index = getSelectedPlaylistIndex();
+            if (index >= 0) {
+                playFromPlaylist(index);
+            }
+        });
+
+        playNextItem.addActionListener(e -> {
+            int index = getSelectedPlaylistIndex();
             if (index >= 0) {
-                currentSongIndex = index;
-                stopSong();
-                playSong();
+                playQueue.playNext(workspace.getLibrary().add(playlistManager.getSong(index)));
+            }
+        });
+
+        enqueueItem.addActionListener(e -> {
+            int index = getSelectedPlaylistIndex();
+            if (index >= 0) {
+                playQueue.enqueue(workspace.getLibrary().add(playlistManager.getSong(index)));
             }
         });
 
         removeSongItem.addActionListener(e -> removeSong());
 
         moveUpItem.addActionListener(e -> {
-            int index = playlistView.getSelectedIndex();
+            int index = getSelectedPlaylistIndex();
             if (index > 0) {
                 playlistManager.moveSong(index, index - 1);
-                updatePlaylistView();
-                playlistView.setSelectedIndex(index - 1);
+                // Search results stay in place, so only the full playlist's row moves
+                if (!playlistModel.isFiltered()) {
+                    playlistView.setSelectedIndex(index - 1);
+                }
             }
         });
 
         moveDownItem.addActionListener(e -> {
-            int index = playlistView.getSelectedIndex();
+            int index = getSelectedPlaylistIndex();
             if (index >= 0 && index < playlistManager.size() - 1) {
                 playlistManager.moveSong(index, index + 1);
-                updatePlaylistView();
-                playlistView.setSelectedIndex(index + 1);
+                if (!playlistModel.isFiltered()) {
+                    playlistView.setSelectedIndex(index + 1);
+                }
             }
         });
 
         propertiesItem.addActionListener(e -> {
-            int index = playlistView.getSelectedIndex();
+            int index = getSelectedPlaylistIndex();
             if (index >= 0) {
                 Song song = playlistManager.getSong(index);
                 JOptionPane.showMessageDialog(this,
@@ -259,6 +525,8 @@ public class MusicPlayer extends JFrame {
         });
 
         contextMenu.add(playSongItem);
+        contextMenu.add(playNextItem);
+        contextMenu.add(enqueueItem);
         contextMenu.add(removeSongItem);
         contextMenu.addSeparator();
         contextMenu.add(moveUpItem);
@@ -269,11 +537,18 @@ public class MusicPlayer extends JFrame {
         playlistView.setComponentPopupMenu(contextMenu);
     }
 
-    private void updatePlaylistView() {
-        playlistModel.clear();
-        for (Song song : playlist) {
-            playlistModel.addElement(song.getTitle() + " - " + song.getArtist());
+    /**
+     * Maps the selected row to a playlist index, which differs from the row number
+     * while search results are shown.
+     *
+     * @return The playlist index of the selected song, or -1 if nothing is selected
+     */
+    private int getSelectedPlaylistIndex() {
+        int row = playlistView.getSelectedIndex();
+        if (row < 0 || !playlistModel.isFiltered()) {
+            return row;
         }
+        return playlistManager.snapshot().indexOf(playlistModel.getElementAt(row));
     }
 
     private void sortPlaylist() {
@@ -314,8 +589,6 @@ public class MusicPlayer extends JFrame {
                 }
                 break;
         }
-
-        updatePlaylistView();
     }
 
     private void searchPlaylist() {
@@ -333,6 +606,21 @@ public class MusicPlayer extends JFrame {
 
         if (filterBy == null || filterBy.equals("All")) {
             filteredList = playlistManager.search(searchTerm);
+            if (filteredList.isEmpty()) {
+                // Nothing contains the text as typed, so look for near misses, off the EDT
+                // since the first search after a change builds the index
+                searchExecutor.execute(() -> {
+                    List<Song> closest = playlistManager.fuzzySearch(searchTerm, FUZZY_RESULTS);
+                    SwingUtilities.invokeLater(() -> {
+                        // The search may have changed while this one ran
+                        if (searchTerm.equals(searchField.getText().trim())
+                                && Objects.equals(filterBy, filterByComboBox.getSelectedItem())) {
+                            playlistModel.showFiltered(closest);
+                            System.out.println("No exact matches, showing " + closest.size() + " closest");
+                        }
+                    });
+                });
+            }
         } else {
             switch (filterBy) {
                 case "Title":
@@ -350,17 +638,14 @@ public class MusicPlayer extends JFrame {
         }
 
         // Update view with filtered results
-        playlistModel.clear();
-        for (Song song : filteredList) {
-            playlistModel.addElement(song.getTitle() + " - " + song.getArtist());
-        }
+        playlistModel.showFiltered(filteredList);
 
         System.out.println("Found " + filteredList.size() + " matching songs");
     }
 
     private void clearFilter() {
         searchField.setText("");
-        updatePlaylistView();
+        playlistModel.clearFilter();
         System.out.println("Filter cleared");
     }
 
@@ -383,119 +668,224 @@ public class MusicPlayer extends JFrame {
             File file = fileChooser.getSelectedFile();
             Song song = new Song(file.getName(), file.getAbsolutePath());
             playlistManager.addSong(song);
-            playlistModel.addElement(song.getTitle());
-
-            // If this is the first song, set it as current
-            if (playlistManager.size() == 1) {
-                currentSongIndex = 0;
-            }
+            workspace.getLibrary().add(song);
+            loudnessScanner.scan(workspace.getLibrary());
         }
     }
 
     private void removeSong() {
-        int index = playlistView.getSelectedIndex();
+        int index = getSelectedPlaylistIndex();
         if (index < 0) return;
 
-        if (index == currentSongIndex) {
+        // The queue refers to songs by id, so only removing the song playing matters
+        if (playlistManager.getSong(index) == playQueue.getCurrentSong()) {
             stopSong();
-            currentSongIndex = -1;
-        } else if (index < currentSongIndex) {
-            currentSongIndex--;
+            playQueue.clearCurrent();
         }
 
         playlistManager.removeSong(index);
-        playlistModel.remove(index);
     }
 
     private void playSong() {
-        if (playlistManager.size() == 0 || currentSongIndex < 0 || currentSongIndex >= playlistManager.size()) {
-            JOptionPane.showMessageDialog(this, "No song selected to play.");
+        if (isPlaying) {
             return;
         }
 
-        if (isPlaying && audioClip != null) {
-            audioClip.start();
-            return;
+        if (playQueue.getCurrentSong() == null) {
+            // Nothing playing yet, so start from the selected song or the top
+            if (playlistManager.size() == 0) {
+                JOptionPane.showMessageDialog(this, "No song selected to play.");
+                return;
+            }
+            playFrom(Math.max(getSelectedPlaylistIndex(), 0));
         }
+        Song song = playQueue.getCurrentSong();
 
-        try {
-            Song song = playlistManager.getSong(currentSongIndex);
+        // Resume in place if this is the song that was paused
+        if (song == pausedSong) {
+            pausedSong = null;
+            isPlaying = true;
+            player.play();
             currentSongLabel.setText("Now playing: " + song.getTitle() + " - " + song.getArtist());
+            showArt(song);
+            progressTicker.start();
+            return;
+        }
 
-            // For demonstration purposes, we'll simulate playback without actually playing audio
-            System.out.println("Playing: " + song.getTitle() + " by " + song.getArtist() + " [Simulated]");
-            isPlaying = true;
+        // Load and decode on the player's loader thread so the UI never blocks on I/O
+        currentSongLabel.setText("Loading: " + song.getTitle() + " - " + song.getArtist());
+        showArt(song);
+        isPlaying = true;
+        loadingSong = song;
+        playRequestedNanos = System.nanoTime();
+        SongLibrary library = workspace.getLibrary();
+        float trackGain = library.getReplayGain(library.add(song));
+        player.loadAsync(new File(song.getFilePath()), trackGain).whenComplete((ignored, error) ->
+                SwingUtilities.invokeLater(() -> songLoaded(song, error)));
+    }
 
-            // Set up progress bar update for demonstration
-            final int duration = song.getDuration();
-            if (duration > 0) {
-                new Thread(() -> {
-                    for (int progress = 0; progress <= 100 && isPlaying; progress++) {
-                        final int currentProgress = progress;
-                        SwingUtilities.invokeLater(() -> songProgressBar.setValue(currentProgress));
-                        try {
-                            Thread.sleep(duration * 10); // Scale the actual duration for demo purposes
-                        } catch (InterruptedException e) {
-                            break;
-                        }
-                    }
+    /**
+     * Called on the event dispatch thread when an asynchronous load finishes.
+     */
+    private void songLoaded(Song song, Throwable error) {
+        if (song != loadingSong) {
+            // The user moved on to another song (or stopped) while this one was loading
+            return;
+        }
+        loadingSong = null;
 
-                    if (isPlaying) {
-                        // Song ended naturally, go to next song
-                        SwingUtilities.invokeLater(() -> nextSong());
-                    }
-                }).start();
-            }
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            isPlaying = false;
+            currentSongLabel.setText("Cannot play: " + song.getTitle() + " (" + cause.getMessage() + ")");
+            showArt(null);
+            System.out.println("Error playing " + song.getFilePath() + ": " + cause);
+            return;
+        }
 
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error playing file: " + e.getMessage(),
-                                         "Playback Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
+        currentSongLabel.setText("Now playing: " + song.getTitle() + " - " + song.getArtist());
+        System.out.println("Playing: " + song.getTitle() + " by " + song.getArtist());
+        player.play();
+        progressTicker.start();
+        playingSong = song;
+        playingSinceMillis = System.currentTimeMillis();
+
+        // Count the play through the playlist so suggestions rank by what is listened to
+        int index = playlistManager.snapshot().indexOf(song);
+        if (index >= 0) {
+            playlistManager.updateSong(index, Song::incrementPlayCount);
         }
     }
 
+    /**
+     * Called by the progress ticker on the event dispatch thread.
+     */
+    private void updateProgress(long positionMillis, long lengthMillis) {
+        if (!isPlaying || lengthMillis <= 0) {
+            // A late update from before the song was paused or stopped
+            return;
+        }
+        songProgressBar.setValue((int) (positionMillis * 100 / lengthMillis));
+    }
+
     private void pauseSong() {
-        if (isPlaying) {
-            System.out.println("Paused playback [Simulated]");
+        if (isPlaying && loadingSong == null) {
+            System.out.println("Paused playback");
+            player.pause();
+            pausedSong = playQueue.getCurrentSong();
             isPlaying = false;
+            progressTicker.stop();
         }
     }
 
     private void stopSong() {
+        recordPlay(true);
         isPlaying = false;
+        loadingSong = null;
+        pausedSong = null;
+        progressTicker.stop();
+        player.stop();
         songProgressBar.setValue(0);
         currentSongLabel.setText("No song playing");
-        System.out.println("Stopped playback [Simulated]");
+        showArt(null);
+        System.out.println("Stopped playback");
     }
 
-    private void nextSong() {
-        if (playlistManager.size() == 0) return;
+    /**
+     * Adds the song that was playing to the play history, once.
+     */
+    private void recordPlay(boolean skipped) {
+        Song song = playingSong;
+        playingSong = null;
+        if (song == null || playHistory == null) {
+            return;
+        }
+        // A song that ended was heard in full, even if the player has already let go of it
+        long playedMillis = skipped ? player.getCurrentPosition()
+                : Math.max(player.getCurrentPosition(), song.getDuration() * 1000L);
+        SongLibrary library = workspace.getLibrary();
+        int songId = library.add(song);
+        try {
+            // A new id must be saved before the history refers to it
+            if (songId >= savedLibrarySize) {
+                library.save(libraryFile);
+                savedLibrarySize = library.size();
+            }
+            playHistory.record(songId, playingSinceMillis, playedMillis, skipped);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    private void nextSong() {
         stopSong();
 
-        if (currentSongIndex < playlistManager.size() - 1) {
-            currentSongIndex++;
-        } else {
-            // Loop back to the beginning
-            currentSongIndex = 0;
+        if (playQueue.advance() < 0) {
+            // Nothing left to play, so loop back to the top
+            if (playlistManager.size() == 0) return;
+            playFrom(0);
         }
 
         playSong();
     }
 
     private void previousSong() {
-        if (playlistManager.size() == 0) return;
+        stopSong();
+
+        // With nothing played before, the current song starts over
+        playQueue.back();
 
+        playSong();
+    }
+
+    /**
+     * Plays a song from the playlist and continues from there.
+     */
+    private void playFromPlaylist(int index) {
         stopSong();
+        playFrom(index);
+        playSong();
+    }
 
-        if (currentSongIndex > 0) {
-            currentSongIndex--;
-        } else {
-            // Loop to the end
-            currentSongIndex = playlistManager.size() - 1;
+    /**
+     * Plays a song from the playlist, continuing in shuffle order if shuffle is on or
+     * with the songs after it if not.
+     */
+    private void playFrom(int index) {
+        if (shuffleOrder == null) {
+            playQueue.playFrom(playlistManager.snapshot(), index);
+            return;
         }
+        // The shuffle order is already the source; installing it again would drop the
+        // songs it has handed out for the lookahead, and they count as played
+        playQueue.play(workspace.getLibrary().add(playlistManager.getSong(index)));
+    }
 
-        playSong();
+    private void setShuffle(boolean on) {
+        // A fresh order each time shuffle is turned on
+        shuffleOrder = on ? new ShuffleOrder(playlistManager) : null;
+        if (on) {
+            applyShuffle();
+            return;
+        }
+        // Back to playlist order, continuing after the song playing
+        PersistentVector<Song> songs = playlistManager.snapshot();
+        Song current = playQueue.getCurrentSong();
+        playQueue.continueFrom(songs, current != null ? songs.indexOf(current) : -1);
+    }
+
+    /**
+     * Continues from the shuffle order rather than the playlist, if shuffle is on.
+     */
+    private void applyShuffle() {
+        ShuffleOrder order = shuffleOrder;
+        if (order == null) {
+            return;
+        }
+        playQueue.setSource(() -> {
+            int index = order.next();
+            return index < 0 ? -1 : workspace.getLibrary().add(playlistManager.getSong(index));
+        });
     }
 
     public static void main(String[] args) {
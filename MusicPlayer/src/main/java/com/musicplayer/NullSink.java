@@ -0,0 +1,105 @@
+package com.musicplayer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Discards audio. By default it consumes data at the rate it would be played, like a
+ * sound card with a 200 ms buffer, so a player without an audio device still plays
+ * tracks in real time and reports sensible positions. An unpaced sink accepts data as
+ * fast as it can be decoded.
+ */
+public class NullSink implements AudioSink {
+    private static final int BUFFER_MILLIS = 200;
+
+    private final boolean paced;
+    private AudioFormat format;
+    private long bufferFrames;
+    private long writtenFrames;
+    private long playedFrames;
+    private long clockNanos;
+    private boolean running;
+
+    /**
+     * Creates a sink that consumes audio in real time.
+     */
+    public NullSink() {
+        this(true);
+    }
+
+    /**
+     * Creates a sink.
+     *
+     * @param paced true to consume audio in real time, false to accept it all at once
+     */
+    public NullSink(boolean paced) {
+        this.paced = paced;
+    }
+
+    @Override
+    public synchronized void open(AudioFormat format) {
+        this.format = format;
+        this.bufferFrames = (long) (format.getFrameRate() * BUFFER_MILLIS / 1000);
+    }
+
+    /**
+     * Moves the play position on by the time passed since the last call.
+     */
+    private void advance() {
+        long now = System.nanoTime();
+        if (running) {
+            long elapsed = (long) ((now - clockNanos) * (double) format.getFrameRate() / 1_000_000_000L);
+            playedFrames = Math.min(writtenFrames, playedFrames + elapsed);
+        }
+        clockNanos = now;
+    }
+
+    @Override
+    public synchronized int available() {
+        if (!paced) {
+            return Integer.MAX_VALUE;
+        }
+        advance();
+        long free = bufferFrames - (writtenFrames - playedFrames);
+        return (int) Math.max(0, free * format.getFrameSize());
+    }
+
+    @Override
+    public synchronized int write(byte[] data, int offset, int length) {
+        advance();
+        writtenFrames += length / format.getFrameSize();
+        if (!paced) {
+            playedFrames = writtenFrames;
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized long getBufferedFrames() {
+        if (format == null) {
+            return 0;
+        }
+        advance();
+        return writtenFrames - playedFrames;
+    }
+
+    @Override
+    public synchronized void start() {
+        advance();
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        advance();
+        running = false;
+    }
+
+    @Override
+    public synchronized void flush() {
+        playedFrames = writtenFrames;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,157 @@
+package com.musicplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts between packed integer PCM bytes and the float samples used by the
+ * playback path. Loops are kept simple and branch-free in the inner body so the JIT
+ * can unroll and vectorize them.
+ */
+public final class PcmConverter {
+    private static final float SCALE_8 = 1.0f / 128;
+    private static final float SCALE_16 = 1.0f / 32768;
+    private static final float SCALE_24 = 1.0f / 8388608;
+    private static final float SCALE_32 = 1.0f / 2147483648.0f;
+
+    private PcmConverter() {
+    }
+
+    /**
+     * Decodes signed integer PCM (or unsigned, for 8-bit) into floats.
+     *
+     * @param in The packed samples
+     * @param inOffset The byte offset of the first sample
+     * @param out The float samples to write
+     * @param outOffset The index of the first float to write
+     * @param samples The number of samples (frames times channels)
+     * @param bytesPerSample 1, 2, 3 or 4
+     * @param bigEndian Whether multi-byte samples are big-endian
+     * @param signed Whether samples are signed (8-bit WAV data is unsigned)
+     */
+    public static void toFloat(byte[] in, int inOffset, float[] out, int outOffset, int samples,
+                               int bytesPerSample, boolean bigEndian, boolean signed) {
+        int i = inOffset;
+        switch (bytesPerSample) {
+            case 1:
+                int bias = signed ? 0 : 128;
+                for (int s = 0; s < samples; s++) {
+                    int value = signed ? in[i + s] : (in[i + s] & 0xFF) - bias;
+                    out[outOffset + s] = value * SCALE_8;
+                }
+                break;
+            case 2:
+                if (bigEndian) {
+                    for (int s = 0; s < samples; s++, i += 2) {
+                        out[outOffset + s] = (short) ((in[i] << 8) | (in[i + 1] & 0xFF)) * SCALE_16;
+                    }
+                } else {
+                    for (int s = 0; s < samples; s++, i += 2) {
+                        out[outOffset + s] = (short) ((in[i + 1] << 8) | (in[i] & 0xFF)) * SCALE_16;
+                    }
+                }
+                break;
+            case 3:
+                for (int s = 0; s < samples; s++, i += 3) {
+                    int value = bigEndian
+                            ? (in[i] << 16) | ((in[i + 1] & 0xFF) << 8) | (in[i + 2] & 0xFF)
+                            : (in[i + 2] << 16) | ((in[i + 1] & 0xFF) << 8) | (in[i] & 0xFF);
+                    out[outOffset + s] = value * SCALE_24;
+                }
+                break;
+            case 4:
+                for (int s = 0; s < samples; s++, i += 4) {
+                    int value = bigEndian
+                            ? (in[i] << 24) | ((in[i + 1] & 0xFF) << 16) | ((in[i + 2] & 0xFF) << 8) | (in[i + 3] & 0xFF)
+                            : (in[i + 3] << 24) | ((in[i + 2] & 0xFF) << 16) | ((in[i + 1] & 0xFF) << 8) | (in[i] & 0xFF);
+                    out[outOffset + s] = value * SCALE_32;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported sample size: " + bytesPerSample + " bytes");
+        }
+    }
+
+    /**
+     * Decodes PCM from a buffer, such as a direct buffer filled from a file channel,
+     * without copying it to an array first. Samples are read from the buffer's position
+     * in its byte order, and the position is advanced past them.
+     *
+     * @param in The packed samples
+     * @param out The float samples to write
+     * @param outOffset The index of the first float to write
+     * @param samples The number of samples (frames times channels)
+     * @param bytesPerSample 1, 2, 3 or 4 for integers, 4 or 8 for floating point
+     * @param signed Whether integer samples are signed (8-bit WAV data is unsigned)
+     * @param floating Whether samples are IEEE floating point
+     */
+    public static void toFloat(ByteBuffer in, float[] out, int outOffset, int samples,
+                               int bytesPerSample, boolean signed, boolean floating) {
+        if (floating) {
+            if (bytesPerSample == 4) {
+                for (int s = 0; s < samples; s++) {
+                    out[outOffset + s] = in.getFloat();
+                }
+            } else if (bytesPerSample == 8) {
+                for (int s = 0; s < samples; s++) {
+                    out[outOffset + s] = (float) in.getDouble();
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported float sample size: " + bytesPerSample + " bytes");
+            }
+            return;
+        }
+        boolean bigEndian = in.order() == ByteOrder.BIG_ENDIAN;
+        switch (bytesPerSample) {
+            case 1:
+                int bias = signed ? 0 : 128;
+                for (int s = 0; s < samples; s++) {
+                    int value = signed ? in.get() : (in.get() & 0xFF) - bias;
+                    out[outOffset + s] = value * SCALE_8;
+                }
+                break;
+            case 2:
+                for (int s = 0; s < samples; s++) {
+                    out[outOffset + s] = in.getShort() * SCALE_16;
+                }
+                break;
+            case 3:
+                for (int s = 0; s < samples; s++) {
+                    int b0 = in.get();
+                    int b1 = in.get() & 0xFF;
+                    int b2 = in.get();
+                    int value = bigEndian
+                            ? (b0 << 16) | (b1 << 8) | (b2 & 0xFF)
+                            : (b2 << 16) | (b1 << 8) | (b0 & 0xFF);
+                    out[outOffset + s] = value * SCALE_24;
+                }
+                break;
+            case 4:
+                for (int s = 0; s < samples; s++) {
+                    out[outOffset + s] = in.getInt() * SCALE_32;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported sample size: " + bytesPerSample + " bytes");
+        }
+    }
+
+    /**
+     * Encodes floats as signed 16-bit little-endian PCM, clipping out-of-range samples.
+     *
+     * @param in The float samples
+     * @param inOffset The index of the first sample
+     * @param out The bytes to write
+     * @param outOffset The byte offset of the first sample to write
+     * @param samples The number of samples (frames times channels)
+     */
+    public static void toPcm16(float[] in, int inOffset, byte[] out, int outOffset, int samples) {
+        int o = outOffset;
+        for (int s = 0; s < samples; s++, o += 2) {
+            float scaled = in[inOffset + s] * 32767f;
+            int value = (int) Math.max(-32768f, Math.min(32767f, scaled));
+            out[o] = (byte) value;
+            out[o + 1] = (byte) (value >> 8);
+        }
+    }
+}
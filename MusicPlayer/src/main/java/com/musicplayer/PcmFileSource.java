@@ -0,0 +1,343 @@
+package com.musicplayer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link PcmSource} that reads uncompressed WAV and AIFF files straight from disk.
+ *
+ * The header is parsed here rather than by the Java Sound API, and the sample data is
+ * read with positional {@link FileChannel} reads into a direct buffer and decoded from
+ * there, so opening a file costs a few small reads and seeking is only arithmetic.
+ * Integer PCM of 8 to 32 bits and 32 or 64-bit floating point are supported, including
+ * WAVE_FORMAT_EXTENSIBLE files and little-endian ('sowt') AIFF-C.
+ */
+public class PcmFileSource implements PcmSource {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final FileChannel channel;
+    private final float sampleRate;
+    private final int channels;
+    private final int bytesPerSample;
+    private final boolean signed;
+    private final boolean floating;
+    private final int frameSize;
+    private final long dataStart;
+    private final long frameLength;
+    private final ByteBuffer buffer;
+    private long position;
+
+    private PcmFileSource(FileChannel channel, Header header) {
+        this.channel = channel;
+        this.sampleRate = header.sampleRate;
+        this.channels = header.channels;
+        this.bytesPerSample = header.bytesPerSample;
+        this.signed = header.signed;
+        this.floating = header.floating;
+        this.frameSize = channels * bytesPerSample;
+        this.dataStart = header.dataStart;
+        this.frameLength = header.dataLength / frameSize;
+        int capacity = Math.max(frameSize, BUFFER_BYTES / frameSize * frameSize);
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(header.order);
+    }
+
+    /**
+     * Opens a file if it is an uncompressed WAV or AIFF file.
+     *
+     * @param file The audio file
+     * @return The source, or null if the file is in another format and should be
+     *         decoded some other way
+     * @throws IOException If the file cannot be read
+     */
+    public static PcmFileSource open(File file) throws IOException {
+        return open(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Reads audio through an already open channel if it holds an uncompressed WAV or
+     * AIFF file. The source takes ownership of the channel, and it is closed if the
+     * file is in another format.
+     *
+     * @param channel The channel to read from
+     * @return The source, or null if the file is in another format
+     * @throws IOException If the channel cannot be read
+     */
+    public static PcmFileSource open(FileChannel channel) throws IOException {
+        try {
+            Header header = readHeader(channel);
+            if (header == null) {
+                channel.close();
+                return null;
+            }
+            return new PcmFileSource(channel, header);
+        } catch (EOFException e) {
+            // A truncated header is left for the Java Sound API to make sense of
+            channel.close();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public long getFrameLength() {
+        return frameLength;
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int frames) throws IOException {
+        long remaining = frameLength - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        int count = (int) Math.min(Math.min(frames, remaining), this.buffer.capacity() / frameSize);
+
+        ByteBuffer data = this.buffer;
+        data.clear().limit(count * frameSize);
+        long filePosition = dataStart + position * frameSize;
+        while (data.hasRemaining()) {
+            int n = channel.read(data, filePosition + data.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        data.flip();
+        count = data.remaining() / frameSize;
+        if (count == 0) {
+            return -1;
+        }
+
+        PcmConverter.toFloat(data, buffer, offset, count * channels, bytesPerSample, signed, floating);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void seek(long frame) {
+        position = Math.max(0, Math.min(frame, frameLength));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Finds the sample data in an uncompressed WAV or AIFF file, leaving out the header
+     * and any tag chunks.
+     *
+     * @param channel The open file
+     * @return The offset and length of the data in bytes, or null if the file is not
+     *         an uncompressed WAV or AIFF file
+     * @throws IOException If the file cannot be read
+     */
+    static long[] findData(FileChannel channel) throws IOException {
+        try {
+            Header header = readHeader(channel);
+            return header == null ? null : new long[] {header.dataStart, header.dataLength};
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The format and data location found in a file header.
+     */
+    private static final class Header {
+        float sampleRate;
+        int channels;
+        int bytesPerSample;
+        boolean signed = true;
+        boolean floating;
+        ByteOrder order;
+        long dataStart = -1;
+        long dataLength;
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 12) {
+            return null;
+        }
+        ByteBuffer start = read(channel, 0, 12, ByteOrder.BIG_ENDIAN);
+        String riff = fourCC(start, 0);
+        String form = fourCC(start, 8);
+        if (riff.equals("RIFF") && form.equals("WAVE")) {
+            return readWave(channel, size);
+        } else if (riff.equals("FORM") && (form.equals("AIFF") || form.equals("AIFC"))) {
+            return readAiff(channel, size, form.equals("AIFC"));
+        }
+        return null;
+    }
+
+    private static Header readWave(FileChannel channel, long size) throws IOException {
+        Header header = new Header();
+        header.order = ByteOrder.LITTLE_ENDIAN;
+        boolean haveFormat = false;
+        long chunk = 12;
+        while (chunk + 8 <= size) {
+            ByteBuffer chunkHeader = read(channel, chunk, 8, ByteOrder.LITTLE_ENDIAN);
+            String id = fourCC(chunkHeader, 0);
+            long length = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+            long body = chunk + 8;
+
+            if (id.equals("fmt ")) {
+                if (length < 16) {
+                    return null;
+                }
+                ByteBuffer fmt = read(channel, body, (int) Math.min(length, 40), ByteOrder.LITTLE_ENDIAN);
+                int tag = fmt.getShort(0) & 0xFFFF;
+                header.channels = fmt.getShort(2) & 0xFFFF;
+                header.sampleRate = fmt.getInt(4) & 0xFFFFFFFFL;
+                int blockAlign = fmt.getShort(12) & 0xFFFF;
+                if (tag == WAVE_FORMAT_EXTENSIBLE) {
+                    if (length < 40) {
+                        return null;
+                    }
+                    // The sub-format GUID starts with the plain format tag
+                    tag = fmt.getShort(24) & 0xFFFF;
+                }
+                if (tag != WAVE_FORMAT_PCM && tag != WAVE_FORMAT_IEEE_FLOAT || header.channels == 0
+                        || blockAlign % header.channels != 0) {
+                    return null;
+                }
+                header.bytesPerSample = blockAlign / header.channels;
+                header.floating = tag == WAVE_FORMAT_IEEE_FLOAT;
+                // 8-bit WAV data is unsigned, everything wider is signed
+                header.signed = header.bytesPerSample > 1;
+                haveFormat = true;
+            } else if (id.equals("data")) {
+                header.dataStart = body;
+                // Streamed files may leave the length unset or too large
+                header.dataLength = Math.min(length, size - body);
+                break;
+            }
+            // Chunks are padded to an even length
+            chunk = body + length + (length & 1);
+        }
+        return haveFormat && header.dataStart >= 0 && isSupported(header) ? header : null;
+    }
+
+    private static Header readAiff(FileChannel channel, long size, boolean compressed) throws IOException {
+        Header header = new Header();
+        header.order = ByteOrder.BIG_ENDIAN;
+        long frames = -1;
+        long chunk = 12;
+        while (chunk + 8 <= size) {
+            ByteBuffer chunkHeader = read(channel, chunk, 8, ByteOrder.BIG_ENDIAN);
+            String id = fourCC(chunkHeader, 0);
+            long length = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+            long body = chunk + 8;
+
+            if (id.equals("COMM")) {
+                if (length < 18 || compressed && length < 22) {
+                    return null;
+                }
+                ByteBuffer comm = read(channel, body, compressed ? 22 : 18, ByteOrder.BIG_ENDIAN);
+                header.channels = comm.getShort(0) & 0xFFFF;
+                frames = comm.getInt(2) & 0xFFFFFFFFL;
+                int bits = comm.getShort(6);
+                header.sampleRate = (float) extendedToDouble(comm, 8);
+                header.bytesPerSample = (bits + 7) / 8;
+                if (compressed) {
+                    String type = fourCC(comm, 18);
+                    if (type.equals("sowt")) {
+                        header.order = ByteOrder.LITTLE_ENDIAN;
+                    } else if (type.equalsIgnoreCase("fl32") || type.equalsIgnoreCase("fl64")) {
+                        header.floating = true;
+                        header.bytesPerSample = type.endsWith("32") ? 4 : 8;
+                    } else if (!type.equals("NONE") && !type.equals("twos")) {
+                        return null;
+                    }
+                }
+            } else if (id.equals("SSND")) {
+                if (length < 8) {
+                    return null;
+                }
+                ByteBuffer ssnd = read(channel, body, 8, ByteOrder.BIG_ENDIAN);
+                long offset = ssnd.getInt(0) & 0xFFFFFFFFL;
+                header.dataStart = body + 8 + offset;
+                header.dataLength = Math.max(0, Math.min(length - 8 - offset, size - header.dataStart));
+            }
+            chunk = body + length + (length & 1);
+        }
+        if (frames < 0 || header.dataStart < 0 || header.channels == 0 || !isSupported(header)) {
+            return null;
+        }
+        header.dataLength = Math.min(header.dataLength, frames * header.channels * header.bytesPerSample);
+        return header;
+    }
+
+    private static boolean isSupported(Header header) {
+        if (header.sampleRate <= 0) {
+            return false;
+        }
+        if (header.floating) {
+            return header.bytesPerSample == 4 || header.bytesPerSample == 8;
+        }
+        return header.bytesPerSample >= 1 && header.bytesPerSample <= 4;
+    }
+
+    /**
+     * Decodes the 80-bit IEEE extended float AIFF uses for its sample rate.
+     */
+    private static double extendedToDouble(ByteBuffer buffer, int offset) {
+        int exponent = buffer.getShort(offset) & 0x7FFF;
+        long mantissa = buffer.getLong(offset + 2);
+        if (exponent == 0 && mantissa == 0) {
+            return 0;
+        }
+        // The mantissa is unsigned with an explicit integer bit
+        double value = (mantissa >>> 1) * 2.0 + (mantissa & 1);
+        return value * Math.pow(2, exponent - 16383 - 63);
+    }
+
+    /**
+     * Reads a four-character chunk id or tag, one byte per character.
+     */
+    static String fourCC(ByteBuffer buffer, int offset) {
+        char[] chars = new char[4];
+        for (int i = 0; i < 4; i++) {
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads exactly length bytes at a file position into a new buffer, ready to read.
+     *
+     * @throws EOFException If the file ends first
+     */
+    static ByteBuffer read(FileChannel channel, long position, int length, ByteOrder order)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated audio file header");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
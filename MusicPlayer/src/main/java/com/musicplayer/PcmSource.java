@@ -0,0 +1,47 @@
+package com.musicplayer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of decoded audio for the playback path.
+ *
+ * Samples are delivered as interleaved floats in the range -1.0 to 1.0, which is the
+ * format every processing stage (gain, crossfade, conversion) works in.
+ */
+public interface PcmSource extends Closeable {
+
+    /**
+     * @return The sample rate in frames per second
+     */
+    float getSampleRate();
+
+    /**
+     * @return The number of interleaved channels
+     */
+    int getChannels();
+
+    /**
+     * @return The total length in frames, or -1 if unknown
+     */
+    long getFrameLength();
+
+    /**
+     * Reads up to the given number of frames.
+     *
+     * @param buffer The buffer to fill with interleaved samples
+     * @param offset The index in the buffer of the first sample to write
+     * @param frames The maximum number of frames to read
+     * @return The number of frames read, or -1 at the end of the audio
+     * @throws IOException If the audio cannot be read
+     */
+    int read(float[] buffer, int offset, int frames) throws IOException;
+
+    /**
+     * Moves the read position.
+     *
+     * @param frame The frame to continue reading from
+     * @throws IOException If the position cannot be changed
+     */
+    void seek(long frame) throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.musicplayer;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens decoded audio for a file. Lets a player share or cache decoding instead of
+ * always decoding each file itself.
+ */
+public interface PcmSourceFactory {
+
+    /**
+     * @param file The audio file
+     * @return A source positioned at the start of the file
+     * @throws IOException If the file cannot be read
+     * @throws UnsupportedAudioFileException If the file format is not supported
+     */
+    PcmSource open(File file) throws IOException, UnsupportedAudioFileException;
+
+    /**
+     * Opens uncompressed WAV and AIFF files directly with {@link PcmFileSource} and
+     * anything else through the Java Sound API.
+     *
+     * @param file The audio file
+     * @return A source positioned at the start of the file
+     * @throws IOException If the file cannot be read
+     * @throws UnsupportedAudioFileException If the file format is not supported
+     */
+    static PcmSource openDefault(File file) throws IOException, UnsupportedAudioFileException {
+        PcmSource direct = PcmFileSource.open(file);
+        return direct != null ? direct : new AudioStreamSource(file);
+    }
+}
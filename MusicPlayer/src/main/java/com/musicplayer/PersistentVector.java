@@ -0,0 +1,355 @@
+package com.musicplayer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, persistent vector used to publish playlist snapshots.
+ *
+ * Elements are stored in a 32-way trie with a separate tail array, so appending,
+ * replacing and removing the last element copy only the nodes on one path instead
+ * of the whole list. Every "modifying" method returns a new vector and leaves this
+ * one untouched, which makes a vector safe to share between threads without locks.
+ *
+ * @param <T> The element type
+ */
+public final class PersistentVector<T> extends AbstractList<T> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Object[] EMPTY_NODE = new Object[0];
+    private static final PersistentVector<?> EMPTY =
+            new PersistentVector<>(0, BITS, EMPTY_NODE, EMPTY_NODE);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * @return The shared empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    /**
+     * Builds a vector containing the elements of a collection, in iteration order.
+     *
+     * @param elements The elements to copy
+     * @return A new vector with the same elements
+     */
+    public static <T> PersistentVector<T> of(Collection<? extends T> elements) {
+        if (elements instanceof PersistentVector) {
+            @SuppressWarnings("unchecked")
+            PersistentVector<T> vector = (PersistentVector<T>) elements;
+            return vector;
+        }
+        return fromArray(elements.toArray());
+    }
+
+    /**
+     * Builds a vector directly from a freshly allocated array, packing full leaves
+     * bottom-up instead of appending one element at a time.
+     */
+    private static <T> PersistentVector<T> fromArray(Object[] elements) {
+        int count = elements.length;
+        if (count == 0) {
+            return empty();
+        }
+
+        int tailOffset = ((count - 1) >>> BITS) << BITS;
+        Object[] tail = Arrays.copyOfRange(elements, tailOffset, count);
+        if (tailOffset == 0) {
+            return new PersistentVector<>(count, BITS, EMPTY_NODE, tail);
+        }
+
+        Object[] level = new Object[tailOffset >>> BITS];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = Arrays.copyOfRange(elements, i << BITS, (i + 1) << BITS);
+        }
+
+        int shift = BITS;
+        while (level.length > WIDTH) {
+            Object[] parents = new Object[(level.length + MASK) >>> BITS];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = Arrays.copyOfRange(level, i << BITS, Math.min(level.length, (i + 1) << BITS));
+            }
+            level = parents;
+            shift += BITS;
+        }
+        return new PersistentVector<>(count, shift, level, tail);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (T) leafFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns a new vector with one more element at the end.
+     *
+     * @param element The element to append
+     * @return The extended vector
+     */
+    public PersistentVector<T> plus(T element) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+
+        return pushTail(new Object[] {element});
+    }
+
+    /**
+     * Moves the full tail into the trie and starts a new tail. Only valid when the
+     * tail is full.
+     */
+    private PersistentVector<T> pushTail(Object[] newTail) {
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            // The trie is full at this height, so grow a new root above it
+            newRoot = new Object[] {root, newPath(shift, tail)};
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + newTail.length, newShift, newRoot, newTail);
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int subIndex = ((size - 1) >>> level) & MASK;
+        Object[] result = Arrays.copyOf(parent, Math.max(parent.length, subIndex + 1));
+        Object[] toInsert;
+        if (level == BITS) {
+            toInsert = tailNode;
+        } else if (subIndex < parent.length && parent[subIndex] != null) {
+            toInsert = pushTail(level - BITS, (Object[]) parent[subIndex], tailNode);
+        } else {
+            toInsert = newPath(level - BITS, tailNode);
+        }
+        result[subIndex] = toInsert;
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        return new Object[] {newPath(level - BITS, node)};
+    }
+
+    /**
+     * Returns a new vector with the element at an index replaced.
+     *
+     * @param index The index to replace
+     * @param element The new element
+     * @return The updated vector
+     */
+    public PersistentVector<T> with(int index, T element) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, element), tail);
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object element) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = element;
+        } else {
+            int subIndex = (index >>> level) & MASK;
+            copy[subIndex] = assoc(level - BITS, (Object[]) node[subIndex], index, element);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a new vector with an element inserted at an index. Inserting at the
+     * end is as cheap as {@link #plus(Object)}; anywhere else the vector is rebuilt.
+     *
+     * @param index The insertion index, between 0 and size() inclusive
+     * @param element The element to insert
+     * @return The updated vector
+     */
+    public PersistentVector<T> insert(int index, T element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index == size) {
+            return plus(element);
+        }
+        Object[] elements = new Object[size + 1];
+        copyInto(elements, 0, 0, index);
+        elements[index] = element;
+        copyInto(elements, index + 1, index, size - index);
+        return fromArray(elements);
+    }
+
+    /**
+     * Returns a new vector with the elements in [fromIndex, toIndex) removed.
+     *
+     * @param fromIndex The first index to remove
+     * @param toIndex The index after the last one to remove
+     * @return The updated vector
+     */
+    public PersistentVector<T> without(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range: [" + fromIndex + ", " + toIndex + "), Size: " + size);
+        }
+        if (fromIndex == toIndex) {
+            return this;
+        }
+        Object[] elements = new Object[size - (toIndex - fromIndex)];
+        copyInto(elements, 0, 0, fromIndex);
+        copyInto(elements, fromIndex, toIndex, size - toIndex);
+        return fromArray(elements);
+    }
+
+    /**
+     * Returns a new vector with the element at one index moved to another.
+     *
+     * @param fromIndex The current index of the element
+     * @param toIndex The index the element should end up at
+     * @return The updated vector
+     */
+    public PersistentVector<T> move(int fromIndex, int toIndex) {
+        Object[] elements = toArray();
+        Object moved = elements[fromIndex];
+        if (fromIndex < toIndex) {
+            System.arraycopy(elements, fromIndex + 1, elements, fromIndex, toIndex - fromIndex);
+        } else {
+            System.arraycopy(elements, toIndex, elements, toIndex + 1, fromIndex - toIndex);
+        }
+        elements[toIndex] = moved;
+        return fromArray(elements);
+    }
+
+    /**
+     * Returns a new vector containing the given elements appended to this one. The
+     * elements are added a leaf at a time, sharing the existing trie, unless there are
+     * more of them than are already in the vector, when rebuilding is cheaper.
+     *
+     * @param elements The elements to append
+     * @return The extended vector
+     */
+    public PersistentVector<T> plusAll(Collection<? extends T> elements) {
+        if (elements.isEmpty()) {
+            return this;
+        }
+        if (size == 0) {
+            return of(elements);
+        }
+        Object[] added = elements.toArray();
+        if (added.length > size) {
+            Object[] all = Arrays.copyOf(toArray(), size + added.length);
+            System.arraycopy(added, 0, all, size, added.length);
+            return fromArray(all);
+        }
+
+        PersistentVector<T> vector = this;
+        int next = 0;
+        int room = WIDTH - (size - tailOffset());
+        if (room > 0) {
+            int count = Math.min(room, added.length);
+            Object[] newTail = Arrays.copyOf(tail, tail.length + count);
+            System.arraycopy(added, 0, newTail, tail.length, count);
+            vector = new PersistentVector<>(size + count, shift, root, newTail);
+            next = count;
+        }
+        while (next < added.length) {
+            int count = Math.min(WIDTH, added.length - next);
+            vector = vector.pushTail(Arrays.copyOfRange(added, next, next + count));
+            next += count;
+        }
+        return vector;
+    }
+
+    private void copyInto(Object[] dest, int destPos, int from, int count) {
+        int i = from;
+        int end = from + count;
+        while (i < end) {
+            Object[] leaf = leafFor(i);
+            int offset = i & MASK;
+            int n = Math.min(leaf.length - offset, end - i);
+            System.arraycopy(leaf, offset, dest, destPos + (i - from), n);
+            i += n;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] result = new Object[size];
+        copyInto(result, 0, 0, size);
+        return result;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int index = 0;
+            private Object[] leaf = size > 0 ? leafFor(0) : EMPTY_NODE;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if ((index & MASK) == 0 && index > 0) {
+                    leaf = leafFor(index);
+                }
+                return (T) leaf[index++ & MASK];
+            }
+        };
+    }
+}
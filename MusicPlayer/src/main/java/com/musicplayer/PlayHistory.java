@@ -0,0 +1,552 @@
+package com.musicplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only log of what was played, with running statistics.
+ *
+ * Each play is stored as a fixed 12-byte record: the song's {@link SongLibrary} id,
+ * the start time in seconds, and the time listened with a flag for a skip. Records
+ * go into segment files of a fixed number of events; once a segment is full it is
+ * sealed and never written again, and a small rollup file next to it holds that
+ * segment's per-song counts and per-hour totals.
+ *
+ * Only the statistics are kept in memory: play and skip counts indexed by song id,
+ * and one set of totals per hour that had plays. Opening the history reads the
+ * rollups of sealed segments and scans only the segment still being written, so
+ * startup does not grow with the number of events. Recently played songs are read
+ * back from the tail of the log when asked for.
+ *
+ * Records are written as they happen and forced to disk on {@link #flush()} and
+ * {@link #close()}. A record torn by a crash is dropped when the history is opened.
+ */
+public class PlayHistory implements Closeable {
+    private static final int SEGMENT_MAGIC = 0x50485347; // "PHSG"
+    private static final int ROLLUP_MAGIC = 0x50485255; // "PHRU"
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 12;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String ROLLUP_SUFFIX = ".rollup";
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int SKIPPED = 1 << 31;
+
+    /** Default number of events in a segment, about 12 MB of records. */
+    public static final int DEFAULT_SEGMENT_EVENTS = 1 << 20;
+
+    /**
+     * One play of a song.
+     */
+    public static final class Play {
+        private final int songId;
+        private final long startMillis;
+        private final int playedMillis;
+        private final boolean skipped;
+
+        Play(int songId, long startMillis, int playedMillis, boolean skipped) {
+            this.songId = songId;
+            this.startMillis = startMillis;
+            this.playedMillis = playedMillis;
+            this.skipped = skipped;
+        }
+
+        /**
+         * @return The library id of the song
+         */
+        public int getSongId() {
+            return songId;
+        }
+
+        /**
+         * @return When the song started, to the second, in milliseconds since the epoch
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * @return How long the song was listened to, in milliseconds
+         */
+        public int getPlayedMillis() {
+            return playedMillis;
+        }
+
+        /**
+         * @return true if the song was stopped before it ended
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+    }
+
+    /**
+     * Play counts and listening time over a period.
+     */
+    public static final class Totals {
+        private long plays;
+        private long skips;
+        private long playedMillis;
+
+        /**
+         * @return The number of songs played to the end
+         */
+        public long getPlays() {
+            return plays;
+        }
+
+        /**
+         * @return The number of songs skipped
+         */
+        public long getSkips() {
+            return skips;
+        }
+
+        /**
+         * @return The total time listened, in milliseconds
+         */
+        public long getPlayedMillis() {
+            return playedMillis;
+        }
+
+        private void add(long plays, long skips, long playedMillis) {
+            this.plays += plays;
+            this.skips += skips;
+            this.playedMillis += playedMillis;
+        }
+    }
+
+    /**
+     * A segment file and the events it holds.
+     */
+    private static final class Segment {
+        final Path path;
+        int events;
+
+        Segment(Path path, int events) {
+            this.path = path;
+            this.events = events;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentEvents;
+    private final List<Segment> segments = new ArrayList<>();
+    private FileChannel active;
+
+    private int[] plays = new int[0];
+    private int[] skips = new int[0];
+    private final TreeMap<Long, Totals> hours = new TreeMap<>();
+    private long eventCount;
+
+    private PlayHistory(Path directory, int segmentEvents) {
+        this.directory = directory;
+        this.segmentEvents = segmentEvents;
+    }
+
+    /**
+     * Opens the play history in a directory with the default segment size.
+     *
+     * @see #open(Path, int)
+     */
+    public static PlayHistory open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_EVENTS);
+    }
+
+    /**
+     * Opens (or creates) the play history stored in a directory.
+     *
+     * @param directory The directory holding the segment files
+     * @param segmentEvents The number of events after which a segment is sealed
+     * @return The open history
+     * @throws IOException If the files cannot be read or created
+     */
+    public static PlayHistory open(Path directory, int segmentEvents) throws IOException {
+        Files.createDirectories(directory);
+        PlayHistory history = new PlayHistory(directory, segmentEvents);
+        history.recover();
+        return history;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        // Segment names are zero-padded sequence numbers, so they sort in order
+        files.sort(null);
+
+        for (int i = 0; i < files.size() - 1; i++) {
+            Path file = files.get(i);
+            Path rollup = rollupPath(file);
+            if (!Files.exists(rollup)) {
+                // Sealed just before a crash, before its rollup was written
+                writeRollup(file);
+            }
+            segments.add(new Segment(file, readRollup(rollup)));
+        }
+
+        if (files.isEmpty()) {
+            startSegment(0);
+            return;
+        }
+        Path last = files.get(files.size() - 1);
+        active = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (active.size() < HEADER_SIZE) {
+            // Created just before a crash, before its header was complete
+            active.truncate(0);
+            writeHeader(active);
+        }
+        long records = Math.max(0, (active.size() - HEADER_SIZE) / RECORD_SIZE);
+        // Drop a partly written record
+        active.truncate(HEADER_SIZE + records * RECORD_SIZE);
+        active.position(active.size());
+        Segment segment = new Segment(last, 0);
+        segments.add(segment);
+        scan(active, play -> count(play.songId, play.startMillis, play.skipped ? 0 : 1, play.skipped ? 1 : 0,
+                play.playedMillis));
+        segment.events = (int) records;
+        eventCount += records;
+    }
+
+    /**
+     * Records a play.
+     *
+     * @param songId The library id of the song
+     * @param startMillis When the song started, in milliseconds since the epoch
+     * @param playedMillis How long it was listened to, in milliseconds
+     * @param skipped true if the song was stopped before it ended
+     * @throws IOException If the record cannot be written
+     */
+    public synchronized void record(int songId, long startMillis, long playedMillis, boolean skipped)
+            throws IOException {
+        Segment segment = segments.get(segments.size() - 1);
+        if (segment.events >= segmentEvents) {
+            seal();
+            segment = segments.get(segments.size() - 1);
+        }
+        int played = (int) Math.min(Math.max(playedMillis, 0), Integer.MAX_VALUE);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(songId).putInt((int) (startMillis / 1000)).putInt(skipped ? played | SKIPPED : played).flip();
+        while (record.hasRemaining()) {
+            active.write(record);
+        }
+        segment.events++;
+        eventCount++;
+        count(songId, startMillis / 1000 * 1000, skipped ? 0 : 1, skipped ? 1 : 0, played);
+    }
+
+    /**
+     * @param songId The library id of a song
+     * @return The number of times the song was played to the end
+     */
+    public synchronized int getPlayCount(int songId) {
+        return songId >= 0 && songId < plays.length ? plays[songId] : 0;
+    }
+
+    /**
+     * @param songId The library id of a song
+     * @return The number of times the song was skipped
+     */
+    public synchronized int getSkipCount(int songId) {
+        return songId >= 0 && songId < skips.length ? skips[songId] : 0;
+    }
+
+    /**
+     * @return The number of plays recorded
+     */
+    public synchronized long size() {
+        return eventCount;
+    }
+
+    /**
+     * Finds the songs played to the end most often.
+     *
+     * @param count The maximum number of songs to return
+     * @return Library ids of the most played songs, most played first, ties by id
+     */
+    public synchronized int[] topSongs(int count) {
+        // A min-heap of the best so far, so each song costs a comparison with its head
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.max(1, count),
+                (a, b) -> plays[a] != plays[b] ? Integer.compare(plays[a], plays[b]) : Integer.compare(b, a));
+        for (int id = 0; id < plays.length && count > 0; id++) {
+            if (plays[id] == 0) {
+                continue;
+            }
+            if (best.size() < count) {
+                best.add(id);
+            } else if (plays[id] > plays[best.peek()]) {
+                best.poll();
+                best.add(id);
+            }
+        }
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll();
+        }
+        return result;
+    }
+
+    /**
+     * Reads the latest plays back from the log.
+     *
+     * @param count The maximum number of plays to return
+     * @return The plays, most recent first
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized List<Play> recentlyPlayed(int count) throws IOException {
+        List<Play> result = new ArrayList<>();
+        for (int s = segments.size() - 1; s >= 0 && result.size() < count; s--) {
+            Segment segment = segments.get(s);
+            int wanted = Math.min(count - result.size(), segment.events);
+            if (wanted == 0) {
+                continue;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(wanted * RECORD_SIZE);
+            long offset = HEADER_SIZE + (long) (segment.events - wanted) * RECORD_SIZE;
+            if (s == segments.size() - 1) {
+                readFully(active, buffer, offset);
+            } else {
+                try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                    readFully(channel, buffer, offset);
+                }
+            }
+            for (int i = wanted - 1; i >= 0; i--) {
+                result.add(decode(buffer, i * RECORD_SIZE));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Totals plays for each hour in a period.
+     *
+     * @param fromMillis The start of the period; the first hour is the one containing it
+     * @param toMillis The end of the period, exclusive
+     * @return One totals per hour, oldest first
+     */
+    public synchronized Totals[] hourly(long fromMillis, long toMillis) {
+        return rollup(fromMillis, toMillis, 1);
+    }
+
+    /**
+     * Totals plays for each day in a period. Days are counted in UTC.
+     *
+     * @param fromMillis The start of the period; the first day is the one containing it
+     * @param toMillis The end of the period, exclusive
+     * @return One totals per day, oldest first
+     */
+    public synchronized Totals[] daily(long fromMillis, long toMillis) {
+        return rollup(fromMillis, toMillis, 24);
+    }
+
+    private Totals[] rollup(long fromMillis, long toMillis, int hoursPerBucket) {
+        long firstHour = Math.floorDiv(Math.floorDiv(fromMillis, HOUR_MILLIS), hoursPerBucket) * hoursPerBucket;
+        long endHour = Math.floorDiv(toMillis + HOUR_MILLIS - 1, HOUR_MILLIS);
+        int buckets = (int) Math.max(0, (endHour - firstHour + hoursPerBucket - 1) / hoursPerBucket);
+        Totals[] result = new Totals[buckets];
+        for (int i = 0; i < buckets; i++) {
+            result[i] = new Totals();
+        }
+        for (Map.Entry<Long, Totals> hour : hours.subMap(firstHour, endHour).entrySet()) {
+            Totals totals = hour.getValue();
+            result[(int) ((hour.getKey() - firstHour) / hoursPerBucket)]
+                    .add(totals.plays, totals.skips, totals.playedMillis);
+        }
+        return result;
+    }
+
+    /**
+     * Forces every recorded play to disk.
+     *
+     * @throws IOException If the log cannot be synced
+     */
+    public synchronized void flush() throws IOException {
+        active.force(false);
+    }
+
+    /**
+     * Flushes and closes the log.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        active.force(false);
+        active.close();
+    }
+
+    private void count(int songId, long startMillis, int played, int skipped, long playedMillis) {
+        ensureCapacity(songId);
+        plays[songId] += played;
+        skips[songId] += skipped;
+        hours.computeIfAbsent(Math.floorDiv(startMillis, HOUR_MILLIS), hour -> new Totals())
+                .add(played, skipped, playedMillis);
+    }
+
+    private void ensureCapacity(int songId) {
+        if (songId >= plays.length) {
+            int capacity = Math.max(songId + 1, plays.length * 3 / 2);
+            plays = Arrays.copyOf(plays, capacity);
+            skips = Arrays.copyOf(skips, capacity);
+        }
+    }
+
+    /**
+     * Closes the full segment, writes its rollup and starts the next one.
+     */
+    private void seal() throws IOException {
+        Segment full = segments.get(segments.size() - 1);
+        active.force(false);
+        active.close();
+        writeRollup(full.path);
+        startSegment(segments.size());
+    }
+
+    private void startSegment(int sequence) throws IOException {
+        Path path = directory.resolve(String.format("history-%08d%s", sequence, SEGMENT_SUFFIX));
+        active = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(active);
+        segments.add(new Segment(path, 0));
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putInt(RECORD_SIZE).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, HEADER_SIZE - header.remaining());
+        }
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Summarizes a sealed segment into its rollup file, written to a temporary file
+     * first so a crash never leaves a partial rollup behind.
+     */
+    private void writeRollup(Path segment) throws IOException {
+        Map<Integer, int[]> songs = new HashMap<>();
+        TreeMap<Long, Totals> segmentHours = new TreeMap<>();
+        int[] events = new int[1];
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            scan(channel, play -> {
+                int[] counts = songs.computeIfAbsent(play.songId, id -> new int[2]);
+                counts[play.skipped ? 1 : 0]++;
+                segmentHours.computeIfAbsent(Math.floorDiv(play.startMillis, HOUR_MILLIS), hour -> new Totals())
+                        .add(play.skipped ? 0 : 1, play.skipped ? 1 : 0, play.playedMillis);
+                events[0]++;
+            });
+        }
+
+        Path rollup = rollupPath(segment);
+        Path temp = rollup.resolveSibling(rollup.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(ROLLUP_MAGIC);
+            out.writeInt(events[0]);
+            out.writeInt(songs.size());
+            for (Map.Entry<Integer, int[]> song : songs.entrySet()) {
+                out.writeInt(song.getKey());
+                out.writeInt(song.getValue()[0]);
+                out.writeInt(song.getValue()[1]);
+            }
+            out.writeInt(segmentHours.size());
+            for (Map.Entry<Long, Totals> hour : segmentHours.entrySet()) {
+                out.writeLong(hour.getKey());
+                out.writeLong(hour.getValue().plays);
+                out.writeLong(hour.getValue().skips);
+                out.writeLong(hour.getValue().playedMillis);
+            }
+        }
+        Files.move(temp, rollup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds a sealed segment's rollup to the statistics.
+     *
+     * @return The number of events in the segment
+     */
+    private int readRollup(Path rollup) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(rollup)))) {
+            if (in.readInt() != ROLLUP_MAGIC) {
+                throw new IOException("Not a play history rollup: " + rollup);
+            }
+            int events = in.readInt();
+            int songs = in.readInt();
+            for (int i = 0; i < songs; i++) {
+                int songId = in.readInt();
+                int played = in.readInt();
+                int skipped = in.readInt();
+                ensureCapacity(songId);
+                plays[songId] += played;
+                skips[songId] += skipped;
+            }
+            int hourCount = in.readInt();
+            for (int i = 0; i < hourCount; i++) {
+                long hour = in.readLong();
+                hours.computeIfAbsent(hour, h -> new Totals()).add(in.readLong(), in.readLong(), in.readLong());
+            }
+            eventCount += events;
+            return events;
+        }
+    }
+
+    private interface PlayVisitor {
+        void visit(Play play);
+    }
+
+    private static void scan(FileChannel channel, PlayVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 8192);
+        long records = Math.max(0, (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        long offset = HEADER_SIZE;
+        long end = HEADER_SIZE + records * RECORD_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != SEGMENT_MAGIC || header.getInt(4) != RECORD_SIZE) {
+            throw new IOException("Not a play history segment");
+        }
+        while (offset < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+            readFully(channel, buffer, offset);
+            for (int at = 0; at < buffer.limit(); at += RECORD_SIZE) {
+                visitor.visit(decode(buffer, at));
+            }
+            offset += buffer.limit();
+        }
+    }
+
+    private static Play decode(ByteBuffer buffer, int at) {
+        int played = buffer.getInt(at + 8);
+        return new Play(buffer.getInt(at), Integer.toUnsignedLong(buffer.getInt(at + 4)) * 1000,
+                played & ~SKIPPED, (played & SKIPPED) != 0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Play history segment ended early");
+            }
+        }
+    }
+
+    private static Path rollupPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + ROLLUP_SUFFIX);
+    }
+}
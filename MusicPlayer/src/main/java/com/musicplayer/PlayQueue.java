@@ -0,0 +1,370 @@
+package com.musicplayer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * What plays next, kept apart from the playlist.
+ *
+ * Songs are referred to by their {@link SongLibrary} id, so sorting, filtering or
+ * editing a playlist while it plays does not change what comes next. The queue has
+ * three parts:
+ * <ul>
+ *   <li>songs the user queued, played first, in order ({@link #enqueue(int)}) or
+ *       ahead of the rest ({@link #playNext(int)});</li>
+ *   <li>a source that continues after them, such as the rest of the playlist as it
+ *       was when playback started, or a shuffle order;</li>
+ *   <li>a bounded history of what was played, for going back.</li>
+ * </ul>
+ * All of these are int ring buffers, so enqueueing, playing next and moving either
+ * way take constant time.
+ *
+ * After every change, the first few upcoming songs are handed to a
+ * {@link Prefetcher}, so their files can be read before they are needed.
+ */
+public class PlayQueue {
+
+    /** Default number of upcoming songs handed to the prefetcher. */
+    public static final int DEFAULT_LOOKAHEAD = 3;
+
+    /** Default number of played songs kept for going back. */
+    public static final int DEFAULT_HISTORY = 1000;
+
+    /**
+     * Starts reading the files of songs that are about to play. Called with the
+     * queue locked, so implementations should only schedule work.
+     */
+    public interface Prefetcher {
+        /**
+         * @param upcoming The next songs, soonest first
+         */
+        void prefetch(List<Song> upcoming);
+    }
+
+    /**
+     * A growable ring of ints, usable from both ends.
+     */
+    private static final class IntDeque {
+        private int[] values = new int[16];
+        private int head;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return values[(head + i) & (values.length - 1)];
+        }
+
+        void addFirst(int value) {
+            grow();
+            head = (head - 1) & (values.length - 1);
+            values[head] = value;
+            size++;
+        }
+
+        void addLast(int value) {
+            grow();
+            values[(head + size) & (values.length - 1)] = value;
+            size++;
+        }
+
+        int pollFirst() {
+            if (size == 0) {
+                return -1;
+            }
+            int value = values[head];
+            head = (head + 1) & (values.length - 1);
+            size--;
+            return value;
+        }
+
+        int pollLast() {
+            if (size == 0) {
+                return -1;
+            }
+            size--;
+            return values[(head + size) & (values.length - 1)];
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        private void grow() {
+            if (size < values.length) {
+                return;
+            }
+            // Unroll the ring into a larger array, oldest first
+            int[] larger = new int[values.length * 2];
+            for (int i = 0; i < size; i++) {
+                larger[i] = get(i);
+            }
+            values = larger;
+            head = 0;
+        }
+    }
+
+    private final SongLibrary library;
+    private final int lookahead;
+    private final int historyLimit;
+    private final IntDeque queued = new IntDeque();
+    // Taken from the source ahead of time, to fill the lookahead window
+    private final IntDeque upcoming = new IntDeque();
+    private final IntDeque history = new IntDeque();
+    private IntSupplier source = () -> -1;
+    private int current = -1;
+    private Prefetcher prefetcher;
+    private int[] lastPrefetched = new int[0];
+
+    /**
+     * Creates a queue with the default lookahead and history sizes.
+     *
+     * @param library The library the queued ids belong to
+     */
+    public PlayQueue(SongLibrary library) {
+        this(library, DEFAULT_LOOKAHEAD, DEFAULT_HISTORY);
+    }
+
+    /**
+     * Creates a queue.
+     *
+     * @param library The library the queued ids belong to
+     * @param lookahead The number of upcoming songs handed to the prefetcher
+     * @param historyLimit The number of played songs kept for going back
+     */
+    public PlayQueue(SongLibrary library, int lookahead, int historyLimit) {
+        this.library = library;
+        this.lookahead = lookahead;
+        this.historyLimit = historyLimit;
+    }
+
+    /**
+     * @param prefetcher Where upcoming songs are announced, or null for nowhere
+     */
+    public synchronized void setPrefetcher(Prefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+        lastPrefetched = new int[0];
+        announce();
+    }
+
+    /**
+     * Sets what plays once the queued songs run out. Songs already taken from the
+     * previous source are dropped, so setting the source that is already set does
+     * nothing.
+     *
+     * @param source Gives the id of each following song, or -1 when there are no more
+     */
+    public synchronized void setSource(IntSupplier source) {
+        if (source == this.source) {
+            return;
+        }
+        this.source = source;
+        upcoming.clear();
+        announce();
+    }
+
+    /**
+     * Plays a song from a playlist and continues with the songs after it.
+     *
+     * @param songs The playlist
+     * @param index The index of the song to play
+     * @return The id of the song now playing
+     * @see #continueFrom(PersistentVector, int)
+     */
+    public synchronized int playFrom(PersistentVector<Song> songs, int index) {
+        continueFrom(songs, index);
+        return play(library.add(songs.get(index)));
+    }
+
+    /**
+     * Continues with the songs of a playlist after an index once the queued songs run
+     * out, wrapping around at the end. The playlist is followed as it is now; later
+     * changes to it do not affect the order.
+     *
+     * @param songs The playlist
+     * @param index The index of the last song not to play
+     */
+    public synchronized void continueFrom(PersistentVector<Song> songs, int index) {
+        int[] next = {index};
+        setSource(() -> {
+            if (songs.isEmpty()) {
+                return -1;
+            }
+            next[0] = (next[0] + 1) % songs.size();
+            return library.add(songs.get(next[0]));
+        });
+    }
+
+    /**
+     * Plays a song now, keeping the one that was playing in the history.
+     *
+     * @param songId The id of the song to play
+     * @return The id of the song now playing
+     */
+    public synchronized int play(int songId) {
+        remember(current);
+        current = songId;
+        announce();
+        return current;
+    }
+
+    /**
+     * Adds a song to the end of the queued songs.
+     *
+     * @param songId The id of the song
+     */
+    public synchronized void enqueue(int songId) {
+        queued.addLast(songId);
+        announce();
+    }
+
+    /**
+     * Adds a song to play right after the current one.
+     *
+     * @param songId The id of the song
+     */
+    public synchronized void playNext(int songId) {
+        queued.addFirst(songId);
+        announce();
+    }
+
+    /**
+     * Moves on to the next song.
+     *
+     * @return The id of the song now playing, or -1 if there is none
+     */
+    public synchronized int advance() {
+        int next = queued.pollFirst();
+        if (next < 0) {
+            next = upcoming.pollFirst();
+        }
+        if (next < 0) {
+            next = source.getAsInt();
+        }
+        if (next < 0) {
+            return -1;
+        }
+        remember(current);
+        current = next;
+        announce();
+        return current;
+    }
+
+    /**
+     * Goes back to the song played before the current one. The current song becomes
+     * the next one to play.
+     *
+     * @return The id of the song now playing, or -1 if there is no history
+     */
+    public synchronized int back() {
+        int previous = history.pollLast();
+        if (previous < 0) {
+            return -1;
+        }
+        if (current >= 0) {
+            queued.addFirst(current);
+        }
+        current = previous;
+        announce();
+        return current;
+    }
+
+    /**
+     * Stops tracking a current song, keeping it in the history.
+     */
+    public synchronized void clearCurrent() {
+        remember(current);
+        current = -1;
+        announce();
+    }
+
+    /**
+     * @return The id of the song playing, or -1 if none
+     */
+    public synchronized int getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return The song playing, or null if none
+     */
+    public synchronized Song getCurrentSong() {
+        return current >= 0 ? library.get(current) : null;
+    }
+
+    /**
+     * @return The number of songs queued by the user
+     */
+    public synchronized int getQueuedCount() {
+        return queued.size();
+    }
+
+    /**
+     * @return The ids of the played songs, most recent last
+     */
+    public synchronized int[] getHistory() {
+        int[] ids = new int[history.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = history.get(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Lists the songs that will play next, taking more from the source if needed.
+     *
+     * @param count The maximum number of songs
+     * @return Their ids, soonest first
+     */
+    public synchronized int[] peek(int count) {
+        while (queued.size() + upcoming.size() < count) {
+            int next = source.getAsInt();
+            if (next < 0) {
+                break;
+            }
+            upcoming.addLast(next);
+        }
+        int[] ids = new int[Math.min(count, queued.size() + upcoming.size())];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i < queued.size() ? queued.get(i) : upcoming.get(i - queued.size());
+        }
+        return ids;
+    }
+
+    private void remember(int songId) {
+        if (songId < 0 || historyLimit == 0) {
+            return;
+        }
+        history.addLast(songId);
+        if (history.size() > historyLimit) {
+            history.pollFirst();
+        }
+    }
+
+    /**
+     * Hands the lookahead window to the prefetcher if it changed.
+     */
+    private void announce() {
+        if (prefetcher == null || lookahead == 0) {
+            return;
+        }
+        int[] window = peek(lookahead);
+        if (Arrays.equals(window, lastPrefetched)) {
+            return;
+        }
+        lastPrefetched = window;
+        List<Song> songs = new ArrayList<>(window.length);
+        for (int id : window) {
+            Song song = library.get(id);
+            if (song != null) {
+                songs.add(song);
+            }
+        }
+        prefetcher.prefetch(songs);
+    }
+}
@@ -0,0 +1,126 @@
+package com.musicplayer;
+
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Drives the progress display from the playback position.
+ *
+ * One ticker is created per player and owns a single scheduler thread for its whole
+ * life, so starting and stopping tracks never creates threads. While running, it
+ * samples the position at display rate and hands it to the listener on the event
+ * dispatch thread. Samples are coalesced: if the previous update has not been
+ * processed yet, the next one simply replaces its values instead of queueing another
+ * invokeLater. Nothing is posted while the view is not showing.
+ */
+public class PlaybackTicker {
+
+    /**
+     * Receives position updates on the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * @param positionMillis The current playback position in milliseconds
+         * @param lengthMillis The length of the track in milliseconds
+         */
+        void positionChanged(long positionMillis, long lengthMillis);
+    }
+
+    /** Default number of updates per second. */
+    public static final int DEFAULT_RATE = 30;
+
+    private final Component view;
+    private final LongSupplier position;
+    private final LongSupplier length;
+    private final Listener listener;
+    private final long periodMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
+    private volatile long latestPosition;
+    private volatile long latestLength;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Creates a ticker at the default display rate.
+     *
+     * @param view The component showing progress; updates are skipped while it is hidden
+     * @param position Supplies the playback position in milliseconds
+     * @param length Supplies the track length in milliseconds
+     * @param listener Receives the updates on the event dispatch thread
+     */
+    public PlaybackTicker(Component view, LongSupplier position, LongSupplier length, Listener listener) {
+        this(view, position, length, listener, DEFAULT_RATE);
+    }
+
+    /**
+     * Creates a ticker.
+     *
+     * @param view The component showing progress; updates are skipped while it is hidden
+     * @param position Supplies the playback position in milliseconds
+     * @param length Supplies the track length in milliseconds
+     * @param listener Receives the updates on the event dispatch thread
+     * @param ratePerSecond Number of updates per second
+     */
+    public PlaybackTicker(Component view, LongSupplier position, LongSupplier length, Listener listener,
+                          int ratePerSecond) {
+        this.view = view;
+        this.position = position;
+        this.length = length;
+        this.listener = listener;
+        this.periodMillis = Math.max(1, 1000 / ratePerSecond);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "playback-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts posting updates. Does nothing if the ticker is already running.
+     */
+    public synchronized void start() {
+        if (task == null) {
+            task = scheduler.scheduleAtFixedRate(this::tick, 0, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops posting updates. An update already handed to the event dispatch thread
+     * may still be delivered.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Stops the ticker and its scheduler thread for good.
+     */
+    public void shutdown() {
+        stop();
+        scheduler.shutdownNow();
+    }
+
+    private void tick() {
+        if (!view.isShowing()) {
+            return;
+        }
+        latestPosition = position.getAsLong();
+        latestLength = length.getAsLong();
+        if (updatePending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                updatePending.set(false);
+                listener.positionChanged(latestPosition, latestLength);
+            });
+        }
+    }
+}
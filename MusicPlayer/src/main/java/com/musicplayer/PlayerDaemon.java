@@ -0,0 +1,594 @@
+package com.musicplayer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the player without a user interface, controlled over HTTP on the loopback
+ * interface.
+ *
+ * The daemon hosts a {@link PlaylistManager} and an {@link MP3Player} and advances to
+ * the next song when one ends. Commands are sent as POST requests ({@code /play},
+ * {@code /play?index=3}, {@code /pause}, {@code /stop}, {@code /next},
+ * {@code /previous}, {@code /volume?value=0.8}, {@code /seek?ms=30000},
+ * {@code /add?path=...}, {@code /scan?path=...}, {@code /load?path=...}); state is
+ * read with GET {@code /status} and {@code /playlist}. The time from receiving a
+ * command to the player having carried it out is exported per command as a histogram
+ * at {@code /metrics}, in the Prometheus text format.
+ *
+ * The query endpoints are built for many concurrent dashboard clients.
+ * {@code /nowplaying} serves a status that is regenerated at most every 100 ms however
+ * many clients poll it, and {@code /search?q=...} goes through a {@link BatchedSearch}
+ * over playlist snapshots, answering 503 with Retry-After while too many searches are
+ * waiting for the index to be rebuilt. Each request runs on its own virtual thread
+ * when the JVM provides them (Java 21 and later); older JVMs use a bounded pool of
+ * platform threads instead.
+ *
+ * Only the loopback address is bound, so the API is reachable from the machine itself
+ * and not from the network.
+ */
+public class PlayerDaemon implements Closeable {
+
+    /** Port used when none is given. */
+    public static final int DEFAULT_PORT = 7878;
+
+    private static final long COMMAND_TIMEOUT_MILLIS = 5000;
+    private static final int BACKLOG = 4096;
+    private static final int PLATFORM_THREADS = 256;
+    private static final long NOW_PLAYING_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+
+    /**
+     * A rendered status and when it was made.
+     */
+    private static final class CachedStatus {
+        final long createdNanos;
+        final String json;
+
+        CachedStatus(long createdNanos, String json) {
+            this.createdNanos = createdNanos;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Tunes the JDK's HTTP server for many polling clients, unless the properties are
+     * already set. The server reads them once, when the first {@link HttpServer} in
+     * the process is created, and they apply to every server in the process, so this
+     * is left to the application to call before then; {@link #main(String[])} does.
+     * Without TCP_NODELAY every response waits about 40 ms for a delayed ACK, because
+     * headers and body are sent separately; and by default all but 200 idle keep-alive
+     * connections are closed, which makes polling clients reconnect all the time.
+     */
+    public static void tuneHttpServer() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "16384");
+        }
+    }
+
+    private final PlaylistManager playlistManager;
+    private final MP3Player player;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LatencyHistogram> commandLatency = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> queryLatency = new ConcurrentHashMap<>();
+    private final LongAdder searchesRejected = new LongAdder();
+    private final BatchedSearch batchedSearch;
+    private volatile CachedStatus nowPlaying = new CachedStatus(0, null);
+
+    // Guarded by this
+    private int currentIndex = -1;
+    private volatile boolean playing;
+
+    /**
+     * Creates a daemon. Call {@link #start()} to begin serving requests. An application
+     * serving many clients should call {@link #tuneHttpServer()} before this.
+     *
+     * @param playlistManager The playlist to play from
+     * @param sink Where audio goes
+     * @param port The loopback port to listen on, or 0 for any free port
+     * @throws IOException If the port cannot be bound
+     */
+    public PlayerDaemon(PlaylistManager playlistManager, AudioSink sink, int port) throws IOException {
+        this.playlistManager = playlistManager;
+        this.player = new MP3Player(sink);
+        this.player.setPlaybackListener(new MP3Player.PlaybackListener() {
+            @Override
+            public void playbackStarted() {
+            }
+
+            @Override
+            public void playbackCompleted() {
+                if (playing && playlistManager.size() > 0) {
+                    skip(1);
+                }
+            }
+        });
+
+        this.batchedSearch = new BatchedSearch(playlistManager, BatchedSearch.DEFAULT_MAX_PENDING);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Creates the executor that runs request handlers: one virtual thread per request
+     * if the JVM supports them, otherwise a fixed pool of platform threads.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(PLATFORM_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "daemon-request-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The port the daemon listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return The player, for embedding applications
+     */
+    public MP3Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * @param command A command name such as "play"
+     * @return The latency histogram of the command, or null if it has never been received
+     */
+    public LatencyHistogram getCommandLatency(String command) {
+        return commandLatency.get(command);
+    }
+
+    /**
+     * Stops serving requests, stops playback and closes the audio sinks.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        playing = false;
+        batchedSearch.close();
+        player.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long received = System.nanoTime();
+        String command = exchange.getRequestURI().getPath().substring(1);
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        boolean post = "POST".equals(exchange.getRequestMethod());
+
+        try {
+            switch (command) {
+                case "status":
+                    respond(exchange, 200, "application/json", status());
+                    return;
+                case "playlist":
+                    respond(exchange, 200, "application/json", playlist());
+                    return;
+                case "metrics":
+                    respond(exchange, 200, "text/plain; version=0.0.4", metrics());
+                    return;
+                case "nowplaying":
+                    respond(exchange, 200, "application/json", nowPlaying());
+                    recordQuery(command, received);
+                    return;
+                case "search":
+                    search(exchange, params, received);
+                    return;
+                default:
+                    break;
+            }
+
+            if (!post) {
+                respond(exchange, 405, "text/plain", "Commands must be sent with POST\n");
+                return;
+            }
+            CompletableFuture<Void> done = execute(command, params);
+            if (done == null) {
+                respond(exchange, 404, "text/plain", "Unknown command: " + command + "\n");
+                return;
+            }
+            try {
+                done.get(COMMAND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (CancellationException e) {
+                // Superseded by a later command, which has taken over
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof CancellationException)) {
+                    throw e;
+                }
+            }
+            commandLatency.computeIfAbsent(command, name -> new LatencyHistogram())
+                    .record(System.nanoTime() - received);
+            respond(exchange, 200, "application/json", status());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "text/plain", "Command failed: " + e.getCause() + "\n");
+        } catch (TimeoutException e) {
+            respond(exchange, 503, "text/plain", "Command timed out\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "text/plain", "Interrupted\n");
+        }
+    }
+
+    /**
+     * Starts a command.
+     *
+     * @return A future for the command, or null if the command is unknown
+     */
+    private CompletableFuture<Void> execute(String command, Map<String, String> params) {
+        switch (command) {
+            case "play":
+                if (params.containsKey("index")) {
+                    return playIndex(parseInt(params, "index"));
+                }
+                return resume();
+            case "pause":
+                playing = false;
+                return player.pause();
+            case "stop":
+                playing = false;
+                return player.stop();
+            case "next":
+                return skip(1);
+            case "previous":
+                return skip(-1);
+            case "volume":
+                return player.setVolume(Float.parseFloat(require(params, "value")));
+            case "seek":
+                return player.setPosition(Long.parseLong(require(params, "ms")));
+            case "add":
+                File file = new File(require(params, "path"));
+                playlistManager.addSong(new Song(file.getName(), file.getAbsolutePath()));
+                return CompletableFuture.completedFuture(null);
+            case "scan":
+                boolean recursive = !"false".equals(params.get("recursive"));
+                if (!playlistManager.createFromDirectory(new File(require(params, "path")), recursive)) {
+                    throw new IllegalArgumentException("Not a directory: " + params.get("path"));
+                }
+                return CompletableFuture.completedFuture(null);
+            case "load":
+                if (!playlistManager.loadPlaylist(require(params, "path"))) {
+                    throw new IllegalArgumentException("Cannot load playlist: " + params.get("path"));
+                }
+                synchronized (this) {
+                    currentIndex = -1;
+                }
+                return CompletableFuture.completedFuture(null);
+            default:
+                return null;
+        }
+    }
+
+    private String nowPlaying() {
+        CachedStatus cached = nowPlaying;
+        long now = System.nanoTime();
+        if (cached.json == null || now - cached.createdNanos > NOW_PLAYING_REFRESH_NANOS) {
+            // Several threads may refresh at once; any of their results will do
+            cached = new CachedStatus(now, status());
+            nowPlaying = cached;
+        }
+        return cached.json;
+    }
+
+    private void search(HttpExchange exchange, Map<String, String> params, long received)
+            throws IOException, InterruptedException, TimeoutException {
+        String query = params.getOrDefault("q", "");
+        int limit = params.containsKey("limit") ? parseInt(params, "limit") : DEFAULT_SEARCH_LIMIT;
+        List<Song> songs;
+        try {
+            songs = batchedSearch.search(query).get(COMMAND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                searchesRejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "text/plain", "Search index is being rebuilt, try again\n");
+                return;
+            }
+            respond(exchange, 500, "text/plain", "Search failed: " + e.getCause() + "\n");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{\"query\":").append(quote(query));
+        json.append(",\"total\":").append(songs.size()).append(",\"songs\":[");
+        int count = Math.min(limit, songs.size());
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(songJson(songs.get(i)));
+        }
+        json.append("]}\n");
+        respond(exchange, 200, "application/json", json.toString());
+        recordQuery("search", received);
+    }
+
+    private void recordQuery(String query, long received) {
+        queryLatency.computeIfAbsent(query, name -> new LatencyHistogram()).record(System.nanoTime() - received);
+    }
+
+    private CompletableFuture<Void> resume() {
+        if (player.getCurrentFile() == null) {
+            return playIndex(Math.max(0, currentIndex()));
+        }
+        playing = true;
+        return player.play();
+    }
+
+    private synchronized int currentIndex() {
+        return currentIndex;
+    }
+
+    private CompletableFuture<Void> skip(int delta) {
+        int size = playlistManager.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("The playlist is empty");
+        }
+        int index;
+        synchronized (this) {
+            index = Math.floorMod(currentIndex + delta, size);
+        }
+        return playIndex(index);
+    }
+
+    private CompletableFuture<Void> playIndex(int index) {
+        Song song = playlistManager.getSong(index);
+        if (song == null) {
+            throw new IllegalArgumentException("No song at index " + index);
+        }
+        synchronized (this) {
+            currentIndex = index;
+        }
+        playing = true;
+        System.out.println("Playing: " + song.getTitle() + " by " + song.getArtist());
+        return player.loadAsync(new File(song.getFilePath())).thenCompose(loaded -> player.play());
+    }
+
+    private String status() {
+        Song song;
+        int index;
+        synchronized (this) {
+            index = currentIndex;
+        }
+        song = index >= 0 ? playlistManager.getSong(index) : null;
+        String state = player.isPlaying() ? "playing" : player.isPaused() ? "paused" : "stopped";
+
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"state\":\"").append(state).append("\",");
+        json.append("\"index\":").append(index).append(',');
+        json.append("\"song\":").append(song != null ? songJson(song) : "null").append(',');
+        json.append("\"positionMillis\":").append(player.getCurrentPosition()).append(',');
+        json.append("\"lengthMillis\":").append(player.getTotalLength()).append(',');
+        json.append("\"playlistSize\":").append(playlistManager.size());
+        return json.append("}\n").toString();
+    }
+
+    private String playlist() {
+        StringBuilder json = new StringBuilder("{\"name\":");
+        json.append(quote(playlistManager.getPlaylistName())).append(",\"songs\":[");
+        boolean first = true;
+        for (Song song : playlistManager.snapshot()) {
+            if (!first) {
+                json.append(',');
+            }
+            json.append(songJson(song));
+            first = false;
+        }
+        return json.append("]}\n").toString();
+    }
+
+    private String metrics() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP player_command_latency_seconds Time from receiving a command to the player carrying it out\n");
+        out.append("# TYPE player_command_latency_seconds histogram\n");
+        List<String> commands = new ArrayList<>(commandLatency.keySet());
+        commands.sort(null);
+        for (String command : commands) {
+            commandLatency.get(command).writePrometheus(out, "player_command_latency_seconds",
+                    "command=\"" + command + "\"");
+        }
+        out.append("# HELP player_query_latency_seconds Time to answer a query request\n");
+        out.append("# TYPE player_query_latency_seconds histogram\n");
+        List<String> queries = new ArrayList<>(queryLatency.keySet());
+        queries.sort(null);
+        for (String query : queries) {
+            queryLatency.get(query).writePrometheus(out, "player_query_latency_seconds",
+                    "query=\"" + query + "\"");
+        }
+        out.append("# HELP player_search_rejected_total Searches turned away while the index was rebuilt\n");
+        out.append("# TYPE player_search_rejected_total counter\n");
+        out.append("player_search_rejected_total ").append(searchesRejected.sum()).append('\n');
+        return out.toString();
+    }
+
+    static String songJson(Song song) {
+        return "{\"title\":" + quote(song.getTitle())
+                + ",\"artist\":" + quote(song.getArtist())
+                + ",\"album\":" + quote(song.getAlbum())
+                + ",\"duration\":" + song.getDuration()
+                + ",\"path\":" + quote(song.getFilePath()) + "}";
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return params;
+    }
+
+    private static String require(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int parseInt(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(require(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name);
+        }
+    }
+
+    static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Starts the daemon.
+     *
+     * Options: {@code --port N}, {@code --playlist FILE}, {@code --dir DIRECTORY},
+     * {@code --wav FILE} (also record output to a WAV file) and {@code --no-audio}
+     * (do not use the sound card; playback is still paced in real time).
+     */
+    public static void main(String[] args) throws IOException {
+        tuneHttpServer();
+        int port = DEFAULT_PORT;
+        boolean audio = true;
+        String wavFile = null;
+        PlaylistManager playlistManager = new PlaylistManager();
+        playlistManager.setPlaylistName("Daemon");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--playlist":
+                    if (!playlistManager.loadPlaylist(args[++i])) {
+                        System.out.println("Cannot load playlist " + args[i]);
+                    }
+                    break;
+                case "--dir":
+                    playlistManager.createFromDirectory(new File(args[++i]), true);
+                    break;
+                case "--wav":
+                    wavFile = args[++i];
+                    break;
+                case "--no-audio":
+                    audio = false;
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    System.out.println("Usage: PlayerDaemon [--port N] [--playlist FILE] [--dir DIRECTORY] "
+                            + "[--wav FILE] [--no-audio]");
+                    return;
+            }
+        }
+
+        List<AudioSink> sinks = new ArrayList<>();
+        sinks.add(audio ? new LineSink() : new NullSink());
+        if (wavFile != null) {
+            sinks.add(new WavFileSink(new File(wavFile)));
+        }
+        AudioSink sink = sinks.size() == 1 ? sinks.get(0) : new FanOutSink(sinks.toArray(new AudioSink[0]));
+
+        PlayerDaemon daemon = new PlayerDaemon(playlistManager, sink, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "daemon-shutdown"));
+        daemon.start();
+        System.out.println("Player daemon listening on http://127.0.0.1:" + daemon.getPort()
+                + " with " + playlistManager.size() + " songs");
+    }
+}
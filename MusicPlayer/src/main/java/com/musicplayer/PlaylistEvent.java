@@ -0,0 +1,122 @@
+package com.musicplayer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes one change to a playlist, as reported to {@link PlaylistListener}s.
+ *
+ * Range events (inserted, removed, updated) cover the indices [fromIndex, toIndex).
+ * A moved event reports the old index in fromIndex and the new index in toIndex.
+ * A reordered event means the playlist may have been rearranged or replaced
+ * entirely and should be re-read from the snapshot.
+ */
+public final class PlaylistEvent {
+
+    /**
+     * The kinds of change a playlist can report.
+     */
+    public enum Type {
+        INSERTED,
+        REMOVED,
+        MOVED,
+        REORDERED,
+        UPDATED
+    }
+
+    private final Type type;
+    private final int fromIndex;
+    private final int toIndex;
+    private final List<Song> songs;
+    private final PersistentVector<Song> snapshot;
+
+    PlaylistEvent(Type type, int fromIndex, int toIndex, List<Song> songs, PersistentVector<Song> snapshot) {
+        this.type = type;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.songs = songs;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return The kind of change
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The first index affected, or the old index for a move
+     */
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * @return The index after the last one affected, or the new index for a move
+     */
+    public int getToIndex() {
+        return toIndex;
+    }
+
+    /**
+     * Returns the songs the change applies to: the inserted songs, the removed songs,
+     * the updated songs or the moved song. Empty for a reordered event.
+     *
+     * @return The affected songs
+     */
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    /**
+     * @return The playlist as it was immediately after this change
+     */
+    public PersistentVector<Song> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Tries to merge a following event into this one, so a run of adjacent inserts
+     * or removals is reported as a single range.
+     *
+     * @param next The event that happened after this one
+     * @return The combined event, or null if the two cannot be combined
+     */
+    PlaylistEvent coalesce(PlaylistEvent next) {
+        if (type == Type.INSERTED && next.type == Type.INSERTED && next.fromIndex == toIndex) {
+            // Both runs sit side by side in the later snapshot, so view them there
+            // rather than copying, which would make a long run of inserts quadratic
+            return new PlaylistEvent(type, fromIndex, next.toIndex,
+                    Collections.unmodifiableList(next.snapshot.subList(fromIndex, next.toIndex)), next.snapshot);
+        }
+        if (type == Type.REMOVED && next.type == Type.REMOVED && next.fromIndex == fromIndex) {
+            // Repeated removal at the same position, e.g. deleting a selection downwards
+            return new PlaylistEvent(type, fromIndex, toIndex + next.toIndex - next.fromIndex,
+                    concat(songs, next.songs), next.snapshot);
+        }
+        if (type == Type.REMOVED && next.type == Type.REMOVED && next.toIndex == fromIndex) {
+            return new PlaylistEvent(type, next.fromIndex, toIndex, concat(next.songs, songs), next.snapshot);
+        }
+        if (type == Type.UPDATED && next.type == Type.UPDATED && next.fromIndex == toIndex) {
+            return new PlaylistEvent(type, fromIndex, next.toIndex, concat(songs, next.songs), next.snapshot);
+        }
+        if (type == Type.REORDERED && next.type == Type.REORDERED) {
+            return next;
+        }
+        return null;
+    }
+
+    private static List<Song> concat(List<Song> first, List<Song> second) {
+        List<Song> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public String toString() {
+        return type + " [" + fromIndex + ", " + toIndex + ") " + songs.size() + " song(s)";
+    }
+}
@@ -0,0 +1,695 @@
+package com.musicplayer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes playlists in the formats other players use: M3U and M3U8, PLS and
+ * XSPF. The format is chosen by file extension.
+ *
+ * Files are processed a line or an XML event at a time, so reading or writing takes
+ * the same small amount of memory however long the playlist is. Relative paths are
+ * resolved against the playlist's folder, each distinct folder once. Imports hand
+ * songs to the playlist in batches inside one {@link PlaylistManager#batch(Runnable)},
+ * so a playlist of a million entries is one update for listeners.
+ *
+ * Song titles and artists are stored the way most players write them, as
+ * "Artist - Title". M3U files are read and written as UTF-8 whatever their extension.
+ */
+public final class PlaylistFiles {
+
+    /**
+     * The supported playlist formats.
+     */
+    public enum Format {
+        M3U,
+        PLS,
+        XSPF;
+
+        /**
+         * @param file A playlist file
+         * @return Its format going by the extension, or null if it is not supported
+         */
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".m3u") || name.endsWith(".m3u8")) {
+                return M3U;
+            }
+            if (name.endsWith(".pls")) {
+                return PLS;
+            }
+            if (name.endsWith(".xspf")) {
+                return XSPF;
+            }
+            return null;
+        }
+    }
+
+    private static final String XSPF_NAMESPACE = "http://xspf.org/ns/0/";
+
+    private PlaylistFiles() {
+    }
+
+    /**
+     * Reads the songs of a playlist file one at a time.
+     *
+     * @param file The playlist file
+     * @param songs Receives each song, in playlist order
+     * @return The number of songs read
+     * @throws IOException If the file cannot be read or its format is not supported
+     */
+    public static int read(Path file, Consumer<Song> songs) throws IOException {
+        Format format = formatOf(file);
+        PathResolver resolver = new PathResolver(file);
+        switch (format) {
+            case M3U:
+                return readM3u(file, resolver, songs);
+            case PLS:
+                return readPls(file, resolver, songs);
+            default:
+                return readXspf(file, resolver, songs);
+        }
+    }
+
+    /**
+     * Adds the songs of a playlist file to the end of a playlist, in one update. The
+     * file is read before the playlist is locked. Songs read before an error are still
+     * added.
+     *
+     * @param manager The playlist to add to
+     * @param file The playlist file
+     * @return The number of songs read
+     * @throws IOException If the file cannot be read or its format is not supported
+     */
+    public static int importInto(PlaylistManager manager, Path file) throws IOException {
+        formatOf(file);
+        List<Song> songs = new ArrayList<>();
+        try {
+            return read(file, songs::add);
+        } finally {
+            manager.addSongs(songs);
+        }
+    }
+
+    /**
+     * Writes songs to a playlist file, replacing it atomically. Songs in the
+     * playlist's folder or below are written with relative paths.
+     *
+     * @param file The playlist file
+     * @param songs The songs to write
+     * @return The number of songs written
+     * @throws IOException If the file cannot be written or its format is not supported
+     */
+    public static int write(Path file, Iterable<Song> songs) throws IOException {
+        Format format = formatOf(file);
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        String base = folderOf(target);
+        int count;
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            OutputStream out = new BufferedOutputStream(fileOut, 64 * 1024);
+            switch (format) {
+                case M3U:
+                    count = writeM3u(out, base, songs);
+                    break;
+                case PLS:
+                    count = writePls(out, base, songs);
+                    break;
+                default:
+                    count = writeXspf(out, base, songs);
+                    break;
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return count;
+    }
+
+    private static Format formatOf(Path file) throws IOException {
+        Format format = Format.forFile(file);
+        if (format == null) {
+            throw new IOException("Unsupported playlist format: " + file.getFileName());
+        }
+        return format;
+    }
+
+    /**
+     * Opens a text playlist. Bytes that are not UTF-8, as in older Latin-1 files,
+     * become replacement characters rather than failing the import.
+     */
+    private static BufferedReader openText(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8),
+                64 * 1024);
+    }
+
+    private static int readM3u(Path file, PathResolver resolver, Consumer<Song> songs) throws IOException {
+        int count = 0;
+        try (BufferedReader in = openText(file)) {
+            String display = null;
+            int duration = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = stripBom(line).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("#")) {
+                    if (line.regionMatches(true, 0, "#EXTINF:", 0, 8)) {
+                        // #EXTINF:<seconds>[ attributes],<display name>
+                        int comma = line.indexOf(',', 8);
+                        duration = parseSeconds(line, 8, comma < 0 ? line.length() : comma);
+                        display = comma < 0 ? null : line.substring(comma + 1).trim();
+                    }
+                    continue;
+                }
+                String path = resolver.resolve(line);
+                if (path != null) {
+                    songs.accept(song(path, display, duration));
+                    count++;
+                }
+                display = null;
+                duration = 0;
+            }
+        }
+        return count;
+    }
+
+    private static int writeM3u(OutputStream out, String base, Iterable<Song> songs) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("#EXTM3U\n");
+        int count = 0;
+        for (Song song : songs) {
+            writer.write("#EXTINF:");
+            writer.write(Integer.toString(song.getDuration() > 0 ? song.getDuration() : -1));
+            writer.write(',');
+            writer.write(display(song));
+            writer.write('\n');
+            writer.write(relativize(base, song.getFilePath()));
+            writer.write('\n');
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static int readPls(Path file, PathResolver resolver, Consumer<Song> songs) throws IOException {
+        int count = 0;
+        try (BufferedReader in = openText(file)) {
+            // Entries are numbered and their keys usually grouped, so an entry is
+            // complete when a key for another number turns up
+            int entry = -1;
+            String path = null;
+            String display = null;
+            int duration = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = stripBom(line).trim();
+                int equals = line.indexOf('=');
+                if (equals < 0 || line.startsWith("[")) {
+                    continue;
+                }
+                String key = line.substring(0, equals).trim().toLowerCase();
+                String value = line.substring(equals + 1).trim();
+                int digits = key.length();
+                while (digits > 0 && Character.isDigit(key.charAt(digits - 1))) {
+                    digits--;
+                }
+                if (digits == key.length() || digits == 0) {
+                    // NumberOfEntries, Version and the like
+                    continue;
+                }
+                int number = parseInt(key, digits, key.length(), -1);
+                if (number != entry) {
+                    if (path != null) {
+                        songs.accept(song(path, display, duration));
+                        count++;
+                    }
+                    entry = number;
+                    path = null;
+                    display = null;
+                    duration = 0;
+                }
+                switch (key.substring(0, digits)) {
+                    case "file":
+                        path = resolver.resolve(value);
+                        break;
+                    case "title":
+                        display = value;
+                        break;
+                    case "length":
+                        duration = parseSeconds(value, 0, value.length());
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (path != null) {
+                songs.accept(song(path, display, duration));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int writePls(OutputStream out, String base, Iterable<Song> songs) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("[playlist]\n");
+        int count = 0;
+        for (Song song : songs) {
+            String number = Integer.toString(++count);
+            writer.write("File" + number + "=");
+            writer.write(relativize(base, song.getFilePath()));
+            writer.write("\nTitle" + number + "=");
+            writer.write(display(song));
+            writer.write("\nLength" + number + "=");
+            writer.write(Integer.toString(song.getDuration() > 0 ? song.getDuration() : -1));
+            writer.write('\n');
+        }
+        // Written last, so the songs need not be counted beforehand
+        writer.write("NumberOfEntries=" + count + "\nVersion=2\n");
+        writer.flush();
+        return count;
+    }
+
+    private static int readXspf(Path file, PathResolver resolver, Consumer<Song> songs) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        int count = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                // Depth of the open track element, or -1 outside one
+                int depth = 0;
+                int trackDepth = -1;
+                String location = null;
+                String title = null;
+                String creator = null;
+                String album = null;
+                int duration = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (trackDepth < 0) {
+                            if (name.equals("track")) {
+                                trackDepth = depth;
+                                location = null;
+                                title = null;
+                                creator = null;
+                                album = null;
+                                duration = 0;
+                            }
+                            continue;
+                        }
+                        if (depth != trackDepth + 1) {
+                            continue;
+                        }
+                        switch (name) {
+                            case "location":
+                                String text = reader.getElementText().trim();
+                                depth--;
+                                if (location == null) {
+                                    location = text;
+                                }
+                                break;
+                            case "title":
+                                title = reader.getElementText().trim();
+                                depth--;
+                                break;
+                            case "creator":
+                                creator = reader.getElementText().trim();
+                                depth--;
+                                break;
+                            case "album":
+                                album = reader.getElementText().trim();
+                                depth--;
+                                break;
+                            case "duration":
+                                String millis = reader.getElementText().trim();
+                                depth--;
+                                duration = parseInt(millis, 0, millis.length(), 0) / 1000;
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == trackDepth) {
+                            trackDepth = -1;
+                            String path = location == null ? null : resolver.resolve(decodeUri(location));
+                            if (path != null) {
+                                songs.accept(new Song(title != null ? title : fileName(path), path,
+                                        creator != null ? creator : "Unknown", album != null ? album : "Unknown",
+                                        Math.max(duration, 0)));
+                                count++;
+                            }
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed XSPF playlist: " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    private static int writeXspf(OutputStream out, String base, Iterable<Song> songs) throws IOException {
+        int count = 0;
+        try {
+            // Given the stream, the JDK writer encodes and writes a byte at a time
+            Writer text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(text);
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("playlist");
+            writer.writeDefaultNamespace(XSPF_NAMESPACE);
+            writer.writeAttribute("version", "1");
+            writer.writeCharacters("\n  ");
+            writer.writeStartElement("trackList");
+            for (Song song : songs) {
+                writer.writeCharacters("\n    ");
+                writer.writeStartElement("track");
+                String path = song.getFilePath();
+                String location;
+                if (isUrl(path)) {
+                    location = path;
+                } else if (path.startsWith(base)) {
+                    location = encodeUri(relativize(base, path));
+                } else {
+                    location = "file://" + encodeUri(path);
+                }
+                writeElement(writer, "location", location);
+                writeElement(writer, "title", song.getTitle());
+                if (!"Unknown".equals(song.getArtist())) {
+                    writeElement(writer, "creator", song.getArtist());
+                }
+                if (!"Unknown".equals(song.getAlbum())) {
+                    writeElement(writer, "album", song.getAlbum());
+                }
+                if (song.getDuration() > 0) {
+                    writeElement(writer, "duration", Long.toString(song.getDuration() * 1000L));
+                }
+                writer.writeEndElement();
+                count++;
+            }
+            writer.writeCharacters("\n  ");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+            text.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write XSPF playlist: " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+        writer.writeStartElement(name);
+        writer.writeCharacters(xmlText(text));
+        writer.writeEndElement();
+    }
+
+    /**
+     * Resolves the entries of one playlist to absolute paths.
+     */
+    private static final class PathResolver {
+        // Enough for the folders of a large library; evicted oldest first
+        private static final int MAX_FOLDERS = 4096;
+
+        private final String base;
+        private final Map<String, String> folders = new LinkedHashMap<String, String>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_FOLDERS;
+            }
+        };
+
+        PathResolver(Path playlist) {
+            this.base = folderOf(playlist.toAbsolutePath());
+        }
+
+        /**
+         * @param entry A path or URL as written in the playlist
+         * @return The absolute path, the URL of a stream, or null for an empty entry
+         */
+        String resolve(String entry) {
+            if (entry.isEmpty()) {
+                return null;
+            }
+            if (entry.regionMatches(true, 0, "file:", 0, 5)) {
+                return decodeUri(entry);
+            }
+            if (isUrl(entry)) {
+                return entry;
+            }
+            if (File.separatorChar == '/') {
+                entry = entry.replace('\\', '/');
+            }
+            if (entry.charAt(0) == File.separatorChar || (entry.length() > 1 && entry.charAt(1) == ':')) {
+                return entry;
+            }
+            int slash = entry.lastIndexOf(File.separatorChar);
+            if (slash < 0) {
+                return base + entry;
+            }
+            // Entries of one playlist share few folders, so each is normalized once
+            String folder = folders.computeIfAbsent(entry.substring(0, slash),
+                    relative -> withSeparator(Paths.get(base, relative).normalize()));
+            return folder + entry.substring(slash + 1);
+        }
+    }
+
+    /**
+     * @return The folder holding a file, with a separator at the end
+     */
+    private static String folderOf(Path file) {
+        Path folder = file.getParent();
+        return folder == null ? "" : withSeparator(folder);
+    }
+
+    private static String withSeparator(Path folder) {
+        String text = folder.toString();
+        return text.endsWith(File.separator) ? text : text + File.separator;
+    }
+
+    /**
+     * @return The path relative to a folder if it is inside it, else the same string
+     */
+    private static String relativize(String base, String path) {
+        if (path.startsWith(base) && path.length() > base.length()) {
+            return path.substring(base.length());
+        }
+        return path;
+    }
+
+    private static boolean isUrl(String entry) {
+        int colon = entry.indexOf("://");
+        if (colon < 2) {
+            return false;
+        }
+        for (int i = 0; i < colon; i++) {
+            if (!Character.isLetter(entry.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Song song(String path, String display, int duration) {
+        String title = fileName(path);
+        String artist = "Unknown";
+        if (display != null && !display.isEmpty()) {
+            int dash = display.indexOf(" - ");
+            if (dash > 0) {
+                artist = display.substring(0, dash).trim();
+                title = display.substring(dash + 3).trim();
+            } else {
+                title = display;
+            }
+        }
+        return new Song(title, path, artist, "Unknown", Math.max(duration, 0));
+    }
+
+    private static String display(Song song) {
+        String title = song.getTitle().replace('\n', ' ').replace('\r', ' ');
+        String artist = song.getArtist();
+        return artist == null || artist.isEmpty() ? title : artist.replace('\n', ' ').replace('\r', ' ') + " - " + title;
+    }
+
+    private static String fileName(String path) {
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return path.substring(slash + 1);
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+
+    /**
+     * Reads a whole number of seconds at the start of a range, such as "215" or
+     * "-1 tvg-id=...". Unknown and negative lengths are zero.
+     */
+    private static int parseSeconds(String text, int start, int end) {
+        int i = start;
+        while (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+        int digitsEnd = i;
+        while (digitsEnd < end && Character.isDigit(text.charAt(digitsEnd))) {
+            digitsEnd++;
+        }
+        return parseInt(text, i, digitsEnd, 0);
+    }
+
+    private static int parseInt(String text, int start, int end, int fallback) {
+        if (start >= end || end - start > 9) {
+            return fallback;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return fallback;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Removes characters XML 1.0 cannot hold.
+     */
+    private static String xmlText(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                StringBuilder clean = new StringBuilder(text.length());
+                for (int j = 0; j < text.length(); j++) {
+                    char d = text.charAt(j);
+                    clean.append(d < 0x20 && d != '\t' && d != '\n' && d != '\r' ? ' ' : d);
+                }
+                return clean.toString();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Turns a file URI, or a relative URI reference, into a plain path. Tolerates
+     * the unescaped spaces many players write.
+     */
+    static String decodeUri(String uri) {
+        String path = uri;
+        if (path.regionMatches(true, 0, "file:", 0, 5)) {
+            path = path.substring(5);
+            if (path.startsWith("//")) {
+                // Skip the authority, which is empty or "localhost" for local files
+                int slash = path.indexOf('/', 2);
+                path = slash < 0 ? "/" : path.substring(slash);
+            }
+            if (path.length() > 2 && path.charAt(0) == '/' && path.charAt(2) == ':') {
+                // file:///C:/Music on Windows
+                path = path.substring(1);
+            }
+        } else if (isUrl(path)) {
+            return path;
+        }
+        int percent = path.indexOf('%');
+        if (percent < 0) {
+            return path;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(path.length());
+        bytes.write(path.getBytes(StandardCharsets.UTF_8), 0, percent);
+        for (int i = percent; i < path.length(); i++) {
+            char c = path.charAt(i);
+            int high = i + 2 < path.length() ? Character.digit(path.charAt(i + 1), 16) : -1;
+            int low = high >= 0 ? Character.digit(path.charAt(i + 2), 16) : -1;
+            if (c == '%' && low >= 0) {
+                bytes.write(high << 4 | low);
+                i += 2;
+            } else {
+                byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Percent-encodes the characters of a path that may not appear in a URI.
+     */
+    static String encodeUri(String path) {
+        if (File.separatorChar == '\\') {
+            path = path.replace('\\', '/');
+            if (path.length() > 1 && path.charAt(1) == ':') {
+                path = "/" + path;
+            }
+        }
+        int i = 0;
+        while (i < path.length() && isUriSafe(path.charAt(i))) {
+            i++;
+        }
+        if (i == path.length()) {
+            return path;
+        }
+        StringBuilder uri = new StringBuilder(path.length() + 16);
+        uri.append(path, 0, i);
+        for (byte b : path.substring(i).getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (isUriSafe(c)) {
+                uri.append(c);
+            } else {
+                uri.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+        return uri.toString();
+    }
+
+    private static boolean isUriSafe(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || "-._~/!$'()*+,;=:@".indexOf(c) >= 0;
+    }
+}
@@ -0,0 +1,478 @@
+package com.musicplayer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Incremental persistence for a {@link PlaylistManager}.
+ *
+ * Instead of rewriting the whole playlist on every save, the journal listens to the
+ * playlist's change events and appends a small binary record for each one to
+ * {@code <playlist file>.journal}. Moving a song costs 17 bytes of I/O. Records are
+ * written on a background thread, and the journal is fsynced at most once per sync
+ * interval no matter how many records were appended.
+ *
+ * Once the journal grows past a threshold, or after a change that rearranges the
+ * whole playlist (sort, shuffle, load), it is compacted: the current snapshot is
+ * written to a temporary file, atomically renamed over the playlist file, and a new
+ * empty journal is started. Snapshots and journals carry a generation number so a
+ * crash between those steps never replays a journal against the wrong snapshot.
+ *
+ * If writing the journal fails, nothing more is appended after the failed record,
+ * which replay would stop at. The next change compacts instead, and until a
+ * compaction succeeds {@link #flush()} reports the failure.
+ *
+ * The playlist file stays readable by {@link PlaylistManager#loadPlaylist(String)}.
+ */
+public class PlaylistJournal implements PlaylistListener, Closeable {
+    private static final int MAGIC = 0x504A4E4C; // "PJNL"
+    private static final int HEADER_SIZE = 12;
+
+    private static final byte RECORD_INSERTED = 1;
+    private static final byte RECORD_REMOVED = 2;
+    private static final byte RECORD_MOVED = 3;
+    private static final byte RECORD_UPDATED = 4;
+
+    /** Default number of records after which the journal is folded into a snapshot. */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 10000;
+
+    /** Default maximum time between appending a record and forcing it to disk. */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 200;
+
+    private final PlaylistManager manager;
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final int compactThreshold;
+    private final ScheduledExecutorService ioExecutor;
+
+    // Only touched on the I/O thread
+    private FileChannel channel;
+    private long generation;
+    private boolean dirty;
+    // Set by the I/O thread when a write fails, and cleared by a compaction
+    private volatile IOException failure;
+
+    // Guarded by the playlist's write lock, since listeners are called under it
+    private int recordsSinceCompaction;
+
+    private PlaylistJournal(PlaylistManager manager, Path snapshotPath, int compactThreshold) {
+        this.manager = manager;
+        this.snapshotPath = snapshotPath;
+        this.journalPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".journal");
+        this.compactThreshold = compactThreshold;
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "playlist-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.ioExecutor = executor;
+    }
+
+    /**
+     * Opens the journal for a playlist file with default settings.
+     *
+     * @see #open(PlaylistManager, String, int, long)
+     */
+    public static PlaylistJournal open(PlaylistManager manager, String filePath) throws IOException {
+        return open(manager, filePath, DEFAULT_COMPACT_THRESHOLD, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal for a playlist file and starts recording changes to the playlist.
+     *
+     * If the file exists, the playlist is restored from it and any journal records
+     * written since it was last compacted are replayed; a torn record at the end of
+     * the journal (from a crash mid-write) is discarded. If the file does not exist,
+     * the playlist's current contents are written as the initial snapshot.
+     *
+     * @param manager The playlist to persist
+     * @param filePath The playlist file
+     * @param compactThreshold Number of records after which the journal is compacted
+     * @param syncIntervalMillis Maximum delay before appended records are fsynced
+     * @return The open journal
+     * @throws IOException If the files cannot be read or created
+     */
+    public static PlaylistJournal open(PlaylistManager manager, String filePath, int compactThreshold,
+                                       long syncIntervalMillis) throws IOException {
+        PlaylistJournal journal = new PlaylistJournal(manager, Paths.get(filePath).toAbsolutePath(), compactThreshold);
+        journal.recover();
+        manager.addPlaylistListener(journal);
+        journal.ioExecutor.scheduleWithFixedDelay(journal::syncIfDirty,
+                syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            generation = 1;
+            PlaylistManager.writeSnapshot(snapshotPath, manager.getPlaylistName(), manager.snapshot(), generation);
+            startJournal();
+            return;
+        }
+
+        String name;
+        List<Song> songs;
+        long snapshotGeneration = 0;
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(snapshotPath))) {
+            name = (String) in.readObject();
+            @SuppressWarnings("unchecked")
+            List<Song> loaded = (List<Song>) in.readObject();
+            songs = new ArrayList<>(loaded);
+            try {
+                snapshotGeneration = (Long) in.readObject();
+            } catch (EOFException e) {
+                // Written by savePlaylist before a journal existed
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a playlist file: " + snapshotPath, e);
+        }
+
+        long validEnd = -1;
+        if (Files.exists(journalPath)) {
+            validEnd = replay(songs, snapshotGeneration);
+        }
+        manager.restore(name, songs);
+
+        if (validEnd < 0) {
+            // No journal for this snapshot, so begin a new generation
+            generation = snapshotGeneration + 1;
+            PlaylistManager.writeSnapshot(snapshotPath, name, songs, generation);
+            startJournal();
+        } else {
+            generation = snapshotGeneration;
+            channel = FileChannel.open(journalPath, StandardOpenOption.WRITE);
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+        }
+    }
+
+    /**
+     * Applies the journal's records to a list of songs.
+     *
+     * @return The offset just past the last valid record, or -1 if the journal
+     *         belongs to a different snapshot generation
+     */
+    private long replay(List<Song> songs, long snapshotGeneration) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            if (in.readInt() != MAGIC || in.readLong() != snapshotGeneration) {
+                return -1;
+            }
+            long offset = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > (1 << 24)) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(songs, record);
+                offset += 8 + record.length;
+            }
+            return offset;
+        } catch (EOFException e) {
+            // Header itself is incomplete
+            return -1;
+        }
+    }
+
+    private static void apply(List<Song> songs, byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        int from = in.readInt();
+        int to = in.readInt();
+        switch (type) {
+            case RECORD_INSERTED:
+                songs.addAll(from, readSongs(in, to - from));
+                break;
+            case RECORD_REMOVED:
+                songs.subList(from, to).clear();
+                break;
+            case RECORD_MOVED:
+                songs.add(to, songs.remove(from));
+                break;
+            case RECORD_UPDATED:
+                List<Song> updated = readSongs(in, to - from);
+                for (int i = 0; i < updated.size(); i++) {
+                    songs.set(from + i, updated.get(i));
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static List<Song> readSongs(DataInputStream in, int count) throws IOException {
+        List<Song> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Song song = new Song(readString(in), readString(in), readString(in), readString(in), in.readInt());
+            song.setPlayCount(in.readInt());
+            songs.add(song);
+        }
+        return songs;
+    }
+
+    private static void writeSongs(DataOutputStream out, List<Song> songs) throws IOException {
+        for (Song song : songs) {
+            writeString(out, song.getTitle());
+            writeString(out, song.getFilePath());
+            writeString(out, song.getArtist());
+            writeString(out, song.getAlbum());
+            out.writeInt(song.getDuration());
+            out.writeInt(song.getPlayCount());
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Override
+    public void playlistChanged(PlaylistManager source, List<PlaylistEvent> events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PersistentVector<Song> compactTo = null;
+        try {
+            for (PlaylistEvent event : events) {
+                if (event.getType() == PlaylistEvent.Type.REORDERED) {
+                    // Cheaper to write one snapshot than to describe every position
+                    compactTo = event.getSnapshot();
+                    bytes.reset();
+                    recordsSinceCompaction = 0;
+                    continue;
+                }
+                encode(bytes, event);
+                recordsSinceCompaction++;
+            }
+        } catch (IOException e) {
+            // Writing to memory cannot fail, apart from strings too long for writeUTF.
+            // The snapshot already holds the records encoded so far, so drop them.
+            compactTo = events.get(events.size() - 1).getSnapshot();
+            bytes.reset();
+        }
+
+        if (recordsSinceCompaction >= compactThreshold || failure != null) {
+            // The snapshot after the last event already contains every record, as well
+            // as any lost when a write failed
+            compactTo = events.get(events.size() - 1).getSnapshot();
+            bytes.reset();
+        }
+
+        if (compactTo != null) {
+            scheduleCompaction(source.getPlaylistName(), compactTo);
+        }
+        byte[] records = bytes.toByteArray();
+        if (records.length > 0) {
+            submit(() -> append(records));
+        }
+    }
+
+    private void scheduleCompaction(String name, PersistentVector<Song> snapshot) {
+        recordsSinceCompaction = 0;
+        submit(() -> compact(name, snapshot));
+    }
+
+    private static void encode(ByteArrayOutputStream bytes, PlaylistEvent event) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        switch (event.getType()) {
+            case INSERTED:
+                out.writeByte(RECORD_INSERTED);
+                break;
+            case REMOVED:
+                out.writeByte(RECORD_REMOVED);
+                break;
+            case MOVED:
+                out.writeByte(RECORD_MOVED);
+                break;
+            case UPDATED:
+                out.writeByte(RECORD_UPDATED);
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot journal " + event.getType());
+        }
+        out.writeInt(event.getFromIndex());
+        out.writeInt(event.getToIndex());
+        if (event.getType() == PlaylistEvent.Type.INSERTED || event.getType() == PlaylistEvent.Type.UPDATED) {
+            writeSongs(out, event.getSongs());
+        }
+        out.flush();
+
+        byte[] record = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        DataOutputStream framed = new DataOutputStream(bytes);
+        framed.writeInt(record.length);
+        framed.write(record);
+        framed.writeInt((int) crc.getValue());
+        framed.flush();
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    private void submit(IoTask task) {
+        ioExecutor.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                failed(e);
+            }
+        });
+    }
+
+    private void failed(IOException e) {
+        if (failure == null) {
+            System.err.println("Cannot write playlist journal " + journalPath + ": " + e.getMessage());
+        }
+        failure = e;
+    }
+
+    private void append(byte[] records) throws IOException {
+        if (failure != null) {
+            // Replay would stop at the failed record; the next compaction keeps these
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dirty = true;
+    }
+
+    private void compact(String name, List<Song> snapshot) throws IOException {
+        generation++;
+        PlaylistManager.writeSnapshot(snapshotPath, name, snapshot, generation);
+        startJournal();
+        failure = null;
+    }
+
+    private void startJournal() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(generation).flip();
+        channel.write(header);
+        channel.force(false);
+        dirty = false;
+    }
+
+    private void syncIfDirty() {
+        if (!dirty || channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Waits until every change recorded so far has been written and forced to disk.
+     *
+     * @throws IOException If the journal could not be flushed, or a write failed and
+     *                     no compaction has succeeded since
+     */
+    public void flush() throws IOException {
+        try {
+            ioExecutor.submit(this::syncIfDirty).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing journal", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Journal flush failed", e.getCause());
+        }
+        IOException error = failure;
+        if (error != null) {
+            throw new IOException("Journal write failed", error);
+        }
+    }
+
+    /**
+     * Folds the journal into the playlist file now, instead of waiting for the threshold.
+     */
+    public void compact() throws IOException {
+        // Capture the snapshot inside a batch so no change can slip in between
+        // taking it and queueing the compaction behind earlier records
+        manager.batch(() -> scheduleCompaction(manager.getPlaylistName(), manager.snapshot()));
+        flush();
+    }
+
+    /**
+     * Stops recording changes, flushes outstanding records and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        manager.batch(() -> {
+            manager.removePlaylistListener(this);
+            if (failure != null) {
+                // Try once more to save what the failed writes lost
+                scheduleCompaction(manager.getPlaylistName(), manager.snapshot());
+            }
+        });
+        try {
+            flush();
+        } finally {
+            ioExecutor.shutdown();
+            try {
+                ioExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * @return The path of the journal file
+     */
+    public Path getJournalPath() {
+        return journalPath;
+    }
+}
@@ -0,0 +1,140 @@
+package com.musicplayer;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Swing list model that mirrors a {@link PlaylistManager} by listening to its change
+ * events, so the playlist view only repaints the rows that actually changed instead
+ * of being rebuilt after every edit.
+ *
+ * Events may arrive on any thread. They are queued and applied on the event dispatch
+ * thread in order, with at most one pending invokeLater at a time. The model can also
+ * temporarily show a filtered list (search results) instead of the playlist.
+ */
+public class PlaylistListModel extends AbstractListModel<Song> implements PlaylistListener {
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentLinkedQueue<PlaylistEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    // Only touched on the event dispatch thread
+    private List<Song> shown;
+    private List<Song> filtered;
+
+    /**
+     * Creates a model showing the given playlist and subscribes to its changes.
+     *
+     * @param manager The playlist to display
+     */
+    public PlaylistListModel(PlaylistManager manager) {
+        // Subscribe and take the snapshot as one batch, so no change is missed or applied twice
+        manager.batch(() -> {
+            manager.addPlaylistListener(this);
+            shown = manager.snapshot();
+        });
+    }
+
+    @Override
+    public void playlistChanged(PlaylistManager source, List<PlaylistEvent> events) {
+        queue.addAll(events);
+        if (SwingUtilities.isEventDispatchThread()) {
+            drain();
+        } else if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        PlaylistEvent event;
+        while ((event = queue.poll()) != null) {
+            apply(event);
+        }
+    }
+
+    private void apply(PlaylistEvent event) {
+        int oldSize = shown.size();
+        shown = event.getSnapshot();
+        if (filtered != null) {
+            // Search results stay on screen until the filter is cleared
+            return;
+        }
+
+        switch (event.getType()) {
+            case INSERTED:
+                fireIntervalAdded(this, event.getFromIndex(), event.getToIndex() - 1);
+                break;
+            case REMOVED:
+                fireIntervalRemoved(this, event.getFromIndex(), event.getToIndex() - 1);
+                break;
+            case UPDATED:
+                fireContentsChanged(this, event.getFromIndex(), event.getToIndex() - 1);
+                break;
+            case MOVED:
+                fireContentsChanged(this, Math.min(event.getFromIndex(), event.getToIndex()),
+                        Math.max(event.getFromIndex(), event.getToIndex()));
+                break;
+            case REORDERED:
+            default:
+                fireFullRefresh(oldSize);
+                break;
+        }
+    }
+
+    private void fireFullRefresh(int oldSize) {
+        int newSize = getSize();
+        if (oldSize > newSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        if (Math.min(oldSize, newSize) > 0) {
+            fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+        }
+    }
+
+    /**
+     * Shows a list of search results instead of the playlist. Must be called on the
+     * event dispatch thread.
+     *
+     * @param songs The songs to show
+     */
+    public void showFiltered(List<Song> songs) {
+        int oldSize = getSize();
+        filtered = songs;
+        fireFullRefresh(oldSize);
+    }
+
+    /**
+     * Goes back to showing the whole playlist. Must be called on the event dispatch thread.
+     */
+    public void clearFilter() {
+        if (filtered == null) {
+            return;
+        }
+        int oldSize = getSize();
+        filtered = null;
+        fireFullRefresh(oldSize);
+    }
+
+    /**
+     * @return true if search results are being shown instead of the playlist
+     */
+    public boolean isFiltered() {
+        return filtered != null;
+    }
+
+    @Override
+    public int getSize() {
+        return filtered != null ? filtered.size() : shown.size();
+    }
+
+    @Override
+    public Song getElementAt(int index) {
+        return filtered != null ? filtered.get(index) : shown.get(index);
+    }
+}
@@ -0,0 +1,29 @@
+package com.musicplayer;
+
+import java.util.List;
+
+/**
+ * Receives change notifications from a {@link PlaylistManager}.
+ *
+ * Listeners are called on the thread that made the change, in the order the changes
+ * were published, while the playlist's write lock is held: every other writer, the
+ * event dispatch thread included, waits until all listeners return. They must return
+ * quickly and hand any slow work (such as reading files or updating Swing components)
+ * to another thread. Holding the lock is what lets a listener subscribe and read a
+ * snapshot inside {@link PlaylistManager#batch(Runnable)} without missing a change.
+ *
+ * A listener that throws is reported to the calling thread's uncaught exception
+ * handler, and the other listeners are still called.
+ */
+public interface PlaylistListener {
+
+    /**
+     * Called after one or more changes have been published. Changes made inside
+     * {@link PlaylistManager#batch(Runnable)} arrive together, with adjacent ranges
+     * already merged.
+     *
+     * @param source The playlist that changed
+     * @param events The changes, in the order they happened
+     */
+    void playlistChanged(PlaylistManager source, List<PlaylistEvent> events);
+}
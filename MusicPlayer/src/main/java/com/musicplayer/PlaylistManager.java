@@ -1,26 +1,74 @@
 package com.musicplayer;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Manages playlists for the music player application.
  * Provides functionality for creating, loading, saving, and manipulating playlists.
+ *
+ * The playlist is safe to use from several threads at once. Every change to which
+ * songs it holds, or their order, builds a new immutable {@link PersistentVector} and
+ * publishes it through a volatile field, so readers (the UI, playback, search and
+ * scanners) work on a consistent list without taking any lock. Writers are serialized
+ * on an internal lock. The songs themselves are shared, not copied:
+ * {@link #updateSong(int, Consumer)} edits them in place, so a reader on another
+ * thread may see an edit while it is being made.
+ *
+ * Every published change is reported to registered {@link PlaylistListener}s as a
+ * {@link PlaylistEvent}. Changes made inside {@link #batch(Runnable)} are merged and
+ * delivered together when the batch ends. Listeners run holding the write lock, so
+ * a slow listener holds up every writer.
  */
 public class PlaylistManager {
-    private ArrayList<Song> currentPlaylist;
-    private String playlistName;
-    private String playlistFilePath;
+    // Above this many distinct changes in one batch, listeners just get one REORDERED
+    private static final int MAX_PENDING_EVENTS = 64;
+
+    private final Object writeLock = new Object();
+    private volatile PersistentVector<Song> currentPlaylist;
+    private volatile String playlistName;
+    private volatile String playlistFilePath;
+    private volatile DuplicateDetector.PlaylistIndex duplicateIndex;
+    // Counts published changes, including songs edited in place, which keep the snapshot
+    private volatile long version;
+    private volatile FuzzyIndex fuzzyIndex;
+    private volatile boolean closed;
+
+    /**
+     * A fuzzy search index and the change it is up to date with.
+     */
+    private static final class FuzzyIndex {
+        final long version;
+        final FuzzySearch search;
+
+        FuzzyIndex(long version, FuzzySearch search) {
+            this.version = version;
+            this.search = search;
+        }
+    }
+
+    private final List<PlaylistListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<PlaylistEvent> pendingEvents = new ArrayList<>();
+    private int batchDepth;
 
     /**
      * Creates a new empty playlist manager.
      */
     public PlaylistManager() {
-        this.currentPlaylist = new ArrayList<>();
+        this.currentPlaylist = PersistentVector.empty();
         this.playlistName = "New Playlist";
         this.playlistFilePath = null;
     }
@@ -32,18 +80,143 @@ public class PlaylistManager {
      * @param name Name of the playlist
      */
     public PlaylistManager(List<Song> songs, String name) {
-        this.currentPlaylist = new ArrayList<>(songs);
+        this.currentPlaylist = PersistentVector.of(songs);
         this.playlistName = name;
         this.playlistFilePath = null;
     }
 
     /**
-     * @return The current playlist
+     * Returns a modifiable copy of the current playlist. Changes to the returned
+     * list are not reflected in the playlist; use {@link #snapshot()} for read-only
+     * access without copying.
+     *
+     * @return A copy of the current playlist
      */
     public ArrayList<Song> getPlaylist() {
+        return new ArrayList<>(currentPlaylist);
+    }
+
+    /**
+     * Returns an immutable snapshot of the playlist. Which songs it holds, and their
+     * order, never change, so it can be iterated from any thread while other threads
+     * keep editing the playlist. The songs' fields can change, through
+     * {@link #updateSong(int, Consumer)}.
+     *
+     * @return The current playlist snapshot
+     */
+    public PersistentVector<Song> snapshot() {
         return currentPlaylist;
     }
 
+    /**
+     * Registers a listener to be told about every change to this playlist.
+     *
+     * @param listener The listener to add
+     */
+    public void addPlaylistListener(PlaylistListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to stop notifying
+     */
+    public void removePlaylistListener(PlaylistListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs a group of edits as one batch. Other writers wait until the batch is done,
+     * and listeners receive the batch's changes together, with adjacent inserts and
+     * removals merged into ranges. Batches may be nested.
+     *
+     * @param edits The edits to run
+     */
+    public void batch(Runnable edits) {
+        synchronized (writeLock) {
+            batchDepth++;
+            try {
+                edits.run();
+            } finally {
+                batchDepth--;
+                if (batchDepth == 0 && !pendingEvents.isEmpty()) {
+                    List<PlaylistEvent> events = new ArrayList<>(pendingEvents);
+                    pendingEvents.clear();
+                    fireEvents(events);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes a new snapshot and reports the change. Must be called holding writeLock.
+     */
+    private void publish(PersistentVector<Song> next, PlaylistEvent.Type type,
+                         int fromIndex, int toIndex, List<Song> songs) {
+        checkOpen();
+        currentPlaylist = next;
+        version++;
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        PlaylistEvent event = new PlaylistEvent(type, fromIndex, toIndex, songs, next);
+        if (batchDepth == 0) {
+            fireEvents(Collections.singletonList(event));
+            return;
+        }
+
+        if (!pendingEvents.isEmpty()) {
+            int last = pendingEvents.size() - 1;
+            PlaylistEvent merged = pendingEvents.get(last).coalesce(event);
+            if (merged != null) {
+                pendingEvents.set(last, merged);
+                return;
+            }
+        }
+        pendingEvents.add(event);
+        if (pendingEvents.size() > MAX_PENDING_EVENTS) {
+            pendingEvents.clear();
+            pendingEvents.add(new PlaylistEvent(PlaylistEvent.Type.REORDERED, 0, next.size(),
+                    Collections.emptyList(), next));
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Playlist " + playlistName + " is closed");
+        }
+    }
+
+    /**
+     * Closes the playlist to edits and returns its final contents. Later edits throw
+     * IllegalStateException instead of changing a playlist its owner has already stored.
+     *
+     * @return The songs in the playlist when it was closed
+     */
+    PersistentVector<Song> close() {
+        synchronized (writeLock) {
+            closed = true;
+            return currentPlaylist;
+        }
+    }
+
+    private void fireEvents(List<PlaylistEvent> events) {
+        List<PlaylistEvent> delivered = Collections.unmodifiableList(events);
+        for (PlaylistListener listener : listeners) {
+            try {
+                listener.playlistChanged(this, delivered);
+            } catch (RuntimeException e) {
+                // The change is already published, so the other listeners still hear of it
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private void publishReordered(PersistentVector<Song> next) {
+        publish(next, PlaylistEvent.Type.REORDERED, 0, next.size(), Collections.emptyList());
+    }
+
     /**
      * @return The name of the current playlist
      */
@@ -58,14 +231,91 @@ public class PlaylistManager {
         this.playlistName = name;
     }
 
+    /**
+     * Makes the playlist skip songs whose audio is already in it, found by content
+     * rather than path. Files are fingerprinted before the playlist is locked, so two
+     * threads adding the same recording at once may both succeed.
+     *
+     * @param detector The detector to check added songs with, or null to allow duplicates
+     */
+    public void setDuplicateDetector(DuplicateDetector detector) {
+        // Index the songs already here as one batch, so no change is missed
+        batch(() -> {
+            DuplicateDetector.PlaylistIndex old = duplicateIndex;
+            if (old != null) {
+                removePlaylistListener(old);
+            }
+            DuplicateDetector.PlaylistIndex index = null;
+            if (detector != null) {
+                index = new DuplicateDetector.PlaylistIndex(detector);
+                index.reset(currentPlaylist);
+                addPlaylistListener(index);
+            }
+            duplicateIndex = index;
+        });
+    }
+
     /**
      * Adds a song to the playlist.
      *
      * @param song The song to add
-     * @return true if the song was added successfully
+     * @return true if the song was added, false if it duplicates a song already in
+     *         the playlist and duplicates are suppressed
      */
     public boolean addSong(Song song) {
-        return currentPlaylist.add(song);
+        DuplicateDetector.PlaylistIndex duplicates = duplicateIndex;
+        if (duplicates != null && duplicates.suppress(Collections.singletonList(song)).isEmpty()) {
+            return false;
+        }
+        synchronized (writeLock) {
+            int index = currentPlaylist.size();
+            publish(currentPlaylist.plus(song), PlaylistEvent.Type.INSERTED, index, index + 1,
+                    Collections.singletonList(song));
+        }
+        return true;
+    }
+
+    /**
+     * Adds several songs to the end of the playlist in a single update.
+     *
+     * @param songs The songs to add
+     * @return true if the playlist changed
+     */
+    public boolean addSongs(Collection<Song> songs) {
+        return addCheckedSongs(withoutDuplicates(songs));
+    }
+
+    /**
+     * Drops the songs {@link #addSongs(Collection)} would skip as duplicates, reading
+     * their files if a duplicate detector is set. Lets a caller check songs before a
+     * {@link #batch(Runnable)} and add them inside it with
+     * {@link #addCheckedSongs(Collection)}, so no file is read with the playlist locked.
+     *
+     * @param songs The songs to check
+     * @return The songs that are not duplicates, in order
+     */
+    public List<Song> withoutDuplicates(Collection<Song> songs) {
+        DuplicateDetector.PlaylistIndex duplicates = duplicateIndex;
+        return duplicates != null ? duplicates.suppress(songs) : new ArrayList<>(songs);
+    }
+
+    /**
+     * Adds songs already checked with {@link #withoutDuplicates(Collection)} to the end
+     * of the playlist in a single update, without checking them again.
+     *
+     * @param songs The songs to add
+     * @return true if the playlist changed
+     */
+    public boolean addCheckedSongs(Collection<Song> songs) {
+        if (songs.isEmpty()) {
+            return false;
+        }
+        synchronized (writeLock) {
+            int index = currentPlaylist.size();
+            publish(currentPlaylist.plusAll(songs), PlaylistEvent.Type.INSERTED, index, index + songs.size(),
+                    Collections.unmodifiableList(new ArrayList<>(songs)));
+        }
+        return true;
     }
 
     /**
@@ -75,10 +325,16 @@ public class PlaylistManager {
      * @return The removed song, or null if the index is invalid
      */
     public Song removeSong(int index) {
-        if (index >= 0 && index < currentPlaylist.size()) {
-            return currentPlaylist.remove(index);
+        synchronized (writeLock) {
+            PersistentVector<Song> songs = currentPlaylist;
+            if (index >= 0 && index < songs.size()) {
+                Song removed = songs.get(index);
+                publish(songs.without(index, index + 1), PlaylistEvent.Type.REMOVED, index, index + 1,
+                        Collections.singletonList(removed));
+                return removed;
+            }
+            return null;
         }
-        return null;
     }
 
     /**
@@ -88,7 +344,46 @@ public class PlaylistManager {
      * @return true if the song was found and removed
      */
     public boolean removeSong(Song song) {
-        return currentPlaylist.remove(song);
+        synchronized (writeLock) {
+            int index = currentPlaylist.indexOf(song);
+            if (index < 0) {
+                return false;
+            }
+            publish(currentPlaylist.without(index, index + 1), PlaylistEvent.Type.REMOVED, index, index + 1,
+                    Collections.singletonList(song));
+            return true;
+        }
+    }
+
+    /**
+     * Removes every song matching a filter in one batch.
+     *
+     * @param filter Selects the songs to remove
+     * @return The number of songs removed
+     */
+    public int removeIf(Predicate<Song> filter) {
+        int[] removed = {0};
+        batch(() -> {
+            PersistentVector<Song> songs = currentPlaylist;
+            int end = songs.size();
+            while (end > 0) {
+                // Work backwards one run of matches at a time so earlier indices stay valid
+                while (end > 0 && !filter.test(songs.get(end - 1))) {
+                    end--;
+                }
+                int start = end;
+                while (start > 0 && filter.test(songs.get(start - 1))) {
+                    start--;
+                }
+                if (start < end) {
+                    publish(currentPlaylist.without(start, end), PlaylistEvent.Type.REMOVED, start, end,
+                            Collections.unmodifiableList(new ArrayList<>(songs.subList(start, end))));
+                    removed[0] += end - start;
+                }
+                end = start;
+            }
+        });
+        return removed[0];
     }
 
     /**
@@ -102,7 +397,12 @@ public class PlaylistManager {
      * Clears all songs from the playlist.
      */
     public void clear() {
-        currentPlaylist.clear();
+        synchronized (writeLock) {
+            PersistentVector<Song> songs = currentPlaylist;
+            if (!songs.isEmpty()) {
+                publish(PersistentVector.empty(), PlaylistEvent.Type.REMOVED, 0, songs.size(), songs);
+            }
+        }
     }
 
     /**
@@ -112,17 +412,72 @@ public class PlaylistManager {
      * @return The song at the specified index, or null if the index is invalid
      */
     public Song getSong(int index) {
-        if (index >= 0 && index < currentPlaylist.size()) {
-            return currentPlaylist.get(index);
+        PersistentVector<Song> songs = currentPlaylist;
+        if (index >= 0 && index < songs.size()) {
+            return songs.get(index);
         }
         return null;
     }
 
+    /**
+     * Applies a change to the fields of the song at an index and reports it to
+     * listeners as an update. Song fields should be edited through this method
+     * rather than through the setters directly, so observers stay in sync. The song
+     * is edited in place, so the change shows in every snapshot holding it, and in
+     * the {@link SongLibrary} and queues that share the song object.
+     *
+     * @param index The index of the song to update
+     * @param update The change to apply to the song
+     * @return true if the index was valid and the song was updated
+     */
+    public boolean updateSong(int index, Consumer<Song> update) {
+        synchronized (writeLock) {
+            PersistentVector<Song> songs = currentPlaylist;
+            if (index < 0 || index >= songs.size()) {
+                return false;
+            }
+            Song song = songs.get(index);
+            checkOpen();
+            update.accept(song);
+            publish(songs, PlaylistEvent.Type.UPDATED, index, index + 1, Collections.singletonList(song));
+            return true;
+        }
+    }
+
+    /**
+     * Applies a change to every song matching a filter and reports them as updated,
+     * in one batch.
+     *
+     * @param filter Selects the songs to update
+     * @param update The change to apply to each song
+     * @return The number of songs updated
+     */
+    public int updateIf(Predicate<Song> filter, Consumer<Song> update) {
+        int[] updated = {0};
+        batch(() -> {
+            PersistentVector<Song> songs = currentPlaylist;
+            for (int i = 0; i < songs.size(); i++) {
+                Song song = songs.get(i);
+                if (filter.test(song)) {
+                    checkOpen();
+                    update.accept(song);
+                    publish(songs, PlaylistEvent.Type.UPDATED, i, i + 1, Collections.singletonList(song));
+                    updated[0]++;
+                }
+            }
+        });
+        return updated[0];
+    }
+
     /**
      * Shuffles the playlist randomly.
      */
     public void shuffle() {
-        Collections.shuffle(currentPlaylist);
+        synchronized (writeLock) {
+            List<Song> songs = new ArrayList<>(currentPlaylist);
+            Collections.shuffle(songs);
+            publishReordered(PersistentVector.of(songs));
+        }
     }
 
     /**
@@ -133,70 +488,73 @@ public class PlaylistManager {
      * @return true if the move was successful
      */
     public boolean moveSong(int fromIndex, int toIndex) {
-        if (fromIndex < 0 || fromIndex >= currentPlaylist.size() ||
-            toIndex < 0 || toIndex >= currentPlaylist.size()) {
-            return false;
-        }
+        synchronized (writeLock) {
+            PersistentVector<Song> songs = currentPlaylist;
+            if (fromIndex < 0 || fromIndex >= songs.size() ||
+                toIndex < 0 || toIndex >= songs.size()) {
+                return false;
+            }
 
-        Song song = currentPlaylist.remove(fromIndex);
-        currentPlaylist.add(toIndex, song);
-        return true;
+            publish(songs.move(fromIndex, toIndex), PlaylistEvent.Type.MOVED, fromIndex, toIndex,
+                    Collections.singletonList(songs.get(fromIndex)));
+            return true;
+        }
     }
 
     /**
      * Sorts the playlist by the song title in ascending order.
      */
     public void sortByTitle() {
-        Collections.sort(currentPlaylist, Comparator.comparing(Song::getTitle));
+        sort(Comparator.comparing(Song::getTitle));
     }
 
     /**
      * Sorts the playlist by the song title in descending order.
      */
     public void sortByTitleDesc() {
-        Collections.sort(currentPlaylist, Comparator.comparing(Song::getTitle).reversed());
+        sort(Comparator.comparing(Song::getTitle).reversed());
     }
 
     /**
      * Sorts the playlist by the artist name in ascending order.
      */
     public void sortByArtist() {
-        Collections.sort(currentPlaylist, Comparator.comparing(Song::getArtist));
+        sort(Comparator.comparing(Song::getArtist));
     }
 
     /**
      * Sorts the playlist by the artist name in descending order.
      */
     public void sortByArtistDesc() {
-        Collections.sort(currentPlaylist, Comparator.comparing(Song::getArtist).reversed());
+        sort(Comparator.comparing(Song::getArtist).reversed());
     }
 
     /**
      * Sorts the playlist by the album name in ascending order.
      */
     public void sortByAlbum() {
-        Collections.sort(currentPlaylist, Comparator.comparing(Song::getAlbum));
+        sort(Comparator.comparing(Song::getAlbum));
     }
 
     /**
      * Sorts the playlist by the album name in descending order.
      */
     public void sortByAlbumDesc() {
-        Collections.sort(currentPlaylist, Comparator.comparing(Song::getAlbum).reversed());
+        sort(Comparator.comparing(Song::getAlbum).reversed());
     }
 
     /**
      * Sorts the playlist by the song duration in ascending order.
      */
     public void sortByDuration() {
-        Collections.sort(currentPlaylist, Comparator.comparingInt(Song::getDuration));
+        sort(Comparator.comparingInt(Song::getDuration));
     }
 
     /**
      * Sorts the playlist by the song duration in descending order.
      */
     public void sortByDurationDesc() {
-        Collections.sort(currentPlaylist, Comparator.comparingInt(Song::getDuration).reversed());
+        sort(Comparator.comparingInt(Song::getDuration).reversed());
     }
 
     /**
@@ -205,7 +563,11 @@ public class PlaylistManager {
      * @param comparator The comparator to use for sorting
      */
     public void sort(Comparator<Song> comparator) {
-        Collections.sort(currentPlaylist, comparator);
+        synchronized (writeLock) {
+            List<Song> songs = new ArrayList<>(currentPlaylist);
+            songs.sort(comparator);
+            publishReordered(PersistentVector.of(songs));
+        }
     }
 
     /**
@@ -215,9 +577,9 @@ public class PlaylistManager {
      * @return A new list of songs that match the filter
      */
     public List<Song> filterByTitle(String titleSubstring) {
-        String searchTerm = titleSubstring.toLowerCase();
+        String searchTerm = TextNormalizer.normalize(titleSubstring);
         return currentPlaylist.stream()
-                .filter(song -> song.getTitle().toLowerCase().contains(searchTerm))
+                .filter(song -> song.getNormalizedTitle().contains(searchTerm))
                 .collect(Collectors.toList());
     }
 
@@ -228,9 +590,9 @@ public class PlaylistManager {
      * @return A new list of songs that match the filter
      */
     public List<Song> filterByArtist(String artistName) {
-        String searchTerm = artistName.toLowerCase();
+        String searchTerm = TextNormalizer.normalize(artistName);
         return currentPlaylist.stream()
-                .filter(song -> song.getArtist().toLowerCase().contains(searchTerm))
+                .filter(song -> song.getNormalizedArtist().contains(searchTerm))
                 .collect(Collectors.toList());
     }
 
@@ -241,9 +603,9 @@ public class PlaylistManager {
      * @return A new list of songs that match the filter
      */
     public List<Song> filterByAlbum(String albumName) {
-        String searchTerm = albumName.toLowerCase();
+        String searchTerm = TextNormalizer.normalize(albumName);
         return currentPlaylist.stream()
-                .filter(song -> song.getAlbum().toLowerCase().contains(searchTerm))
+                .filter(song -> song.getNormalizedAlbum().contains(searchTerm))
                 .collect(Collectors.toList());
     }
 
@@ -281,28 +643,51 @@ public class PlaylistManager {
      */
     public List<Song> search(String searchTerm) {
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
-            return new ArrayList<>(currentPlaylist);
+            return getPlaylist();
         }
 
-        String term = searchTerm.toLowerCase().trim();
+        String term = TextNormalizer.normalize(searchTerm.trim());
         return currentPlaylist.stream()
                 .filter(song ->
-                    song.getTitle().toLowerCase().contains(term) ||
-                    song.getArtist().toLowerCase().contains(term) ||
-                    song.getAlbum().toLowerCase().contains(term))
+                    song.getNormalizedTitle().contains(term) ||
+                    song.getNormalizedArtist().contains(term) ||
+                    song.getNormalizedAlbum().contains(term))
                 .collect(Collectors.toList());
     }
 
     /**
-     * Saves the current playlist to a file.
+     * Searches the playlist allowing for typos, so "beatels" finds "Beatles".
+     * The index is built on the first search after the playlist or one of its songs
+     * changes, which takes a while on a large playlist, so the event dispatch thread
+     * should search in the background.
+     *
+     * @param searchTerm The words to search for across all song fields
+     * @param limit The maximum number of results
+     * @return The best matching songs, best first
+     * @see FuzzySearch
+     */
+    public List<Song> fuzzySearch(String searchTerm, int limit) {
+        // Read before the snapshot, so the index is never newer than its version says
+        long current = version;
+        FuzzyIndex index = fuzzyIndex;
+        if (index == null || index.version != current) {
+            index = new FuzzyIndex(current, new FuzzySearch(currentPlaylist));
+            fuzzyIndex = index;
+        }
+        return index.search.search(searchTerm, limit);
+    }
+
+    /**
+     * Saves the current playlist to a file. The playlist is written to a temporary
+     * file first and then renamed over the target, so a crash during the save never
+     * leaves a half-written playlist behind.
      *
      * @param filePath The path to save the playlist to
      * @return true if the save was successful
      */
     public boolean savePlaylist(String filePath) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(playlistName);
-            out.writeObject(currentPlaylist);
+        try {
+            writeSnapshot(Paths.get(filePath), playlistName, currentPlaylist, 0L);
             this.playlistFilePath = filePath;
             return true;
         } catch (IOException e) {
@@ -311,6 +696,61 @@ public class PlaylistManager {
         }
     }
 
+    /**
+     * Atomically replaces a playlist file. The format is the one read by
+     * {@link #loadPlaylist(String)}, followed by the journal generation the file
+     * corresponds to (ignored by loadPlaylist).
+     *
+     * @param path The file to write
+     * @param name The playlist name
+     * @param songs The songs to write
+     * @param generation The journal generation of this snapshot
+     * @throws IOException If the file cannot be written
+     */
+    static void writeSnapshot(Path path, String name, List<Song> songs, long generation) throws IOException {
+        writeSnapshot(path, name, songs, generation, null);
+    }
+
+    /**
+     * Writes a snapshot followed by one extra object, used by the song library to
+     * store data that belongs next to the songs.
+     */
+    static void writeSnapshot(Path path, String name, List<Song> songs, long generation, Object extra)
+            throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeObject(name);
+            out.writeObject(new ArrayList<>(songs));
+            out.writeObject(generation);
+            if (extra != null) {
+                out.writeObject(extra);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the name and contents of the playlist in one step, reporting a
+     * reordered event. Used when a playlist is restored from storage.
+     *
+     * @param name The playlist name
+     * @param songs The new contents
+     */
+    void restore(String name, List<Song> songs) {
+        synchronized (writeLock) {
+            this.playlistName = name;
+            publishReordered(PersistentVector.of(songs));
+        }
+    }
+
     /**
      * Loads a playlist from a file.
      *
@@ -320,8 +760,9 @@ public class PlaylistManager {
     @SuppressWarnings("unchecked")
     public boolean loadPlaylist(String filePath) {
         try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
-            this.playlistName = (String) in.readObject();
-            this.currentPlaylist = (ArrayList<Song>) in.readObject();
+            String name = (String) in.readObject();
+            ArrayList<Song> songs = (ArrayList<Song>) in.readObject();
+            restore(name, songs);
             this.playlistFilePath = filePath;
             return true;
         } catch (IOException | ClassNotFoundException e) {
@@ -342,6 +783,40 @@ public class PlaylistManager {
         return savePlaylist(playlistFilePath);
     }
 
+    /**
+     * Adds the songs of an M3U, M3U8, PLS or XSPF playlist to the end of this one.
+     *
+     * @param filePath The playlist file to import
+     * @return true if the import was successful
+     * @see PlaylistFiles
+     */
+    public boolean importPlaylist(String filePath) {
+        try {
+            PlaylistFiles.importInto(this, Paths.get(filePath));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the playlist as M3U, M3U8, PLS or XSPF, going by the file extension.
+     *
+     * @param filePath The playlist file to write
+     * @return true if the export was successful
+     * @see PlaylistFiles
+     */
+    public boolean exportPlaylist(String filePath) {
+        try {
+            PlaylistFiles.write(Paths.get(filePath), currentPlaylist);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     /**
      * Creates a new playlist from a directory of audio files.
      *
@@ -354,19 +829,21 @@ public class PlaylistManager {
             return false;
         }
 
-        int initialSize = currentPlaylist.size();
-        scanDirectory(directory, recursive);
+        List<Song> found = new ArrayList<>();
+        scanDirectory(directory, recursive, found);
 
-        return currentPlaylist.size() > initialSize;
+        // Publish everything that was found as one update rather than one per file
+        return addSongs(found);
     }
 
     /**
-     * Recursively scans a directory for audio files and adds them to the playlist.
+     * Recursively scans a directory for audio files and collects them as songs.
      *
      * @param directory The directory to scan
      * @param recursive Whether to scan subdirectories
+     * @param found The list that discovered songs are added to
      */
-    private void scanDirectory(File directory, boolean recursive) {
+    private void scanDirectory(File directory, boolean recursive, List<Song> found) {
         File[] files = directory.listFiles();
         if (files == null) {
             return;
@@ -374,10 +851,9 @@ public class PlaylistManager {
 
         for (File file : files) {
             if (file.isDirectory() && recursive) {
-                scanDirectory(file, true);
+                scanDirectory(file, true, found);
             } else if (isAudioFile(file)) {
-                Song song = new Song(file.getName(), file.getAbsolutePath());
-                addSong(song);
+                found.add(new Song(file.getName(), file.getAbsolutePath()));
             }
         }
     }
@@ -388,7 +864,7 @@ public class PlaylistManager {
      * @param file The file to check
      * @return true if the file appears to be an audio file
      */
-    private boolean isAudioFile(File file) {
+    static boolean isAudioFile(File file) {
         String name = file.getName().toLowerCase();
         return name.endsWith(".wav") || name.endsWith(".mp3") ||
                name.endsWith(".aiff") || name.endsWith(".aif") ||
@@ -0,0 +1,581 @@
+package com.musicplayer;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the start of upcoming songs into memory ahead of time, so opening them does
+ * not wait on a slow disk or network share.
+ *
+ * Given the play queue's lookahead window, the first few megabytes of each upcoming
+ * file are read in pages with {@link AsynchronousFileChannel}, a few reads at a time
+ * and the soonest file first, into a page cache of bounded size. A file that leaves
+ * the window stops being read. Pages are evicted least recently used first.
+ *
+ * As a {@link PcmSourceFactory}, the cache opens files for the player through a
+ * read-only channel that serves cached pages from memory and reads anything else
+ * from the file. It counts the bytes served each way, and the prefetched bytes that
+ * were evicted or dropped without ever being read, which is the prefetch waste.
+ *
+ * Files are assumed not to change while their pages are cached.
+ */
+public class ReadAheadCache implements PcmSourceFactory, PlayQueue.Prefetcher, Closeable {
+
+    /** Size of a cached page. */
+    public static final int PAGE_SIZE = 64 * 1024;
+
+    /** Default total size of the cached pages. */
+    public static final long DEFAULT_CAPACITY_BYTES = 64L << 20;
+
+    /** Default number of bytes read ahead from the start of each upcoming file. */
+    public static final long DEFAULT_READ_AHEAD_BYTES = 4L << 20;
+
+    // Page reads in flight at once, and threads carrying out the reads
+    private static final int PARALLEL_READS = 4;
+    private static final int IO_THREADS = 4;
+
+    /**
+     * A cached page of a file.
+     */
+    private static final class PageKey {
+        final Path path;
+        final long index;
+
+        PageKey(Path path, long index) {
+            this.path = path;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PageKey)) {
+                return false;
+            }
+            PageKey key = (PageKey) other;
+            return index == key.index && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, index);
+        }
+    }
+
+    private static final class Page {
+        final byte[] data;
+        final int length;
+        boolean used;
+
+        Page(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final long capacityBytes;
+    private final long readAheadBytes;
+    private final ExecutorService ioPool;
+
+    // Guarded by this
+    private final LinkedHashMap<PageKey, Page> pages = new LinkedHashMap<>(256, 0.75f, true);
+    // The files being read ahead, soonest first
+    private LinkedHashMap<Path, Fetch> fetches = new LinkedHashMap<>();
+    private int inFlight;
+    // Arrays of evicted pages, reused for new reads so the cache does not churn the heap
+    private final ArrayDeque<byte[]> spare = new ArrayDeque<>();
+    private long cachedBytes;
+    private long hitBytes;
+    private long missBytes;
+    private long prefetchedBytes;
+    private long wastedBytes;
+    private boolean closed;
+
+    /**
+     * Creates a cache with the default sizes.
+     */
+    public ReadAheadCache() {
+        this(DEFAULT_CAPACITY_BYTES, DEFAULT_READ_AHEAD_BYTES);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacityBytes The most bytes of pages kept in memory
+     * @param readAheadBytes The number of bytes read from the start of each upcoming file
+     */
+    public ReadAheadCache(long capacityBytes, long readAheadBytes) {
+        this.capacityBytes = capacityBytes;
+        this.readAheadBytes = readAheadBytes;
+        this.ioPool = Executors.newFixedThreadPool(IO_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "read-ahead");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized void prefetch(List<Song> upcoming) {
+        if (closed) {
+            return;
+        }
+        LinkedHashMap<Path, Fetch> window = new LinkedHashMap<>();
+        for (Song song : upcoming) {
+            Path path = Paths.get(song.getFilePath()).toAbsolutePath();
+            window.put(path, fetches.containsKey(path) ? fetches.remove(path) : start(path));
+        }
+        // Files that left the window are not read any further
+        for (Fetch fetch : fetches.values()) {
+            fetch.drop();
+        }
+        fetches = window;
+        pump();
+    }
+
+    /**
+     * Opens a file for the player, reading its audio through the cache.
+     */
+    @Override
+    public PcmSource open(File file) throws IOException, UnsupportedAudioFileException {
+        PcmSource direct = PcmFileSource.open(openChannel(file));
+        return direct != null ? direct : new AudioStreamSource(() -> Channels.newInputStream(openChannel(file)));
+    }
+
+    /**
+     * Opens a read-only channel over a file that serves cached pages from memory.
+     *
+     * @param file The file to read
+     * @return The channel
+     * @throws IOException If the file cannot be opened
+     */
+    public FileChannel openChannel(File file) throws IOException {
+        Path path = file.toPath().toAbsolutePath();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new CachedChannel(path, channel, channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The share of bytes read through the cache that came from memory
+     */
+    public synchronized double getHitRatio() {
+        long total = hitBytes + missBytes;
+        return total == 0 ? 0 : (double) hitBytes / total;
+    }
+
+    /**
+     * @return The bytes read through the cache that came from memory
+     */
+    public synchronized long getHitBytes() {
+        return hitBytes;
+    }
+
+    /**
+     * @return The bytes read through the cache that had to come from the file
+     */
+    public synchronized long getMissBytes() {
+        return missBytes;
+    }
+
+    /**
+     * @return The bytes read ahead into the cache
+     */
+    public synchronized long getPrefetchedBytes() {
+        return prefetchedBytes;
+    }
+
+    /**
+     * @return The bytes read ahead that were evicted or dropped without being read
+     */
+    public synchronized long getWastedBytes() {
+        return wastedBytes;
+    }
+
+    /**
+     * @return The bytes of pages held in memory
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Stops reading ahead and drops every cached page.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        ioPool.shutdownNow();
+        for (Fetch fetch : fetches.values()) {
+            fetch.close();
+        }
+        fetches.clear();
+        for (Page page : pages.values()) {
+            if (!page.used) {
+                wastedBytes += page.length;
+            }
+        }
+        pages.clear();
+        cachedBytes = 0;
+    }
+
+    private Fetch start(Path path) {
+        Fetch fetch = new Fetch(path);
+        // Opening a file can wait on the disk, and the caller may be the event thread
+        ioPool.execute(() -> open(fetch));
+        return fetch;
+    }
+
+    /**
+     * Opens a file being read ahead and starts reading it. Runs on the I/O threads.
+     */
+    private void open(Fetch fetch) {
+        AsynchronousFileChannel channel = null;
+        long end = 0;
+        try {
+            channel = AsynchronousFileChannel.open(fetch.path, Set.of(StandardOpenOption.READ), ioPool);
+            // Whole pages, so only the last page of a file is ever short
+            end = Math.min(channel.size(), (readAheadBytes + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE);
+        } catch (IOException e) {
+            // The player reports unreadable files when it gets to them
+            end = 0;
+        }
+        synchronized (this) {
+            fetch.channel = channel;
+            fetch.end = end;
+            fetch.opened = true;
+            if (closed || fetch.dropped) {
+                fetch.close();
+            } else {
+                pump();
+            }
+        }
+    }
+
+    /**
+     * Starts page reads up to the limit, for the soonest files first, and lets go of
+     * files that are done. Called holding the cache.
+     */
+    private void pump() {
+        Iterator<Fetch> files = fetches.values().iterator();
+        while (files.hasNext() && !closed) {
+            Fetch fetch = files.next();
+            while (inFlight < PARALLEL_READS && fetch.nextPage()) {
+                read(fetch);
+            }
+            if (fetch.opened && fetch.next >= fetch.end && fetch.reading == 0) {
+                fetch.close();
+                files.remove();
+            }
+        }
+    }
+
+    private void read(Fetch fetch) {
+        long position = fetch.next;
+        fetch.next += PAGE_SIZE;
+        fetch.reading++;
+        inFlight++;
+        byte[] array = spare.isEmpty() ? new byte[PAGE_SIZE] : spare.pop();
+        ByteBuffer buffer = ByteBuffer.wrap(array, 0, (int) Math.min(PAGE_SIZE, fetch.end - position));
+        fetch.channel.read(buffer, position, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer read, ByteBuffer page) {
+                if (read >= 0 && page.hasRemaining()) {
+                    // A short read; carry on with the rest of the page
+                    fetch.channel.read(page, position + page.position(), page, this);
+                    return;
+                }
+                synchronized (ReadAheadCache.this) {
+                    if (!closed && page.position() > 0) {
+                        store(new PageKey(fetch.path, position / PAGE_SIZE), page.array(), page.position());
+                    } else {
+                        recycle(page.array());
+                    }
+                    done(fetch);
+                }
+            }
+
+            @Override
+            public void failed(Throwable error, ByteBuffer page) {
+                synchronized (ReadAheadCache.this) {
+                    recycle(page.array());
+                    // Give up on the file; the player will read it itself
+                    fetch.next = fetch.end;
+                    done(fetch);
+                }
+            }
+        });
+    }
+
+    private void done(Fetch fetch) {
+        fetch.reading--;
+        inFlight--;
+        if (fetch.dropped && fetch.reading == 0) {
+            fetch.close();
+        }
+        pump();
+    }
+
+    /**
+     * The reading of the start of one file. Until the file is open there is nothing
+     * to read; a file that cannot be opened has nothing to read either.
+     */
+    private final class Fetch {
+        final Path path;
+        AsynchronousFileChannel channel;
+        long end;
+        boolean opened;
+        long next;
+        int reading;
+        boolean dropped;
+
+        Fetch(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Skips pages that are already cached.
+         *
+         * @return Whether there is a page left to read
+         */
+        boolean nextPage() {
+            while (next < end && pages.containsKey(new PageKey(path, next / PAGE_SIZE))) {
+                next += PAGE_SIZE;
+            }
+            return next < end;
+        }
+
+        /**
+         * Stops reading, once the reads in flight are done.
+         */
+        void drop() {
+            dropped = true;
+            if (reading == 0) {
+                close();
+            }
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void store(PageKey key, byte[] data, int length) {
+        Page old = pages.put(key, new Page(data, length));
+        if (old != null) {
+            cachedBytes -= old.length;
+            recycle(old.data);
+        }
+        cachedBytes += length;
+        prefetchedBytes += length;
+        Iterator<Page> eldest = pages.values().iterator();
+        while (cachedBytes > capacityBytes && eldest.hasNext()) {
+            Page page = eldest.next();
+            if (!page.used) {
+                wastedBytes += page.length;
+            }
+            cachedBytes -= page.length;
+            eldest.remove();
+            recycle(page.data);
+        }
+    }
+
+    private void recycle(byte[] array) {
+        if (spare.size() < PARALLEL_READS * 4) {
+            spare.push(array);
+        }
+    }
+
+    /**
+     * Copies what the cache holds of a file at a position.
+     *
+     * @return The number of bytes copied, zero if the page is not cached
+     */
+    private synchronized int readCached(Path path, ByteBuffer dst, long position) {
+        Page page = pages.get(new PageKey(path, position / PAGE_SIZE));
+        int offset = (int) (position % PAGE_SIZE);
+        if (page == null || offset >= page.length) {
+            return 0;
+        }
+        int length = Math.min(dst.remaining(), page.length - offset);
+        dst.put(page.data, offset, length);
+        page.used = true;
+        hitBytes += length;
+        return length;
+    }
+
+    private synchronized void countMiss(int length) {
+        missBytes += length;
+    }
+
+    /**
+     * A read-only channel that takes what it can from the cache and the rest from
+     * the file. The file's size is read once, as the file is assumed not to change.
+     */
+    private final class CachedChannel extends FileChannel {
+        private final Path path;
+        private final FileChannel file;
+        private final long size;
+        private long position;
+
+        CachedChannel(Path path, FileChannel file, long size) {
+            this.path = path;
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            int total = 0;
+            while (dst.hasRemaining()) {
+                int copied = readCached(path, dst, position + total);
+                if (copied == 0) {
+                    break;
+                }
+                total += copied;
+            }
+            if (total > 0 || !dst.hasRemaining()) {
+                return total;
+            }
+            int read = file.read(dst, position);
+            if (read > 0) {
+                countMiss(read);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int read = read(dst, position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (!dsts[i].hasRemaining()) {
+                    continue;
+                }
+                int read = read(dsts[i]);
+                if (read < 0) {
+                    return total == 0 ? -1 : total;
+                }
+                total += read;
+                if (dsts[i].hasRemaining()) {
+                    break;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public FileChannel position(long newPosition) {
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        public void force(boolean metaData) {
+            // Nothing is ever written
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public FileChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.musicplayer;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the decoding of a file between players, so several zones playing the same
+ * track decode it once.
+ *
+ * Each file being played has one shared stream: a decoder (in the output format, so
+ * resampling is shared too) and a ring buffer holding the frames between the slowest
+ * and the fastest reader. Every player gets its own cursor into the stream, a
+ * {@link PcmSource} with an independent position; volume, crossfades and track gain
+ * stay per player. Streams are reference counted and closed when their last cursor is.
+ *
+ * Zones that play in step share everything. The buffer grows to hold the spread
+ * between them up to a limit; a cursor that falls further behind, or seeks outside the
+ * buffered range while others are reading, carries on with a private decoder so it
+ * never holds the others back. A zone that starts the track after the buffer has moved
+ * past its beginning gets a fresh shared stream, which later zones can join in turn.
+ */
+public class SharedDecoder implements PcmSourceFactory {
+
+    /** Default limit on how far apart, in milliseconds, readers of one stream may drift. */
+    public static final int DEFAULT_WINDOW_MILLIS = 20_000;
+
+    private static final int DECODE_FRAMES = 4096;
+    private static final int INITIAL_CAPACITY_FRAMES = 4 * DECODE_FRAMES;
+
+    private final PcmSourceFactory decoders;
+    private final int windowMillis;
+    private final Map<String, Stream> streams = new HashMap<>();
+    private final AtomicLong decodedFrames = new AtomicLong();
+
+    /**
+     * Creates a shared decoder producing the player's output format.
+     */
+    public SharedDecoder() {
+        this(file -> new FormatNormalizer(PcmSourceFactory.openDefault(file), MP3Player.OUTPUT_RATE,
+                MP3Player.OUTPUT_CHANNELS), DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Creates a shared decoder.
+     *
+     * @param decoders Opens the underlying decoders
+     * @param windowMillis How far apart readers of one stream may drift before the
+     *                     slowest falls back to a private decoder
+     */
+    public SharedDecoder(PcmSourceFactory decoders, int windowMillis) {
+        this.decoders = decoders;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Opens a cursor at the start of a file, joining the stream other players are
+     * reading if it still holds the beginning of the file.
+     */
+    @Override
+    public PcmSource open(File file) throws IOException, UnsupportedAudioFileException {
+        String key = file.getCanonicalPath();
+        synchronized (this) {
+            Stream stream = streams.get(key);
+            if (stream != null) {
+                Cursor cursor = stream.attach(0);
+                if (cursor != null) {
+                    return cursor;
+                }
+            }
+        }
+
+        // Open outside the lock so a slow file does not hold up other zones
+        Stream created = new Stream(key, file, decoders.open(file));
+        synchronized (this) {
+            streams.put(key, created);
+            return created.attach(0);
+        }
+    }
+
+    /**
+     * @return The number of files currently being decoded for shared streams
+     */
+    public synchronized int getActiveStreams() {
+        return streams.size();
+    }
+
+    /**
+     * @return The total number of frames decoded, shared and private
+     */
+    public long getDecodedFrames() {
+        return decodedFrames.get();
+    }
+
+    private synchronized void streamClosed(Stream stream) {
+        streams.remove(stream.key, stream);
+    }
+
+    /**
+     * One decoder and the ring buffer of frames its cursors have not all read yet.
+     */
+    private final class Stream {
+        final String key;
+        final File file;
+        final PcmSource decoder;
+        final int channels;
+        final int maxCapacity;
+        final List<Cursor> cursors = new ArrayList<>();
+
+        float[] ring;
+        int capacity;
+        long bufferStart;
+        long bufferEnd;
+        boolean ended;
+        boolean closed;
+        float[] chunk;
+
+        Stream(String key, File file, PcmSource decoder) {
+            this.key = key;
+            this.file = file;
+            this.decoder = decoder;
+            this.channels = decoder.getChannels();
+            this.maxCapacity = Math.max(INITIAL_CAPACITY_FRAMES,
+                    (int) (decoder.getSampleRate() * windowMillis / 1000));
+            this.capacity = INITIAL_CAPACITY_FRAMES;
+            this.ring = new float[capacity * channels];
+            this.chunk = new float[DECODE_FRAMES * channels];
+        }
+
+        /**
+         * @return A new cursor, or null if the frame is no longer buffered
+         */
+        synchronized Cursor attach(long frame) {
+            if (closed || frame < bufferStart || frame > bufferEnd) {
+                return null;
+            }
+            Cursor cursor = new Cursor(this, frame);
+            cursors.add(cursor);
+            return cursor;
+        }
+
+        void detach(Cursor cursor) {
+            synchronized (this) {
+                cursors.remove(cursor);
+                if (!cursors.isEmpty() || closed) {
+                    return;
+                }
+                closed = true;
+            }
+            // Outside the stream's lock: open() takes the decoder's lock before a stream's
+            streamClosed(this);
+            try {
+                decoder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Copies frames for a cursor, decoding more if it is the one furthest ahead.
+         *
+         * @return The number of frames copied, -1 at the end of the file, or -2 if the
+         *         cursor's position is no longer buffered
+         */
+        synchronized int read(Cursor cursor, float[] buffer, int offset, int frames) throws IOException {
+            if (cursor.position < bufferStart) {
+                return -2;
+            }
+            if (cursor.position == bufferEnd) {
+                if (ended || !decodeMore()) {
+                    return -1;
+                }
+                if (cursor.position < bufferStart) {
+                    return -2;
+                }
+            }
+            int count = (int) Math.min(frames, bufferEnd - cursor.position);
+            copyOut(cursor.position, buffer, offset, count);
+            cursor.position += count;
+            return count;
+        }
+
+        /**
+         * Moves a cursor to a frame if it is buffered or this cursor is the only reader.
+         *
+         * @return false if the cursor should continue with a private decoder
+         */
+        synchronized boolean seek(Cursor cursor, long frame) throws IOException {
+            if (frame >= bufferStart && frame <= bufferEnd) {
+                cursor.position = frame;
+                return true;
+            }
+            if (cursors.size() == 1) {
+                decoder.seek(frame);
+                bufferStart = frame;
+                bufferEnd = frame;
+                ended = false;
+                cursor.position = frame;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean decodeMore() throws IOException {
+            int read = decoder.read(chunk, 0, DECODE_FRAMES);
+            if (read <= 0) {
+                ended = true;
+                return false;
+            }
+            decodedFrames.addAndGet(read);
+
+            // Frames before the slowest cursor are not needed by anyone
+            long slowest = bufferEnd;
+            for (Cursor other : cursors) {
+                slowest = Math.min(slowest, other.position);
+            }
+            bufferStart = Math.max(bufferStart, slowest);
+
+            long needed = bufferEnd + read - bufferStart;
+            if (needed > capacity) {
+                grow((int) Math.min(needed, maxCapacity));
+            }
+            if (needed > capacity) {
+                // Past the window: drop the oldest frames, and the cursors still on them detach
+                bufferStart = bufferEnd + read - capacity;
+            }
+            copyIn(bufferEnd, chunk, read);
+            bufferEnd += read;
+            return true;
+        }
+
+        private void grow(int minimum) {
+            int newCapacity = Math.min(maxCapacity, Math.max(minimum, capacity * 2));
+            if (newCapacity <= capacity) {
+                return;
+            }
+            float[] old = ring;
+            int oldCapacity = capacity;
+            ring = new float[newCapacity * channels];
+            capacity = newCapacity;
+            for (long frame = bufferStart; frame < bufferEnd; frame++) {
+                int from = (int) (frame % oldCapacity) * channels;
+                int to = (int) (frame % newCapacity) * channels;
+                System.arraycopy(old, from, ring, to, channels);
+            }
+        }
+
+        private void copyIn(long frame, float[] source, int frames) {
+            int done = 0;
+            while (done < frames) {
+                int index = (int) ((frame + done) % capacity);
+                int count = Math.min(frames - done, capacity - index);
+                System.arraycopy(source, done * channels, ring, index * channels, count * channels);
+                done += count;
+            }
+        }
+
+        private void copyOut(long frame, float[] target, int offset, int frames) {
+            int done = 0;
+            while (done < frames) {
+                int index = (int) ((frame + done) % capacity);
+                int count = Math.min(frames - done, capacity - index);
+                System.arraycopy(ring, index * channels, target, offset + done * channels, count * channels);
+                done += count;
+            }
+        }
+    }
+
+    /**
+     * One player's view of a shared stream.
+     */
+    private final class Cursor implements PcmSource {
+        private final Stream stream;
+        private long position;
+        private PcmSource privateDecoder;
+        private boolean attached = true;
+
+        Cursor(Stream stream, long position) {
+            this.stream = stream;
+            this.position = position;
+        }
+
+        @Override
+        public float getSampleRate() {
+            return stream.decoder.getSampleRate();
+        }
+
+        @Override
+        public int getChannels() {
+            return stream.channels;
+        }
+
+        @Override
+        public long getFrameLength() {
+            return stream.decoder.getFrameLength();
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int frames) throws IOException {
+            if (privateDecoder == null) {
+                int read = stream.read(this, buffer, offset, frames);
+                if (read != -2) {
+                    return read;
+                }
+                goPrivate();
+            }
+            int read = privateDecoder.read(buffer, offset, frames);
+            if (read > 0) {
+                decodedFrames.addAndGet(read);
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void seek(long frame) throws IOException {
+            if (privateDecoder == null && stream.seek(this, frame)) {
+                return;
+            }
+            if (privateDecoder == null) {
+                goPrivate();
+            }
+            privateDecoder.seek(frame);
+            position = frame;
+        }
+
+        /**
+         * Leaves the shared stream and continues from the same position on a decoder of
+         * its own.
+         */
+        private void goPrivate() throws IOException {
+            try {
+                privateDecoder = decoders.open(stream.file);
+            } catch (UnsupportedAudioFileException e) {
+                throw new IOException(e);
+            }
+            privateDecoder.seek(position);
+            release();
+        }
+
+        private void release() {
+            if (attached) {
+                attached = false;
+                stream.detach(this);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            if (privateDecoder != null) {
+                privateDecoder.close();
+            }
+        }
+    }
+}
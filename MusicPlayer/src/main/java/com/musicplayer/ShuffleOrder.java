@@ -0,0 +1,232 @@
+package com.musicplayer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates a shuffled play order for a playlist without reordering it.
+ *
+ * The order is a random permutation of the playlist's indices, computed one position
+ * at a time by a small Feistel network keyed from the seed, so picking the next song
+ * takes constant time and nothing proportional to the playlist is ever stored. Every
+ * song is played once before any is played again, and the same seed over the same
+ * playlist always gives the same order.
+ *
+ * Rather than playing the permutation exactly as it comes, the next song is chosen
+ * from a short window of upcoming positions, preferring one that was not played
+ * recently and whose artist and album have not just been heard. Candidates passed
+ * over stay in the window, so the spreading only delays songs within a round.
+ *
+ * When the playlist grows or shrinks, a new round is started over its new size. A
+ * playlist sorted mid-round keeps the round going over positions, so a few songs may
+ * come up again early; the repeat window still keeps them apart from their last play.
+ */
+public class ShuffleOrder {
+
+    /** How many recent plays a song is kept from repeating within, by default. */
+    public static final int DEFAULT_REPEAT_WINDOW = 50;
+
+    /** How many recent plays an artist or album is kept apart from, by default. */
+    public static final int DEFAULT_SPREAD = 4;
+
+    // Upcoming positions the next song is chosen from
+    private static final int LOOKAHEAD = 16;
+    private static final int ROUNDS = 4;
+    // Placeholder the Song constructor uses for a missing artist or album
+    private static final String UNKNOWN = "Unknown";
+
+    private final PlaylistManager manager;
+    private final long seed;
+    private final int repeatWindow;
+    private final int spread;
+    private final SplittableRandom keySource;
+
+    // The current round: a permutation of [0, size) and the next position to take from it
+    private final long[] keys = new long[ROUNDS];
+    private int size = -1;
+    private int halfBits;
+    private long halfMask;
+    private int position;
+
+    private final int[] candidates = new int[LOOKAHEAD];
+    private int candidateCount;
+
+    private final ArrayDeque<Song> recentSongs = new ArrayDeque<>();
+    private final Map<Song, Integer> recentSongCounts = new IdentityHashMap<>();
+    private final ArrayDeque<String> recentArtists = new ArrayDeque<>();
+    private final Map<String, Integer> recentArtistCounts = new HashMap<>();
+    private final ArrayDeque<String> recentAlbums = new ArrayDeque<>();
+    private final Map<String, Integer> recentAlbumCounts = new HashMap<>();
+
+    /**
+     * Creates a shuffle order with a random seed and the default windows.
+     *
+     * @param manager The playlist to shuffle
+     */
+    public ShuffleOrder(PlaylistManager manager) {
+        this(manager, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a reproducible shuffle order with the default windows.
+     *
+     * @param manager The playlist to shuffle
+     * @param seed The seed the order is derived from
+     */
+    public ShuffleOrder(PlaylistManager manager, long seed) {
+        this(manager, seed, DEFAULT_REPEAT_WINDOW, DEFAULT_SPREAD);
+    }
+
+    /**
+     * Creates a reproducible shuffle order.
+     *
+     * @param manager The playlist to shuffle
+     * @param seed The seed the order is derived from
+     * @param repeatWindow How many recent plays a song should not repeat within
+     * @param spread How many recent plays an artist or album should not repeat within
+     */
+    public ShuffleOrder(PlaylistManager manager, long seed, int repeatWindow, int spread) {
+        this.manager = manager;
+        this.seed = seed;
+        this.repeatWindow = Math.max(0, repeatWindow);
+        this.spread = Math.max(0, spread);
+        this.keySource = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return The seed the order is derived from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Picks the next song to play and records it as played.
+     *
+     * @return The index of the song in the playlist, or -1 if the playlist is empty
+     */
+    public synchronized int next() {
+        PersistentVector<Song> songs = manager.snapshot();
+        if (songs.size() != size) {
+            startRound(songs.size());
+        }
+        if (size == 0) {
+            return -1;
+        }
+        fillCandidates();
+        if (candidateCount == 0) {
+            startRound(size);
+            fillCandidates();
+        }
+
+        // The earliest candidate with the fewest conflicts, stopping at one with none
+        int best = 0;
+        int bestPenalty = Integer.MAX_VALUE;
+        for (int c = 0; c < candidateCount && bestPenalty > 0; c++) {
+            int penalty = penalty(songs.get(candidates[c]));
+            if (penalty < bestPenalty) {
+                best = c;
+                bestPenalty = penalty;
+            }
+        }
+        int index = candidates[best];
+        System.arraycopy(candidates, best + 1, candidates, best, candidateCount - best - 1);
+        candidateCount--;
+        played(songs.get(index));
+        return index;
+    }
+
+    /**
+     * Scores how badly a song would fit as the next pick: a recent repeat outweighs
+     * an artist heard recently, which outweighs an album heard recently.
+     */
+    private int penalty(Song song) {
+        int penalty = 0;
+        if (recentSongCounts.containsKey(song)) {
+            penalty += 4;
+        }
+        if (recentArtistCounts.containsKey(artistKey(song))) {
+            penalty += 2;
+        }
+        if (recentAlbumCounts.containsKey(albumKey(song))) {
+            penalty += 1;
+        }
+        return penalty;
+    }
+
+    private void played(Song song) {
+        remember(recentSongs, recentSongCounts, song, repeatWindow);
+        remember(recentArtists, recentArtistCounts, artistKey(song), spread);
+        remember(recentAlbums, recentAlbumCounts, albumKey(song), spread);
+    }
+
+    private static <T> void remember(ArrayDeque<T> recent, Map<T, Integer> counts, T value, int limit) {
+        if (value == null || limit == 0) {
+            return;
+        }
+        recent.addLast(value);
+        counts.merge(value, 1, Integer::sum);
+        if (recent.size() > limit) {
+            T oldest = recent.removeFirst();
+            counts.computeIfPresent(oldest, (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    // A missing artist or album is not something to keep apart
+    private static String artistKey(Song song) {
+        return UNKNOWN.equals(song.getArtist()) ? null : song.getNormalizedArtist();
+    }
+
+    private static String albumKey(Song song) {
+        return UNKNOWN.equals(song.getAlbum()) ? null : song.getNormalizedAlbum();
+    }
+
+    private void startRound(int newSize) {
+        size = newSize;
+        position = 0;
+        candidateCount = 0;
+        // An even number of bits split into two halves, covering at least [0, size)
+        int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1)));
+        halfBits = (bits + 1) / 2;
+        halfMask = (1L << halfBits) - 1;
+        for (int r = 0; r < ROUNDS; r++) {
+            keys[r] = keySource.nextLong();
+        }
+    }
+
+    private void fillCandidates() {
+        while (candidateCount < LOOKAHEAD && position < size) {
+            candidates[candidateCount++] = permute(position++);
+        }
+    }
+
+    /**
+     * Maps a position in the round to a playlist index. The Feistel network permutes
+     * a power-of-four range; values past the end of the playlist are fed back in
+     * until one lands inside it, which keeps the mapping a permutation of [0, size).
+     */
+    private int permute(int position) {
+        long value = position;
+        do {
+            long left = value >>> halfBits;
+            long right = value & halfMask;
+            for (int r = 0; r < ROUNDS; r++) {
+                long mixed = left ^ (mix(right ^ keys[r]) & halfMask);
+                left = right;
+                right = mixed;
+            }
+            value = (left << halfBits) | right;
+        } while (value >= size);
+        return (int) value;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,5 +1,7 @@
 package com.musicplayer;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -9,11 +11,18 @@ public class Song implements Serializable {
     // Add serialVersionUID for version control
     private static final long serialVersionUID = 1L;
 
-    private String title;
-    private String filePath;
-    private String artist;
-    private String album;
-    private int duration; // duration in seconds
+    // Volatile since songs are edited in place while other threads read playlist snapshots
+    private volatile String title;
+    private volatile String filePath;
+    private volatile String artist;
+    private volatile String album;
+    private volatile int duration; // duration in seconds
+    private volatile int playCount;
+
+    // Search forms of the text fields, kept in step with them and rebuilt on load
+    private transient volatile String normalizedTitle;
+    private transient volatile String normalizedArtist;
+    private transient volatile String normalizedAlbum;
 
     /**
      * Creates a new Song with the given title and file path.
@@ -27,6 +36,7 @@ public class Song implements Serializable {
         this.artist = "Unknown";
         this.album = "Unknown";
         this.duration = 0;
+        normalizeFields();
     }
 
     /**
@@ -44,6 +54,7 @@ public class Song implements Serializable {
         this.artist = artist;
         this.album = album;
         this.duration = duration;
+        normalizeFields();
     }
 
     /**
@@ -58,6 +69,15 @@ public class Song implements Serializable {
      */
     public void setTitle(String title) {
         this.title = title;
+        this.normalizedTitle = TextNormalizer.normalize(title);
+    }
+
+    /**
+     * @return The title as matched by searches
+     * @see TextNormalizer
+     */
+    public String getNormalizedTitle() {
+        return normalizedTitle;
     }
 
     /**
@@ -81,11 +101,19 @@ public class Song implements Serializable {
         return artist;
     }
 
+    /**
+     * @return The artist name as matched by searches
+     */
+    public String getNormalizedArtist() {
+        return normalizedArtist;
+    }
+
     /**
      * @param artist The artist name to set
      */
     public void setArtist(String artist) {
         this.artist = artist;
+        this.normalizedArtist = TextNormalizer.normalize(artist);
     }
 
     /**
@@ -95,11 +123,19 @@ public class Song implements Serializable {
         return album;
     }
 
+    /**
+     * @return The album name as matched by searches
+     */
+    public String getNormalizedAlbum() {
+        return normalizedAlbum;
+    }
+
     /**
      * @param album The album name to set
      */
     public void setAlbum(String album) {
         this.album = album;
+        this.normalizedAlbum = TextNormalizer.normalize(album);
     }
 
     /**
@@ -116,6 +152,27 @@ public class Song implements Serializable {
         this.duration = duration;
     }
 
+    /**
+     * @return How many times the song has been played
+     */
+    public int getPlayCount() {
+        return playCount;
+    }
+
+    /**
+     * @param playCount How many times the song has been played
+     */
+    public void setPlayCount(int playCount) {
+        this.playCount = playCount;
+    }
+
+    /**
+     * Counts one more play of the song.
+     */
+    public void incrementPlayCount() {
+        playCount++;
+    }
+
     /**
      * Returns a formatted string of the song duration in MM:SS format
      *
@@ -127,6 +184,17 @@ public class Song implements Serializable {
         return String.format("%02d:%02d", minutes, seconds);
     }
 
+    private void normalizeFields() {
+        normalizedTitle = TextNormalizer.normalize(title);
+        normalizedArtist = TextNormalizer.normalize(artist);
+        normalizedAlbum = TextNormalizer.normalize(album);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        normalizeFields();
+    }
+
     @Override
     public String toString() {
         return title + " - " + artist;
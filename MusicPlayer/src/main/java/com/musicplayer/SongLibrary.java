@@ -0,0 +1,234 @@
+package com.musicplayer;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared storage for every song known to a {@link Workspace}.
+ *
+ * Each distinct audio file is stored once and given a small integer id, so playlists
+ * can refer to songs by id instead of each holding its own copy. Songs are identified
+ * by file path: adding a second song object for a path that is already known returns
+ * the id of the existing one.
+ *
+ * The library also keeps the measured loudness and peak of each song, indexed by id,
+ * so the player can even out volume between tracks. Songs that have not been
+ * analyzed yet report NaN.
+ */
+public class SongLibrary {
+    private final List<Song> songs = new ArrayList<>();
+    private final Map<String, Integer> idsByPath = new HashMap<>();
+    private float[] loudness = new float[0];
+    private float[] peaks = new float[0];
+
+    /**
+     * Adds a song to the library, or finds the song already stored for its file.
+     *
+     * @param song The song to add
+     * @return The id of the song
+     */
+    public synchronized int add(Song song) {
+        Integer id = idsByPath.get(song.getFilePath());
+        if (id != null) {
+            return id;
+        }
+        int newId = songs.size();
+        songs.add(song);
+        idsByPath.put(song.getFilePath(), newId);
+        ensureLoudnessCapacity(songs.size());
+        return newId;
+    }
+
+    private void ensureLoudnessCapacity(int size) {
+        if (loudness.length < size) {
+            int oldLength = loudness.length;
+            int newLength = Math.max(size, oldLength * 2);
+            loudness = Arrays.copyOf(loudness, newLength);
+            peaks = Arrays.copyOf(peaks, newLength);
+            Arrays.fill(loudness, oldLength, newLength, Float.NaN);
+        }
+    }
+
+    /**
+     * Adds several songs and returns their ids in the same order.
+     *
+     * @param added The songs to add
+     * @return The ids of the songs
+     */
+    public synchronized int[] addAll(Collection<Song> added) {
+        int[] ids = new int[added.size()];
+        int i = 0;
+        for (Song song : added) {
+            ids[i++] = add(song);
+        }
+        return ids;
+    }
+
+    /**
+     * @param id The id of a song
+     * @return The song, or null if the id is unknown
+     */
+    public synchronized Song get(int id) {
+        return id >= 0 && id < songs.size() ? songs.get(id) : null;
+    }
+
+    /**
+     * Looks up the id of a song by its file path.
+     *
+     * @param song The song to look up
+     * @return The id, or -1 if the song's file is not in the library
+     */
+    public synchronized int idOf(Song song) {
+        Integer id = idsByPath.get(song.getFilePath());
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Looks up a song by its file path.
+     *
+     * @param filePath The file path
+     * @return The stored song, or null if the file is not in the library
+     */
+    public synchronized Song findByPath(String filePath) {
+        Integer id = idsByPath.get(filePath);
+        return id != null ? songs.get(id) : null;
+    }
+
+    /**
+     * Resolves a list of ids to the shared song objects. Unknown ids are skipped.
+     *
+     * @param ids The ids to resolve
+     * @return The songs, in id order
+     */
+    public synchronized List<Song> resolve(int[] ids) {
+        List<Song> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            if (id >= 0 && id < songs.size()) {
+                result.add(songs.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the measured loudness of a song.
+     *
+     * @param id The id of the song
+     * @param integratedLoudness The integrated loudness in LUFS
+     * @param peak The sample peak
+     */
+    public synchronized void setLoudness(int id, double integratedLoudness, float peak) {
+        if (id >= 0 && id < songs.size()) {
+            loudness[id] = (float) integratedLoudness;
+            peaks[id] = peak;
+        }
+    }
+
+    /**
+     * @param id The id of a song
+     * @return The integrated loudness in LUFS, or NaN if the song has not been analyzed
+     */
+    public synchronized float getLoudness(int id) {
+        return id >= 0 && id < songs.size() ? loudness[id] : Float.NaN;
+    }
+
+    /**
+     * @param id The id of a song
+     * @return The sample peak, or NaN if the song has not been analyzed
+     */
+    public synchronized float getPeak(int id) {
+        return id >= 0 && id < songs.size() && !Float.isNaN(loudness[id]) ? peaks[id] : Float.NaN;
+    }
+
+    /**
+     * @param id The id of a song
+     * @return The linear gain to play the song at, or 1 if it has not been analyzed
+     */
+    public synchronized float getReplayGain(int id) {
+        if (id < 0 || id >= songs.size()) {
+            return 1.0f;
+        }
+        return LoudnessAnalyzer.gainFor(loudness[id], peaks[id]);
+    }
+
+    /**
+     * @return The ids of all songs whose loudness has not been measured yet
+     */
+    public synchronized int[] unanalyzedIds() {
+        int[] ids = new int[songs.size()];
+        int count = 0;
+        for (int id = 0; id < songs.size(); id++) {
+            if (Float.isNaN(loudness[id])) {
+                ids[count++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * @return The number of songs in the library
+     */
+    public synchronized int size() {
+        return songs.size();
+    }
+
+    /**
+     * Writes the library to a file, replacing it atomically.
+     *
+     * @param path The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        List<Song> copy;
+        float[][] measured;
+        synchronized (this) {
+            copy = new ArrayList<>(songs);
+            measured = new float[][] {
+                    Arrays.copyOf(loudness, songs.size()), Arrays.copyOf(peaks, songs.size())};
+        }
+        PlaylistManager.writeSnapshot(path, "Library", copy, 0L, measured);
+    }
+
+    /**
+     * Reads a library written by {@link #save(Path)}. Ids are preserved.
+     *
+     * @param path The file to read
+     * @return The loaded library
+     * @throws IOException If the file cannot be read
+     */
+    public static SongLibrary load(Path path) throws IOException {
+        SongLibrary library = new SongLibrary();
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(path))) {
+            in.readObject(); // name
+            @SuppressWarnings("unchecked")
+            List<Song> loaded = (List<Song>) in.readObject();
+            for (Song song : loaded) {
+                // Appending keeps each song at the index it was saved with
+                library.songs.add(song);
+                library.idsByPath.putIfAbsent(song.getFilePath(), library.songs.size() - 1);
+            }
+            library.ensureLoudnessCapacity(library.songs.size());
+            readLoudness(in, library);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a library file: " + path, e);
+        }
+        return library;
+    }
+
+    private static void readLoudness(ObjectInputStream in, SongLibrary library)
+            throws IOException, ClassNotFoundException {
+        in.readObject(); // generation
+        float[][] measured = (float[][]) in.readObject();
+        int count = Math.min(library.songs.size(), measured[0].length);
+        System.arraycopy(measured[0], 0, library.loudness, 0, count);
+        System.arraycopy(measured[1], 0, library.peaks, 0, count);
+    }
+}
@@ -0,0 +1,55 @@
+package com.musicplayer;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Reduces text to the form used for matching searches, so that "Beyonce" finds
+ * "Beyonc&eacute;" and "MOTORHEAD" finds "Mot&ouml;rhead".
+ *
+ * Text is decomposed with Unicode NFKD, which also splits ligatures and full-width
+ * forms into plain letters, the combining accents left over are dropped, and the
+ * result is case-folded. Song fields are normalized once when they are set; queries
+ * are normalized the same way before matching.
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Normalizes text for matching.
+     *
+     * @param text The text to normalize, may be null
+     * @return The normalized text, or an empty string for null
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        // Plain ASCII only needs lower-casing, and nothing at all if already lower case
+        boolean ascii = true;
+        boolean lower = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            char c = text.charAt(i);
+            ascii = c < 0x80;
+            lower &= c < 'A' || c > 'Z';
+        }
+        if (ascii) {
+            return lower ? text : text.toLowerCase(Locale.ROOT);
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder stripped = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                stripped.append(c);
+            }
+        }
+        // Upper-casing first also folds letters lower-casing alone keeps apart, like the
+        // German sharp s and "ss"
+        return stripped.toString().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+}
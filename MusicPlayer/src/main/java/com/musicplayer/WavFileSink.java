@@ -0,0 +1,109 @@
+package com.musicplayer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records everything the player outputs to a WAV file. The sink never holds back the
+ * player, so when it is used alone tracks are rendered as fast as they decode; used in
+ * a {@link FanOutSink} next to a real-time sink, it records at playback speed. The
+ * header's length fields are filled in when the sink is closed.
+ */
+public class WavFileSink implements AudioSink {
+    private static final int HEADER_BYTES = 44;
+
+    private final File file;
+    private RandomAccessFile output;
+    private FileChannel channel;
+    private long dataBytes;
+
+    /**
+     * @param file The WAV file to create, replacing any existing file
+     */
+    public WavFileSink(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void open(AudioFormat format) throws IOException {
+        output = new RandomAccessFile(file, "rw");
+        output.setLength(0);
+        channel = output.getChannel();
+        channel.write(header(format, 0));
+    }
+
+    private static ByteBuffer header(AudioFormat format, long dataBytes) {
+        int sampleBits = format.getSampleSizeInBits();
+        int channels = format.getChannels();
+        int rate = (int) format.getSampleRate();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'});
+        header.putInt((int) Math.min(0xFFFFFFFFL, 36 + dataBytes));
+        header.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        header.putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(rate);
+        header.putInt(rate * channels * sampleBits / 8);
+        header.putShort((short) (channels * sampleBits / 8));
+        header.putShort((short) sampleBits);
+        header.put(new byte[] {'d', 'a', 't', 'a'});
+        header.putInt((int) Math.min(0xFFFFFFFFL, dataBytes));
+        header.flip();
+        return header;
+    }
+
+    @Override
+    public int available() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dataBytes += length;
+        return length;
+    }
+
+    @Override
+    public long getBufferedFrames() {
+        return 0;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output == null) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, (int) Math.min(0xFFFFFFFFL, 36 + dataBytes));
+            buffer.putInt(4, (int) Math.min(0xFFFFFFFFL, dataBytes));
+            channel.write(ByteBuffer.wrap(buffer.array(), 0, 4), 4);
+            channel.write(ByteBuffer.wrap(buffer.array(), 4, 4), 40);
+        } finally {
+            output.close();
+            output = null;
+        }
+    }
+}
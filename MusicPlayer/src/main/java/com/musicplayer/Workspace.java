@@ -0,0 +1,373 @@
+package com.musicplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hosts many named playlists that share a single {@link SongLibrary}.
+ *
+ * A playlist can be open or closed. An open playlist is a regular
+ * {@link PlaylistManager} whose entries are the library's shared song objects.
+ * A closed playlist is kept only as an array of song ids (4 bytes per entry), so
+ * reopening it is a single pass over the array with no file reads and no song data
+ * reloaded. Only a bounded number of playlists stay open; the least recently used
+ * one is closed when the limit is exceeded. For a workspace backed by a directory,
+ * closed playlists beyond a total id budget are dropped from memory and read back
+ * from disk on demand, and playlists that have never been opened are not read at all.
+ */
+public class Workspace {
+    private static final String LIBRARY_FILE = "library.ser";
+    private static final String PLAYLIST_DIR = "playlists";
+    private static final String PLAYLIST_SUFFIX = ".ids";
+    private static final int IDS_MAGIC = 0x504C4944; // "PLID"
+
+    /** Default number of playlists that stay open at once. */
+    public static final int DEFAULT_MAX_OPEN = 16;
+
+    /** Default number of song ids kept in memory for closed playlists. */
+    public static final int DEFAULT_MAX_CLOSED_IDS = 1 << 22;
+
+    private final File directory;
+    private final SongLibrary library;
+    private final int maxOpen;
+    private final int maxClosedIds;
+
+    // Access-ordered, so iteration starts at the least recently used playlist
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int openCount;
+    private long closedIdsInMemory;
+
+    private static final class Entry {
+        final String name;
+        PlaylistManager manager;
+        int[] ids;
+        boolean onDisk;
+        boolean dirty;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Creates a workspace that exists only in memory.
+     */
+    public Workspace() {
+        this(new SongLibrary());
+    }
+
+    /**
+     * Creates a workspace that exists only in memory over an existing library, for
+     * callers that store the library themselves.
+     *
+     * @param library The library shared by the playlists
+     */
+    public Workspace(SongLibrary library) {
+        this.directory = null;
+        this.library = library;
+        this.maxOpen = DEFAULT_MAX_OPEN;
+        this.maxClosedIds = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Opens (or creates) a workspace stored in a directory, with default limits.
+     *
+     * @param directory The workspace directory
+     * @throws IOException If the directory cannot be read
+     */
+    public Workspace(File directory) throws IOException {
+        this(directory, DEFAULT_MAX_OPEN, DEFAULT_MAX_CLOSED_IDS);
+    }
+
+    /**
+     * Opens (or creates) a workspace stored in a directory. Only the library and the
+     * list of playlist names are read; playlist contents are loaded when first opened.
+     *
+     * @param directory The workspace directory
+     * @param maxOpen Maximum number of playlists kept open
+     * @param maxClosedIds Maximum number of song ids kept in memory for closed playlists
+     * @throws IOException If the directory cannot be read
+     */
+    public Workspace(File directory, int maxOpen, int maxClosedIds) throws IOException {
+        this.directory = directory;
+        this.maxOpen = maxOpen;
+        this.maxClosedIds = maxClosedIds;
+
+        Path libraryFile = directory.toPath().resolve(LIBRARY_FILE);
+        this.library = Files.exists(libraryFile) ? SongLibrary.load(libraryFile) : new SongLibrary();
+
+        Path playlistDir = directory.toPath().resolve(PLAYLIST_DIR);
+        if (Files.isDirectory(playlistDir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(playlistDir, "*" + PLAYLIST_SUFFIX)) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    String name = decodeName(fileName.substring(0, fileName.length() - PLAYLIST_SUFFIX.length()));
+                    Entry entry = new Entry(name);
+                    entry.onDisk = true;
+                    entries.put(name, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The library shared by all playlists in this workspace
+     */
+    public SongLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return The names of all playlists, least recently used first
+     */
+    public synchronized List<String> getPlaylistNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * Creates a new empty playlist.
+     *
+     * @param name The playlist name
+     * @return true if the playlist was created, false if the name is already taken
+     */
+    public synchronized boolean create(String name) {
+        if (entries.containsKey(name)) {
+            return false;
+        }
+        Entry entry = new Entry(name);
+        entry.ids = new int[0];
+        entry.dirty = true;
+        entries.put(name, entry);
+        return true;
+    }
+
+    /**
+     * Deletes a playlist. Its songs stay in the library.
+     *
+     * @param name The playlist name
+     * @return true if the playlist existed
+     */
+    public synchronized boolean delete(String name) {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.manager != null) {
+            entry.manager.close();
+            openCount--;
+        } else if (entry.ids != null) {
+            closedIdsInMemory -= entry.ids.length;
+        }
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(playlistFile(name));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens a playlist, or returns it if it is already open. Switching to a closed
+     * playlist whose ids are in memory does no I/O. Once the playlist is closed, by
+     * {@link #close(String)} or by making room for others, the returned manager throws
+     * IllegalStateException on edits; open the playlist again to get a new one.
+     *
+     * @param name The playlist name
+     * @return The playlist, or null if there is no playlist with that name
+     */
+    public synchronized PlaylistManager open(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.manager != null) {
+            return entry.manager;
+        }
+
+        int[] ids = entry.ids;
+        if (ids == null) {
+            try {
+                ids = readIds(playlistFile(name));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        } else {
+            closedIdsInMemory -= ids.length;
+        }
+        entry.ids = null;
+        entry.manager = new PlaylistManager(library.resolve(ids), name);
+        openCount++;
+        closeExcessPlaylists(entry);
+        return entry.manager;
+    }
+
+    /**
+     * Closes a playlist, keeping only its song ids. Songs added to it while it was
+     * open are added to the library.
+     *
+     * @param name The playlist name
+     */
+    public synchronized void close(String name) {
+        Entry entry = entries.get(name);
+        if (entry != null && entry.manager != null) {
+            closeEntry(entry);
+            evictClosedIds();
+        }
+    }
+
+    private void closeEntry(Entry entry) {
+        entry.ids = library.addAll(entry.manager.close());
+        entry.manager = null;
+        entry.dirty = true;
+        openCount--;
+        closedIdsInMemory += entry.ids.length;
+    }
+
+    private void closeExcessPlaylists(Entry keep) {
+        Iterator<Entry> lru = entries.values().iterator();
+        while (openCount > maxOpen && lru.hasNext()) {
+            Entry entry = lru.next();
+            if (entry.manager != null && entry != keep) {
+                closeEntry(entry);
+            }
+        }
+        evictClosedIds();
+    }
+
+    /**
+     * Drops the id arrays of least recently used closed playlists until the in-memory
+     * budget is met, writing them out first if they changed.
+     */
+    private void evictClosedIds() {
+        if (directory == null) {
+            return;
+        }
+        Iterator<Entry> lru = entries.values().iterator();
+        while (closedIdsInMemory > maxClosedIds && lru.hasNext()) {
+            Entry entry = lru.next();
+            if (entry.manager != null || entry.ids == null) {
+                continue;
+            }
+            try {
+                if (entry.dirty || !entry.onDisk) {
+                    writeIds(entry);
+                }
+                closedIdsInMemory -= entry.ids.length;
+                entry.ids = null;
+            } catch (IOException e) {
+                // Keep the ids in memory rather than lose the playlist
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Saves the library and every changed playlist. Open playlists stay open.
+     *
+     * @throws IOException If the workspace has no directory or a file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (directory == null) {
+            throw new IOException("Workspace has no directory");
+        }
+        List<int[]> openIds = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.manager != null) {
+                // Register any new songs before the library is written
+                openIds.add(library.addAll(entry.manager.snapshot()));
+            }
+        }
+        library.save(directory.toPath().resolve(LIBRARY_FILE));
+
+        int open = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.manager != null) {
+                writeIds(entry, openIds.get(open++));
+            } else if (entry.dirty && entry.ids != null) {
+                writeIds(entry);
+            }
+        }
+    }
+
+    private void writeIds(Entry entry) throws IOException {
+        writeIds(entry, entry.ids);
+        entry.dirty = false;
+    }
+
+    private void writeIds(Entry entry, int[] ids) throws IOException {
+        Path file = playlistFile(entry.name);
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(IDS_MAGIC);
+            out.writeInt(ids.length);
+            for (int id : ids) {
+                out.writeInt(id);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        entry.onDisk = true;
+    }
+
+    private static int[] readIds(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != IDS_MAGIC) {
+                throw new IOException("Not a playlist id file: " + file);
+            }
+            int[] ids = new int[in.readInt()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = in.readInt();
+            }
+            return ids;
+        }
+    }
+
+    private Path playlistFile(String name) {
+        return directory.toPath().resolve(PLAYLIST_DIR).resolve(encodeName(name) + PLAYLIST_SUFFIX);
+    }
+
+    private static String encodeName(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decodeName(String fileName) {
+        try {
+            return URLDecoder.decode(fileName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
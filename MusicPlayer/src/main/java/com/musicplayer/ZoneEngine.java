@@ -0,0 +1,106 @@
+package com.musicplayer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays to several zones (rooms, outputs or listeners) at once, each with its own
+ * player, transport and volume, while zones playing the same file share one decoder
+ * through a {@link SharedDecoder}.
+ */
+public class ZoneEngine implements Closeable {
+
+    private final SharedDecoder decoder;
+    private final Map<String, MP3Player> zones = new LinkedHashMap<>();
+
+    /**
+     * Creates an engine with no zones that decodes in the player's output format.
+     */
+    public ZoneEngine() {
+        this(new SharedDecoder());
+    }
+
+    /**
+     * Creates an engine with no zones.
+     *
+     * @param decoder The decoder the zones share
+     */
+    public ZoneEngine(SharedDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Adds a zone. The zone's player owns the sink.
+     *
+     * @param name A name for the zone
+     * @param sink Where the zone's audio goes
+     * @return The zone's player
+     * @throws IllegalArgumentException If a zone with the name exists
+     */
+    public synchronized MP3Player addZone(String name, AudioSink sink) {
+        if (zones.containsKey(name)) {
+            throw new IllegalArgumentException("Zone already exists: " + name);
+        }
+        MP3Player player = new MP3Player(sink, decoder);
+        zones.put(name, player);
+        return player;
+    }
+
+    /**
+     * @param name The zone's name
+     * @return The zone's player, or null if there is no such zone
+     */
+    public synchronized MP3Player getZone(String name) {
+        return zones.get(name);
+    }
+
+    /**
+     * @return The names of the zones in the order they were added
+     */
+    public synchronized List<String> getZoneNames() {
+        return new ArrayList<>(zones.keySet());
+    }
+
+    /**
+     * Removes a zone and closes its player.
+     *
+     * @param name The zone's name
+     * @return true if the zone existed
+     */
+    public boolean removeZone(String name) {
+        MP3Player player;
+        synchronized (this) {
+            player = zones.remove(name);
+        }
+        if (player == null) {
+            return false;
+        }
+        player.close();
+        return true;
+    }
+
+    /**
+     * @return The decoder the zones share
+     */
+    public SharedDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Closes every zone.
+     */
+    @Override
+    public void close() {
+        List<MP3Player> players;
+        synchronized (this) {
+            players = new ArrayList<>(zones.values());
+            zones.clear();
+        }
+        for (MP3Player player : players) {
+            player.close();
+        }
+    }
+}
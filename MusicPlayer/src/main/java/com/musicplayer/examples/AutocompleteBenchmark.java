@@ -0,0 +1,124 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.Autocomplete;
+import com.musicplayer.PlaylistManager;
+import com.musicplayer.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the memory taken by playlist autocomplete and how long suggestions and
+ * incremental updates take on a large generated library.
+ *
+ * Titles are mostly unique, while artists and albums repeat across songs, so the
+ * default 1.25 million songs give about a million distinct values to suggest.
+ *
+ * Usage: AutocompleteBenchmark [songs] [lookups]
+ */
+public class AutocompleteBenchmark {
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ne", "to", "su", "vi", "de", "mo", "lan", "ter", "bel", "ros",
+            "qui", "zen", "far", "ick", "un", "or", "ast", "eli", "pon", "dra", "wy", "sha", "ble", "ght"};
+
+    public static void main(String[] args) throws InterruptedException {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_250_000;
+        int lookupCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        Random random = new Random(42);
+
+        String[] artists = names(random, songCount / 20, 2);
+        String[] albums = names(random, songCount / 10, 3);
+        List<Song> songs = new ArrayList<>(songCount);
+        for (int i = 0; i < songCount; i++) {
+            songs.add(new Song(name(random, 4), "/music/" + i + ".mp3", artists[random.nextInt(artists.length)],
+                    albums[random.nextInt(albums.length)], 120 + random.nextInt(300)));
+        }
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSongs(songs);
+
+        System.out.println("Java Music Player - Autocomplete Benchmark");
+        System.out.println("-------------------------------------------");
+        long before = usedMemory();
+        long buildStart = System.nanoTime();
+        Autocomplete autocomplete = new Autocomplete(manager);
+        long buildNanos = System.nanoTime() - buildStart;
+        long after = usedMemory();
+        System.out.printf("Indexed %,d songs: %,d values, %,d trie nodes in %.1f s, %.0f MB (%.0f bytes per value)%n",
+                songCount, autocomplete.getEntryCount(), autocomplete.getNodeCount(), buildNanos / 1e9,
+                (after - before) / 1e6, (double) (after - before) / autocomplete.getEntryCount());
+
+        // Prefixes of one to six characters taken from the start of real words
+        String[] prefixes = new String[lookupCount];
+        for (int i = 0; i < lookupCount; i++) {
+            Song song = songs.get(random.nextInt(songCount));
+            String[] words = (song.getTitle() + " " + song.getArtist() + " " + song.getAlbum()).split(" ");
+            String word = words[random.nextInt(words.length)];
+            prefixes[i] = word.substring(0, Math.min(word.length(), 1 + random.nextInt(6)));
+        }
+        for (String prefix : prefixes) {
+            autocomplete.suggest(prefix, Autocomplete.MAX_SUGGESTIONS);
+        }
+        long[] nanos = new long[lookupCount];
+        for (int i = 0; i < lookupCount; i++) {
+            long start = System.nanoTime();
+            autocomplete.suggest(prefixes[i], Autocomplete.MAX_SUGGESTIONS);
+            nanos[i] = System.nanoTime() - start;
+        }
+        report("Lookup", nanos);
+
+        // A play changes the weight of three values and re-ranks the nodes above them
+        int updateCount = Math.min(lookupCount, 20_000);
+        long[] updates = new long[updateCount];
+        for (int i = 0; i < updateCount; i++) {
+            int index = random.nextInt(songCount);
+            long start = System.nanoTime();
+            manager.updateSong(index, Song::incrementPlayCount);
+            updates[i] = System.nanoTime() - start;
+        }
+        report("Play counted", updates);
+        autocomplete.close();
+    }
+
+    private static void report(String name, long[] nanos) {
+        Arrays.sort(nanos);
+        System.out.printf("%-13s p50 %6.2f us, p99 %7.2f us, max %8.2f us over %,d%n", name,
+                nanos[nanos.length / 2] / 1e3, nanos[nanos.length * 99 / 100] / 1e3,
+                nanos[nanos.length - 1] / 1e3, nanos.length);
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String[] names(Random random, int count, int maxWords) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = name(random, maxWords);
+        }
+        return names;
+    }
+
+    private static String name(Random random, int maxWords) {
+        StringBuilder name = new StringBuilder();
+        int words = 1 + random.nextInt(maxWords);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                name.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                String syllable = SYLLABLES[random.nextInt(SYLLABLES.length)];
+                name.append(s == 0 ? Character.toUpperCase(syllable.charAt(0)) + syllable.substring(1) : syllable);
+            }
+        }
+        return name.toString();
+    }
+}
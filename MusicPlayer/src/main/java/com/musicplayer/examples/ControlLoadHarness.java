@@ -0,0 +1,155 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.LatencyHistogram;
+import com.musicplayer.NullSink;
+import com.musicplayer.PlayerDaemon;
+import com.musicplayer.PlaylistManager;
+import com.musicplayer.Song;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for the daemon's query endpoints.
+ *
+ * Starts a daemon in this process (or targets one already running with
+ * {@code --port}) and keeps the given number of client connections busy polling
+ * {@code /nowplaying} and searching, while the playlist is edited once a second so the
+ * search index keeps being rebuilt. Reports throughput, latency percentiles and how
+ * many searches were turned away.
+ *
+ * Usage: ControlLoadHarness [connections] [seconds] [--port N]. Each connection needs
+ * a file descriptor on both ends, so raise {@code ulimit -n} for 10,000 connections
+ * against an in-process daemon.
+ */
+public class ControlLoadHarness {
+
+    private static final String[] WORDS = {"love", "night", "blue", "heart", "road", "fire", "rain", "gold"};
+
+    private static final LatencyHistogram nowPlayingLatency = new LatencyHistogram();
+    private static final LatencyHistogram searchLatency = new LatencyHistogram();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int port = -1;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        PlayerDaemon daemon = null;
+        PlaylistManager playlistManager = null;
+        if (port < 0) {
+            PlayerDaemon.tuneHttpServer();
+            playlistManager = new PlaylistManager();
+            playlistManager.addSongs(randomSongs(20_000));
+            daemon = new PlayerDaemon(playlistManager, new NullSink(), 0);
+            daemon.start();
+            port = daemon.getPort();
+        }
+
+        System.out.println("Java Music Player - Control Server Load Test");
+        System.out.println("-------------------------------------------");
+        System.out.printf("%,d connections for %d s against port %d%n", connections, seconds, port);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        String base = "http://127.0.0.1:" + port;
+
+        CountDownLatch finished = new CountDownLatch(connections);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            next(client, base, finished);
+        }
+
+        // Keep the index busy: an edit each second forces a rebuild
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(1000);
+            if (playlistManager != null) {
+                playlistManager.addSongs(randomSongs(100));
+            }
+            System.out.printf("  %,d requests so far%n", nowPlayingLatency.getCount() + searchLatency.getCount());
+        }
+        running = false;
+        finished.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = nowPlayingLatency.getCount() + searchLatency.getCount();
+        System.out.printf("%nThroughput: %,.0f requests/s%n", total / elapsed);
+        report("now playing", nowPlayingLatency);
+        report("search", searchLatency);
+        System.out.printf("Searches rejected (503): %,d%n", rejected.sum());
+        System.out.printf("Failed requests: %,d%n", failed.sum());
+
+        if (daemon != null) {
+            daemon.close();
+        }
+    }
+
+    /**
+     * Sends the next request of one client connection, chaining on completion so the
+     * connection always has exactly one request outstanding.
+     */
+    private static void next(HttpClient client, String base, CountDownLatch finished) {
+        if (!running) {
+            finished.countDown();
+            return;
+        }
+        boolean search = ThreadLocalRandom.current().nextInt(5) == 0;
+        String path = search
+                ? "/search?limit=20&q=" + WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)]
+                : "/nowplaying";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (error != null) {
+                failed.increment();
+            } else if (response.statusCode() == 503) {
+                rejected.increment();
+            } else if (response.statusCode() != 200) {
+                failed.increment();
+            } else {
+                (search ? searchLatency : nowPlayingLatency).record(System.nanoTime() - sent);
+            }
+            next(client, base, finished);
+        });
+    }
+
+    private static void report(String name, LatencyHistogram histogram) {
+        System.out.printf("%-12s %,10d ok   p50 %s   p99 %s%n", name, histogram.getCount(),
+                percentile(histogram, 50), percentile(histogram, 99));
+    }
+
+    private static String percentile(LatencyHistogram histogram, double percentile) {
+        double millis = histogram.getPercentileMillis(percentile);
+        return Double.isInfinite(millis) ? "> 10 s" : String.format("<= %.1f ms", millis);
+    }
+
+    private static List<Song> randomSongs(int count) {
+        List<Song> songs = new ArrayList<>(count);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            songs.add(new Song(title, "/music/song" + i + ".mp3", "Artist " + random.nextInt(500),
+                    "Album " + random.nextInt(2000), 120 + random.nextInt(300)));
+        }
+        return songs;
+    }
+}
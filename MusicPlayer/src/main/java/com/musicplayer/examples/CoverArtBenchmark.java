@@ -0,0 +1,152 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.CoverArt;
+import com.musicplayer.CoverArtCache;
+import com.musicplayer.Song;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures what showing cover art costs the event dispatch thread while a playlist
+ * scrolls. Each frame of the scroll looks up the art of the rows on screen, as the
+ * playlist's cell renderer does, first with the cache and then by decoding the art
+ * in place, as a renderer without the cache would. Also reports how long the cache
+ * takes to fill from the audio files and, after a restart, from its disk cache.
+ *
+ * Every album has a 1000x1000 JPEG front cover in an ID3v2.3 tag of each song.
+ *
+ * Usage: CoverArtBenchmark [albums] [songsPerAlbum]
+ */
+public class CoverArtBenchmark {
+
+    private static final int ROWS_ON_SCREEN = 20;
+    private static final int ROW_ART_SIZE = 32;
+
+    public static void main(String[] args) throws Exception {
+        int albumCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int songsPerAlbum = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        Path directory = Files.createTempDirectory("cover-art");
+
+        System.out.println("Java Music Player - Cover Art Benchmark");
+        System.out.println("--------------------------------------");
+        try {
+            List<Song> songs = new ArrayList<>();
+            for (int album = 0; album < albumCount; album++) {
+                byte[] file = taggedFile(cover(album));
+                for (int track = 0; track < songsPerAlbum; track++) {
+                    Path path = Files.write(directory.resolve("a" + album + "-" + track + ".mp3"), file);
+                    songs.add(new Song("Track " + track, path.toString(), "Artist " + album, "Album " + album, 200));
+                }
+            }
+            System.out.printf("%d albums, %d songs, %d rows on screen%n", albumCount, songs.size(), ROWS_ON_SCREEN);
+
+            Path covers = directory.resolve("covers");
+            try (CoverArtCache cache = new CoverArtCache(covers)) {
+                scroll("Cache, cold", cache, songs);
+            }
+            try (CoverArtCache cache = new CoverArtCache(covers)) {
+                scroll("Cache, from disk", cache, songs);
+            }
+
+            // Decoding in the renderer, as a naive implementation would
+            List<Long> frames = new ArrayList<>();
+            for (int top = 0; top + ROWS_ON_SCREEN <= songs.size(); top += ROWS_ON_SCREEN) {
+                long start = System.nanoTime();
+                for (int row = top; row < top + ROWS_ON_SCREEN; row++) {
+                    byte[] encoded = CoverArt.extract(new File(songs.get(row).getFilePath()));
+                    CoverArt.thumbnail(encoded, ROW_ART_SIZE);
+                }
+                frames.add(System.nanoTime() - start);
+            }
+            report("Decode in renderer", frames, 0);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Scrolls through the playlist a screen at a time, then keeps repainting until
+     * every album's art has arrived.
+     */
+    private static void scroll(String name, CoverArtCache cache, List<Song> songs) throws InterruptedException {
+        List<Long> frames = new ArrayList<>();
+        long start = System.nanoTime();
+        boolean complete = false;
+        while (!complete) {
+            complete = true;
+            for (int top = 0; top + ROWS_ON_SCREEN <= songs.size(); top += ROWS_ON_SCREEN) {
+                long frameStart = System.nanoTime();
+                for (int row = top; row < top + ROWS_ON_SCREEN; row++) {
+                    complete &= cache.getIcon(songs.get(row), ROW_ART_SIZE) != null;
+                }
+                frames.add(System.nanoTime() - frameStart);
+                // About 60 frames a second
+                Thread.sleep(16);
+            }
+        }
+        report(name, frames, System.nanoTime() - start);
+    }
+
+    private static void report(String name, List<Long> frames, long fillNanos) {
+        Collections.sort(frames);
+        System.out.printf("%-19s frame p50 %8.3f ms, p99 %8.3f ms, max %8.3f ms%s%n", name,
+                frames.get(frames.size() / 2) / 1e6, frames.get(frames.size() * 99 / 100) / 1e6,
+                frames.get(frames.size() - 1) / 1e6,
+                fillNanos > 0 ? String.format(", all art shown after %.2f s", fillNanos / 1e9) : "");
+    }
+
+    private static byte[] cover(int album) throws IOException {
+        BufferedImage image = new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.getHSBColor(album / 37f, 0.8f, 0.9f), 1000, 1000, Color.BLACK));
+        g.fillRect(0, 0, 1000, 1000);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * An ID3v2.3 tag holding one front cover, followed by a little fake audio.
+     */
+    private static byte[] taggedFile(byte[] jpeg) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0);
+        frame.write("image/jpeg\u0000".getBytes(StandardCharsets.ISO_8859_1));
+        frame.write(3);
+        frame.write(0);
+        frame.write(jpeg);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(file);
+        int tagSize = 10 + frame.size();
+        out.writeBytes("ID3");
+        out.write(new byte[] {3, 0, 0});
+        out.write(new byte[] {(byte) (tagSize >> 21 & 0x7F), (byte) (tagSize >> 14 & 0x7F),
+                (byte) (tagSize >> 7 & 0x7F), (byte) (tagSize & 0x7F)});
+        out.writeBytes("APIC");
+        out.writeInt(frame.size());
+        out.writeShort(0);
+        out.write(frame.toByteArray());
+        out.write(new byte[4096]);
+        return file.toByteArray();
+    }
+}
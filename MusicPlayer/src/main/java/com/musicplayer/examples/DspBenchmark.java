@@ -0,0 +1,101 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.Crossfader;
+import com.musicplayer.GainStage;
+import com.musicplayer.LoudnessAnalyzer;
+import com.musicplayer.PcmConverter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the cost of the playback DSP path (gain ramp, crossfade and conversion to
+ * 16-bit PCM) on one thread, reported as samples per second and as the share of one
+ * CPU core a single 44.1 kHz stereo stream would use. Also reports how many times
+ * faster than realtime loudness analysis runs on one core, excluding decoding.
+ */
+public class DspBenchmark {
+
+    private static final int CHANNELS = 2;
+    private static final int BLOCK_FRAMES = 1024;
+    private static final float SAMPLE_RATE = 44100f;
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+        float[] incoming = new float[BLOCK_FRAMES * CHANNELS];
+        float[] outgoing = new float[BLOCK_FRAMES * CHANNELS];
+        byte[] pcm = new byte[incoming.length * 2];
+        for (int i = 0; i < incoming.length; i++) {
+            incoming[i] = (float) Math.sin(i * 0.01);
+            outgoing[i] = (float) Math.cos(i * 0.013);
+        }
+
+        System.out.println("Java Music Player - DSP Benchmark");
+        System.out.println("--------------------------------");
+
+        // Warm up so the JIT has compiled the inner loops before measuring
+        run("warm-up", incoming, outgoing, pcm, 1, false);
+        run("gain only", incoming, outgoing, pcm, seconds, true);
+        run("gain + crossfade", incoming, outgoing, pcm, seconds, false);
+        analyzeLoudness(incoming, seconds);
+    }
+
+    private static void analyzeLoudness(float[] samples, int seconds) {
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(SAMPLE_RATE, CHANNELS);
+        long frames = 0;
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 64; i++) {
+                analyzer.process(samples, 0, BLOCK_FRAMES);
+                frames += BLOCK_FRAMES;
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        double audioSeconds = frames / SAMPLE_RATE;
+        System.out.printf("%-18s %,14.0fx realtime (%.1f LUFS)%n",
+                "loudness analysis", audioSeconds / elapsedSeconds, analyzer.getIntegratedLoudness());
+    }
+
+    private static void run(String name, float[] incoming, float[] outgoing, byte[] pcm, int seconds,
+                            boolean gainOnly) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        GainStage gain = new GainStage(1.0f);
+        Crossfader crossfader = new Crossfader((int) SAMPLE_RATE * 5);
+        long blocks = 0;
+
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 64; i++) {
+                if (blocks % 100 == 0) {
+                    // Keep a ramp running most of the time, as during a volume drag
+                    gain.setGain(blocks % 200 == 0 ? 0.5f : 0.9f, BLOCK_FRAMES * 80);
+                }
+                if (!gainOnly) {
+                    if (crossfader.isFinished()) {
+                        crossfader = new Crossfader((int) SAMPLE_RATE * 5);
+                    }
+                    crossfader.process(incoming, outgoing, 0, BLOCK_FRAMES, CHANNELS);
+                }
+                gain.process(incoming, 0, BLOCK_FRAMES, CHANNELS);
+                PcmConverter.toPcm16(incoming, 0, pcm, 0, incoming.length);
+                blocks++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+
+        if (name.equals("warm-up")) {
+            return;
+        }
+        double samplesPerSecond = blocks * (double) incoming.length * 1e9 / elapsed;
+        double streamSamplesPerSecond = SAMPLE_RATE * CHANNELS;
+        double cpuPerSample = cpu / (blocks * (double) incoming.length);
+        double cpuPercent = cpuPerSample * streamSamplesPerSecond / 1e9 * 100;
+        System.out.printf("%-18s %,14.0f samples/s   %.4f%% CPU per stereo stream%n",
+                name, samplesPerSecond, cpuPercent);
+    }
+}
@@ -0,0 +1,107 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.FuzzySearch;
+import com.musicplayer.PersistentVector;
+import com.musicplayer.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures typo-tolerant search latency on a large generated library.
+ *
+ * Song titles, artists and albums are made of invented words drawn with a skewed
+ * distribution, like real catalogues where a few words are everywhere and most are
+ * rare. Queries are one or two words taken from random songs with a typo added to
+ * each word long enough to allow one.
+ *
+ * Usage: FuzzySearchBenchmark [songs] [queries]
+ */
+public class FuzzySearchBenchmark {
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ne", "to", "su", "vi", "de", "mo", "lan", "ter", "bel", "ros",
+            "qui", "zen", "far", "ick", "un", "or", "ast", "eli", "pon", "dra", "wy", "sha", "ble", "ght"};
+    private static final int TOP = 20;
+
+    public static void main(String[] args) {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Random random = new Random(42);
+
+        String[] vocabulary = new String[60_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            vocabulary[i] = word.toString();
+        }
+
+        List<Song> songs = new ArrayList<>(songCount);
+        for (int i = 0; i < songCount; i++) {
+            songs.add(new Song(phrase(vocabulary, random, 1 + random.nextInt(4)), "/music/" + i + ".mp3",
+                    phrase(vocabulary, random, 1 + random.nextInt(2)), phrase(vocabulary, random, 1 + random.nextInt(3)),
+                    120 + random.nextInt(300)));
+        }
+
+        System.out.println("Java Music Player - Fuzzy Search Benchmark");
+        System.out.println("-----------------------------------------");
+        long buildStart = System.nanoTime();
+        FuzzySearch index = new FuzzySearch(PersistentVector.of(songs));
+        System.out.printf("Indexed %,d songs (%,d distinct words) in %.1f s%n", songCount,
+                index.getVocabularySize(), (System.nanoTime() - buildStart) / 1e9);
+
+        String[] queries = new String[queryCount];
+        for (int q = 0; q < queryCount; q++) {
+            Song song = songs.get(random.nextInt(songCount));
+            String[] words = (song.getTitle() + " " + song.getArtist()).split(" ");
+            String query = typo(words[random.nextInt(words.length)], random);
+            if (random.nextBoolean()) {
+                query += " " + typo(words[random.nextInt(words.length)], random);
+            }
+            queries[q] = query;
+        }
+
+        // One pass to warm up the JIT, then the measured pass
+        for (String query : queries) {
+            index.search(query, TOP);
+        }
+        long[] nanos = new long[queryCount];
+        long results = 0;
+        for (int q = 0; q < queryCount; q++) {
+            long start = System.nanoTime();
+            results += index.search(queries[q], TOP).size();
+            nanos[q] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("Top %d of %,d typo queries: p50 %.2f ms, p99 %.2f ms, max %.2f ms, %.1f results each%n",
+                TOP, queryCount, nanos[queryCount / 2] / 1e6, nanos[queryCount * 99 / 100] / 1e6,
+                nanos[queryCount - 1] / 1e6, (double) results / queryCount);
+    }
+
+    private static String phrase(String[] vocabulary, Random random, int words) {
+        StringBuilder phrase = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            // Cubing skews the draw towards the start of the vocabulary
+            double skew = random.nextDouble();
+            phrase.append(i == 0 ? "" : " ").append(vocabulary[(int) (skew * skew * skew * vocabulary.length)]);
+        }
+        return phrase.toString();
+    }
+
+    private static String typo(String word, Random random) {
+        if (word.length() < 4) {
+            return word;
+        }
+        char[] chars = word.toCharArray();
+        int at = 1 + random.nextInt(chars.length - 2);
+        char swap = chars[at];
+        chars[at] = chars[at + 1];
+        chars[at + 1] = swap;
+        return new String(chars);
+    }
+}
@@ -0,0 +1,172 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.AudioStreamSource;
+import com.musicplayer.FormatNormalizer;
+import com.musicplayer.MP3Player;
+import com.musicplayer.NullSink;
+import com.musicplayer.PcmSource;
+import com.musicplayer.PcmSourceFactory;
+import com.musicplayer.SharedDecoder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures CPU use against the number of zones playing the same track, with the
+ * zones sharing one decoder and with each zone decoding on its own.
+ *
+ * The track is a 48 kHz WAV file, so every decode also resamples to the 44.1 kHz
+ * output. Zones write to paced null sinks, so they run in real time as they would
+ * against sound cards.
+ *
+ * Usage: MultiZoneBenchmark [seconds per run]
+ */
+public class MultiZoneBenchmark {
+
+    private static final int[] ZONE_COUNTS = {1, 4, 8, 16, 24};
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        File track = writeTrack(seconds + 5);
+
+        System.out.println("Java Music Player - Multi-Zone Benchmark");
+        System.out.println("---------------------------------------");
+        System.out.printf("%d s of one 48 kHz track per run, %d CPUs%n%n", seconds,
+                Runtime.getRuntime().availableProcessors());
+        System.out.println(" zones      shared CPU  frames decoded    independent CPU  frames decoded");
+
+        try {
+            for (int zones : ZONE_COUNTS) {
+                double[] shared = run(track, zones, seconds, true);
+                double[] independent = run(track, zones, seconds, false);
+                System.out.printf("%6d  %13.1f%%  %,14.0f  %16.1f%%  %,14.0f%n",
+                        zones, shared[0], shared[1], independent[0], independent[1]);
+            }
+        } finally {
+            track.delete();
+        }
+    }
+
+    /**
+     * Plays the track in some zones for a while.
+     *
+     * @return The process CPU use in percent of one core, and the frames decoded
+     */
+    private static double[] run(File track, int zoneCount, int seconds, boolean shared) throws Exception {
+        AtomicLong decoded = new AtomicLong();
+        PcmSourceFactory decoders = file -> new CountingSource(
+                new FormatNormalizer(new AudioStreamSource(file), MP3Player.OUTPUT_RATE, MP3Player.OUTPUT_CHANNELS),
+                decoded);
+        PcmSourceFactory sources = shared ? new SharedDecoder(decoders, SharedDecoder.DEFAULT_WINDOW_MILLIS) : decoders;
+
+        List<MP3Player> zones = new ArrayList<>();
+        try {
+            for (int i = 0; i < zoneCount; i++) {
+                MP3Player zone = new MP3Player(new NullSink(true), sources);
+                zones.add(zone);
+                zone.loadAsync(track).join();
+                zone.setVolume(0.5f + 0.5f * i / zoneCount);
+            }
+            for (MP3Player zone : zones) {
+                zone.play();
+            }
+
+            // Let the zones start and the JIT settle before measuring
+            Thread.sleep(1000);
+            long framesStart = decoded.get();
+            long cpuStart = processCpuNanos();
+            long wallStart = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long cpu = processCpuNanos() - cpuStart;
+            long wall = System.nanoTime() - wallStart;
+            return new double[] {100.0 * cpu / wall, decoded.get() - framesStart};
+        } finally {
+            for (MP3Player zone : zones) {
+                zone.close();
+            }
+        }
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+
+    /**
+     * Counts the frames a decoder produces.
+     */
+    private static final class CountingSource implements PcmSource {
+        private final PcmSource source;
+        private final AtomicLong frames;
+
+        CountingSource(PcmSource source, AtomicLong frames) {
+            this.source = source;
+            this.frames = frames;
+        }
+
+        @Override
+        public float getSampleRate() {
+            return source.getSampleRate();
+        }
+
+        @Override
+        public int getChannels() {
+            return source.getChannels();
+        }
+
+        @Override
+        public long getFrameLength() {
+            return source.getFrameLength();
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int count) throws IOException {
+            int read = source.read(buffer, offset, count);
+            if (read > 0) {
+                frames.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void seek(long frame) throws IOException {
+            source.seek(frame);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    private static File writeTrack(int seconds) throws IOException {
+        AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
+        int frames = 48000 * seconds;
+        byte[] data = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            short left = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 48000.0));
+            short right = (short) (8000 * Math.sin(2 * Math.PI * 660 * i / 48000.0));
+            data[4 * i] = (byte) left;
+            data[4 * i + 1] = (byte) (left >> 8);
+            data[4 * i + 2] = (byte) right;
+            data[4 * i + 3] = (byte) (right >> 8);
+        }
+        File file = File.createTempFile("multizone", ".wav");
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(data), format, frames);
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+}
@@ -0,0 +1,104 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.PlayHistory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the play history with millions of plays: how fast plays are recorded, the
+ * space they take, how long reopening takes and how much memory the open history
+ * holds, and how long the common queries take.
+ *
+ * Plays are spread over about three years, with a few songs played far more often
+ * than the rest.
+ *
+ * Usage: PlayHistoryBenchmark [plays] [songs]
+ */
+public class PlayHistoryBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int playCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int songCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        Random random = new Random(42);
+        Path directory = Files.createTempDirectory("play-history");
+        long now = System.currentTimeMillis();
+        long span = TimeUnit.DAYS.toMillis(3 * 365);
+
+        System.out.println("Java Music Player - Play History Benchmark");
+        System.out.println("------------------------------------------");
+        try {
+            long start = System.nanoTime();
+            try (PlayHistory history = PlayHistory.open(directory)) {
+                for (int i = 0; i < playCount; i++) {
+                    int song = (int) (Math.pow(random.nextDouble(), 4) * songCount);
+                    long startMillis = now - span + span * i / playCount;
+                    history.record(song, startMillis, 30_000 + random.nextInt(300_000), random.nextInt(5) == 0);
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            long bytes = directorySize(directory);
+            System.out.printf("Recorded %,d plays in %.1f s (%.2f us each), %.1f MB on disk (%.1f bytes per play)%n",
+                    playCount, nanos / 1e9, nanos / 1e3 / playCount, bytes / 1e6, (double) bytes / playCount);
+
+            long before = usedMemory();
+            start = System.nanoTime();
+            PlayHistory history = PlayHistory.open(directory);
+            nanos = System.nanoTime() - start;
+            long after = usedMemory();
+            System.out.printf("Reopened in %.1f ms, holding %.1f MB%n", nanos / 1e6, (after - before) / 1e6);
+
+            for (int pass = 0; pass < 2; pass++) {
+                // The first pass warms up the JIT and is not reported
+                long topNanos = time(() -> history.topSongs(10));
+                long recentNanos = time(() -> history.recentlyPlayed(100));
+                long dailyNanos = time(() -> history.daily(now - TimeUnit.DAYS.toMillis(365), now));
+                long hourlyNanos = time(() -> history.hourly(now - TimeUnit.DAYS.toMillis(7), now));
+                if (pass == 1) {
+                    System.out.printf("Top 10 songs:          %8.3f ms%n", topNanos / 1e6);
+                    System.out.printf("100 recently played:   %8.3f ms%n", recentNanos / 1e6);
+                    System.out.printf("Daily totals, 1 year:  %8.3f ms%n", dailyNanos / 1e6);
+                    System.out.printf("Hourly totals, 1 week: %8.3f ms%n", hourlyNanos / 1e6);
+                }
+            }
+            history.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private interface Query {
+        void run() throws IOException;
+    }
+
+    private static long time(Query query) throws IOException {
+        int runs = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / runs;
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,104 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.PlaylistFiles;
+import com.musicplayer.PlaylistManager;
+import com.musicplayer.Song;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures exporting and importing a very large playlist as M3U, PLS and XSPF: how
+ * fast each format is written, read and imported into a {@link PlaylistManager}, how
+ * big the files are, and how much memory reading a file holds on to.
+ *
+ * The songs live in a few thousand album folders below the playlist's folder, so
+ * the files hold relative paths that have to be resolved on import.
+ *
+ * Usage: PlaylistFilesBenchmark [songs]
+ */
+public class PlaylistFilesBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path directory = Files.createTempDirectory("playlist-files");
+        Random random = new Random(42);
+
+        System.out.println("Java Music Player - Playlist Files Benchmark");
+        System.out.println("--------------------------------------------");
+        try {
+            List<Song> songs = new ArrayList<>(songCount);
+            for (int i = 0; i < songCount; i++) {
+                int album = random.nextInt(Math.max(1, songCount / 12));
+                String artist = "Artist " + album / 3;
+                songs.add(new Song("Track " + i, directory.resolve("Music").resolve(artist)
+                        .resolve("Album " + album).resolve(String.format("%02d Track %d.mp3", i % 12 + 1, i)).toString(),
+                        artist, "Album " + album, 120 + random.nextInt(300)));
+            }
+            System.out.printf("%,d songs%n", songCount);
+
+            for (String name : new String[] {"mix.m3u8", "mix.pls", "mix.xspf"}) {
+                Path file = directory.resolve(name);
+                for (int pass = 0; pass < 2; pass++) {
+                    // The first pass warms up the JIT and is not reported
+                    usedMemory();
+                    long start = System.nanoTime();
+                    PlaylistFiles.write(file, songs);
+                    long writeNanos = System.nanoTime() - start;
+
+                    usedMemory();
+                    start = System.nanoTime();
+                    PlaylistFiles.read(file, song -> { });
+                    long readNanos = System.nanoTime() - start;
+
+                    // What reading holds on to, measured halfway through the file
+                    long before = usedMemory();
+                    long[] during = {0};
+                    int[] seen = {0};
+                    PlaylistFiles.read(file, song -> {
+                        if (++seen[0] == songCount / 2) {
+                            during[0] = usedMemory();
+                        }
+                    });
+
+                    usedMemory();
+                    PlaylistManager manager = new PlaylistManager();
+                    manager.addPlaylistListener((playlist, events) -> { });
+                    start = System.nanoTime();
+                    manager.importPlaylist(file.toString());
+                    long importNanos = System.nanoTime() - start;
+
+                    if (manager.size() != songCount || !manager.getSong(songCount - 1).getFilePath()
+                            .equals(songs.get(songCount - 1).getFilePath())) {
+                        throw new IllegalStateException("Import of " + name + " does not match");
+                    }
+                    if (pass == 1) {
+                        System.out.printf("%-9s %6.1f MB  write %5.2f s (%,9.0f/s)  read %5.2f s  import %5.2f s"
+                                        + " (%,9.0f/s)  held while reading %+5.1f MB%n",
+                                name, Files.size(file) / 1e6, writeNanos / 1e9, songCount / (writeNanos / 1e9),
+                                readNanos / 1e9, importNanos / 1e9, songCount / (importNanos / 1e9),
+                                (during[0] - before) / 1e6);
+                    }
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
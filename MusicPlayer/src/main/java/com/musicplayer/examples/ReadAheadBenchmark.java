@@ -0,0 +1,146 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.PlayQueue;
+import com.musicplayer.PlaylistManager;
+import com.musicplayer.ReadAheadCache;
+import com.musicplayer.Song;
+import com.musicplayer.SongLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Plays through a queue of files the way the player reads them, with and without
+ * the read-ahead cache, and reports how long loading the start of each song takes,
+ * the cache hit ratio and how much of what was read ahead went unused.
+ *
+ * Some songs are skipped after a few seconds and the rest play to the end. Between
+ * songs the benchmark waits a little, as the player would while the previous song
+ * plays, which gives the cache time to read ahead.
+ *
+ * Files are generated in a temporary directory unless one with audio files is
+ * given. Generated files are likely still in the operating system's cache, so the
+ * load times only show the gain a slow disk or network share would see when the
+ * directory given is on one.
+ *
+ * Usage: ReadAheadBenchmark [songs] [directory]
+ */
+public class ReadAheadBenchmark {
+
+    // Bytes the player reads when it loads a song, and before a skip
+    private static final int LOAD_BYTES = 256 * 1024;
+    private static final int SKIP_BYTES = 1024 * 1024;
+    private static final int FILE_BYTES = 8 * 1024 * 1024;
+    private static final long GAP_MILLIS = 50;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        Path directory = args.length > 1 ? Path.of(args[1]) : Files.createTempDirectory("read-ahead");
+        boolean generated = args.length < 2;
+
+        System.out.println("Java Music Player - Read-Ahead Benchmark");
+        System.out.println("----------------------------------------");
+        try {
+            Path[] files = generated ? generate(directory, songCount) : list(directory, songCount);
+            System.out.printf("%d files, %d ms between songs, 30%% skipped%n", files.length, GAP_MILLIS);
+
+            long[] direct = session(files, null);
+            try (ReadAheadCache cache = new ReadAheadCache()) {
+                long[] cached = session(files, cache);
+                report("Direct", direct);
+                report("Read-ahead", cached);
+                System.out.printf("Hit ratio %.1f%%, %.1f MB read ahead, %.1f MB of it unused (%.1f%%)%n",
+                        cache.getHitRatio() * 100, cache.getPrefetchedBytes() / 1e6, cache.getWastedBytes() / 1e6,
+                        100.0 * cache.getWastedBytes() / Math.max(1, cache.getPrefetchedBytes()));
+            }
+        } finally {
+            if (generated) {
+                try (Stream<Path> paths = Files.walk(directory)) {
+                    paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays every file once, in queue order.
+     *
+     * @return The time each load took, in nanoseconds
+     */
+    private static long[] session(Path[] files, ReadAheadCache cache) throws IOException, InterruptedException {
+        SongLibrary library = new SongLibrary();
+        PlaylistManager playlist = new PlaylistManager();
+        for (Path file : files) {
+            playlist.addSong(new Song(file.getFileName().toString(), file.toString()));
+        }
+        PlayQueue queue = new PlayQueue(library);
+        queue.setPrefetcher(cache);
+        Random random = new Random(42);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long[] loads = new long[files.length];
+
+        int id = queue.playFrom(playlist.snapshot(), 0);
+        for (int i = 0; i < files.length; i++) {
+            File file = new File(library.get(id).getFilePath());
+            long start = System.nanoTime();
+            try (FileChannel channel = cache != null ? cache.openChannel(file)
+                    : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                read(channel, buffer, LOAD_BYTES);
+                loads[i] = System.nanoTime() - start;
+                read(channel, buffer, random.nextInt(10) < 3 ? SKIP_BYTES - LOAD_BYTES : Long.MAX_VALUE);
+            }
+            Thread.sleep(GAP_MILLIS);
+            id = queue.advance();
+        }
+        return loads;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            buffer.clear();
+            if (remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            int read = channel.read(buffer);
+            if (read < 0) {
+                return;
+            }
+            remaining -= read;
+        }
+    }
+
+    private static void report(String name, long[] loads) {
+        long[] sorted = loads.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-11s load p50 %7.3f ms, p99 %7.3f ms, max %7.3f ms%n", name,
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static Path[] generate(Path directory, int count) throws IOException {
+        Random random = new Random(7);
+        byte[] bytes = new byte[FILE_BYTES];
+        Path[] files = new Path[count];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(bytes);
+            files[i] = Files.write(directory.resolve(String.format("track-%03d.wav", i)), bytes);
+        }
+        return files;
+    }
+
+    private static Path[] list(Path directory, int count) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(Files::isRegularFile).sorted().limit(count).toArray(Path[]::new);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.FormatNormalizer;
+import com.musicplayer.PcmSource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures what format normalization costs per second of audio for common source
+ * formats converted to the player's 44.1 kHz stereo output, and how long designing a
+ * filter takes the first time a pair of rates is seen compared with reusing it.
+ */
+public class ResamplerBenchmark {
+
+    private static final float OUTPUT_RATE = 44100f;
+    private static final int OUTPUT_CHANNELS = 2;
+    private static final int BLOCK_FRAMES = 1024;
+
+    /**
+     * Endless low-level noise in any format, so only conversion is measured.
+     */
+    private static final class NoiseSource implements PcmSource {
+        private final float sampleRate;
+        private final int channels;
+        private int seed = 1;
+
+        NoiseSource(float sampleRate, int channels) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+
+        @Override
+        public float getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public int getChannels() {
+            return channels;
+        }
+
+        @Override
+        public long getFrameLength() {
+            return -1;
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int frames) {
+            for (int i = 0; i < frames * channels; i++) {
+                seed = seed * 1103515245 + 12345;
+                buffer[offset + i] = (seed >> 16) / 65536f;
+            }
+            return frames;
+        }
+
+        @Override
+        public void seek(long frame) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        float[][] formats = {{44100, 2}, {48000, 2}, {96000, 2}, {22050, 1}, {48000, 6}};
+
+        System.out.println("Java Music Player - Format Conversion Benchmark");
+        System.out.println("----------------------------------------------");
+        System.out.printf("Converting %d s of audio per format to %.0f Hz, %d channels%n%n",
+                seconds, OUTPUT_RATE, OUTPUT_CHANNELS);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        for (float[] format : formats) {
+            float rate = format[0];
+            int channels = (int) format[1];
+
+            long designStart = System.nanoTime();
+            new FormatNormalizer(new NoiseSource(rate, channels), OUTPUT_RATE, OUTPUT_CHANNELS);
+            long firstOpen = System.nanoTime() - designStart;
+            long cachedStart = System.nanoTime();
+            FormatNormalizer normalizer = new FormatNormalizer(new NoiseSource(rate, channels), OUTPUT_RATE,
+                    OUTPUT_CHANNELS);
+            long cachedOpen = System.nanoTime() - cachedStart;
+
+            // One pass to warm up the JIT, then the measured run
+            float[] buffer = new float[BLOCK_FRAMES * OUTPUT_CHANNELS];
+            convert(normalizer, buffer, (long) OUTPUT_RATE * 5);
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            convert(normalizer, buffer, (long) OUTPUT_RATE * seconds);
+            long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+
+            System.out.printf("%6.0f Hz %d ch: %7.3f ms CPU per second of audio (%5.0fx realtime), "
+                            + "first open %6.2f ms, cached %5.3f ms%n",
+                    rate, channels, cpu / 1e6 / seconds, seconds * 1e9 / cpu,
+                    firstOpen / 1e6, cachedOpen / 1e6);
+        }
+    }
+
+    private static void convert(FormatNormalizer normalizer, float[] buffer, long frames) throws IOException {
+        long done = 0;
+        while (done < frames) {
+            done += normalizer.read(buffer, 0, BLOCK_FRAMES);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.PlaylistManager;
+import com.musicplayer.Song;
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Measures what a playlist search allocates and how long it takes, comparing matching
+ * against the songs' precomputed normalized fields with lower-casing every field on
+ * every query, as searches used to.
+ *
+ * Usage: SearchAllocationBenchmark [songs] [queries]
+ */
+public class SearchAllocationBenchmark {
+
+    private static final String[] WORDS = {
+            "love", "night", "Blue", "Caf\u00e9", "Se\u00f1or", "Fire", "Dream", "M\u00fcller", "River",
+            "Stra\u00dfe", "Light", "Heart", "No\u00ebl", "Rain", "Gold", "\u00c9toile"};
+
+    public static void main(String[] args) {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Random random = new Random(42);
+
+        List<Song> songs = new ArrayList<>(songCount);
+        for (int i = 0; i < songCount; i++) {
+            songs.add(new Song(phrase(random) + " " + i, "/music/" + i + ".mp3", phrase(random), phrase(random),
+                    120 + random.nextInt(300)));
+        }
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSongs(songs);
+
+        // Rare terms, so the result lists stay small and the per-song cost shows
+        String[] queries = new String[queryCount];
+        for (int q = 0; q < queryCount; q++) {
+            queries[q] = "night " + random.nextInt(songCount);
+        }
+
+        System.out.println("Java Music Player - Search Allocation Benchmark");
+        System.out.println("-----------------------------------------------");
+        System.out.printf("%,d songs, %d queries%n", songCount, queryCount);
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up the JIT and is not reported
+            long[] lowerCasing = measure(queries, query -> lowerCasingSearch(manager, query));
+            long[] normalized = measure(queries, manager::search);
+            if (pass == 1) {
+                report("lower-case per query", lowerCasing, queryCount);
+                report("precomputed fields", normalized, queryCount);
+            }
+        }
+    }
+
+    /**
+     * The search as it was before fields were normalized up front.
+     */
+    private static List<Song> lowerCasingSearch(PlaylistManager manager, String searchTerm) {
+        String term = searchTerm.toLowerCase().trim();
+        return manager.snapshot().stream()
+                .filter(song ->
+                    song.getTitle().toLowerCase().contains(term) ||
+                    song.getArtist().toLowerCase().contains(term) ||
+                    song.getAlbum().toLowerCase().contains(term))
+                .collect(Collectors.toList());
+    }
+
+    private static long[] measure(String[] queries, Function<String, List<Song>> search) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long bytesStart = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long found = 0;
+        for (String query : queries) {
+            found += search.apply(query).size();
+        }
+        long nanos = System.nanoTime() - start;
+        return new long[] {threads.getThreadAllocatedBytes(thread) - bytesStart, nanos, found};
+    }
+
+    private static void report(String name, long[] result, int queryCount) {
+        System.out.printf(Locale.ROOT, "%-22s %,12d bytes/query  %7.2f ms/query  %d matches%n",
+                name, result[0] / queryCount, result[1] / 1e6 / queryCount, result[2]);
+    }
+
+    private static String phrase(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+}
@@ -0,0 +1,94 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.PlaylistManager;
+import com.musicplayer.ShuffleOrder;
+import com.musicplayer.Song;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the shuffle play order on a large playlist: how long the first pick and
+ * each following pick take, and how often it plays one artist twice in a row or
+ * repeats a song soon after, compared with shuffling a copy of the list.
+ *
+ * Usage: ShuffleBenchmark [songs] [picks]
+ */
+public class ShuffleBenchmark {
+
+    public static void main(String[] args) {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int pickCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        Random random = new Random(42);
+
+        // Artists with very different numbers of songs, as in a real library
+        List<Song> songs = new ArrayList<>(songCount);
+        for (int i = 0; i < songCount; i++) {
+            int artist = (int) (Math.pow(random.nextDouble(), 3) * 2000);
+            songs.add(new Song("Song " + i, "/music/" + i + ".mp3", "Artist " + artist,
+                    "Album " + artist + "-" + random.nextInt(5), 120 + random.nextInt(300)));
+        }
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSongs(songs);
+
+        System.out.println("Java Music Player - Shuffle Benchmark");
+        System.out.println("-------------------------------------");
+        long start = System.nanoTime();
+        List<Song> copy = new ArrayList<>(manager.snapshot());
+        Collections.shuffle(copy, random);
+        System.out.printf("Shuffled copy:   first pick after %8.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        ShuffleOrder order = new ShuffleOrder(manager, 42);
+        start = System.nanoTime();
+        order.next();
+        System.out.printf("Shuffle order:   first pick after %8.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        // Warm up, then time the rest of the picks
+        for (int i = 0; i < 100_000; i++) {
+            order.next();
+        }
+        int[] picks = new int[pickCount];
+        start = System.nanoTime();
+        for (int i = 0; i < pickCount; i++) {
+            picks[i] = order.next();
+        }
+        double nanosPerPick = (double) (System.nanoTime() - start) / pickCount;
+        System.out.printf("Shuffle order:   %.0f ns per pick over %,d picks%n", nanosPerPick, pickCount);
+
+        List<Song> ordered = new ArrayList<>(pickCount);
+        for (int index : picks) {
+            ordered.add(manager.getSong(index));
+        }
+        List<Song> plain = new ArrayList<>(pickCount);
+        while (plain.size() < pickCount) {
+            Collections.shuffle(copy, random);
+            plain.addAll(copy.subList(0, Math.min(copy.size(), pickCount - plain.size())));
+        }
+        report("Shuffled copy", plain);
+        report("Shuffle order", ordered);
+    }
+
+    private static void report(String name, List<Song> played) {
+        int sameArtist = 0;
+        int sameAlbum = 0;
+        for (int i = 1; i < played.size(); i++) {
+            sameArtist += played.get(i).getArtist().equals(played.get(i - 1).getArtist()) ? 1 : 0;
+            sameAlbum += played.get(i).getAlbum().equals(played.get(i - 1).getAlbum()) ? 1 : 0;
+        }
+        // Songs played again within the repeat window, which happens around round boundaries
+        Map<Song, Integer> lastPlayed = new IdentityHashMap<>();
+        int repeats = 0;
+        for (int i = 0; i < played.size(); i++) {
+            Integer last = lastPlayed.put(played.get(i), i);
+            if (last != null && i - last <= ShuffleOrder.DEFAULT_REPEAT_WINDOW) {
+                repeats++;
+            }
+        }
+        System.out.printf("%-16s same artist back to back %,7d, same album %,7d, repeats within %d plays %,d%n",
+                name + ":", sameArtist, sameAlbum, ShuffleOrder.DEFAULT_REPEAT_WINDOW, repeats);
+    }
+}
@@ -0,0 +1,92 @@
+package com.musicplayer.examples;
+
+import com.musicplayer.AudioStreamSource;
+import com.musicplayer.PcmFileSource;
+import com.musicplayer.PcmSource;
+import com.musicplayer.PcmSourceFactory;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares how long it takes to start and to seek in a WAV file through the Java Sound
+ * API and through the direct file channel path.
+ *
+ * Start is measured from opening the file to having the first block of samples, and
+ * seek from a random seek to having the block after it.
+ *
+ * Usage: WavLatencyBenchmark [track seconds]
+ */
+public class WavLatencyBenchmark {
+
+    private static final int RUNS = 200;
+    private static final int BLOCK_FRAMES = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        File track = writeTrack(seconds);
+
+        System.out.println("Java Music Player - WAV Start and Seek Latency");
+        System.out.println("---------------------------------------------");
+        System.out.printf("%d s 44.1 kHz stereo WAV, median of %d runs%n%n", seconds, RUNS);
+        try {
+            report("Java Sound API", track, AudioStreamSource::new);
+            report("File channel", track, file -> PcmFileSource.open(file));
+        } finally {
+            track.delete();
+        }
+    }
+
+    private static void report(String name, File track, PcmSourceFactory factory) throws Exception {
+        float[] block = new float[BLOCK_FRAMES * 2];
+        Random random = new Random(1);
+        long[] starts = new long[RUNS];
+        long[] seeks = new long[RUNS];
+
+        // A first round warms up the JIT and the page cache
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                try (PcmSource source = factory.open(track)) {
+                    source.read(block, 0, BLOCK_FRAMES);
+                    starts[i] = System.nanoTime() - start;
+
+                    long frame = (long) (random.nextDouble() * (source.getFrameLength() - BLOCK_FRAMES));
+                    long seek = System.nanoTime();
+                    source.seek(frame);
+                    source.read(block, 0, BLOCK_FRAMES);
+                    seeks[i] = System.nanoTime() - seek;
+                }
+            }
+        }
+        System.out.printf("%-15s start %10.1f us   seek %10.1f us%n", name, median(starts) / 1e3, median(seeks) / 1e3);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static File writeTrack(int seconds) throws IOException {
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        int frames = 44100 * seconds;
+        byte[] data = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 44100.0));
+            data[4 * i] = data[4 * i + 2] = (byte) sample;
+            data[4 * i + 1] = data[4 * i + 3] = (byte) (sample >> 8);
+        }
+        File file = File.createTempFile("latency", ".wav");
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(data), format, frames);
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+}
@@ -0,0 +1,180 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for playlist autocomplete.
+ */
+public class AutocompleteTest {
+
+    private static List<String> texts(List<Autocomplete.Suggestion> suggestions) {
+        List<String> texts = new ArrayList<>();
+        for (Autocomplete.Suggestion suggestion : suggestions) {
+            texts.add(suggestion.getText());
+        }
+        return texts;
+    }
+
+    @Test
+    public void testSuggestsWordPrefixesByPlays() {
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSongs(Arrays.asList(
+                new Song("Hey Jude", "/m/1.mp3", "The Beatles", "Past Masters", 431),
+                new Song("Let It Be", "/m/2.mp3", "The Beatles", "Let It Be", 243),
+                new Song("Beat It", "/m/3.mp3", "Michael Jackson", "Thriller", 258),
+                new Song("Halo", "/m/4.mp3", "Beyonc\u00e9", "I Am... Sasha Fierce", 261),
+                new Song("untitled", "/m/5.mp3")));
+
+        try (Autocomplete autocomplete = new Autocomplete(manager)) {
+            // Two songs make "The Beatles" the stronger suggestion; any word can match
+            assertEquals(Arrays.asList("The Beatles", "Beat It", "Beyonc\u00e9", "Let It Be", "Let It Be"),
+                    texts(autocomplete.suggest("be", 10)));
+            assertEquals(Arrays.asList("The Beatles"), texts(autocomplete.suggest("THE BEA", 10)));
+            assertEquals(Autocomplete.Kind.ARTIST, autocomplete.suggest("beyo", 10).get(0).getKind());
+            assertEquals(Arrays.asList("Beat It", "Let It Be", "Let It Be"), texts(autocomplete.suggest("it", 10)));
+            assertEquals(1, autocomplete.suggest("be", 1).size());
+            assertTrue(autocomplete.suggest("unknown", 10).isEmpty());
+            assertTrue(autocomplete.suggest("beta", 10).isEmpty());
+
+            // Plays move a suggestion up
+            for (int i = 0; i < 3; i++) {
+                manager.updateSong(2, Song::incrementPlayCount);
+            }
+            assertEquals(Arrays.asList("Beat It", "The Beatles", "Beyonc\u00e9"),
+                    texts(autocomplete.suggest("be", 3)));
+            assertEquals(4, autocomplete.suggest("beat i", 10).get(0).getWeight());
+        }
+    }
+
+    @Test
+    public void testFollowsPlaylistChanges() {
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSong(new Song("Yesterday", "/m/1.mp3", "The Beatles", "Help", 125));
+        try (Autocomplete autocomplete = new Autocomplete(manager)) {
+            manager.addSong(new Song("Yellow", "/m/2.mp3", "Coldplay", "Parachutes", 269));
+            assertEquals(Arrays.asList("Yellow", "Yesterday"), texts(autocomplete.suggest("ye", 10)));
+
+            manager.updateSong(1, song -> song.setTitle("Clocks"));
+            assertEquals(Arrays.asList("Yesterday"), texts(autocomplete.suggest("ye", 10)));
+            assertEquals(Arrays.asList("Clocks", "Coldplay"), texts(autocomplete.suggest("c", 10)));
+
+            manager.sortByTitle();
+            assertEquals(Arrays.asList("Clocks", "Coldplay"), texts(autocomplete.suggest("c", 10)));
+
+            manager.removeSong(0);
+            assertTrue(autocomplete.suggest("c", 10).isEmpty());
+            assertEquals(3, autocomplete.getEntryCount());
+
+            manager.clear();
+            assertTrue(autocomplete.suggest("", 10).isEmpty());
+            assertEquals(0, autocomplete.getEntryCount());
+            assertEquals(1, autocomplete.getNodeCount());
+        }
+    }
+
+    @Test
+    public void testSharedWordKeepsOnlyTheBestSuggestions() {
+        PlaylistManager manager = new PlaylistManager();
+        for (int i = 0; i < 30; i++) {
+            Song song = new Song("Track " + i + " (Live)", "/m/" + i + ".mp3");
+            song.setPlayCount(i % 10);
+            manager.addSong(song);
+        }
+        try (Autocomplete autocomplete = new Autocomplete(manager)) {
+            // Removing a listed entry re-ranks the node from all its entries
+            manager.removeSong(19);
+            List<Autocomplete.Suggestion> live = autocomplete.suggest("live", 100);
+            assertEquals(Autocomplete.MAX_SUGGESTIONS, live.size());
+            assertEquals(Arrays.asList("Track 29 (Live)", "Track 9 (Live)", "Track 18 (Live)"),
+                    texts(live).subList(0, 3));
+
+            // An entry from below the kept list can still rise to the top
+            for (int play = 0; play < 20; play++) {
+                manager.updateSong(0, Song::incrementPlayCount);
+            }
+            assertEquals("Track 0 (Live)", autocomplete.suggest("live", 1).get(0).getText());
+            assertEquals(Autocomplete.MAX_SUGGESTIONS, autocomplete.suggest("live", 100).size());
+            assertEquals(29, autocomplete.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testRankingMatchesFullScan() {
+        String[] words = {"love", "lover", "lovely", "low", "night", "nights", "nine", "blue", "blues", "b"};
+        Random random = new Random(11);
+        PlaylistManager manager = new PlaylistManager();
+        try (Autocomplete autocomplete = new Autocomplete(manager)) {
+            for (int step = 0; step < 400; step++) {
+                int action = random.nextInt(10);
+                if (action < 5 || manager.size() == 0) {
+                    manager.addSong(new Song(phrase(words, random), "/m/" + step + ".mp3",
+                            phrase(words, random), phrase(words, random), 100));
+                } else if (action < 7) {
+                    manager.removeSong(random.nextInt(manager.size()));
+                } else if (action < 9) {
+                    manager.updateSong(random.nextInt(manager.size()), Song::incrementPlayCount);
+                } else {
+                    manager.updateSong(random.nextInt(manager.size()), song -> song.setArtist(phrase(words, random)));
+                }
+
+                for (String prefix : new String[] {"", "l", "lo", "love", "n", "ni", "b", "blue", "x"}) {
+                    assertEquals(expected(manager, prefix), actual(autocomplete, prefix), "prefix '" + prefix + "'");
+                }
+            }
+        }
+    }
+
+    private static String phrase(String[] words, Random random) {
+        return words[random.nextInt(words.length)] + (random.nextBoolean() ? " " + words[random.nextInt(words.length)] : "");
+    }
+
+    private static List<String> actual(Autocomplete autocomplete, String prefix) {
+        List<String> result = new ArrayList<>();
+        for (Autocomplete.Suggestion suggestion : autocomplete.suggest(prefix, Autocomplete.MAX_SUGGESTIONS)) {
+            result.add(suggestion.getText() + "|" + suggestion.getKind() + "|" + suggestion.getWeight());
+        }
+        return result;
+    }
+
+    private static List<String> expected(PlaylistManager manager, String prefix) {
+        Map<String, Long> weights = new HashMap<>();
+        for (Song song : manager.snapshot()) {
+            String[] values = {song.getTitle(), song.getArtist(), song.getAlbum()};
+            for (int kind = 0; kind < values.length; kind++) {
+                String key = values[kind] + "|" + Autocomplete.Kind.values()[kind];
+                weights.merge(key, song.getPlayCount() + 1L, Long::sum);
+            }
+        }
+        List<Map.Entry<String, Long>> matching = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : weights.entrySet()) {
+            String text = entry.getKey().substring(0, entry.getKey().indexOf('|'));
+            if (text.startsWith(prefix) || text.contains(" " + prefix)) {
+                matching.add(entry);
+            }
+        }
+        // Heaviest first, then by text and field
+        matching.sort((a, b) -> {
+            if (!a.getValue().equals(b.getValue())) {
+                return Long.compare(b.getValue(), a.getValue());
+            }
+            String[] first = a.getKey().split("\\|");
+            String[] second = b.getKey().split("\\|");
+            int byText = first[0].compareTo(second[0]);
+            return byText != 0 ? byText : Autocomplete.Kind.valueOf(first[1]).compareTo(Autocomplete.Kind.valueOf(second[1]));
+        });
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(Autocomplete.MAX_SUGGESTIONS, matching.size()); i++) {
+            result.add(matching.get(i).getKey() + "|" + matching.get(i).getValue());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for batched playlist searches.
+ */
+public class BatchedSearchTest {
+
+    private static PlaylistManager createPlaylist() {
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSong(new Song("Bohemian Rhapsody", "/path/to/bohemian.mp3", "Queen", "A Night at the Opera", 355));
+        manager.addSong(new Song("Yesterday", "/path/to/yesterday.mp3", "The Beatles", "Help!", 125));
+        manager.addSong(new Song("Let It Be", "/path/to/letitbe.mp3", "The Beatles", "Let It Be", 243));
+        manager.addSong(new Song("Billie Jean", "/path/to/billie.mp3", "Michael Jackson", "Thriller", 294));
+        return manager;
+    }
+
+    @Test
+    public void testResultsMatchPlaylistSearch() throws Exception {
+        PlaylistManager manager = createPlaylist();
+        BatchedSearch search = new BatchedSearch(manager, BatchedSearch.DEFAULT_MAX_PENDING);
+        try {
+            for (String term : new String[] {"beatles", "LE", "thriller", "nothing", ""}) {
+                assertEquals(manager.search(term), search.search(term).get(), term);
+            }
+
+            // Changes are picked up before later searches are answered
+            manager.addSong(new Song("Imagine", "/path/to/imagine.mp3", "John Lennon", "Imagine", 183));
+            assertEquals(1, search.search("lennon").get().size());
+        } finally {
+            search.close();
+        }
+    }
+
+    @Test
+    public void testSearchesWaitForRebuildAndOverflowIsRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PlaylistManager manager = new PlaylistManager() {
+            @Override
+            public PersistentVector<Song> snapshot() {
+                // Holds the indexer in its first build until the test lets it go
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.snapshot();
+            }
+        };
+        manager.addSong(new Song("Yesterday", "/path/to/yesterday.mp3", "The Beatles", "Help!", 125));
+
+        BatchedSearch search = new BatchedSearch(manager, 1);
+        try {
+            CompletableFuture<List<Song>> first = search.search("beatles");
+            assertSame(first, search.search("Beatles "));
+            assertTrue(search.isRebuilding());
+
+            ExecutionException rejected = assertThrows(ExecutionException.class, () -> search.search("help").get());
+            assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+
+            release.countDown();
+            assertEquals(1, first.get().size());
+        } finally {
+            search.close();
+        }
+    }
+}
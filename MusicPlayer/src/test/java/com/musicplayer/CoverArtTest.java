@@ -0,0 +1,228 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for cover art extraction and the thumbnail cache.
+ */
+public class CoverArtTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] image(int width, int height, Color color, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static void syncsafe(DataOutputStream out, int value) throws IOException {
+        out.write(value >> 21 & 0x7F);
+        out.write(value >> 14 & 0x7F);
+        out.write(value >> 7 & 0x7F);
+        out.write(value & 0x7F);
+    }
+
+    /**
+     * An MP3 file with an ID3v2.4 tag holding a title frame, a back cover and a
+     * front cover, followed by a little fake audio.
+     */
+    private static byte[] mp3(byte[] front, byte[] back) throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(frames);
+        byte[] title = "\u0003Song".getBytes(StandardCharsets.ISO_8859_1);
+        out.writeBytes("TIT2");
+        syncsafe(out, title.length);
+        out.writeShort(0);
+        out.write(title);
+        for (byte[] picture : new byte[][] {back, front}) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            // UTF-16 description, so its terminator is two zero bytes
+            body.write(1);
+            body.write("image/png\u0000".getBytes(StandardCharsets.ISO_8859_1));
+            body.write(picture == front ? 3 : 4);
+            body.write("\uFEFFx\u0000".getBytes(StandardCharsets.UTF_16LE));
+            body.write(picture);
+            out.writeBytes("APIC");
+            syncsafe(out, body.size());
+            out.writeShort(0);
+            out.write(body.toByteArray());
+        }
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream tag = new DataOutputStream(file);
+        tag.writeBytes("ID3");
+        tag.write(4);
+        tag.write(0);
+        tag.write(0);
+        syncsafe(tag, frames.size());
+        tag.write(frames.toByteArray());
+        tag.write(new byte[] {(byte) 0xFF, (byte) 0xFB, 0x50, 0x00});
+        return file.toByteArray();
+    }
+
+    private static byte[] flac(byte[] picture) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(file);
+        out.writeBytes("fLaC");
+        // STREAMINFO, then the picture as the last block
+        out.writeInt(34);
+        out.write(new byte[34]);
+        byte[] mime = "image/png".getBytes(StandardCharsets.US_ASCII);
+        int length = 32 + mime.length + picture.length;
+        out.writeInt(0x80000000 | 6 << 24 | length);
+        out.writeInt(3);
+        out.writeInt(mime.length);
+        out.write(mime);
+        out.writeInt(0);
+        out.write(new byte[16]);
+        out.writeInt(picture.length);
+        out.write(picture);
+        return file.toByteArray();
+    }
+
+    @Test
+    public void testExtractsEmbeddedAndFolderArt() throws IOException {
+        byte[] front = image(40, 40, Color.RED, "png");
+        byte[] back = image(40, 40, Color.BLUE, "png");
+
+        Path mp3 = Files.write(directory.resolve("a.mp3"), mp3(front, back));
+        assertArrayEquals(front, CoverArt.extract(mp3.toFile()));
+
+        Path flac = Files.write(directory.resolve("b.flac"), flac(back));
+        assertArrayEquals(back, CoverArt.extract(flac.toFile()));
+
+        // Files without embedded art fall back to the folder's image
+        Path album = Files.createDirectories(directory.resolve("album"));
+        Path wav = Files.write(album.resolve("c.wav"), new byte[64]);
+        assertNull(CoverArt.extract(wav.toFile()));
+        byte[] folder = image(10, 10, Color.GREEN, "jpg");
+        Files.write(album.resolve("Folder.JPG"), folder);
+        assertArrayEquals(folder, CoverArt.extract(wav.toFile()));
+    }
+
+    @Test
+    public void testThumbnailKeepsProportions() throws IOException {
+        BufferedImage thumbnail = CoverArt.thumbnail(image(1000, 500, Color.RED, "jpg"), 64);
+        assertEquals(64, thumbnail.getWidth());
+        assertEquals(32, thumbnail.getHeight());
+        assertEquals(Color.RED.getRed(), new Color(thumbnail.getRGB(32, 16)).getRed(), 8);
+        assertNull(CoverArt.thumbnail(new byte[] {1, 2, 3}, 64));
+    }
+
+    @Test
+    public void testCacheLoadsInBackgroundAndKeepsThumbnailsOnDisk() throws Exception {
+        Path covers = directory.resolve("covers");
+        Path mp3 = Files.write(directory.resolve("a.mp3"), mp3(image(300, 300, Color.RED, "png"),
+                image(300, 300, Color.BLUE, "png")));
+        Song song = new Song("A", mp3.toString(), "Artist", "Album", 100);
+        Song sameAlbum = new Song("B", directory.resolve("missing.mp3").toString(), "Artist", "Album", 100);
+        Song noArt = new Song("C", directory.resolve("none/c.mp3").toString());
+
+        try (CoverArtCache cache = new CoverArtCache(covers)) {
+            BlockingQueue<String> ready = new ArrayBlockingQueue<>(10);
+            cache.setListener(ready::add);
+            assertNull(cache.getIcon(song, 32));
+            assertEquals(CoverArtCache.keyOf(song), ready.poll(5, TimeUnit.SECONDS));
+            Icon icon = cache.getIcon(sameAlbum, 32);
+            assertNotNull(icon);
+            assertEquals(32, icon.getIconWidth());
+
+            assertNull(cache.getIcon(noArt, 32));
+            assertEquals(CoverArtCache.keyOf(noArt), ready.poll(5, TimeUnit.SECONDS));
+            assertNull(cache.getIcon(noArt, 32));
+            assertTrue(ready.isEmpty());
+        }
+
+        // A new cache finds the thumbnail on disk, even with the audio file gone
+        Files.delete(mp3);
+        try (CoverArtCache cache = new CoverArtCache(covers)) {
+            BlockingQueue<String> ready = new ArrayBlockingQueue<>(10);
+            cache.setListener(ready::add);
+            assertTrue(cache.getDiskBytes() > 0);
+            assertNull(cache.getIcon(song, CoverArtCache.THUMBNAIL_SIZE));
+            ready.poll(5, TimeUnit.SECONDS);
+            assertEquals(CoverArtCache.THUMBNAIL_SIZE, cache.getIcon(song, CoverArtCache.THUMBNAIL_SIZE).getIconWidth());
+        }
+    }
+
+    @Test
+    public void testCacheWithoutDirectoryKeepsThumbnailsInMemory() throws Exception {
+        Path mp3 = Files.write(directory.resolve("a.mp3"), mp3(image(300, 300, Color.RED, "png"),
+                image(300, 300, Color.BLUE, "png")));
+        Song song = new Song("A", mp3.toString(), "Artist", "Album", 100);
+
+        try (CoverArtCache cache = new CoverArtCache()) {
+            BlockingQueue<String> ready = new ArrayBlockingQueue<>(10);
+            cache.setListener(ready::add);
+            assertNull(cache.getIcon(song, 32));
+            assertEquals(CoverArtCache.keyOf(song), ready.poll(5, TimeUnit.SECONDS));
+            assertEquals(32, cache.getIcon(song, 32).getIconWidth());
+            assertEquals(0, cache.getDiskBytes());
+        }
+    }
+
+    @Test
+    public void testSizesOfOneAlbumShareOneLoad() throws Exception {
+        Path covers = directory.resolve("covers");
+        Path mp3 = Files.write(directory.resolve("a.mp3"), mp3(image(300, 300, Color.RED, "png"),
+                image(300, 300, Color.BLUE, "png")));
+        Song song = new Song("A", mp3.toString(), "Artist", "Album", 100);
+
+        try (CoverArtCache cache = new CoverArtCache(covers)) {
+            BlockingQueue<String> ready = new ArrayBlockingQueue<>(10);
+            cache.setListener(ready::add);
+            assertNull(cache.getIcon(song, 32));
+            assertNull(cache.getIcon(song, 96));
+            assertNotNull(ready.poll(5, TimeUnit.SECONDS));
+            assertNotNull(ready.poll(5, TimeUnit.SECONDS));
+            assertEquals(32, cache.getIcon(song, 32).getIconWidth());
+            assertEquals(96, cache.getIcon(song, 96).getIconWidth());
+        }
+        try (Stream<Path> files = Files.list(covers)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testDiskCacheStaysWithinItsBound() throws Exception {
+        Path covers = directory.resolve("covers");
+        try (CoverArtCache cache = new CoverArtCache(covers, 1, 1 << 20)) {
+            BlockingQueue<String> ready = new ArrayBlockingQueue<>(10);
+            cache.setListener(ready::add);
+            for (int i = 0; i < 3; i++) {
+                Path folder = Files.createDirectories(directory.resolve("album" + i));
+                Files.write(folder.resolve("cover.png"), image(50, 50, Color.GRAY, "png"));
+                cache.getIcon(new Song("S", folder.resolve("s.mp3").toString()), 32);
+                ready.poll(5, TimeUnit.SECONDS);
+            }
+            // Only the newest thumbnail is kept once the bound is passed
+            try (java.util.stream.Stream<Path> files = Files.list(covers)) {
+                assertEquals(1, files.count());
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for content-based duplicate detection.
+ */
+public class DuplicateDetectorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final DuplicateDetector detector = new DuplicateDetector(2);
+
+    @AfterEach
+    public void tearDown() {
+        detector.close();
+    }
+
+    private static byte[] payload(int seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] id3v2(String title) {
+        byte[] text = title.getBytes();
+        byte[] tag = new byte[10 + text.length];
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 4;
+        tag[9] = (byte) text.length;
+        System.arraycopy(text, 0, tag, 10, text.length);
+        return tag;
+    }
+
+    private static byte[] id3v1(String title) {
+        byte[] tag = new byte[128];
+        tag[0] = 'T';
+        tag[1] = 'A';
+        tag[2] = 'G';
+        byte[] text = title.getBytes();
+        System.arraycopy(text, 0, tag, 3, Math.min(30, text.length));
+        return tag;
+    }
+
+    private File write(String name, byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        Path path = tempDir.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, out.toByteArray());
+        return path.toFile();
+    }
+
+    @Test
+    public void testTagsAreIgnored() throws IOException {
+        byte[] audio = payload(1, 300_000);
+        File plain = write("plain.mp3", audio);
+        File tagged = write("a/tagged.mp3", id3v2("A longer title for the copy"), audio, id3v1("Copy"));
+        File other = write("other.mp3", id3v2("Other"), payload(2, 300_000));
+
+        assertEquals(detector.fingerprint(plain), detector.fingerprint(tagged));
+        assertNotEquals(detector.fingerprint(plain), detector.fingerprint(other));
+
+        List<List<File>> groups = detector.findDuplicates(Arrays.asList(plain, other, tagged));
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList(plain, tagged), groups.get(0));
+    }
+
+    @Test
+    public void testCollisionsAreVerified() throws IOException {
+        // Differing in one byte between the sampled blocks gives the same fingerprint
+        byte[] audio = payload(3, 1_000_000);
+        File original = write("original.mp3", audio);
+        byte[] changed = audio.clone();
+        changed[10_000] ^= 1;
+        File edited = write("edited.mp3", changed);
+        File copy = write("copy.mp3", id3v2("Copy"), audio);
+
+        assertEquals(detector.fingerprint(original), detector.fingerprint(edited));
+        List<List<File>> groups = detector.findDuplicates(Arrays.asList(original, edited, copy));
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList(original, copy), groups.get(0));
+    }
+
+    @Test
+    public void testPlaylistSuppressesDuplicates() throws IOException {
+        byte[] audio = payload(4, 50_000);
+        write("library/one.mp3", audio);
+        write("library/sub/one copy.mp3", id3v2("Copy"), audio);
+        write("library/two.mp3", payload(5, 50_000));
+
+        PlaylistManager manager = new PlaylistManager();
+        manager.setDuplicateDetector(detector);
+        assertTrue(manager.createFromDirectory(tempDir.resolve("library").toFile(), true));
+        assertEquals(2, manager.size());
+
+        // Neither another copy nor the same path again is added
+        File third = write("elsewhere/one.mp3", audio, id3v1("Third copy"));
+        assertFalse(manager.addSong(new Song("one", third.getPath())));
+        assertFalse(manager.addSong(manager.getSong(0)));
+        assertEquals(2, manager.size());
+
+        manager.setDuplicateDetector(null);
+        assertTrue(manager.addSong(new Song("one", third.getPath())));
+        assertEquals(3, manager.size());
+    }
+
+    @Test
+    public void testRewrittenFileIsFingerprintedAgain() throws IOException {
+        File song = write("song.mp3", payload(7, 20_000));
+        long before = detector.fingerprint(song);
+        assertEquals(before, detector.fingerprint(song));
+
+        write("song.mp3", payload(8, 20_000));
+        assertTrue(song.setLastModified(song.lastModified() - 60_000));
+        assertNotEquals(before, detector.fingerprint(song));
+    }
+
+    @Test
+    public void testPlaylistIndexFollowsChanges() throws IOException {
+        byte[] audio = payload(9, 50_000);
+        File first = write("first.mp3", audio);
+        File copy = write("copy.mp3", id3v2("Copy"), audio);
+        File other = write("other.mp3", payload(10, 50_000));
+
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSong(new Song("first", first.getPath()));
+        manager.setDuplicateDetector(detector);
+        assertFalse(manager.addSong(new Song("copy", copy.getPath())));
+
+        // Once the original is gone its copy is welcome
+        manager.removeSong(0);
+        assertTrue(manager.addSong(new Song("copy", copy.getPath())));
+        assertFalse(manager.addSong(new Song("first", first.getPath())));
+
+        // A song pointed at another file no longer blocks its old recording
+        manager.updateSong(0, song -> song.setFilePath(other.getPath()));
+        assertTrue(manager.addSong(new Song("first", first.getPath())));
+        assertFalse(manager.addSong(new Song("other", other.getPath())));
+
+        manager.clear();
+        assertTrue(manager.addSong(new Song("other", other.getPath())));
+        assertEquals(1, manager.size());
+    }
+
+    @Test
+    public void testCacheRoundTrip() throws IOException {
+        File song = write("song.mp3", payload(6, 20_000));
+        long fingerprint = detector.fingerprint(song);
+        Path cacheFile = tempDir.resolve("fingerprints.cache");
+        detector.saveCache(cacheFile);
+
+        try (DuplicateDetector reloaded = new DuplicateDetector(1)) {
+            reloaded.loadCache(cacheFile);
+            assertEquals(1, reloaded.getCacheSize());
+            assertEquals(fingerprint, reloaded.fingerprint(song));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for sample rate and channel conversion.
+ */
+public class FormatNormalizerTest {
+
+    /**
+     * A 1 kHz sine, the same on every channel.
+     */
+    private static final class SineSource implements PcmSource {
+        private final float sampleRate;
+        private final int channels;
+        private final long length;
+        private long position;
+
+        SineSource(float sampleRate, int channels, long length) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.length = length;
+        }
+
+        @Override
+        public float getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public int getChannels() {
+            return channels;
+        }
+
+        @Override
+        public long getFrameLength() {
+            return length;
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int frames) {
+            int count = (int) Math.min(frames, length - position);
+            if (count <= 0) {
+                return -1;
+            }
+            for (int f = 0; f < count; f++, position++) {
+                float sample = (float) (0.5 * Math.sin(2 * Math.PI * 1000 * position / sampleRate));
+                for (int c = 0; c < channels; c++) {
+                    buffer[offset + f * channels + c] = sample;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void seek(long frame) {
+            position = frame;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static float[] readAll(PcmSource source, int frames) throws IOException {
+        float[] all = new float[frames * source.getChannels()];
+        int total = 0;
+        while (total < frames) {
+            int read = source.read(all, total * source.getChannels(), Math.min(333, frames - total));
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        assertEquals(frames, total);
+        return all;
+    }
+
+    @Test
+    public void testResampledSineStaysInPhase() throws IOException {
+        int[][] ratePairs = {{48000, 44100}, {22050, 44100}, {96000, 44100}};
+        for (int[] rates : ratePairs) {
+            long inputFrames = rates[0];
+            FormatNormalizer normalizer = new FormatNormalizer(new SineSource(rates[0], 1, inputFrames), rates[1], 2);
+            assertEquals(2, normalizer.getChannels());
+            assertEquals(rates[1], normalizer.getFrameLength());
+
+            float[] output = readAll(normalizer, rates[1]);
+            assertEquals(-1, normalizer.read(new float[64], 0, 32));
+
+            // Away from the edges, the output is the same sine sampled at the new rate
+            for (int f = 1000; f < rates[1] - 1000; f++) {
+                double expected = 0.5 * Math.sin(2 * Math.PI * 1000 * f / rates[1]);
+                assertEquals(expected, output[2 * f], 2e-3, rates[0] + " -> " + rates[1] + " at " + f);
+                assertEquals(output[2 * f], output[2 * f + 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testSeekLandsOnTheSameSamples() throws IOException {
+        FormatNormalizer normalizer = new FormatNormalizer(new SineSource(48000, 2, 48000), 44100, 2);
+        normalizer.seek(20000);
+        float[] output = readAll(normalizer, 2000);
+        for (int f = 100; f < 2000; f++) {
+            double expected = 0.5 * Math.sin(2 * Math.PI * 1000 * (20000 + f) / 44100.0);
+            assertEquals(expected, output[2 * f], 2e-3);
+        }
+    }
+}
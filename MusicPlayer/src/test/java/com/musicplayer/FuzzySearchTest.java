@@ -0,0 +1,113 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for typo-tolerant search.
+ */
+public class FuzzySearchTest {
+
+    private static PlaylistManager library() {
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSongs(Arrays.asList(
+                new Song("Hey Jude", "/m/1.mp3", "The Beatles", "Past Masters", 431),
+                new Song("Let It Be", "/m/2.mp3", "The Beatles", "Let It Be", 243),
+                new Song("Bohemian Rhapsody", "/m/3.mp3", "Queen", "A Night at the Opera", 355),
+                new Song("Beetle Juice", "/m/4.mp3", "Danny Elfman", "Beetlejuice", 200),
+                new Song("Rhapsody in Blue", "/m/5.mp3", "George Gershwin", "Rhapsody", 960),
+                new Song("Paint It Black", "/m/6.mp3", "The Rolling Stones", "Aftermath", 202)));
+        return manager;
+    }
+
+    private static List<String> titles(List<Song> songs) {
+        String[] titles = new String[songs.size()];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = songs.get(i).getTitle();
+        }
+        return Arrays.asList(titles);
+    }
+
+    @Test
+    public void testTyposStillMatch() {
+        PlaylistManager manager = library();
+        assertTrue(manager.search("beatels").isEmpty());
+
+        List<Song> beatles = manager.fuzzySearch("beatels", 10);
+        assertEquals(Arrays.asList("Hey Jude", "Let It Be"), titles(beatles));
+
+        // A title match ranks above a match in the album
+        List<Song> rhapsody = manager.fuzzySearch("rhapsdy", 10);
+        assertEquals(Arrays.asList("Bohemian Rhapsody", "Rhapsody in Blue"), titles(rhapsody));
+    }
+
+    @Test
+    public void testEveryWordMustMatch() {
+        PlaylistManager manager = library();
+        assertEquals(Arrays.asList("Rhapsody in Blue"), titles(manager.fuzzySearch("rapsody gershwin", 10)));
+        assertEquals(Arrays.asList("Let It Be"), titles(manager.fuzzySearch("beatles let", 10)));
+        assertTrue(manager.fuzzySearch("queen gershwin", 10).isEmpty());
+    }
+
+    @Test
+    public void testLastWordMatchesAsPrefix() {
+        PlaylistManager manager = library();
+        assertEquals(Arrays.asList("Paint It Black"), titles(manager.fuzzySearch("rolling sto", 10)));
+        assertEquals(Arrays.asList("Bohemian Rhapsody"), titles(manager.fuzzySearch("bohem", 10)));
+        // Short words must match exactly
+        assertTrue(manager.fuzzySearch("jdue hex", 10).isEmpty());
+    }
+
+    @Test
+    public void testLimitAndIndexRefresh() {
+        PlaylistManager manager = library();
+        assertEquals(1, manager.fuzzySearch("the", 1).size());
+        manager.addSong(new Song("Yesterday", "/m/7.mp3", "The Beatles", "Help", 125));
+        // Two edits away, "Beetle Juice" also matches but ranks below the exact artist
+        List<Song> found = manager.fuzzySearch("beatles", 10);
+        assertEquals(4, found.size());
+        assertEquals("Beetle Juice", found.get(3).getTitle());
+        assertEquals(Arrays.asList("Hey Jude", "Let It Be", "Yesterday"), titles(found.subList(0, 3)));
+    }
+
+    @Test
+    public void testTopResultsDoNotDependOnLimit() {
+        String[] words = {"love", "lovers", "lonely", "night", "nights", "light", "blue", "blues"};
+        List<Song> songs = new java.util.ArrayList<>();
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < 500; i++) {
+            songs.add(new Song(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)],
+                    "/m/" + i + ".mp3", words[random.nextInt(words.length)], words[random.nextInt(words.length)], 100));
+        }
+        FuzzySearch index = new FuzzySearch(PersistentVector.of(songs));
+        for (String query : new String[] {"lo", "nigt", "blu", "love", "lght blue"}) {
+            List<Song> all = index.search(query, songs.size());
+            assertTrue(all.size() > 10, query);
+            assertEquals(all.subList(0, 10), index.search(query, 10), query);
+        }
+    }
+
+    @Test
+    public void testBoundedDistance() {
+        assertEquals(0, FuzzySearch.boundedDistance("queen", "queen", 2, false));
+        assertEquals(2, FuzzySearch.boundedDistance("beatels", "beatles", 2, false));
+        assertEquals(3, FuzzySearch.boundedDistance("abcdef", "uvwxyz", 2, false));
+        assertEquals(1, FuzzySearch.boundedDistance("rhapsdy", "rhapsody", 2, false));
+        assertEquals(0, FuzzySearch.boundedDistance("rhap", "rhapsody", 1, true));
+        assertEquals(1, FuzzySearch.boundedDistance("rhep", "rhapsody", 1, true));
+    }
+
+    @Test
+    public void testEditedSongIsFoundByItsNewTitle() {
+        PlaylistManager manager = library();
+        assertEquals(Arrays.asList("Bohemian Rhapsody", "Rhapsody in Blue"), titles(manager.fuzzySearch("rhapsody", 10)));
+
+        manager.updateSong(2, song -> song.setTitle("Stairway to Heaven"));
+        assertEquals(Arrays.asList("Stairway to Heaven"), titles(manager.fuzzySearch("stairway", 10)));
+        assertEquals(Arrays.asList("Rhapsody in Blue"), titles(manager.fuzzySearch("rhapsody", 10)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the gain and crossfade stages.
+ */
+public class GainStageTest {
+
+    @Test
+    public void testGainRampsSampleAccurately() {
+        GainStage gain = new GainStage(0.0f);
+        gain.setGain(1.0f, 100);
+
+        float[] buffer = new float[300];
+        Arrays.fill(buffer, 1.0f);
+        gain.process(buffer, 0, 150, 2);
+
+        // Both channels of a frame get the same gain, rising steadily to the target
+        for (int frame = 0; frame < 150; frame++) {
+            assertEquals(buffer[frame * 2], buffer[frame * 2 + 1]);
+            if (frame > 0) {
+                assertTrue(buffer[frame * 2] >= buffer[frame * 2 - 2]);
+            }
+        }
+        assertTrue(buffer[0] < 0.02f);
+        assertEquals(1.0f, buffer[299], 1e-6f);
+        assertFalse(gain.isRamping());
+    }
+
+    @Test
+    public void testCrossfadeKeepsEqualPower() {
+        int length = 1000;
+        Crossfader crossfader = new Crossfader(length);
+        float[] incoming = new float[length];
+        float[] outgoing = new float[length];
+
+        // Feed in uneven block sizes to check the curve is continuous across calls
+        int offset = 0;
+        int[] blocks = {7, 300, 64, 629};
+        for (int frames : blocks) {
+            float[] in = new float[frames];
+            float[] out = new float[frames];
+            Arrays.fill(in, 1.0f);
+            Arrays.fill(out, 1.0f);
+            crossfader.process(in, out, 0, frames, 1);
+            System.arraycopy(in, 0, incoming, offset, frames);
+            offset += frames;
+        }
+        assertTrue(crossfader.isFinished());
+
+        // Mixing two equal signals, the summed level follows sin + cos, so it peaks near sqrt(2) mid-way
+        assertTrue(incoming[0] < 1.05f);
+        assertEquals(Math.sqrt(2), incoming[length / 2], 0.02);
+        assertEquals(1.0f, incoming[length - 1], 0.02f);
+    }
+}
@@ -0,0 +1,146 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for keeping playlists in step with their folders.
+ */
+public class LibraryWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static void touch(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[] {1, 2, 3});
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(20);
+        }
+    }
+
+    private static List<String> titles(PlaylistManager playlist) {
+        List<String> titles = new ArrayList<>();
+        for (Song song : playlist.snapshot()) {
+            titles.add(song.getTitle());
+        }
+        Collections.sort(titles);
+        return titles;
+    }
+
+    @Test
+    public void testFollowsCreatesAndDeletes() throws Exception {
+        Path music = tempDir.resolve("music");
+        touch(music.resolve("one.mp3"));
+        touch(music.resolve("album/two.wav"));
+        touch(music.resolve("cover.jpg"));
+
+        PlaylistManager playlist = new PlaylistManager();
+        playlist.createFromDirectory(music.toFile(), true);
+        assertEquals(2, playlist.size());
+
+        SongLibrary library = new SongLibrary();
+        try (LibraryWatcher watcher = new LibraryWatcher(library, 50)) {
+            // A file added between the scan and the watch is picked up straight away
+            touch(music.resolve("early.mp3"));
+            watcher.watch(music.toFile(), true, playlist);
+            assertEquals(3, playlist.size());
+            assertEquals(2, watcher.getWatchedDirectoryCount());
+
+            touch(music.resolve("album/three.flac"));
+            touch(music.resolve("new album/deep/four.mp3"));
+            touch(music.resolve("notes.txt"));
+            await(() -> playlist.size() == 5, "new files were not added: " + titles(playlist));
+            assertEquals(List.of("early.mp3", "four.mp3", "one.mp3", "three.flac", "two.wav"), titles(playlist));
+            assertNotNull(library.findByPath(music.resolve("new album/deep/four.mp3").toString()));
+
+            // Deleting a file, and a whole directory, removes their songs
+            Files.delete(music.resolve("one.mp3"));
+            Files.delete(music.resolve("new album/deep/four.mp3"));
+            Files.delete(music.resolve("new album/deep"));
+            Files.delete(music.resolve("new album"));
+            await(() -> playlist.size() == 3, "deleted files were not removed: " + titles(playlist));
+            assertEquals(List.of("early.mp3", "three.flac", "two.wav"), titles(playlist));
+        }
+    }
+
+    @Test
+    public void testRewrittenFileIsRefreshed() throws Exception {
+        Path music = tempDir.resolve("rewrite");
+        touch(music.resolve("song.mp3"));
+        touch(music.resolve("other.mp3"));
+        PlaylistManager playlist = new PlaylistManager();
+        playlist.createFromDirectory(music.toFile(), false);
+
+        SongLibrary library = new SongLibrary();
+        int id = library.add(playlist.getSong(0));
+        library.setLoudness(id, -14, 0.5f);
+        List<PlaylistEvent> updates = Collections.synchronizedList(new ArrayList<>());
+        playlist.addPlaylistListener((source, events) -> {
+            for (PlaylistEvent event : events) {
+                if (event.getType() == PlaylistEvent.Type.UPDATED) {
+                    updates.add(event);
+                }
+            }
+        });
+
+        try (DuplicateDetector detector = new DuplicateDetector(1);
+             LibraryWatcher watcher = new LibraryWatcher(library, 50)) {
+            watcher.setDuplicateDetector(detector);
+            watcher.watch(music.toFile(), false, playlist);
+            Path file = Path.of(playlist.getSong(0).getFilePath());
+            long before = detector.fingerprint(file.toFile());
+
+            // Same size and modification time, so only the event tells the file changed
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            Files.write(file, new byte[] {4, 5, 6});
+            assertTrue(file.toFile().setLastModified(modified));
+
+            await(() -> !updates.isEmpty(), "rewritten file was not refreshed");
+            for (PlaylistEvent update : updates) {
+                assertEquals(List.of(playlist.getSong(0)), update.getSongs());
+            }
+            assertTrue(Float.isNaN(library.getLoudness(id)));
+            assertNotEquals(before, detector.fingerprint(file.toFile()));
+            assertEquals(2, playlist.size());
+        }
+    }
+
+    @Test
+    public void testBurstIsAppliedAsOneBatch() throws Exception {
+        Path music = tempDir.resolve("burst");
+        Files.createDirectories(music);
+        PlaylistManager playlist = new PlaylistManager();
+        List<List<PlaylistEvent>> updates = Collections.synchronizedList(new ArrayList<>());
+        playlist.addPlaylistListener((source, events) -> updates.add(events));
+
+        try (LibraryWatcher watcher = new LibraryWatcher(null, 200)) {
+            watcher.watch(music.toFile(), false, playlist);
+            for (int i = 0; i < 50; i++) {
+                touch(music.resolve("song" + i + ".mp3"));
+            }
+            // A file that comes and goes within the burst is never listed
+            touch(music.resolve("temp.mp3"));
+            Files.delete(music.resolve("temp.mp3"));
+
+            // Listeners hear of a change just after it is visible
+            await(() -> playlist.size() == 50 && !updates.isEmpty(), "burst was not applied: " + playlist.size());
+            assertEquals(1, updates.size());
+        }
+    }
+}
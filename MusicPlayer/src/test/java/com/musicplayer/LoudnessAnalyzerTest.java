@@ -0,0 +1,76 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for loudness measurement.
+ */
+public class LoudnessAnalyzerTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Feeds a stereo 1 kHz sine at the given level in uneven blocks.
+     */
+    private static void feedSine(LoudnessAnalyzer analyzer, float sampleRate, double dbfs, int seconds) {
+        float amplitude = (float) Math.pow(10.0, dbfs / 20.0);
+        float[] block = new float[2 * 997];
+        long frame = 0;
+        long total = (long) (sampleRate * seconds);
+        while (frame < total) {
+            int frames = (int) Math.min(997, total - frame);
+            for (int i = 0; i < frames; i++, frame++) {
+                float sample = (float) (amplitude * Math.sin(2 * Math.PI * 1000 * frame / sampleRate));
+                block[2 * i] = sample;
+                block[2 * i + 1] = sample;
+            }
+            analyzer.process(block, 0, frames);
+        }
+    }
+
+    @Test
+    public void testReferenceSineMeasuresAtItsLevel() {
+        // EBU Tech 3341: a stereo 1 kHz sine at -23 dBFS reads -23 LUFS
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(48000, 2);
+        feedSine(analyzer, 48000, -23, 20);
+        assertEquals(-23.0, analyzer.getIntegratedLoudness(), 0.1);
+        assertEquals(Math.pow(10.0, -23 / 20.0), analyzer.getPeak(), 1e-3);
+
+        // Silence is dropped by the absolute gate, so it doesn't pull the result down
+        LoudnessAnalyzer gated = new LoudnessAnalyzer(44100, 2);
+        feedSine(gated, 44100, -23, 10);
+        gated.process(new float[2 * 44100 * 10], 0, 44100 * 10);
+        assertEquals(-23.0, gated.getIntegratedLoudness(), 0.1);
+
+        LoudnessAnalyzer silent = new LoudnessAnalyzer(44100, 2);
+        silent.process(new float[2 * 44100], 0, 44100);
+        assertEquals(Double.NEGATIVE_INFINITY, silent.getIntegratedLoudness());
+        assertEquals(1.0f, LoudnessAnalyzer.gainFor(silent.getIntegratedLoudness(), 0));
+    }
+
+    @Test
+    public void testLibraryKeepsLoudnessAcrossSaves() throws IOException {
+        SongLibrary library = new SongLibrary();
+        int loud = library.add(new Song("Loud", "/path/to/loud.mp3"));
+        int quiet = library.add(new Song("Quiet", "/path/to/quiet.mp3"));
+        library.setLoudness(loud, -8.0, 0.99f);
+        assertArrayEquals(new int[] {quiet}, library.unanalyzedIds());
+
+        // A loud track is turned down; an unmeasured one plays unchanged
+        assertEquals(Math.pow(10.0, -10 / 20.0), library.getReplayGain(loud), 1e-4);
+        assertEquals(1.0f, library.getReplayGain(quiet));
+
+        Path file = tempDir.resolve("library.ser");
+        library.save(file);
+        SongLibrary reloaded = SongLibrary.load(file);
+        assertEquals(-8.0f, reloaded.getLoudness(loud));
+        assertEquals(0.99f, reloaded.getPeak(loud));
+        assertTrue(Float.isNaN(reloaded.getLoudness(quiet)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for reading uncompressed WAV and AIFF files directly.
+ */
+public class PcmFileSourceTest {
+
+    private static final int FRAMES = 5000;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes noise through the Java Sound API in the given format.
+     */
+    private File write(String name, AudioFormat format, AudioFileFormat.Type type) throws IOException {
+        byte[] data = new byte[FRAMES * format.getFrameSize()];
+        int seed = 7;
+        for (int i = 0; i < data.length; i++) {
+            seed = seed * 1103515245 + 12345;
+            data[i] = (byte) (seed >> 16);
+        }
+        File file = tempDir.resolve(name).toFile();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, FRAMES), type, file);
+        return file;
+    }
+
+    private static float[] readAll(PcmSource source) throws IOException {
+        float[] all = new float[FRAMES * source.getChannels()];
+        int total = 0;
+        while (total < FRAMES) {
+            int read = source.read(all, total * source.getChannels(), Math.min(777, FRAMES - total));
+            assertTrue(read > 0);
+            total += read;
+        }
+        assertEquals(-1, source.read(all, 0, 1));
+        return all;
+    }
+
+    /**
+     * Checks that the fast path decodes a file exactly as the Java Sound API does.
+     */
+    private void assertMatchesJavaSound(File file) throws Exception {
+        try (PcmFileSource direct = PcmFileSource.open(file);
+             AudioStreamSource reference = new AudioStreamSource(file)) {
+            assertNotNull(direct, file.getName());
+            assertEquals(reference.getSampleRate(), direct.getSampleRate());
+            assertEquals(reference.getChannels(), direct.getChannels());
+            assertEquals(FRAMES, direct.getFrameLength());
+            assertArrayEquals(readAll(reference), readAll(direct), file.getName());
+        }
+    }
+
+    @Test
+    public void testMatchesJavaSound() throws Exception {
+        assertMatchesJavaSound(write("16.wav", new AudioFormat(44100, 16, 2, true, false), AudioFileFormat.Type.WAVE));
+        assertMatchesJavaSound(write("8.wav", new AudioFormat(22050, 8, 1, false, false), AudioFileFormat.Type.WAVE));
+        assertMatchesJavaSound(write("24.wav", new AudioFormat(48000, 24, 2, true, false), AudioFileFormat.Type.WAVE));
+        assertMatchesJavaSound(write("16.aiff", new AudioFormat(44100, 16, 2, true, true), AudioFileFormat.Type.AIFF));
+        assertMatchesJavaSound(write("8.aiff", new AudioFormat(11025, 8, 1, true, true), AudioFileFormat.Type.AIFF));
+    }
+
+    @Test
+    public void testFloatWave() throws IOException {
+        // WAVE_FORMAT_IEEE_FLOAT, mono, with an odd-length chunk before the data
+        ByteBuffer file = ByteBuffer.allocate(12 + 24 + 10 + 8 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        file.put("RIFF".getBytes()).putInt(file.capacity() - 8).put("WAVE".getBytes());
+        file.put("fmt ".getBytes()).putInt(16).putShort((short) 3).putShort((short) 1)
+                .putInt(8000).putInt(32000).putShort((short) 4).putShort((short) 32);
+        file.put("LIST".getBytes()).putInt(1).put((byte) 'x').put((byte) 0);
+        file.put("data".getBytes()).putInt(16).putFloat(0.5f).putFloat(-0.25f).putFloat(1f).putFloat(0f);
+        Path path = tempDir.resolve("float.wav");
+        Files.write(path, file.array());
+
+        try (PcmFileSource source = PcmFileSource.open(path.toFile())) {
+            assertNotNull(source);
+            assertEquals(8000f, source.getSampleRate());
+            assertEquals(4, source.getFrameLength());
+            float[] samples = new float[4];
+            assertEquals(4, source.read(samples, 0, 10));
+            assertArrayEquals(new float[] {0.5f, -0.25f, 1f, 0f}, samples);
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        File file = write("seek.wav", new AudioFormat(44100, 16, 2, true, false), AudioFileFormat.Type.WAVE);
+        float[] all;
+        try (AudioStreamSource reference = new AudioStreamSource(file)) {
+            all = readAll(reference);
+        }
+        try (PcmFileSource source = PcmFileSource.open(file)) {
+            float[] block = new float[200];
+            source.seek(4000);
+            assertEquals(100, source.read(block, 0, 100));
+            for (int i = 0; i < 200; i++) {
+                assertEquals(all[4000 * 2 + i], block[i]);
+            }
+            source.seek(10);
+            assertEquals(100, source.read(block, 0, 100));
+            assertEquals(all[20], block[0]);
+            source.seek(FRAMES + 100);
+            assertEquals(-1, source.read(block, 0, 100));
+        }
+    }
+
+    @Test
+    public void testOtherFormatsAreLeftToJavaSound() throws IOException {
+        Path text = tempDir.resolve("notes.mp3");
+        Files.write(text, "ID3 not really an mp3".getBytes());
+        assertNull(PcmFileSource.open(text.toFile()));
+
+        Path empty = tempDir.resolve("empty.wav");
+        Files.write(empty, new byte[0]);
+        assertNull(PcmFileSource.open(empty.toFile()));
+    }
+}
@@ -0,0 +1,108 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the play history log.
+ */
+public class PlayHistoryTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // Midnight UTC
+    private static final long START = 1_700_006_400_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private static List<Integer> songIds(List<PlayHistory.Play> plays) {
+        List<Integer> ids = new ArrayList<>();
+        for (PlayHistory.Play play : plays) {
+            ids.add(play.getSongId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testStatisticsSurviveReopen() throws IOException {
+        try (PlayHistory history = PlayHistory.open(tempDir)) {
+            history.record(3, START, 200_000, false);
+            history.record(7, START + 10_000, 15_000, true);
+            history.record(3, START + HOUR + 5, 200_000, false);
+            history.record(5, START + DAY, 100_000, false);
+        }
+
+        try (PlayHistory history = PlayHistory.open(tempDir)) {
+            assertEquals(4, history.size());
+            assertEquals(2, history.getPlayCount(3));
+            assertEquals(1, history.getSkipCount(7));
+            assertEquals(0, history.getPlayCount(7));
+            assertArrayEquals(new int[] {3, 5}, history.topSongs(10));
+            assertArrayEquals(new int[] {3}, history.topSongs(1));
+
+            List<PlayHistory.Play> recent = history.recentlyPlayed(3);
+            assertEquals(List.of(5, 3, 7), songIds(recent));
+            assertTrue(recent.get(2).isSkipped());
+            assertEquals(START + HOUR, recent.get(1).getStartMillis());
+
+            PlayHistory.Totals[] hours = history.hourly(START, START + 3 * HOUR);
+            assertEquals(3, hours.length);
+            assertEquals(1, hours[0].getPlays());
+            assertEquals(1, hours[0].getSkips());
+            assertEquals(215_000, hours[0].getPlayedMillis());
+            assertEquals(1, hours[1].getPlays());
+            assertEquals(0, hours[2].getPlays());
+
+            PlayHistory.Totals[] days = history.daily(START + HOUR, START + 2 * DAY);
+            assertEquals(2, days.length);
+            assertEquals(2, days[0].getPlays());
+            assertEquals(1, days[1].getPlays());
+        }
+    }
+
+    @Test
+    public void testSegmentsRollAndTornRecordIsDropped() throws IOException {
+        try (PlayHistory history = PlayHistory.open(tempDir, 10)) {
+            for (int i = 0; i < 35; i++) {
+                history.record(i % 4, START + i * 60_000L, 180_000, i % 5 == 0);
+            }
+        }
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDir, "*.seg")) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        assertEquals(4, segments.size());
+
+        // A crash mid-write leaves part of a record, and one sealed segment lost its rollup
+        Files.write(segments.get(3), new byte[] {1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+        Path rollup = tempDir.resolve(segments.get(1).getFileName().toString().replace(".seg", ".rollup"));
+        Files.delete(rollup);
+
+        try (PlayHistory history = PlayHistory.open(tempDir, 10)) {
+            assertEquals(35, history.size());
+            assertTrue(Files.exists(rollup));
+            assertEquals(List.of(2, 1, 0, 3, 2, 1, 0, 3, 2, 1, 0, 3), songIds(history.recentlyPlayed(12)));
+            assertEquals(35, history.recentlyPlayed(100).size());
+            assertEquals(7, history.getSkipCount(0) + history.getSkipCount(1)
+                    + history.getSkipCount(2) + history.getSkipCount(3));
+
+            history.record(9, START + DAY, 1000, false);
+            assertEquals(9, history.recentlyPlayed(1).get(0).getSongId());
+            assertEquals(36, history.daily(START, START + 2 * DAY)[0].getPlays()
+                    + history.daily(START, START + 2 * DAY)[0].getSkips()
+                    + history.daily(START, START + 2 * DAY)[1].getPlays());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the play queue.
+ */
+public class PlayQueueTest {
+
+    private static PlaylistManager playlist(String... titles) {
+        PlaylistManager manager = new PlaylistManager();
+        for (String title : titles) {
+            manager.addSong(new Song(title, "/m/" + title + ".mp3"));
+        }
+        return manager;
+    }
+
+    private static String title(SongLibrary library, int id) {
+        return id < 0 ? null : library.get(id).getTitle();
+    }
+
+    @Test
+    public void testPlaylistOrderIsFixedWhenPlaybackStarts() {
+        SongLibrary library = new SongLibrary();
+        PlaylistManager manager = playlist("A", "B", "C", "D");
+        PlayQueue queue = new PlayQueue(library);
+
+        assertEquals("B", title(library, queue.playFrom(manager.snapshot(), 1)));
+        assertEquals("C", title(library, queue.advance()));
+
+        // Sorting or removing songs while playing does not change what comes next
+        manager.sortByTitleDesc();
+        manager.removeSong(0);
+        assertEquals("D", title(library, queue.advance()));
+        assertEquals("A", title(library, queue.advance()));
+        assertEquals("B", title(library, queue.advance()));
+    }
+
+    @Test
+    public void testQueuedSongsAndHistory() {
+        SongLibrary library = new SongLibrary();
+        PlaylistManager manager = playlist("A", "B", "C", "D", "E");
+        PlayQueue queue = new PlayQueue(library, 2, 3);
+        queue.playFrom(manager.snapshot(), 0);
+
+        int d = library.add(manager.getSong(3));
+        int e = library.add(manager.getSong(4));
+        queue.enqueue(d);
+        queue.playNext(e);
+        assertEquals(2, queue.getQueuedCount());
+        assertEquals("E", title(library, queue.advance()));
+        assertEquals("D", title(library, queue.advance()));
+        assertEquals("B", title(library, queue.advance()));
+
+        // Going back makes the song that was playing the next one again
+        assertEquals("D", title(library, queue.back()));
+        assertEquals("E", title(library, queue.back()));
+        assertEquals("D", title(library, queue.advance()));
+        assertEquals("B", title(library, queue.advance()));
+        assertEquals("C", title(library, queue.advance()));
+
+        // Only the last three plays are kept
+        assertEquals(3, queue.getHistory().length);
+        queue.back();
+        queue.back();
+        queue.back();
+        assertEquals(-1, queue.back());
+    }
+
+    @Test
+    public void testManyQueuedSongsKeepTheirOrder() {
+        SongLibrary library = new SongLibrary();
+        PlayQueue queue = new PlayQueue(library);
+        for (int i = 0; i < 100; i++) {
+            library.add(new Song("S" + i, "/m/" + i + ".mp3"));
+        }
+        for (int i = 50; i < 100; i++) {
+            queue.enqueue(i);
+        }
+        for (int i = 49; i >= 0; i--) {
+            queue.playNext(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, queue.advance());
+        }
+        assertEquals(-1, queue.advance());
+        assertEquals(99, queue.getCurrent());
+    }
+
+    @Test
+    public void testPrefetcherSeesLookaheadWindow() {
+        SongLibrary library = new SongLibrary();
+        PlaylistManager manager = playlist("A", "B", "C", "D");
+        PlayQueue queue = new PlayQueue(library, 2, 10);
+        List<List<String>> windows = new ArrayList<>();
+        queue.setPrefetcher(upcoming -> {
+            List<String> titles = new ArrayList<>();
+            for (Song song : upcoming) {
+                titles.add(song.getTitle());
+            }
+            windows.add(titles);
+        });
+
+        queue.playFrom(manager.snapshot(), 0);
+        queue.playNext(library.add(manager.getSong(3)));
+        queue.advance();
+        assertEquals(List.of(List.of("B", "C"), List.of("D", "B"), List.of("B", "C")), windows);
+
+        // Queued songs come before the rest of the playlist
+        queue.enqueue(library.add(manager.getSong(0)));
+        queue.enqueue(library.add(manager.getSong(2)));
+        assertEquals(List.of("A", "C"), windows.get(windows.size() - 1));
+
+        // A window that did not change is not announced again
+        queue.enqueue(library.add(manager.getSong(3)));
+        assertEquals(5, windows.size());
+    }
+
+    @Test
+    public void testSettingTheSameSourceKeepsSongsTakenFromIt() {
+        SongLibrary library = new SongLibrary();
+        PlaylistManager manager = playlist("A", "B", "C", "D", "E", "F");
+        PlayQueue queue = new PlayQueue(library, 3, 10);
+        queue.setPrefetcher(upcoming -> { });
+        ShuffleOrder order = new ShuffleOrder(manager, 5);
+        IntSupplier shuffle = () -> {
+            int index = order.next();
+            return index < 0 ? -1 : library.add(manager.getSong(index));
+        };
+        queue.setSource(shuffle);
+
+        // The lookahead has taken songs from the order, which counts them as played,
+        // so they must still come next
+        queue.play(library.add(manager.getSong(0)));
+        queue.setSource(shuffle);
+        ShuffleOrder same = new ShuffleOrder(manager, 5);
+        for (int i = 0; i < manager.size(); i++) {
+            assertEquals(manager.getSong(same.next()).getTitle(), title(library, queue.advance()));
+        }
+    }
+}
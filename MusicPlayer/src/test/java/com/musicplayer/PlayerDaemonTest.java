@@ -0,0 +1,101 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the headless player daemon.
+ */
+public class PlayerDaemonTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes a mono 22.05 kHz sine, so playback also goes through format conversion.
+     */
+    static File writeSine(Path dir, String name, double seconds) throws IOException {
+        AudioFormat format = new AudioFormat(22050, 16, 1, true, false);
+        int frames = (int) (22050 * seconds);
+        byte[] data = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 22050.0));
+            data[2 * i] = (byte) sample;
+            data[2 * i + 1] = (byte) (sample >> 8);
+        }
+        File file = dir.resolve(name).toFile();
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(data), format, frames);
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    private static String request(PlayerDaemon daemon, String method, String path, int expectedStatus)
+            throws IOException {
+        URL url = new URL("http://127.0.0.1:" + daemon.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        assertEquals(expectedStatus, connection.getResponseCode(), method + " " + path);
+        InputStream body = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream();
+        byte[] bytes = body.readAllBytes();
+        body.close();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testControlApiAndFanOutRecording() throws Exception {
+        File song = writeSine(tempDir, "tone.wav", 0.5);
+        File recording = tempDir.resolve("recording.wav").toFile();
+        AudioSink sink = new FanOutSink(new NullSink(), new WavFileSink(recording));
+
+        PlayerDaemon daemon = new PlayerDaemon(new PlaylistManager(), sink, 0);
+        daemon.start();
+        try {
+            request(daemon, "POST", "/add?path=" + URLEncoder.encode(song.getPath(), "UTF-8"), 200);
+            assertTrue(request(daemon, "GET", "/playlist", 200).contains("\"title\":\"tone.wav\""));
+
+            String status = request(daemon, "POST", "/play", 200);
+            assertTrue(status.contains("\"state\":\"playing\""), status);
+            request(daemon, "POST", "/volume?value=0.5", 200);
+
+            // The half-second track plays out in real time through the null sink
+            daemon.getPlayer().getTrackCompletion().get();
+            request(daemon, "POST", "/stop", 200);
+
+            request(daemon, "GET", "/play", 405);
+            request(daemon, "POST", "/rewind", 404);
+            request(daemon, "POST", "/volume", 400);
+
+            String metrics = request(daemon, "GET", "/metrics", 200);
+            assertTrue(metrics.contains("# TYPE player_command_latency_seconds histogram"));
+            assertTrue(metrics.contains("player_command_latency_seconds_count{command=\"play\"} 1"), metrics);
+            assertEquals(1, daemon.getCommandLatency("volume").getCount());
+        } finally {
+            daemon.close();
+        }
+
+        // The recording holds the converted stream: 44.1 kHz stereo, about as long as the track
+        try (AudioInputStream recorded = AudioSystem.getAudioInputStream(recording)) {
+            assertEquals(44100f, recorded.getFormat().getSampleRate());
+            assertEquals(2, recorded.getFormat().getChannels());
+            assertTrue(recorded.getFrameLength() >= 22000, "recorded " + recorded.getFrameLength());
+        } catch (UnsupportedAudioFileException e) {
+            fail("Recording is not a valid WAV file: " + e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for importing and exporting M3U, PLS and XSPF playlists.
+ */
+public class PlaylistFilesTest {
+
+    @TempDir
+    Path directory;
+
+    private List<Song> read(Path file) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        PlaylistFiles.read(file, songs::add);
+        return songs;
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.write(directory.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadM3uResolvesRelativePaths() throws IOException {
+        String base = directory.toString();
+        Path file = write("mix.m3u8", "\uFEFF#EXTM3U\n"
+                + "#EXTINF:215,Daft Punk - One More Time\n"
+                + "albums/Discovery/01.mp3\n"
+                + "\n"
+                + "# a comment\n"
+                + "albums/../loose/track.wav\n"
+                + "#EXTINF:-1 tvg-id=\"x\",Radio\n"
+                + "http://radio.example/stream\n"
+                + "/abs/song.flac\n");
+
+        List<Song> songs = read(file);
+        assertEquals(4, songs.size());
+        assertEquals(base + "/albums/Discovery/01.mp3", songs.get(0).getFilePath());
+        assertEquals("Daft Punk", songs.get(0).getArtist());
+        assertEquals("One More Time", songs.get(0).getTitle());
+        assertEquals(215, songs.get(0).getDuration());
+        assertEquals(base + "/loose/track.wav", songs.get(1).getFilePath());
+        assertEquals("track.wav", songs.get(1).getTitle());
+        assertEquals("http://radio.example/stream", songs.get(2).getFilePath());
+        assertEquals("Radio", songs.get(2).getTitle());
+        assertEquals(0, songs.get(2).getDuration());
+        assertEquals("/abs/song.flac", songs.get(3).getFilePath());
+    }
+
+    @Test
+    public void testReadPlsAndXspf() throws IOException {
+        String base = directory.toString();
+        Path pls = write("mix.pls", "[playlist]\n"
+                + "NumberOfEntries=2\n"
+                + "File1=a.mp3\nTitle1=Artist - A\nLength1=60\n"
+                + "Title2=B\nFile2=/m/b.mp3\n"
+                + "Version=2\n");
+        List<Song> songs = read(pls);
+        assertEquals(2, songs.size());
+        assertEquals(base + "/a.mp3", songs.get(0).getFilePath());
+        assertEquals("Artist", songs.get(0).getArtist());
+        assertEquals(60, songs.get(0).getDuration());
+        assertEquals("B", songs.get(1).getTitle());
+
+        Path xspf = write("mix.xspf", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<playlist version=\"1\" xmlns=\"http://xspf.org/ns/0/\"><title>Mix</title><trackList>\n"
+                + "<track><location>file:///m/My%20Song.mp3</location><title>My Song</title>"
+                + "<creator>Me</creator><album>Demo</album><duration>61000</duration></track>\n"
+                + "<track><location>sub/caf%C3%A9.ogg</location><extension application=\"x\"><title>no</title></extension></track>\n"
+                + "<track><title>No location</title></track>\n"
+                + "</trackList></playlist>\n");
+        songs = read(xspf);
+        assertEquals(2, songs.size());
+        assertEquals("/m/My Song.mp3", songs.get(0).getFilePath());
+        assertEquals("Me", songs.get(0).getArtist());
+        assertEquals("Demo", songs.get(0).getAlbum());
+        assertEquals(61, songs.get(0).getDuration());
+        assertEquals(base + "/sub/caf\u00e9.ogg", songs.get(1).getFilePath());
+        assertEquals("caf\u00e9.ogg", songs.get(1).getTitle());
+    }
+
+    @Test
+    public void testWrittenPlaylistsReadBackTheSame() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        songs.add(new Song("One", directory.resolve("in folder/one.mp3").toString(), "Band", "Unknown", 200));
+        songs.add(new Song("Caf\u00e9 & Bar", "/elsewhere/two & three.mp3", "Unknown", "Unknown", 0));
+        songs.add(new Song("Stream", "http://radio.example/live", "Unknown", "Unknown", 0));
+
+        for (String name : new String[] {"out.m3u", "out.pls", "out.xspf"}) {
+            Path file = directory.resolve(name);
+            assertEquals(3, PlaylistFiles.write(file, songs));
+            List<Song> read = read(file);
+            assertEquals(3, read.size(), name);
+            for (int i = 0; i < songs.size(); i++) {
+                assertEquals(songs.get(i).getFilePath(), read.get(i).getFilePath(), name);
+                assertEquals(songs.get(i).getTitle(), read.get(i).getTitle(), name);
+                assertEquals(songs.get(i).getArtist(), read.get(i).getArtist(), name);
+                assertEquals(songs.get(i).getDuration(), read.get(i).getDuration(), name);
+            }
+        }
+        // Songs under the playlist's folder are written relative to it
+        assertTrue(Files.readAllLines(directory.resolve("out.m3u")).contains("in folder/one.mp3"));
+        assertFalse(Files.exists(directory.resolve("out.m3u.tmp")));
+    }
+
+    @Test
+    public void testImportIsOneUpdate() throws IOException {
+        int count = 12_305;
+        StringBuilder text = new StringBuilder("#EXTM3U\n");
+        for (int i = 0; i < count; i++) {
+            text.append("d").append(i % 7).append("/t").append(i).append(".mp3\n");
+        }
+        Path file = write("big.m3u", text.toString());
+
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSong(new Song("First", "/m/first.mp3"));
+        List<PlaylistEvent> events = new ArrayList<>();
+        manager.addPlaylistListener((playlist, delivered) -> events.addAll(delivered));
+
+        assertTrue(manager.importPlaylist(file.toString()));
+        assertEquals(count + 1, manager.size());
+        assertEquals(directory + "/d3/t10.mp3", manager.getSong(11).getFilePath());
+        assertEquals(1, events.size());
+        assertEquals(1, events.get(0).getFromIndex());
+        assertEquals(count + 1, events.get(0).getToIndex());
+        assertEquals(count, events.get(0).getSongs().size());
+        assertSame(manager.getSong(count), events.get(0).getSongs().get(count - 1));
+
+        assertFalse(manager.importPlaylist(directory.resolve("list.txt").toString()));
+    }
+}
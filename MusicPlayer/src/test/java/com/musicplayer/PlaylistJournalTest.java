@@ -0,0 +1,135 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for incremental playlist persistence.
+ */
+public class PlaylistJournalTest {
+    @TempDir
+    Path tempDir;
+
+    private static List<String> titles(PlaylistManager manager) {
+        List<String> titles = new ArrayList<>();
+        for (Song song : manager.snapshot()) {
+            titles.add(song.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    public void testChangesSurviveReopen() throws IOException {
+        String file = tempDir.resolve("playlist.ser").toString();
+        PlaylistManager manager = new PlaylistManager();
+        manager.setPlaylistName("Journaled");
+
+        try (PlaylistJournal journal = PlaylistJournal.open(manager, file)) {
+            manager.addSong(new Song("A", "/path/to/a.mp3", "Artist", "Album", 100));
+            manager.addSong(new Song("B", "/path/to/b.mp3"));
+            manager.addSong(new Song("C", "/path/to/c.mp3"));
+            manager.moveSong(2, 0);
+            manager.removeSong(1);
+            manager.updateSong(0, song -> song.setArtist("Someone"));
+            manager.updateSong(1, Song::incrementPlayCount);
+            manager.updateSong(1, Song::incrementPlayCount);
+            journal.flush();
+        }
+
+        PlaylistManager reopened = new PlaylistManager();
+        PlaylistJournal.open(reopened, file).close();
+        assertEquals("Journaled", reopened.getPlaylistName());
+        assertEquals(List.of("C", "B"), titles(reopened));
+        assertEquals("Someone", reopened.getSong(0).getArtist());
+        assertEquals(2, reopened.getSong(1).getPlayCount());
+
+        // The playlist file itself is still a regular saved playlist
+        PlaylistManager loaded = new PlaylistManager();
+        assertTrue(loaded.loadPlaylist(file));
+    }
+
+    @Test
+    public void testSingleMoveWritesOnlyARecord() throws IOException {
+        String file = tempDir.resolve("moves.ser").toString();
+        PlaylistManager manager = new PlaylistManager();
+        for (int i = 0; i < 1000; i++) {
+            manager.addSong(new Song("Song " + i, "/path/to/song" + i + ".mp3"));
+        }
+
+        try (PlaylistJournal journal = PlaylistJournal.open(manager, file)) {
+            long before = Files.size(journal.getJournalPath());
+            manager.moveSong(10, 500);
+            journal.flush();
+            assertEquals(17, Files.size(journal.getJournalPath()) - before);
+        }
+    }
+
+    @Test
+    public void testCompactionAndTornTail() throws IOException {
+        String file = tempDir.resolve("compact.ser").toString();
+        PlaylistManager manager = new PlaylistManager();
+
+        try (PlaylistJournal journal = PlaylistJournal.open(manager, file, 10, 50)) {
+            for (int i = 0; i < 25; i++) {
+                manager.addSong(new Song("Song " + i, "/path/to/song" + i + ".mp3"));
+            }
+            manager.sortByTitleDesc();
+            manager.addSong(new Song("Last", "/path/to/last.mp3"));
+            journal.flush();
+        }
+
+        // Simulate a crash in the middle of appending a record
+        Path journalFile = tempDir.resolve("compact.ser.journal");
+        Files.write(journalFile, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        PlaylistManager reopened = new PlaylistManager();
+        try (PlaylistJournal journal = PlaylistJournal.open(reopened, file)) {
+            assertEquals(26, reopened.size());
+            assertEquals("Song 9", reopened.getSong(0).getTitle());
+            assertEquals("Last", reopened.getSong(25).getTitle());
+
+            // New records go after the discarded tail and are replayed next time
+            reopened.removeSong(0);
+            journal.flush();
+        }
+
+        PlaylistManager again = new PlaylistManager();
+        PlaylistJournal.open(again, file).close();
+        assertEquals(25, again.size());
+        assertEquals("Song 8", again.getSong(0).getTitle());
+    }
+
+    @Test
+    public void testUnencodableBatchCompactsWithoutDuplicates() throws IOException {
+        String file = tempDir.resolve("odd.ser").toString();
+        PlaylistManager manager = new PlaylistManager();
+
+        try (PlaylistJournal journal = PlaylistJournal.open(manager, file)) {
+            manager.addSong(new Song("No artist", "/path/to/a.mp3", null, null, 10));
+            // The new title is too long for a record, so the batch is compacted
+            // instead, and the insert already encoded must not be replayed on top
+            // of the snapshot
+            manager.batch(() -> {
+                manager.addSong(new Song("Second", "/path/to/b.mp3"));
+                manager.updateSong(0, song -> song.setTitle("x".repeat(70000)));
+            });
+            journal.flush();
+        }
+
+        PlaylistManager reopened = new PlaylistManager();
+        PlaylistJournal.open(reopened, file).close();
+        assertEquals(2, reopened.size());
+        assertNull(reopened.getSong(0).getArtist());
+        assertEquals(70000, reopened.getSong(0).getTitle().length());
+        assertEquals("Second", reopened.getSong(1).getTitle());
+    }
+}
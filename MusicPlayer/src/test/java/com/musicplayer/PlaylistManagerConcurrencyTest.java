@@ -0,0 +1,165 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for snapshot publication in PlaylistManager under concurrent access.
+ */
+public class PlaylistManagerConcurrencyTest {
+
+    @Test
+    public void testPersistentVectorMatchesArrayList() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+
+        // Apply the same random edits to both lists, crossing several trie levels
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            if (op < 6 || expected.isEmpty()) {
+                expected.add(step);
+                vector = vector.plus(step);
+            } else if (op == 6) {
+                int index = random.nextInt(expected.size() + 1);
+                expected.add(index, step);
+                vector = vector.insert(index, step);
+            } else if (op == 7) {
+                int index = random.nextInt(expected.size());
+                expected.remove(index);
+                vector = vector.without(index, index + 1);
+            } else if (op == 8) {
+                int index = random.nextInt(expected.size());
+                expected.set(index, -step);
+                vector = vector.with(index, -step);
+            } else {
+                int from = random.nextInt(expected.size());
+                int to = random.nextInt(expected.size());
+                expected.add(to, expected.remove(from));
+                vector = vector.move(from, to);
+            }
+        }
+
+        assertEquals(expected, vector);
+        assertEquals(expected, new ArrayList<>(vector));
+        assertEquals(expected, PersistentVector.of(expected));
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByLaterEdits() {
+        PlaylistManager manager = new PlaylistManager();
+        Song first = new Song("First", "/path/to/first.mp3");
+        Song second = new Song("Second", "/path/to/second.mp3");
+        manager.addSong(first);
+
+        List<Song> snapshot = manager.snapshot();
+        manager.addSong(second);
+        manager.removeSong(first);
+
+        // The earlier snapshot still reflects the playlist at the time it was taken
+        assertEquals(1, snapshot.size());
+        assertEquals(first, snapshot.get(0));
+        assertEquals(1, manager.size());
+        assertEquals(second, manager.getSong(0));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(second));
+    }
+
+    @Test
+    public void testConcurrentScannersSearchersAndMovers() throws Exception {
+        final int songCount = 2000;
+        final int threadsPerRole = 4;
+        PlaylistManager manager = new PlaylistManager();
+        List<Song> initial = new ArrayList<>();
+        for (int i = 0; i < songCount; i++) {
+            initial.add(new Song("Song " + i, "/path/to/song" + i + ".mp3", "Artist " + (i % 50), "Album " + (i % 200), i));
+        }
+        manager.addSongs(initial);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threadsPerRole; t++) {
+            final long seed = t;
+
+            // Movers and sorters reorder the playlist without changing its contents
+            threads.add(new Thread(() -> runUntilStopped(start, running, failures, random -> {
+                int from = random.nextInt(songCount);
+                int to = random.nextInt(songCount);
+                assertTrue(manager.moveSong(from, to));
+                if (random.nextInt(500) == 0) {
+                    manager.sortByDuration();
+                }
+            }, seed)));
+
+            // Scanners walk a whole snapshot and check it is a permutation of the songs
+            threads.add(new Thread(() -> runUntilStopped(start, running, failures, random -> {
+                Set<Song> seen = new HashSet<>();
+                for (Song song : manager.snapshot()) {
+                    if (!song.getTitle().equals("Extra")) {
+                        assertTrue(seen.add(song), "Song appeared twice in one snapshot");
+                    }
+                }
+                assertEquals(songCount, seen.size());
+            }, seed)));
+
+            // Searchers filter while the playlist is being reordered
+            threads.add(new Thread(() -> runUntilStopped(start, running, failures, random -> {
+                int artist = random.nextInt(50);
+                assertEquals(songCount / 50, manager.filterByArtist("Artist " + artist).stream()
+                        .filter(song -> song.getArtist().equals("Artist " + artist)).count());
+                assertTrue(manager.search("Song").size() >= songCount);
+            }, seed)));
+
+            // Churners add and remove their own songs at the end of the playlist
+            threads.add(new Thread(() -> runUntilStopped(start, running, failures, random -> {
+                Song extra = new Song("Extra", "/path/to/extra.mp3");
+                manager.addSong(extra);
+                assertTrue(manager.removeSong(extra));
+            }, seed)));
+        }
+
+        threads.forEach(Thread::start);
+        start.countDown();
+        Thread.sleep(1000);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        if (!failures.isEmpty()) {
+            fail("Concurrent access failed: " + failures.peek());
+        }
+        assertEquals(songCount, manager.size());
+        assertEquals(songCount, new HashSet<>(manager.snapshot()).size());
+    }
+
+    private interface Step {
+        void run(Random random) throws Exception;
+    }
+
+    private static void runUntilStopped(CountDownLatch start, AtomicBoolean running,
+                                        ConcurrentLinkedQueue<Throwable> failures, Step step, long seed) {
+        Random random = new Random(seed);
+        try {
+            start.await();
+            while (running.get()) {
+                step.run(random);
+            }
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -127,4 +128,111 @@ public class PlaylistManagerTest {
             tempFile.delete();
         }
     }
+
+    @Test
+    public void testChangeEventsAreReported() {
+        List<PlaylistEvent> received = new ArrayList<>();
+        playlistManager.addPlaylistListener((source, events) -> received.addAll(events));
+
+        playlistManager.addSong(testSong1);
+        playlistManager.addSong(testSong2);
+        playlistManager.moveSong(0, 1);
+        playlistManager.updateSong(0, song -> song.setAlbum("Updated Album"));
+        playlistManager.removeSong(testSong1);
+
+        assertEquals(5, received.size());
+        assertEquals(PlaylistEvent.Type.INSERTED, received.get(0).getType());
+        assertEquals(1, received.get(1).getFromIndex());
+        assertEquals(PlaylistEvent.Type.MOVED, received.get(2).getType());
+        assertEquals(PlaylistEvent.Type.UPDATED, received.get(3).getType());
+        assertEquals("Updated Album", testSong2.getAlbum());
+        assertEquals(PlaylistEvent.Type.REMOVED, received.get(4).getType());
+        assertEquals(1, received.get(4).getFromIndex());
+        assertEquals(1, received.get(4).getSnapshot().size());
+    }
+
+    @Test
+    public void testBatchedChangesAreCoalesced() {
+        List<List<PlaylistEvent>> deliveries = new ArrayList<>();
+        playlistManager.addPlaylistListener((source, events) -> deliveries.add(events));
+
+        // Many single inserts inside a batch arrive as one inserted range
+        playlistManager.batch(() -> {
+            for (int i = 0; i < 1000; i++) {
+                playlistManager.addSong(new Song("Song " + i, "/path/to/song" + i + ".mp3"));
+            }
+        });
+
+        assertEquals(1, deliveries.size());
+        assertEquals(1, deliveries.get(0).size());
+        PlaylistEvent event = deliveries.get(0).get(0);
+        assertEquals(PlaylistEvent.Type.INSERTED, event.getType());
+        assertEquals(0, event.getFromIndex());
+        assertEquals(1000, event.getToIndex());
+        assertEquals(1000, event.getSongs().size());
+
+        // Removing a run of songs from the front is reported as one removed range
+        deliveries.clear();
+        playlistManager.batch(() -> {
+            for (int i = 0; i < 10; i++) {
+                playlistManager.removeSong(0);
+            }
+        });
+        assertEquals(1, deliveries.get(0).size());
+        assertEquals(0, deliveries.get(0).get(0).getFromIndex());
+        assertEquals(10, deliveries.get(0).get(0).getToIndex());
+        assertEquals(990, playlistManager.size());
+    }
+
+    @Test
+    public void testSearchIgnoresAccentsAndCase() throws Exception {
+        Song halo = new Song("Halo", "/path/to/halo.mp3", "Beyonc\u00e9", "I Am... Sasha Fierce", 261);
+        Song aceOfSpades = new Song("Ace of Spades", "/path/to/ace.mp3", "Mot\u00f6rhead", "Ace of Spades", 169);
+        playlistManager.addSong(halo);
+        playlistManager.addSong(aceOfSpades);
+        playlistManager.addSong(testSong1);
+
+        assertEquals(List.of(halo), playlistManager.filterByArtist("beyonce"));
+        assertEquals(List.of(halo), playlistManager.search("BEYONC\u00c9"));
+        assertEquals(List.of(aceOfSpades), playlistManager.search("MOTORHEAD"));
+        assertEquals("strasse", TextNormalizer.normalize("Stra\u00dfe"));
+
+        // Renaming updates what the song is found by
+        aceOfSpades.setTitle("Overkill");
+        assertEquals(List.of(aceOfSpades), playlistManager.filterByTitle("overkill"));
+        assertTrue(playlistManager.filterByTitle("spades").isEmpty());
+
+        // Normalized forms are not serialized, so they are rebuilt when a song is loaded
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes)) {
+            out.writeObject(halo);
+        }
+        try (java.io.ObjectInputStream in = new java.io.ObjectInputStream(
+                new java.io.ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("beyonce", ((Song) in.readObject()).getNormalizedArtist());
+        }
+    }
+
+    @Test
+    public void testFailingListenerIsReportedAndOthersStillHear() {
+        PlaylistManager manager = new PlaylistManager();
+        List<Throwable> reported = new ArrayList<>();
+        List<PlaylistEvent> heard = new ArrayList<>();
+        manager.addPlaylistListener((source, events) -> {
+            throw new IllegalStateException("listener failed");
+        });
+        manager.addPlaylistListener((source, events) -> heard.addAll(events));
+
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler previous = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler((failed, error) -> reported.add(error));
+        try {
+            manager.addSong(new Song("A", "/m/a.mp3"));
+        } finally {
+            thread.setUncaughtExceptionHandler(previous);
+        }
+        assertEquals(1, reported.size());
+        assertEquals("listener failed", reported.get(0).getMessage());
+        assertEquals(1, heard.size());
+    }
 }
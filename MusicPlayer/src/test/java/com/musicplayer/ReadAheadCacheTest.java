@@ -0,0 +1,115 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the read-ahead cache.
+ */
+public class ReadAheadCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private Path file(String name, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + name.hashCode());
+        }
+        return Files.write(directory.resolve(name), bytes);
+    }
+
+    private static Song song(Path path) {
+        return new Song(path.getFileName().toString(), path.toString());
+    }
+
+    private static void awaitPrefetched(ReadAheadCache cache, long bytes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getPrefetchedBytes() < bytes && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(bytes, cache.getPrefetchedBytes());
+    }
+
+    private static byte[] readAll(FileChannel channel) throws IOException {
+        ByteBuffer all = ByteBuffer.allocate((int) channel.size());
+        ByteBuffer chunk = ByteBuffer.allocate(10_000);
+        while (channel.read(chunk) > 0) {
+            chunk.flip();
+            all.put(chunk);
+            chunk.clear();
+        }
+        return all.array();
+    }
+
+    @Test
+    public void testPrefetchedStartIsServedFromMemory() throws Exception {
+        int page = ReadAheadCache.PAGE_SIZE;
+        Path path = file("a.wav", 5 * page + 123);
+        try (ReadAheadCache cache = new ReadAheadCache(16L * page, 2L * page)) {
+            cache.prefetch(List.of(song(path)));
+            awaitPrefetched(cache, 2L * page);
+
+            try (FileChannel channel = cache.openChannel(path.toFile())) {
+                assertArrayEquals(Files.readAllBytes(path), readAll(channel));
+            }
+            assertEquals(2L * page, cache.getHitBytes());
+            assertEquals(3L * page + 123, cache.getMissBytes());
+            assertEquals(0, cache.getWastedBytes());
+            assertEquals(0.4, cache.getHitRatio(), 0.01);
+        }
+    }
+
+    @Test
+    public void testUnreadPagesCountAsWaste() throws Exception {
+        int page = ReadAheadCache.PAGE_SIZE;
+        Path a = file("a.wav", 4 * page);
+        Path b = file("b.wav", 4 * page);
+        Path c = file("c.wav", page / 2);
+        try (ReadAheadCache cache = new ReadAheadCache(4L * page, 4L * page)) {
+            cache.prefetch(List.of(song(a)));
+            awaitPrefetched(cache, 4L * page);
+
+            // Reading b pushes all of a out of the cache before it was played
+            cache.prefetch(List.of(song(b)));
+            awaitPrefetched(cache, 8L * page);
+            assertEquals(4L * page, cache.getWastedBytes());
+            assertEquals(4L * page, cache.getCachedBytes());
+
+            // A file shorter than the read-ahead is read up to its end
+            cache.prefetch(List.of(song(c)));
+            awaitPrefetched(cache, 8L * page + page / 2);
+            try (FileChannel channel = cache.openChannel(c.toFile())) {
+                assertArrayEquals(Files.readAllBytes(c), readAll(channel));
+            }
+            assertEquals(page / 2, cache.getHitBytes());
+            assertEquals(0, cache.getMissBytes());
+        }
+    }
+
+    @Test
+    public void testMissingFileIsSkipped() throws Exception {
+        int page = ReadAheadCache.PAGE_SIZE;
+        Path a = file("a.wav", 2 * page);
+        try (ReadAheadCache cache = new ReadAheadCache(4L * page, 4L * page)) {
+            // Files are opened in the background, so a missing one only shows up there
+            cache.prefetch(List.of(song(directory.resolve("missing.wav")), song(a)));
+            awaitPrefetched(cache, 2L * page);
+
+            try (FileChannel channel = cache.openChannel(a.toFile())) {
+                assertEquals(2L * page, channel.size());
+                assertArrayEquals(Files.readAllBytes(a), readAll(channel));
+            }
+            assertEquals(2L * page, cache.getHitBytes());
+        }
+    }
+}
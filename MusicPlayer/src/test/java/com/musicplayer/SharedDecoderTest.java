@@ -0,0 +1,164 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for decoding shared between zones.
+ */
+public class SharedDecoderTest {
+
+    private static final int LENGTH = 100_000;
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicLong decoded = new AtomicLong();
+
+    /**
+     * A mono ramp whose sample values give away their frame number.
+     */
+    private final class RampSource implements PcmSource {
+        private long position;
+
+        RampSource() {
+            opened.incrementAndGet();
+        }
+
+        @Override
+        public float getSampleRate() {
+            return 10_000;
+        }
+
+        @Override
+        public int getChannels() {
+            return 1;
+        }
+
+        @Override
+        public long getFrameLength() {
+            return LENGTH;
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int frames) {
+            int count = (int) Math.min(frames, LENGTH - position);
+            if (count <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = position++;
+            }
+            decoded.addAndGet(count);
+            return count;
+        }
+
+        @Override
+        public void seek(long frame) {
+            position = frame;
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    private SharedDecoder newDecoder(int windowMillis) {
+        return new SharedDecoder(file -> new RampSource(), windowMillis);
+    }
+
+    private static void assertReads(PcmSource source, long from, int frames) throws IOException {
+        float[] buffer = new float[frames];
+        int total = 0;
+        while (total < frames) {
+            int read = source.read(buffer, total, frames - total);
+            assertTrue(read > 0);
+            total += read;
+        }
+        for (int i = 0; i < frames; i++) {
+            assertEquals(from + i, buffer[i], 0.0f, "frame " + (from + i));
+        }
+    }
+
+    @Test
+    public void testZonesShareOneDecode() throws Exception {
+        SharedDecoder decoder = newDecoder(SharedDecoder.DEFAULT_WINDOW_MILLIS);
+        File file = new File("song.wav");
+        PcmSource first = decoder.open(file);
+        PcmSource second = decoder.open(file);
+        assertEquals(1, opened.get());
+        assertEquals(1, decoder.getActiveStreams());
+
+        // Readers at different speeds each see every frame, decoded once
+        assertReads(first, 0, 30_000);
+        assertReads(second, 0, 10_000);
+        assertReads(second, 10_000, 25_000);
+        assertReads(first, 30_000, 5_000);
+        assertTrue(decoded.get() < 40_000, "decoded " + decoded.get());
+
+        first.close();
+        assertEquals(0, closed.get());
+        second.close();
+        assertEquals(1, closed.get());
+        assertEquals(0, decoder.getActiveStreams());
+    }
+
+    @Test
+    public void testLaggingZoneFallsBackToPrivateDecoder() throws Exception {
+        // A one second window at 10 kHz
+        SharedDecoder decoder = newDecoder(1000);
+        File file = new File("song.wav");
+        PcmSource fast = decoder.open(file);
+        PcmSource slow = decoder.open(file);
+
+        assertReads(slow, 0, 100);
+        assertReads(fast, 0, 60_000);
+        assertEquals(1, opened.get());
+
+        // The slow reader was left behind and continues on its own decoder
+        assertReads(slow, 100, 1000);
+        assertEquals(2, opened.get());
+        assertReads(fast, 60_000, 1000);
+
+        slow.close();
+        fast.close();
+        assertEquals(2, closed.get());
+    }
+
+    @Test
+    public void testSeeking() throws Exception {
+        SharedDecoder decoder = newDecoder(SharedDecoder.DEFAULT_WINDOW_MILLIS);
+        File file = new File("song.wav");
+        PcmSource first = decoder.open(file);
+
+        // Alone on the stream, a seek moves the shared decoder
+        first.seek(50_000);
+        assertReads(first, 50_000, 100);
+        assertEquals(1, opened.get());
+
+        // A zone opening later cannot join a stream that has moved past the start
+        PcmSource second = decoder.open(file);
+        assertEquals(2, opened.get());
+        assertReads(second, 0, 100);
+
+        // Joining that new stream works, and seeking away from others goes private
+        PcmSource third = decoder.open(file);
+        assertEquals(2, opened.get());
+        third.seek(90_000);
+        assertEquals(3, opened.get());
+        assertReads(third, 90_000, 100);
+        assertReads(second, 100, 100);
+
+        first.close();
+        second.close();
+        third.close();
+        assertEquals(3, closed.get());
+        assertEquals(0, decoder.getActiveStreams());
+    }
+}
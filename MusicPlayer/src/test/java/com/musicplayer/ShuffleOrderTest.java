@@ -0,0 +1,94 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the shuffle play order.
+ */
+public class ShuffleOrderTest {
+
+    private static PlaylistManager playlist(int songs, int artists) {
+        List<Song> list = new ArrayList<>();
+        for (int i = 0; i < songs; i++) {
+            list.add(new Song("Song " + i, "/m/" + i + ".mp3", "Artist " + (i % artists),
+                    "Album " + (i % (artists * 2)), 180));
+        }
+        PlaylistManager manager = new PlaylistManager();
+        manager.addSongs(list);
+        return manager;
+    }
+
+    private static List<Integer> picks(ShuffleOrder order, int count) {
+        List<Integer> picks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            picks.add(order.next());
+        }
+        return picks;
+    }
+
+    @Test
+    public void testRoundPlaysEverySongOnceWithoutReordering() {
+        PlaylistManager manager = playlist(777, 12);
+        List<Song> before = new ArrayList<>(manager.snapshot());
+        ShuffleOrder order = new ShuffleOrder(manager, 5);
+
+        List<Integer> round = picks(order, 777);
+        assertEquals(777, new HashSet<>(round).size());
+        assertNotEquals(round.subList(0, 20), picks(new ShuffleOrder(manager, 6), 20));
+        assertEquals(before, new ArrayList<>(manager.snapshot()));
+
+        // The next round is a different permutation
+        assertNotEquals(round, picks(order, 777));
+    }
+
+    @Test
+    public void testSameSeedGivesSameOrder() {
+        PlaylistManager manager = playlist(300, 7);
+        assertEquals(picks(new ShuffleOrder(manager, 42), 900), picks(new ShuffleOrder(manager, 42), 900));
+    }
+
+    @Test
+    public void testSpreadsArtistsAndAvoidsRepeats() {
+        PlaylistManager manager = playlist(1000, 10);
+        ShuffleOrder order = new ShuffleOrder(manager, 9);
+        List<Integer> picks = picks(order, 3000);
+
+        int sameArtist = 0;
+        Map<Integer, Integer> lastPlayed = new HashMap<>();
+        for (int i = 0; i < picks.size(); i++) {
+            int index = picks.get(i);
+            if (i > 0 && index % 10 == picks.get(i - 1) % 10) {
+                sameArtist++;
+            }
+            Integer last = lastPlayed.put(index, i);
+            assertTrue(last == null || i - last > ShuffleOrder.DEFAULT_REPEAT_WINDOW, "song " + index + " repeated");
+        }
+        // A plain shuffle would put one artist twice in a row about 300 times
+        assertTrue(sameArtist < 15, sameArtist + " back-to-back artists");
+    }
+
+    @Test
+    public void testFollowsPlaylistSize() {
+        PlaylistManager manager = playlist(3, 3);
+        ShuffleOrder order = new ShuffleOrder(manager, 1);
+        Set<Integer> first = new HashSet<>(picks(order, 3));
+        assertEquals(Set.of(0, 1, 2), first);
+
+        manager.removeSong(0);
+        for (int i = 0; i < 10; i++) {
+            int index = order.next();
+            assertTrue(index == 0 || index == 1);
+        }
+        manager.clear();
+        assertEquals(-1, order.next());
+    }
+}
@@ -0,0 +1,88 @@
+package com.musicplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for multi-playlist workspaces.
+ */
+public class WorkspaceTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testPlaylistsShareSongObjects() {
+        Workspace workspace = new Workspace();
+        workspace.create("Rock");
+        workspace.create("Favourites");
+
+        PlaylistManager rock = workspace.open("Rock");
+        rock.addSong(new Song("Song", "/path/to/song.mp3", "Artist", "Album", 200));
+        workspace.close("Rock");
+
+        // A second playlist adding the same file ends up with the same song object
+        PlaylistManager favourites = workspace.open("Favourites");
+        favourites.addSong(new Song("Song", "/path/to/song.mp3"));
+        workspace.close("Favourites");
+
+        Song fromRock = workspace.open("Rock").getSong(0);
+        Song fromFavourites = workspace.open("Favourites").getSong(0);
+        assertSame(fromRock, fromFavourites);
+        assertEquals(1, workspace.getLibrary().size());
+    }
+
+    @Test
+    public void testEvictedPlaylistRefusesEdits() throws IOException {
+        Workspace workspace = new Workspace(tempDir.toFile(), 1, 1000);
+        workspace.create("Rock");
+        workspace.create("Jazz");
+        PlaylistManager rock = workspace.open("Rock");
+        rock.addSong(new Song("Song", "/path/to/song.mp3"));
+
+        // Opening another playlist closes Rock, so the old manager must not take edits
+        workspace.open("Jazz");
+        assertThrows(IllegalStateException.class, () -> rock.addSong(new Song("Lost", "/path/to/lost.mp3")));
+        assertThrows(IllegalStateException.class, () -> rock.updateSong(0, song -> song.setTitle("Lost")));
+        assertEquals("Song", rock.getSong(0).getTitle());
+
+        PlaylistManager reopened = workspace.open("Rock");
+        assertNotSame(rock, reopened);
+        assertEquals(1, reopened.size());
+        reopened.addSong(new Song("Other", "/path/to/other.mp3"));
+        assertEquals(2, reopened.size());
+    }
+
+    @Test
+    public void testSwitchingManyPlaylistsWithBoundedOpenCount() throws IOException {
+        Workspace workspace = new Workspace(tempDir.toFile(), 4, 1000);
+        for (int p = 0; p < 200; p++) {
+            workspace.create("Playlist " + p);
+            PlaylistManager manager = workspace.open("Playlist " + p);
+            for (int i = 0; i < 20; i++) {
+                manager.addSong(new Song("Song " + i, "/path/to/song" + ((p + i) % 300) + ".mp3"));
+            }
+        }
+
+        // Every playlist reopens with its contents, even after being evicted to disk
+        for (int p = 0; p < 200; p++) {
+            PlaylistManager manager = workspace.open("Playlist " + p);
+            assertEquals(20, manager.size());
+            assertEquals("/path/to/song" + ((p + 5) % 300) + ".mp3", manager.getSong(5).getFilePath());
+        }
+
+        // Saving registers the songs of playlists that are still open
+        workspace.save();
+        assertEquals(219, workspace.getLibrary().size());
+        Workspace reloaded = new Workspace(tempDir.toFile());
+        assertEquals(200, reloaded.getPlaylistNames().size());
+        assertEquals(219, reloaded.getLibrary().size());
+        PlaylistManager manager = reloaded.open("Playlist 42");
+        assertEquals(20, manager.size());
+        assertEquals("/path/to/song43.mp3", manager.getSong(1).getFilePath());
+    }
+}